@@ -54,6 +54,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -223,6 +224,13 @@ public class DefaultMuleMessage implements MuleMessage, ThreadSafeAccess, Deseri
 
     protected void copyMessageProperties(MuleMessage muleMessage)
     {
+        // a new message can share the property maps of the message it copies
+        if (muleMessage instanceof DefaultMuleMessage && properties.hasNoScopedProperties())
+        {
+            properties.shareScopedProperties(((DefaultMuleMessage) muleMessage).properties);
+            return;
+        }
+
         // explicitly copy INBOUND message properties over. This cannot be done in the loop below
         Map<String, Object> inboundProperties =
                 ((DefaultMuleMessage) muleMessage).properties.getScopedProperties(PropertyScope.INBOUND);
@@ -646,7 +654,8 @@ public class DefaultMuleMessage implements MuleMessage, ThreadSafeAccess, Deseri
     public Set<String> getPropertyNames(PropertyScope scope)
     {
         assertAccess(READ);
-        return properties.getScopedProperties(scope).keySet();
+        // a copy, as the properties may be shared with a copy of this message
+        return new HashSet<String>(properties.getScopedProperties(scope).keySet());
     }
 
     @Override
@@ -66,10 +66,19 @@ public class MessagePropertiesContext implements Serializable
     protected transient Map<String, Object> sessionMap = new UndefinedSessionPropertiesMap();
 
     /**
-     * The union of all property names from all scopes.
+     * The union of all property names from all scopes. It is null while the inbound and
+     * outbound maps are shared with the context they were copied from, and is built from them
+     * when first needed.
      */
     protected Set<String> keySet;
 
+    /*
+     * Inbound and outbound maps shared with another context are never modified in place,
+     * whichever context writes first takes a copy of its own.
+     */
+    private transient boolean inboundShared;
+    private transient boolean outboundShared;
+
     @SuppressWarnings("unchecked")
     public MessagePropertiesContext()
     {
@@ -100,6 +109,68 @@ public class MessagePropertiesContext implements Serializable
         }
     }
 
+    /**
+     * Returns the properties of the given scope for modification, copying them first if
+     * they are still shared with another context.
+     */
+    protected Map<String, Object> getWritableScopedProperties(PropertyScope scope)
+    {
+        if (PropertyScope.INBOUND.equals(scope) && inboundShared)
+        {
+            unshare(scope);
+            inboundShared = false;
+        }
+        else if (PropertyScope.OUTBOUND.equals(scope) && outboundShared)
+        {
+            unshare(scope);
+            outboundShared = false;
+        }
+        return getScopedProperties(scope);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void unshare(PropertyScope scope)
+    {
+        getWritableKeySet();
+        scopedMap.put(scope, new CaseInsensitiveHashMap(scopedMap.get(scope)));
+    }
+
+    protected Set<String> getWritableKeySet()
+    {
+        if (keySet == null)
+        {
+            keySet = new TreeSet<String>();
+            keySet.addAll(scopedMap.get(PropertyScope.INBOUND).keySet());
+            keySet.addAll(scopedMap.get(PropertyScope.OUTBOUND).keySet());
+        }
+        return keySet;
+    }
+
+    /**
+     * Takes the inbound and outbound properties of another context without copying them.
+     * Both contexts share the property maps until one of them modifies them, so copying a
+     * message that is not changed afterwards costs no property copies at all. This context is
+     * expected to have no inbound or outbound properties of its own.
+     */
+    void shareScopedProperties(MessagePropertiesContext other)
+    {
+        scopedMap.put(PropertyScope.INBOUND, other.scopedMap.get(PropertyScope.INBOUND));
+        scopedMap.put(PropertyScope.OUTBOUND, other.scopedMap.get(PropertyScope.OUTBOUND));
+        keySet = null;
+        inboundShared = true;
+        outboundShared = true;
+        other.inboundShared = true;
+        other.outboundShared = true;
+    }
+
+    /**
+     * @return true if there are no inbound or outbound properties
+     */
+    boolean hasNoScopedProperties()
+    {
+        return scopedMap.get(PropertyScope.INBOUND).isEmpty() && scopedMap.get(PropertyScope.OUTBOUND).isEmpty();
+    }
+
     public PropertyScope getDefaultScope()
     {
         return DEFAULT_SCOPE;
@@ -114,8 +185,8 @@ public class MessagePropertiesContext implements Serializable
             {
                 props.put(entry.getKey(), entry.getValue());
             }
-            getScopedProperties(PropertyScope.INBOUND).putAll(props);
-            keySet.addAll(props.keySet());
+            getWritableScopedProperties(PropertyScope.INBOUND).putAll(props);
+            getWritableKeySet().addAll(props.keySet());
         }
     }
 
@@ -147,9 +218,9 @@ public class MessagePropertiesContext implements Serializable
     public void clearProperties()
     {
         Map<String, Object> props = getScopedProperties(PropertyScope.INVOCATION);
-        keySet.removeAll(props.keySet());
+        getWritableKeySet().removeAll(props.keySet());
         props.clear();
-        props = getScopedProperties(PropertyScope.OUTBOUND);
+        props = getWritableScopedProperties(PropertyScope.OUTBOUND);
         keySet.removeAll(props.keySet());
         props.clear();
     }
@@ -162,8 +233,8 @@ public class MessagePropertiesContext implements Serializable
             return;
         }
 
-        Map<String, Object> props = getScopedProperties(scope);
-        keySet.removeAll(props.keySet());
+        Map<String, Object> props = getWritableScopedProperties(scope);
+        getWritableKeySet().removeAll(props.keySet());
         props.clear();
     }
 
@@ -176,10 +247,10 @@ public class MessagePropertiesContext implements Serializable
      */
     public Object removeProperty(String key)
     {
-        Object value = getScopedProperties(PropertyScope.OUTBOUND).remove(key);
+        Object value = getWritableScopedProperties(PropertyScope.OUTBOUND).remove(key);
         Object inv = getScopedProperties(PropertyScope.INVOCATION).remove(key);
 
-        keySet.remove(key);
+        getWritableKeySet().remove(key);
 
         if (value == null)
         {
@@ -202,14 +273,14 @@ public class MessagePropertiesContext implements Serializable
             return removeProperty(key);
         }
 
-        Object value = getScopedProperties(scope).remove(key);
+        Object value = getWritableScopedProperties(scope).remove(key);
 
         // Only remove the property from the keySet if it does not exist in any other scope besides this one.
         if (getProperty(key, PropertyScope.OUTBOUND) == null
             && getProperty(key, PropertyScope.INVOCATION) == null
             && getProperty(key, PropertyScope.INBOUND) == null)
         {
-            keySet.remove(key);
+            getWritableKeySet().remove(key);
         }
 
         return value;
@@ -225,8 +296,8 @@ public class MessagePropertiesContext implements Serializable
     @Deprecated
     public void setProperty(String key, Object value)
     {
-        getScopedProperties(DEFAULT_SCOPE).put(key, value);
-        keySet.add(key);
+        getWritableScopedProperties(DEFAULT_SCOPE).put(key, value);
+        getWritableKeySet().add(key);
     }
 
     /**
@@ -244,8 +315,8 @@ public class MessagePropertiesContext implements Serializable
             logger.warn(CoreMessages.sessionPropertyNotSerializableWarning(key));
         }
 
-        getScopedProperties(scope).put(key, value);
-        keySet.add(key);
+        getWritableScopedProperties(scope).put(key, value);
+        getWritableKeySet().add(key);
     }
 
     /**
@@ -255,7 +326,7 @@ public class MessagePropertiesContext implements Serializable
     public Set<String> getPropertyNames()
     {
         Set<String> allProps = new HashSet<String>();
-        allProps.addAll(keySet);
+        allProps.addAll(getWritableKeySet());
         return allProps;
     }
 
@@ -381,6 +452,7 @@ public class MessagePropertiesContext implements Serializable
                 }
             }
         }
+        getWritableKeySet();
         out.defaultWriteObject();
     }
 
@@ -388,6 +460,9 @@ public class MessagePropertiesContext implements Serializable
     {
         in.defaultReadObject();
         sessionMap = new UndefinedSessionPropertiesMap();
+        // contexts written to the same stream may share their maps, and sharing is not recorded
+        inboundShared = true;
+        outboundShared = true;
     }
 
     private static class UndefinedSessionPropertiesMap extends AbstractMap<String, Object>
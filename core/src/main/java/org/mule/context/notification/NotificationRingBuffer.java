@@ -0,0 +1,231 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.context.notification;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue that many threads can add to without locking, drained by a single
+ * consumer in batches.
+ * <p/>
+ * Every slot of the ring carries a sequence number telling whether it is free for the
+ * producer at a given position or holds the element for the consumer at that position,
+ * so that producers only contend on claiming a position. When the ring is full
+ * {@link #offer(Object)} fails, leaving the caller to decide what to do. The consumer
+ * parks while the ring is empty and is woken by the next element added.
+ */
+class NotificationRingBuffer<E> extends AbstractQueue<E>
+{
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+
+    NotificationRingBuffer(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity)
+        {
+            size <<= 1;
+        }
+        mask = size - 1;
+        elements = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(E element)
+    {
+        if (element == null)
+        {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        while (true)
+        {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    wakeUp();
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0)
+            {
+                // the slot still holds the element of the previous revolution
+                return false;
+            }
+            else
+            {
+                position = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public E poll()
+    {
+        long position = head.get();
+        while (true)
+        {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0)
+            {
+                if (head.compareAndSet(position, position + 1))
+                {
+                    E element = elements.get(index);
+                    elements.set(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            }
+            else if (difference < 0)
+            {
+                return null;
+            }
+            else
+            {
+                position = head.get();
+            }
+        }
+    }
+
+    @Override
+    public E peek()
+    {
+        long position = head.get();
+        int index = (int) (position & mask);
+        if (sequences.get(index) == position + 1)
+        {
+            return elements.get(index);
+        }
+        return null;
+    }
+
+    /**
+     * Moves up to <code>max</code> elements to the given collection.
+     *
+     * @return the number of elements moved
+     */
+    int drainTo(Collection<? super E> batch, int max)
+    {
+        int count = 0;
+        E element;
+        while (count < max && (element = poll()) != null)
+        {
+            batch.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Parks the calling thread, the only consumer, until an element is added or the
+     * timeout expires.
+     */
+    void awaitElements(long timeout, TimeUnit unit)
+    {
+        waitingConsumer = Thread.currentThread();
+        try
+        {
+            // an element added before the consumer was published would not wake it
+            if (isEmpty())
+            {
+                LockSupport.parkNanos(this, unit.toNanos(timeout));
+            }
+        }
+        finally
+        {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * Wakes up the consumer if it is waiting.
+     */
+    void wakeUp()
+    {
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+        {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return peek() == null;
+    }
+
+    @Override
+    public int size()
+    {
+        // read head first so that the difference is never negative
+        long first = head.get();
+        long last = tail.get();
+        return (int) Math.max(0, Math.min(last - first, mask + 1));
+    }
+
+    public int capacity()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * @return a weakly consistent iterator over a snapshot of the elements
+     */
+    @Override
+    public Iterator<E> iterator()
+    {
+        List<E> snapshot = new ArrayList<E>();
+        long last = tail.get();
+        for (long position = head.get(); position < last; position++)
+        {
+            int index = (int) (position & mask);
+            E element = elements.get(index);
+            if (element != null && sequences.get(index) == position + 1)
+            {
+                snapshot.add(element);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+}
@@ -21,15 +21,18 @@ import org.mule.api.lifecycle.Disposable;
 import org.mule.api.lifecycle.LifecycleException;
 import org.mule.util.ClassUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.resource.spi.work.Work;
 import javax.resource.spi.work.WorkException;
@@ -63,17 +66,79 @@ import org.apache.commons.logging.LogFactory;
  * <li>Disabling an event or interface disables all uses of that class or any subclass.</li>
  * <li>Enquiring whether an event is enabled returns true if any subclass is enabled.</li>
  * </ul>
+ *
+ * <p>Notifications that are not {@link BlockingServerEvent}s are added to a bounded
+ * {@link NotificationRingBuffer} without locking and delivered in batches by the
+ * manager's own work. What happens when it is full is decided by the
+ * {@link OverflowPolicy}. With <code>dispatcherThreads</code> set, notifications are
+ * handed on to that many more works, each delivering the notifications of the types
+ * assigned to it, so that slow listeners of one type do not hold up the others.
+ * Notifications of one type are always delivered in the order they were fired, except
+ * for the ones fired while the queue capacity or the number of dispatcher threads is
+ * being changed. Both can be changed once the manager is started, as the configuration
+ * is applied after the manager is started by the context.</p>
  */
 public class ServerNotificationManager implements Work, Disposable, ServerNotificationHandler, MuleContextAware
 {
     public static final String NULL_SUBSCRIPTION = "NULL";
+    public static final int DEFAULT_QUEUE_CAPACITY = 16384;
+
+    /**
+     * What to do with a notification fired while the queue is full
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * Wait for room in the queue
+         */
+        BLOCK,
+        /**
+         * Discard the notification
+         */
+        DROP,
+        /**
+         * Wait for room for one notification out of every <code>sampleRate</code>,
+         * discarding the others
+         */
+        SAMPLE
+    }
+
+    private static final int BATCH_SIZE = 256;
+    private static final long BLOCKED_PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
     protected Log logger = LogFactory.getLog(getClass());
     private boolean dynamic = false;
     private Configuration configuration = new Configuration();
     private AtomicBoolean disposed = new AtomicBoolean(false);
-    private BlockingDeque<ServerNotification> eventQueue = new LinkedBlockingDeque<ServerNotification>();
     private MuleContext muleContext;
 
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private int sampleRate = 10;
+    private volatile int dispatcherThreads = 0;
+
+    private volatile NotificationRingBuffer<ServerNotification> eventQueue = new NotificationRingBuffer<ServerNotification>(queueCapacity);
+    private volatile Dispatcher[] dispatchers = new Dispatcher[0];
+    private volatile boolean started = false;
+    private WorkManager workManager;
+    private WorkListener workListener;
+
+    /**
+     * The queues replaced by a resize, drained until the manager is disposed as
+     * notifications may still be added by producers that read the old reference
+     */
+    private final List<NotificationRingBuffer<ServerNotification>> retiredQueues = new CopyOnWriteArrayList<NotificationRingBuffer<ServerNotification>>();
+
+    /**
+     * Tells the threads delivering notifications, which must not wait for room in the
+     * queues they drain themselves
+     */
+    private final ThreadLocal<Boolean> deliveringThread = new ThreadLocal<Boolean>();
+
+    private final AtomicLong droppedNotifications = new AtomicLong();
+    private final AtomicLong overflowedNotifications = new AtomicLong();
+    private final AtomicLong dispatchedNotifications = new AtomicLong();
+
     @Override
     public boolean isNotificationDynamic()
     {
@@ -93,9 +158,13 @@ public class ServerNotificationManager implements Work, Disposable, ServerNotifi
 
     public void start(WorkManager workManager, WorkListener workListener) throws LifecycleException
     {
+        this.workManager = workManager;
+        this.workListener = workListener;
         try
         {
+            dispatchers = startDispatchers(dispatcherThreads);
             workManager.scheduleWork(this, WorkManager.INDEFINITE, null, workListener);
+            started = true;
         }
         catch (WorkException e)
         {
@@ -103,6 +172,121 @@ public class ServerNotificationManager implements Work, Disposable, ServerNotifi
         }
     }
 
+    private Dispatcher[] startDispatchers(int count) throws WorkException
+    {
+        Dispatcher[] fanOut = new Dispatcher[count];
+        for (int i = 0; i < fanOut.length; i++)
+        {
+            fanOut[i] = new Dispatcher(queueCapacity);
+            workManager.scheduleWork(fanOut[i], WorkManager.INDEFINITE, null, workListener);
+        }
+        return fanOut;
+    }
+
+    /**
+     * Sets the number of notifications the queue holds. The notifications already
+     * queued are still delivered when it is changed.
+     */
+    public synchronized void setNotificationQueueCapacity(int queueCapacity)
+    {
+        if (queueCapacity <= 0)
+        {
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        NotificationRingBuffer<ServerNotification> previous = eventQueue;
+        eventQueue = new NotificationRingBuffer<ServerNotification>(queueCapacity);
+        retiredQueues.add(previous);
+        previous.wakeUp();
+    }
+
+    public int getNotificationQueueCapacity()
+    {
+        return eventQueue.capacity();
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+    /**
+     * With {@link OverflowPolicy#SAMPLE}, one notification out of this many is kept
+     * while the queue is full.
+     */
+    public void setSampleRate(int sampleRate)
+    {
+        if (sampleRate <= 0)
+        {
+            throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the number of works notifications are fanned out to, by type, in addition
+     * to the one draining the queue. With none, the latter delivers them all. Once
+     * the manager is started, the work draining the queue replaces its dispatchers
+     * before handing them the next notifications.
+     */
+    public void setDispatcherThreads(int dispatcherThreads)
+    {
+        if (dispatcherThreads < 0)
+        {
+            throw new IllegalArgumentException("dispatcherThreads must not be negative: " + dispatcherThreads);
+        }
+        this.dispatcherThreads = dispatcherThreads;
+        eventQueue.wakeUp();
+    }
+
+    public int getDispatcherThreads()
+    {
+        return dispatcherThreads;
+    }
+
+    /**
+     * @return the number of notifications waiting to be delivered
+     */
+    public int getQueuedNotifications()
+    {
+        int queued = eventQueue.size();
+        for (NotificationRingBuffer<ServerNotification> retired : retiredQueues)
+        {
+            queued += retired.size();
+        }
+        for (Dispatcher dispatcher : dispatchers)
+        {
+            queued += dispatcher.queue.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return the number of notifications discarded because the queue was full
+     */
+    public long getDroppedNotifications()
+    {
+        return droppedNotifications.get();
+    }
+
+    /**
+     * @return the number of queued notifications delivered to the listeners
+     */
+    public long getDispatchedNotifications()
+    {
+        return dispatchedNotifications.get();
+    }
+
     public void addInterfaceToType(Class<? extends ServerNotificationListener> iface, Class<? extends ServerNotification> event)
     {
         configuration.addInterfaceToType(iface, event);
@@ -199,19 +383,9 @@ public class ServerNotificationManager implements Work, Disposable, ServerNotifi
             {
                 notifyListeners(notification);
             }
-            else
+            else if (!eventQueue.offer(notification))
             {
-                try
-                {
-                    eventQueue.put(notification);
-                }
-                catch (InterruptedException e)
-                {
-                    if (!disposed.get())
-                    {
-                        logger.error("Failed to queue notification: " + notification, e);
-                    }
-                }
+                handleOverflow(notification);
             }
         }
         else
@@ -235,11 +409,58 @@ public class ServerNotificationManager implements Work, Disposable, ServerNotifi
         return enabled;
     }
 
+    private void handleOverflow(ServerNotification notification)
+    {
+        OverflowPolicy policy = overflowPolicy;
+        if (policy == OverflowPolicy.SAMPLE)
+        {
+            policy = overflowedNotifications.incrementAndGet() % sampleRate == 0
+                                                                                 ? OverflowPolicy.BLOCK
+                                                                                 : OverflowPolicy.DROP;
+        }
+        if (policy == OverflowPolicy.BLOCK)
+        {
+            if (deliveringThread.get() != null)
+            {
+                // the queue would never drain while this thread waits on it
+                notifyListeners(notification);
+                return;
+            }
+            if (started && offerWhenRoom(eventQueue, notification))
+            {
+                return;
+            }
+        }
+        if (droppedNotifications.incrementAndGet() == 1)
+        {
+            logger.warn("Notification queue full, notifications are being dropped. First one dropped: "
+                        + notification.getClass().getName());
+        }
+    }
+
+    private boolean offerWhenRoom(NotificationRingBuffer<ServerNotification> queue, ServerNotification notification)
+    {
+        while (!queue.offer(notification))
+        {
+            if (disposed.get())
+            {
+                return false;
+            }
+            LockSupport.parkNanos(BLOCKED_PRODUCER_PARK_NANOS);
+        }
+        return true;
+    }
+
     @Override
     public void dispose()
     {
         disposed.set(true);
         configuration = null;
+        eventQueue.wakeUp();
+        for (Dispatcher dispatcher : dispatchers)
+        {
+            dispatcher.queue.wakeUp();
+        }
     }
 
     protected void notifyListeners(ServerNotification notification)
@@ -260,25 +481,107 @@ public class ServerNotificationManager implements Work, Disposable, ServerNotifi
         dispose();
     }
 
+    /**
+     * Delivers the notifications of the queue in batches, or hands them to the
+     * dispatchers, until the manager is disposed.
+     */
     @Override
     public void run()
     {
-        while (!disposed.get())
+        deliveringThread.set(Boolean.TRUE);
+        try
         {
-            try
+            List<ServerNotification> batch = new ArrayList<ServerNotification>(BATCH_SIZE);
+            while (!disposed.get())
             {
-                int timeout = muleContext.getConfiguration().getDefaultQueueTimeout();
-                ServerNotification notification = eventQueue.poll(timeout, TimeUnit.MILLISECONDS);
-                if (notification != null)
+                updateDispatchers();
+                for (NotificationRingBuffer<ServerNotification> retired : retiredQueues)
+                {
+                    while (retired.drainTo(batch, BATCH_SIZE) > 0)
+                    {
+                        dispatch(batch);
+                    }
+                }
+                NotificationRingBuffer<ServerNotification> queue = eventQueue;
+                if (queue.drainTo(batch, BATCH_SIZE) == 0)
                 {
-                    notifyListeners(notification);
+                    queue.awaitElements(muleContext.getConfiguration().getDefaultQueueTimeout(), TimeUnit.MILLISECONDS);
+                    continue;
                 }
+                dispatch(batch);
+            }
+        }
+        finally
+        {
+            deliveringThread.remove();
+        }
+    }
+
+    /**
+     * Replaces the dispatchers if their number or the queue capacity was changed. Only
+     * the work draining the queue hands notifications to the dispatchers, so the ones
+     * replaced stop once they have delivered what they were given.
+     */
+    private void updateDispatchers()
+    {
+        Dispatcher[] current = dispatchers;
+        int count = dispatcherThreads;
+        if (current.length == count && (count == 0 || current[0].capacity == queueCapacity))
+        {
+            return;
+        }
+        try
+        {
+            dispatchers = startDispatchers(count);
+        }
+        catch (WorkException e)
+        {
+            logger.error("Could not start " + count + " notification dispatchers, keeping " + current.length, e);
+            dispatcherThreads = current.length;
+            return;
+        }
+        for (Dispatcher dispatcher : current)
+        {
+            dispatcher.retire();
+        }
+    }
+
+    private void dispatch(List<ServerNotification> batch)
+    {
+        Dispatcher[] fanOut = dispatchers;
+        for (ServerNotification notification : batch)
+        {
+            if (fanOut.length > 0)
+            {
+                dispatcherFor(fanOut, notification).queue(notification);
             }
-            catch (InterruptedException e)
+            else
             {
-                Thread.currentThread().interrupt();
+                deliver(notification);
             }
         }
+        batch.clear();
+    }
+
+    private void deliver(ServerNotification notification)
+    {
+        try
+        {
+            notifyListeners(notification);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Error delivering notification: " + notification.getClass().getName(), e);
+        }
+        dispatchedNotifications.incrementAndGet();
+    }
+
+    private Dispatcher dispatcherFor(Dispatcher[] fanOut, ServerNotification notification)
+    {
+        int h = notification.getClass().hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return fanOut[(h & 0x7fffffff) % fanOut.length];
     }
 
     /**
@@ -289,6 +592,80 @@ public class ServerNotificationManager implements Work, Disposable, ServerNotifi
         return eventQueue;
     }
 
+    /**
+     * Delivers the notifications of the types assigned to it, in the order they were
+     * fired.
+     */
+    private class Dispatcher implements Work
+    {
+        private final NotificationRingBuffer<ServerNotification> queue;
+        private final int capacity;
+        private volatile boolean retired;
+
+        Dispatcher(int capacity)
+        {
+            this.capacity = capacity;
+            queue = new NotificationRingBuffer<ServerNotification>(capacity);
+        }
+
+        void queue(ServerNotification notification)
+        {
+            // waiting here pushes back on the main queue, whose overflow policy applies
+            if (!queue.offer(notification) && !offerWhenRoom(queue, notification))
+            {
+                droppedNotifications.incrementAndGet();
+            }
+        }
+
+        /**
+         * Stops the dispatcher once it delivered the notifications already queued.
+         */
+        void retire()
+        {
+            retired = true;
+            queue.wakeUp();
+        }
+
+        @Override
+        public void run()
+        {
+            deliveringThread.set(Boolean.TRUE);
+            try
+            {
+                List<ServerNotification> batch = new ArrayList<ServerNotification>(BATCH_SIZE);
+                while (!disposed.get())
+                {
+                    // read before draining, as nothing is queued once it is set
+                    boolean last = retired;
+                    if (queue.drainTo(batch, BATCH_SIZE) == 0)
+                    {
+                        if (last)
+                        {
+                            return;
+                        }
+                        queue.awaitElements(muleContext.getConfiguration().getDefaultQueueTimeout(), TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+                    for (ServerNotification notification : batch)
+                    {
+                        deliver(notification);
+                    }
+                    batch.clear();
+                }
+            }
+            finally
+            {
+                deliveringThread.remove();
+            }
+        }
+
+        @Override
+        public void release()
+        {
+            // disposed with the manager
+        }
+    }
+
     /**
      * Support string or class parameters
      */
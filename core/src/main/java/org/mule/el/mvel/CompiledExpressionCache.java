@@ -0,0 +1,216 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.el.mvel;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded cache of compiled MVEL expressions. Entries are keyed by the
+ * expression text and the identity of the parser context it was compiled with, and are
+ * spread over independently locked LRU segments so concurrent lookups of different
+ * expressions rarely contend. Hit, miss and eviction counts are kept for monitoring.
+ */
+public class CompiledExpressionCache
+{
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final int maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CompiledExpressionCache(int maxSize)
+    {
+        if (maxSize <= 0)
+        {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * 8 <= maxSize)
+        {
+            segmentCount *= 2;
+        }
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * @return the compiled expression, or null if it is not cached
+     */
+    public Serializable get(Object parserContext, String expression)
+    {
+        Key key = new Key(parserContext, expression);
+        Segment segment = segmentFor(key);
+        Serializable compiled;
+        synchronized (segment)
+        {
+            compiled = segment.get(key);
+        }
+        if (compiled == null)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return compiled;
+    }
+
+    /**
+     * Caches a compiled expression unless another thread got there first.
+     *
+     * @return the compiled expression that is now cached
+     */
+    public Serializable putIfAbsent(Object parserContext, String expression, Serializable compiled)
+    {
+        Key key = new Key(parserContext, expression);
+        Segment segment = segmentFor(key);
+        synchronized (segment)
+        {
+            Serializable existing = segment.get(key);
+            if (existing != null)
+            {
+                return existing;
+            }
+            segment.put(key, compiled);
+            return compiled;
+        }
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+        {
+            synchronized (segment)
+            {
+                segment.clear();
+            }
+        }
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public void resetStatistics()
+    {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    private Segment segmentFor(Key key)
+    {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private class Segment extends LinkedHashMap<Key, Serializable>
+    {
+        private static final long serialVersionUID = 2373404263454936472L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries)
+        {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Serializable> eldest)
+        {
+            if (size() > maxEntries)
+            {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Key
+    {
+        private final Object parserContext;
+        private final String expression;
+        private final int hash;
+
+        Key(Object parserContext, String expression)
+        {
+            this.parserContext = parserContext;
+            this.expression = expression;
+            this.hash = 31 * System.identityHashCode(parserContext) + expression.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return parserContext == other.parserContext && expression.equals(other.expression);
+        }
+    }
+}
@@ -21,10 +21,30 @@ public class EventVariableResolverFactory extends MessageVariableResolverFactory
 
     private static final long serialVersionUID = -6819292692339684915L;
 
+    private MuleEvent event;
+
     public EventVariableResolverFactory(ParserContext parserContext, MuleContext muleContext, MuleEvent event)
     {
         super(parserContext, muleContext, event.getMessage());
-        addFinalVariable("flow", new FlowContext(event.getFlowConstruct()));
+        this.event = event;
+        addResolver("flow", new MessageBoundVariableResolver("flow")
+        {
+            @Override
+            protected Object resolve()
+            {
+                return new FlowContext(EventVariableResolverFactory.this.event.getFlowConstruct());
+            }
+        });
+    }
+
+    /**
+     * Binds this factory to another event so it can be reused instead of building a new
+     * one for each evaluation. Passing <code>null</code> releases the current event.
+     */
+    void setEvent(MuleEvent event)
+    {
+        this.event = event;
+        setMessage(event != null ? event.getMessage() : null);
     }
 
     public static class FlowContext
@@ -15,7 +15,6 @@ import org.mule.api.expression.InvalidExpressionException;
 
 import java.io.Serializable;
 
-import org.apache.commons.collections.map.LRUMap;
 import org.mvel2.MVEL;
 import org.mvel2.ParserContext;
 import org.mvel2.optimizers.OptimizerFactory;
@@ -30,7 +29,7 @@ public class MVELExpressionExecutor implements ExpressionExecutor<MVELExpression
     protected static final int COMPILED_EXPRESSION_MAX_CACHE_SIZE = 1000;
 
     protected ParserContext parserContext;
-    protected LRUMap compiledExpressionsCache = new LRUMap(COMPILED_EXPRESSION_MAX_CACHE_SIZE);
+    protected CompiledExpressionCache compiledExpressionsCache = new CompiledExpressionCache(COMPILED_EXPRESSION_MAX_CACHE_SIZE);
 
     public MVELExpressionExecutor(ParserContext parserContext)
     {
@@ -64,16 +63,18 @@ public class MVELExpressionExecutor implements ExpressionExecutor<MVELExpression
      */
     protected Serializable getCompiledExpression(String expression)
     {
-        if (compiledExpressionsCache.containsKey(expression))
+        Serializable compiledExpression = compiledExpressionsCache.get(parserContext, expression);
+        if (compiledExpression == null)
         {
-            return (Serializable) compiledExpressionsCache.get(expression);
-        }
-        else
-        {
-            Serializable compiledExpression = MVEL.compileExpression(expression, parserContext);
-            compiledExpressionsCache.put(expression, compiledExpression);
-            return compiledExpression;
+            compiledExpression = compiledExpressionsCache.putIfAbsent(parserContext, expression,
+                MVEL.compileExpression(expression, parserContext));
         }
+        return compiledExpression;
+    }
+
+    public CompiledExpressionCache getCompiledExpressionsCache()
+    {
+        return compiledExpressionsCache;
     }
 
 }
@@ -24,12 +24,17 @@ import org.mule.config.i18n.CoreMessages;
 import org.mule.transformer.types.DataTypeFactory;
 import org.mule.transport.NullPayload;
 import org.mule.util.IOUtils;
+import org.mule.util.TemplateParser;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import javax.activation.DataHandler;
@@ -66,6 +71,9 @@ public class MVELExpressionLanguage implements ExpressionLanguage, Initialisable
     protected Map<String, Class<?>> imports = new HashMap<String, Class<?>>();
     protected boolean autoResolveVariables = true;
 
+    // Per thread resolver factory chains for event evaluations, replaced on initialisation
+    private volatile ThreadLocal<ReusableEventContext> eventContexts = new ThreadLocal<ReusableEventContext>();
+
     public MVELExpressionLanguage(MuleContext muleContext)
     {
         this.muleContext = muleContext;
@@ -80,6 +88,7 @@ public class MVELExpressionLanguage implements ExpressionLanguage, Initialisable
 
         loadGlobalFunctions();
         createStaticContext();
+        eventContexts = new ThreadLocal<ReusableEventContext>();
     }
 
     protected void createStaticContext()
@@ -141,6 +150,32 @@ public class MVELExpressionLanguage implements ExpressionLanguage, Initialisable
     @SuppressWarnings("unchecked")
     public <T> T evaluate(String expression, MuleEvent event, Map<String, Object> vars)
     {
+        if (vars == null)
+        {
+            ReusableEventContext context = eventContexts.get();
+            if (context == null || context.autoResolveVariables != autoResolveVariables)
+            {
+                context = createReusableEventContext(event);
+                if (context != null)
+                {
+                    eventContexts.set(context);
+                }
+            }
+            // nested evaluations on the same thread get a context of their own
+            if (context != null && !context.inUse)
+            {
+                context.bind(event);
+                try
+                {
+                    return (T) evaluateInternal(expression, context.root);
+                }
+                finally
+                {
+                    context.release();
+                }
+            }
+        }
+
         MVELExpressionLanguageContext factory = createExpressionLanguageContext();
         factory.addPrivateVariable(MVELExpressionLanguageContext.MULE_MESSAGE_INTERNAL_VARIABLE,
                 event.getMessage());
@@ -249,6 +284,58 @@ public class MVELExpressionLanguage implements ExpressionLanguage, Initialisable
         }
     }
 
+    /**
+     * Compiles the expressions embedded in the given strings so they are already cached when
+     * the first message arrives. Tokens MEL cannot compile, such as expressions for other
+     * evaluators, are skipped.
+     *
+     * @param templates strings that may contain one or more <code>#[...]</code> expressions
+     * @return the number of expressions compiled
+     */
+    public int precompile(Collection<String> templates)
+    {
+        TemplateParser parser = TemplateParser.createMuleStyleParser();
+        final AtomicInteger compiled = new AtomicInteger();
+        for (String template : templates)
+        {
+            try
+            {
+                parser.parse(new TemplateParser.TemplateCallback()
+                {
+                    public Object match(String token)
+                    {
+                        try
+                        {
+                            expressionExecutor.validate(token);
+                            compiled.incrementAndGet();
+                        }
+                        catch (RuntimeException e)
+                        {
+                            if (log.isDebugEnabled())
+                            {
+                                log.debug("Not precompiling '" + token + "': " + e.getMessage());
+                            }
+                        }
+                        return null;
+                    }
+                }, template);
+            }
+            catch (RuntimeException e)
+            {
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Not precompiling '" + template + "': " + e.getMessage());
+                }
+            }
+        }
+        return compiled.get();
+    }
+
+    public CompiledExpressionCache getCompiledExpressionCache()
+    {
+        return expressionExecutor.getCompiledExpressionsCache();
+    }
+
     protected MVELExpressionLanguageContext createExpressionLanguageContext()
     {
         MVELExpressionLanguageContext factory = new MVELExpressionLanguageContext(
@@ -357,4 +444,85 @@ public class MVELExpressionLanguage implements ExpressionLanguage, Initialisable
         return new VariableVariableResolverFactory(parserContext, muleContext, message);
     }
 
+    /**
+     * Builds a resolver factory chain for event evaluations that can be rebound to other
+     * events, or returns <code>null</code> if the configured factories do not support it.
+     */
+    protected ReusableEventContext createReusableEventContext(MuleEvent event)
+    {
+        MVELExpressionLanguageContext root = createExpressionLanguageContext();
+        VariableResolverFactory eventFactory = createEventVariableResolverFactory(event);
+        if (!(eventFactory instanceof EventVariableResolverFactory))
+        {
+            return null;
+        }
+        root.appendFactory(eventFactory);
+        root.appendFactory(createGlobalVariableResolverFactory(root));
+
+        VariableResolverFactory variableFactory = null;
+        if (autoResolveVariables)
+        {
+            variableFactory = createVariableVariableResolverFactory(event);
+            if (!(variableFactory instanceof VariableVariableResolverFactory))
+            {
+                return null;
+            }
+            root.localFactory.appendFactory(variableFactory);
+        }
+        return new ReusableEventContext(root, (EventVariableResolverFactory) eventFactory,
+            (VariableVariableResolverFactory) variableFactory, autoResolveVariables);
+    }
+
+    /**
+     * A resolver factory chain bound to one event at a time. Building the chain runs the
+     * expression language extensions and registers aliases and global functions, so it is
+     * built once per thread and rebound to each event instead. Variables declared by an
+     * expression are dropped and the event is released once the evaluation completes.
+     */
+    protected static class ReusableEventContext
+    {
+        final MVELExpressionLanguageContext root;
+        final EventVariableResolverFactory eventFactory;
+        final VariableVariableResolverFactory variableFactory;
+        final boolean autoResolveVariables;
+        final Set<String> initialVariables;
+        boolean inUse;
+
+        ReusableEventContext(MVELExpressionLanguageContext root,
+                             EventVariableResolverFactory eventFactory,
+                             VariableVariableResolverFactory variableFactory,
+                             boolean autoResolveVariables)
+        {
+            this.root = root;
+            this.eventFactory = eventFactory;
+            this.variableFactory = variableFactory;
+            this.autoResolveVariables = autoResolveVariables;
+            this.initialVariables = new HashSet<String>(root.localFactory.getVariableNames());
+        }
+
+        void bind(MuleEvent event)
+        {
+            inUse = true;
+            eventFactory.setEvent(event);
+            if (variableFactory != null)
+            {
+                variableFactory.setMessage(event.getMessage());
+            }
+            root.addPrivateVariable(MVELExpressionLanguageContext.MULE_MESSAGE_INTERNAL_VARIABLE,
+                event.getMessage());
+        }
+
+        void release()
+        {
+            eventFactory.setEvent(null);
+            if (variableFactory != null)
+            {
+                variableFactory.setMessage(null);
+            }
+            root.privateVariables.remove(MVELExpressionLanguageContext.MULE_MESSAGE_INTERNAL_VARIABLE);
+            root.localFactory.retainVariables(initialVariables);
+            inUse = false;
+        }
+    }
+
 }
@@ -20,6 +20,7 @@ import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.mvel2.ImmutableElementException;
 import org.mvel2.ParserContext;
@@ -273,6 +274,23 @@ public class MVELExpressionLanguageContext extends BaseVariableResolverFactory
         {
             variableResolvers.put(name, resolver);
         }
+
+        Set<String> getVariableNames()
+        {
+            return variableResolvers.keySet();
+        }
+
+        /**
+         * Drops any variable not in the given set, used to forget variables declared by an
+         * expression before the context is reused.
+         */
+        void retainVariables(Set<String> names)
+        {
+            if (variableResolvers.size() != names.size())
+            {
+                variableResolvers.keySet().retainAll(names);
+            }
+        }
     }
 
     MVELExpressionLanguageContext getParentContext()
@@ -12,50 +12,174 @@ package org.mule.el.mvel;
 
 import org.mule.api.MuleContext;
 import org.mule.api.MuleMessage;
-import org.mule.api.el.VariableAssignmentCallback;
 import org.mule.api.transport.PropertyScope;
+import org.mule.config.i18n.CoreMessages;
 import org.mule.el.context.MessageContext;
 import org.mule.el.context.MessagePropertyMapContext;
 
+import org.mvel2.ImmutableElementException;
 import org.mvel2.ParserContext;
+import org.mvel2.integration.VariableResolver;
 
 class MessageVariableResolverFactory extends MVELExpressionLanguageContext
 {
 
     private static final long serialVersionUID = -6819292692339684915L;
 
+    protected MuleMessage message;
+
     public MessageVariableResolverFactory(final ParserContext parserContext,
                                           final MuleContext muleContext,
                                           final MuleMessage message)
     {
         super(parserContext, muleContext);
+        this.message = message;
 
         if (message != null)
         {
-            addFinalVariable("message", new MessageContext(message));
+            addResolver("message", new MessageBoundVariableResolver("message")
+            {
+                @Override
+                protected Object resolve()
+                {
+                    return new MessageContext(MessageVariableResolverFactory.this.message);
+                }
+            });
 
             // We need payload top-level for compatibility with payload expression evaluator without ':'
-            addVariable("payload", message.getPayload(), new VariableAssignmentCallback()
+            addResolver("payload", new MessageBoundVariableResolver("payload")
+            {
+                @Override
+                public Object getValue()
+                {
+                    return MessageVariableResolverFactory.this.message.getPayload();
+                }
+
+                @Override
+                public void setValue(Object value)
+                {
+                    MessageVariableResolverFactory.this.message.setPayload(value);
+                }
+            });
+
+            addResolver("exception", new MessageBoundVariableResolver("exception")
             {
                 @Override
-                public void assignValue(String name, Object value, Object newValue)
+                protected Object resolve()
                 {
-                    message.setPayload(newValue);
+                    MuleMessage current = MessageVariableResolverFactory.this.message;
+                    return current.getExceptionPayload() != null
+                                                                ? current.getExceptionPayload().getException()
+                                                                : null;
                 }
             });
 
-            // Only add exception is present
-            if (message.getExceptionPayload() != null)
+            addResolver("flowVars", new MessageBoundVariableResolver("flowVars")
+            {
+                @Override
+                protected Object resolve()
+                {
+                    return new MessagePropertyMapContext(MessageVariableResolverFactory.this.message,
+                        PropertyScope.INVOCATION);
+                }
+            });
+
+            addResolver("sessionVars", new MessageBoundVariableResolver("sessionVars")
+            {
+                @Override
+                protected Object resolve()
+                {
+                    return new MessagePropertyMapContext(MessageVariableResolverFactory.this.message,
+                        PropertyScope.SESSION);
+                }
+            });
+        }
+    }
+
+    /**
+     * Binds this factory to another message. Only factories created with a message can be
+     * rebound, as the message variables are registered on construction.
+     */
+    void setMessage(MuleMessage message)
+    {
+        this.message = message;
+        for (VariableResolver resolver : variableResolvers.values())
+        {
+            if (resolver instanceof MessageBoundVariableResolver)
             {
-                addFinalVariable("exception", message.getExceptionPayload().getException());
+                ((MessageBoundVariableResolver) resolver).reset();
             }
-            else
+        }
+    }
+
+    /**
+     * A read-only variable whose value is derived from the current message the first time
+     * it is used, so expressions only pay for the context objects they refer to.
+     */
+    @SuppressWarnings("rawtypes")
+    abstract static class MessageBoundVariableResolver implements VariableResolver
+    {
+        private static final long serialVersionUID = -1403658209296419722L;
+
+        private final String name;
+        private Object value;
+        private boolean resolved;
+
+        MessageBoundVariableResolver(String name)
+        {
+            this.name = name;
+        }
+
+        protected Object resolve()
+        {
+            return null;
+        }
+
+        void reset()
+        {
+            value = null;
+            resolved = false;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public Class getType()
+        {
+            return Object.class;
+        }
+
+        @Override
+        public void setStaticType(Class type)
+        {
+        }
+
+        @Override
+        public int getFlags()
+        {
+            return 0;
+        }
+
+        @Override
+        public Object getValue()
+        {
+            if (!resolved)
             {
-                addFinalVariable("exception", null);
+                value = resolve();
+                resolved = true;
             }
+            return value;
+        }
 
-            addFinalVariable("flowVars", new MessagePropertyMapContext(message, PropertyScope.INVOCATION));
-            addFinalVariable("sessionVars", new MessagePropertyMapContext(message, PropertyScope.SESSION));
+        @Override
+        public void setValue(Object value)
+        {
+            throw new ImmutableElementException(
+                CoreMessages.expressionFinalVariableCannotBeAssignedValue(name).getMessage());
         }
     }
 }
@@ -42,6 +42,11 @@ public class VariableVariableResolverFactory extends MVELExpressionLanguageConte
         this.message = message;
     }
 
+    void setMessage(MuleMessage message)
+    {
+        this.message = message;
+    }
+
     @SuppressWarnings("deprecation")
     public boolean isTarget(String name)
     {
@@ -0,0 +1,180 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.expression;
+
+import org.mule.api.MuleMessage;
+import org.mule.api.transport.PropertyScope;
+import org.mule.transport.NullPayload;
+
+/**
+ * A MEL expression that only reads the payload or a single message property, evaluated
+ * directly against the message instead of through MVEL. The supported shapes are
+ * <ul>
+ * <li><code>payload</code> and <code>message.payload</code></li>
+ * <li><code>flowVars.name</code> and <code>flowVars['name']</code></li>
+ * <li><code>sessionVars.name</code> and <code>sessionVars['name']</code></li>
+ * <li><code>message.inboundProperties.name</code> and
+ * <code>message.inboundProperties['name']</code></li>
+ * <li><code>message.outboundProperties.name</code> and
+ * <code>message.outboundProperties['name']</code></li>
+ * </ul>
+ * Results are the same MEL would return. Where MEL's behaviour depends on more than the
+ * value, such as a missing property accessed with dot notation, {@link #UNRESOLVED} is
+ * returned and the expression must be evaluated by MEL.
+ */
+public abstract class AccessorExpression
+{
+    /**
+     * Returned when the expression has to be evaluated by the expression language instead
+     */
+    public static final Object UNRESOLVED = new Object();
+
+    private static final String MESSAGE_PREFIX = "message.";
+
+    /**
+     * @param message the message to read from, never null
+     * @return the value of the expression or {@link #UNRESOLVED}
+     */
+    public abstract Object evaluate(MuleMessage message);
+
+    /**
+     * Recognises a simple accessor expression.
+     *
+     * @param expression a MEL expression without the <code>#[</code> and <code>]</code>
+     *            delimiters
+     * @return the accessor, or null if the expression has some other shape
+     */
+    public static AccessorExpression parse(String expression)
+    {
+        String trimmed = expression.trim();
+        if ("payload".equals(trimmed))
+        {
+            return new PayloadAccessor(false);
+        }
+        if ("message.payload".equals(trimmed))
+        {
+            return new PayloadAccessor(true);
+        }
+
+        AccessorExpression accessor = parseProperty(trimmed, "flowVars", PropertyScope.INVOCATION);
+        if (accessor == null)
+        {
+            accessor = parseProperty(trimmed, "sessionVars", PropertyScope.SESSION);
+        }
+        if (accessor == null && trimmed.startsWith(MESSAGE_PREFIX))
+        {
+            String property = trimmed.substring(MESSAGE_PREFIX.length());
+            accessor = parseProperty(property, "inboundProperties", PropertyScope.INBOUND);
+            if (accessor == null)
+            {
+                accessor = parseProperty(property, "outboundProperties", PropertyScope.OUTBOUND);
+            }
+        }
+        return accessor;
+    }
+
+    private static AccessorExpression parseProperty(String expression, String map, PropertyScope scope)
+    {
+        if (!expression.startsWith(map) || expression.length() == map.length())
+        {
+            return null;
+        }
+        String key = expression.substring(map.length() + 1);
+        switch (expression.charAt(map.length()))
+        {
+            case '.' :
+                return isIdentifier(key) ? new PropertyAccessor(key, scope, true) : null;
+            case '[' :
+                if (key.length() < 3 || key.charAt(key.length() - 1) != ']')
+                {
+                    return null;
+                }
+                char quote = key.charAt(0);
+                if ((quote != '\'' && quote != '"') || key.charAt(key.length() - 2) != quote)
+                {
+                    return null;
+                }
+                key = key.substring(1, key.length() - 2);
+                return isLiteral(key, quote) ? new PropertyAccessor(key, scope, false) : null;
+            default :
+                return null;
+        }
+    }
+
+    private static boolean isIdentifier(String key)
+    {
+        if (key.length() == 0 || !Character.isJavaIdentifierStart(key.charAt(0)))
+        {
+            return false;
+        }
+        for (int i = 1; i < key.length(); i++)
+        {
+            if (!Character.isJavaIdentifierPart(key.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLiteral(String key, char quote)
+    {
+        return key.indexOf(quote) < 0 && key.indexOf('\\') < 0;
+    }
+
+    private static class PayloadAccessor extends AccessorExpression
+    {
+        private final boolean nullPayloadAsNull;
+
+        PayloadAccessor(boolean nullPayloadAsNull)
+        {
+            this.nullPayloadAsNull = nullPayloadAsNull;
+        }
+
+        @Override
+        public Object evaluate(MuleMessage message)
+        {
+            Object payload = message.getPayload();
+            // message.payload hides NullPayload from MEL users, payload does not
+            if (nullPayloadAsNull && payload instanceof NullPayload)
+            {
+                return null;
+            }
+            return payload;
+        }
+    }
+
+    private static class PropertyAccessor extends AccessorExpression
+    {
+        private final String key;
+        private final PropertyScope scope;
+        private final boolean failsIfMissing;
+
+        PropertyAccessor(String key, PropertyScope scope, boolean failsIfMissing)
+        {
+            this.key = key;
+            this.scope = scope;
+            this.failsIfMissing = failsIfMissing;
+        }
+
+        @Override
+        public Object evaluate(MuleMessage message)
+        {
+            Object value = message.getProperty(key, scope);
+            // MVEL property access on a map fails for missing keys, leave that to MEL
+            if (value == null && failsIfMissing)
+            {
+                return UNRESOLVED;
+            }
+            return value;
+        }
+    }
+}
@@ -13,6 +13,7 @@ package org.mule.expression;
 import org.mule.api.MuleContext;
 import org.mule.api.MuleEvent;
 import org.mule.api.MuleMessage;
+import org.mule.api.config.MuleProperties;
 import org.mule.api.context.MuleContextAware;
 import org.mule.api.el.ExpressionLanguage;
 import org.mule.api.expression.ExpressionEnricher;
@@ -55,6 +56,24 @@ public class DefaultExpressionManager implements ExpressionManager, MuleContextA
 
     private static final String OBJECT_FOR_ENRICHMENT = "__object_for_enrichment";
 
+    /**
+     * System property to evaluate all MEL expressions through the expression language
+     */
+    public static final String DISABLE_ACCESSOR_EXPRESSIONS_PROPERTY = MuleProperties.SYSTEM_PROPERTY_PREFIX
+                                                                        + "expression.disableAccessors";
+
+    private static final int MAX_ACCESSOR_CACHE_SIZE = 1000;
+
+    // marks expressions known not to be simple accessors
+    private static final AccessorExpression NOT_AN_ACCESSOR = new AccessorExpression()
+    {
+        @Override
+        public Object evaluate(MuleMessage message)
+        {
+            return UNRESOLVED;
+        }
+    };
+
     // default style parser
     private TemplateParser parser = TemplateParser.createMuleStyleParser();
 
@@ -65,6 +84,9 @@ public class DefaultExpressionManager implements ExpressionManager, MuleContextA
 
     private ExpressionLanguage expressionLanguage;
 
+    private final boolean accessorsEnabled = !Boolean.getBoolean(DISABLE_ACCESSOR_EXPRESSIONS_PROPERTY);
+    private final ConcurrentMap<String, AccessorExpression> accessors = new ConcurrentHashMap<String, AccessorExpression>();
+
     public void setMuleContext(MuleContext context)
     {
         this.muleContext = context;
@@ -216,6 +238,11 @@ public class DefaultExpressionManager implements ExpressionManager, MuleContextA
         }
         else
         {
+            Object result = evaluateAccessor(expression, event.getMessage());
+            if (result != AccessorExpression.UNRESOLVED)
+            {
+                return result;
+            }
             return expressionLanguage.evaluate(expression, event);
         }
     }
@@ -230,10 +257,44 @@ public class DefaultExpressionManager implements ExpressionManager, MuleContextA
         }
         else
         {
+            Object result = evaluateAccessor(expression, message);
+            if (result != AccessorExpression.UNRESOLVED)
+            {
+                return result;
+            }
             return expressionLanguage.evaluate(expression, message);
         }
     }
 
+    /**
+     * Evaluates expressions that only read the payload or a message property without
+     * going through the expression language.
+     *
+     * @return the result, or {@link AccessorExpression#UNRESOLVED} if the expression must be
+     *         evaluated by the expression language
+     */
+    protected Object evaluateAccessor(String expression, MuleMessage message)
+    {
+        if (!accessorsEnabled || message == null)
+        {
+            return AccessorExpression.UNRESOLVED;
+        }
+        AccessorExpression accessor = accessors.get(expression);
+        if (accessor == null)
+        {
+            accessor = AccessorExpression.parse(expression);
+            if (accessor == null)
+            {
+                accessor = NOT_AN_ACCESSOR;
+            }
+            if (accessors.size() < MAX_ACCESSOR_CACHE_SIZE)
+            {
+                accessors.putIfAbsent(expression, accessor);
+            }
+        }
+        return accessor.evaluate(message);
+    }
+
     public void enrich(String expression, MuleMessage message, Object object)
         throws ExpressionRuntimeException
     {
@@ -15,12 +15,18 @@ import org.mule.management.stats.printers.SimplePrinter;
 import org.mule.util.StringUtils;
 
 import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * 
+ * Execution statistics of a component, or of a flow when kept by
+ * {@link FlowConstructStatistics}. Execution times are recorded without locking into
+ * counters striped by thread and into a {@link LatencyHistogram}, from which the
+ * execution time percentiles are read.
  */
 public class ComponentStatistics implements Statistics
 {
@@ -32,14 +38,14 @@ public class ComponentStatistics implements Statistics
      */
     private static final long serialVersionUID = -2086999226732861674L;
 
-    private long minExecutionTime = 0;
-    private long maxExecutionTime = 0;
-    private long averageExecutionTime = 0;
-    private long executedEvent = 0;
-    private long totalExecTime = 0;
-    private boolean enabled = false;
+    private final AtomicLong minExecutionTime = new AtomicLong();
+    private final AtomicLong maxExecutionTime = new AtomicLong();
+    private final StripedCounter executedEvent = new StripedCounter();
+    private final StripedCounter totalExecTime = new StripedCounter();
+    private final LatencyHistogram executionTimes = new LatencyHistogram();
+    private volatile boolean enabled = false;
     private long intervalTime = 0;
-    private long currentIntervalStartTime = 0;
+    private final AtomicLong currentIntervalStartTime = new AtomicLong();
     private boolean statIntervalTimeEnabled = false;
 
     /**
@@ -76,11 +82,11 @@ public class ComponentStatistics implements Statistics
 
     public void clear()
     {
-        minExecutionTime = 0;
-        maxExecutionTime = 0;
-        executedEvent = 0;
-        totalExecTime = 0;
-        averageExecutionTime = 0;
+        minExecutionTime.set(0);
+        maxExecutionTime.set(0);
+        executedEvent.reset();
+        totalExecTime.reset();
+        executionTimes.reset();
     }
 
     public boolean isEnabled()
@@ -105,17 +111,17 @@ public class ComponentStatistics implements Statistics
 
     public long getMaxExecutionTime()
     {
-        return maxExecutionTime;
+        return maxExecutionTime.get();
     }
 
     public long getMinExecutionTime()
     {
-        return minExecutionTime;
+        return minExecutionTime.get();
     }
 
     public long getTotalExecutionTime()
     {
-        return totalExecTime;
+        return totalExecTime.get();
     }
 
     /*
@@ -123,7 +129,7 @@ public class ComponentStatistics implements Statistics
      */
     public long getExecutedEvents()
     {
-        return executedEvent;
+        return executedEvent.get();
     }
 
     /**
@@ -132,47 +138,27 @@ public class ComponentStatistics implements Statistics
      * @param branch the time to execute this branch
      * @param total the total time (so far) for  processing this event
      */
-    public synchronized void addExecutionBranchTime(boolean first, long branch, long total)
+    public void addExecutionBranchTime(boolean first, long branch, long total)
     {
-        if (statIntervalTimeEnabled)
-        {
-            long currentTime = System.currentTimeMillis();
-            if (currentIntervalStartTime == 0)
-            {
-                currentIntervalStartTime = currentTime;
-            }
-
-            if ((currentTime - currentIntervalStartTime) > intervalTime)
-            {
-                clear();
-                currentIntervalStartTime = currentTime;
-            }
-        }
+        checkInterval();
 
         if (first)
         {
-            executedEvent++;
+            executedEvent.increment();
         }
 
-        totalExecTime += ProcessingTime.getEffectiveTime(branch);
-        long effectiveTotal = ProcessingTime.getEffectiveTime(total);
-        if (maxExecutionTime == 0 || effectiveTotal > maxExecutionTime)
-        {
-            maxExecutionTime = effectiveTotal;
-        }
-        averageExecutionTime = Math.round(totalExecTime / executedEvent);
+        totalExecTime.add(ProcessingTime.getEffectiveTime(branch));
+        updateMax(ProcessingTime.getEffectiveTime(total));
     }
 
     /**
      * Add the complete execution time for a flow that also reports branhc execution times
      */
-    public synchronized void addCompleteExecutionTime(long time)
+    public void addCompleteExecutionTime(long time)
     {
         long effectiveTime = ProcessingTime.getEffectiveTime(time);
-        if (minExecutionTime == 0 || effectiveTime < minExecutionTime)
-        {
-            minExecutionTime = effectiveTime;
-        }
+        updateMin(effectiveTime);
+        executionTimes.record(effectiveTime);
     }
 
     /**
@@ -180,42 +166,138 @@ public class ComponentStatistics implements Statistics
      *
      * @param time
      */
-    public synchronized void addExecutionTime(long time)
+    public void addExecutionTime(long time)
+    {
+        checkInterval();
+
+        executedEvent.increment();
+
+        long effectiveTime = ProcessingTime.getEffectiveTime(time);
+        totalExecTime.add(effectiveTime);
+        updateMin(effectiveTime);
+        updateMax(effectiveTime);
+        executionTimes.record(effectiveTime);
+    }
+
+    public long getAverageExecutionTime()
+    {
+        long executed = executedEvent.get();
+        return executed == 0 ? 0 : totalExecTime.get() / executed;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the execution time below or at which the given percentage of the
+     *         executions completed
+     */
+    public long getExecutionTimePercentile(double percentile)
+    {
+        return executionTimes.getValueAtPercentile(percentile);
+    }
+
+    public long getExecutionTimeP50()
+    {
+        return getExecutionTimePercentile(50);
+    }
+
+    public long getExecutionTimeP90()
+    {
+        return getExecutionTimePercentile(90);
+    }
+
+    public long getExecutionTimeP99()
+    {
+        return getExecutionTimePercentile(99);
+    }
+
+    public long getExecutionTimeP999()
+    {
+        return getExecutionTimePercentile(99.9);
+    }
+
+    /**
+     * @return a copy of the execution times recorded, which can be merged with others
+     */
+    public LatencyHistogram getExecutionTimeHistogram()
+    {
+        return executionTimes.copy();
+    }
+
+    private void checkInterval()
     {
         if (statIntervalTimeEnabled)
         {
             long currentTime = System.currentTimeMillis();
-            if (currentIntervalStartTime == 0)
+            long intervalStart = currentIntervalStartTime.get();
+            if (intervalStart == 0)
             {
-                currentIntervalStartTime = currentTime;
+                currentIntervalStartTime.compareAndSet(0, currentTime);
             }
-
-            if ((currentTime - currentIntervalStartTime) > intervalTime)
+            else if ((currentTime - intervalStart) > intervalTime
+                     && currentIntervalStartTime.compareAndSet(intervalStart, currentTime))
             {
                 clear();
-                currentIntervalStartTime = currentTime;
             }
         }
+    }
 
-        executedEvent++;
-
-        long effectiveTime = ProcessingTime.getEffectiveTime(time);
-        totalExecTime += effectiveTime;
-
-        if (minExecutionTime == 0 || effectiveTime < minExecutionTime)
+    private void updateMin(long time)
+    {
+        long min = minExecutionTime.get();
+        while ((min == 0 || time < min) && !minExecutionTime.compareAndSet(min, time))
         {
-            minExecutionTime = time;
+            min = minExecutionTime.get();
         }
-        if (maxExecutionTime == 0 || effectiveTime > maxExecutionTime)
+    }
+
+    private void updateMax(long time)
+    {
+        long max = maxExecutionTime.get();
+        while ((max == 0 || time > max) && !maxExecutionTime.compareAndSet(max, time))
         {
-            maxExecutionTime = time;
+            max = maxExecutionTime.get();
         }
-        averageExecutionTime = Math.round(totalExecTime / executedEvent);
     }
 
-    public long getAverageExecutionTime()
+    /**
+     * A sum spread over a few cells chosen by the updating thread. The cells are kept
+     * apart so that they do not share a cache line.
+     */
+    private static class StripedCounter implements Serializable
     {
-        return averageExecutionTime;
-    }
+        private static final long serialVersionUID = 3613291541318236512L;
+
+        private static final int STRIPES = 8;
+        private static final int SPACING = 8;
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * SPACING);
+
+        void increment()
+        {
+            add(1);
+        }
 
+        void add(long value)
+        {
+            cells.addAndGet((int) (Thread.currentThread().getId() & (STRIPES - 1)) * SPACING, value);
+        }
+
+        long get()
+        {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++)
+            {
+                sum += cells.get(i * SPACING);
+            }
+            return sum;
+        }
+
+        void reset()
+        {
+            for (int i = 0; i < STRIPES; i++)
+            {
+                cells.set(i * SPACING, 0);
+            }
+        }
+    }
 }
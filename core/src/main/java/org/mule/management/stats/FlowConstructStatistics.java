@@ -135,6 +135,44 @@ public class FlowConstructStatistics extends AbstractFlowConstructStatistics imp
         return flowStatistics.getTotalExecutionTime();
     }
 
+    /**
+     * @param percentile between 0 and 100
+     * @return the processing time below or at which the given percentage of the
+     *         events completed
+     */
+    public long getProcessingTimePercentile(double percentile)
+    {
+        return flowStatistics.getExecutionTimePercentile(percentile);
+    }
+
+    public long getProcessingTimeP50()
+    {
+        return flowStatistics.getExecutionTimeP50();
+    }
+
+    public long getProcessingTimeP90()
+    {
+        return flowStatistics.getExecutionTimeP90();
+    }
+
+    public long getProcessingTimeP99()
+    {
+        return flowStatistics.getExecutionTimeP99();
+    }
+
+    public long getProcessingTimeP999()
+    {
+        return flowStatistics.getExecutionTimeP999();
+    }
+
+    /**
+     * @return a copy of the processing times recorded, which can be merged with others
+     */
+    public LatencyHistogram getProcessingTimeHistogram()
+    {
+        return flowStatistics.getExecutionTimeHistogram();
+    }
+
     public long getExecutionErrors()
     {
         return executionError.get();
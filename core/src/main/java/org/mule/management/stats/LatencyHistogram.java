@@ -0,0 +1,211 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.management.stats;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies from which percentiles can be read. Values are counted in
+ * buckets whose width grows with the value, each power of two being split in 16, so a
+ * percentile is reported within about 6% of the recorded value whatever its magnitude,
+ * in a fixed amount of memory.
+ * <p/>
+ * Recording is lock-free. The counts are spread over a few stripes chosen by the
+ * recording thread, so that threads recording at the same time rarely update the same
+ * counters. Histograms can be merged, and reading one while it is recorded into gives
+ * a view that may miss the latest values.
+ */
+public class LatencyHistogram implements Serializable
+{
+    private static final long serialVersionUID = -2437542620184838021L;
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values from 0 to this are counted exactly
+     */
+    private static final int LINEAR_VALUES = 2 * SUB_BUCKETS;
+
+    /**
+     * Larger values are recorded as this, about 35 years in milliseconds
+     */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final Stripe[] stripes;
+
+    public LatencyHistogram()
+    {
+        this(defaultStripes());
+    }
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    public LatencyHistogram(int stripes)
+    {
+        int size = 1;
+        while (size < stripes)
+        {
+            size <<= 1;
+        }
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++)
+        {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    private static int defaultStripes()
+    {
+        return Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void record(long value)
+    {
+        long clamped = value < 0 ? 0 : Math.min(value, MAX_VALUE);
+        Stripe stripe = stripes[(int) (Thread.currentThread().getId() & (stripes.length - 1))];
+        stripe.counts.incrementAndGet(indexOf(clamped));
+        stripe.count.incrementAndGet();
+    }
+
+    /**
+     * Adds the counts of another histogram to this one.
+     */
+    public void add(LatencyHistogram other)
+    {
+        Stripe stripe = stripes[(int) (Thread.currentThread().getId() & (stripes.length - 1))];
+        long[] counts = other.getCounts();
+        long total = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            if (counts[i] != 0)
+            {
+                stripe.counts.addAndGet(i, counts[i]);
+                total += counts[i];
+            }
+        }
+        stripe.count.addAndGet(total);
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for (Stripe stripe : stripes)
+        {
+            count += stripe.count.get();
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value below or at which the given percentage of the recorded values
+     *         are, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long count : counts)
+        {
+            total += count;
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        double bounded = Math.min(100, Math.max(0, percentile));
+        long rank = Math.max(1, (long) Math.ceil(bounded / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+            {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(counts.length - 1);
+    }
+
+    public void reset()
+    {
+        for (Stripe stripe : stripes)
+        {
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                stripe.counts.set(i, 0);
+            }
+            stripe.count.set(0);
+        }
+    }
+
+    /**
+     * @return a copy of the current counts, in a single stripe
+     */
+    public LatencyHistogram copy()
+    {
+        LatencyHistogram copy = new LatencyHistogram(1);
+        copy.add(this);
+        return copy;
+    }
+
+    private long[] getCounts()
+    {
+        long[] counts = new long[BUCKETS];
+        for (Stripe stripe : stripes)
+        {
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                counts[i] += stripe.counts.get(i);
+            }
+        }
+        return counts;
+    }
+
+    static int indexOf(long value)
+    {
+        if (value < LINEAR_VALUES)
+        {
+            return (int) value;
+        }
+        // the shift that brings the value within [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_VALUES + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highestValueOf(int index)
+    {
+        if (index < LINEAR_VALUES)
+        {
+            return index;
+        }
+        int shift = (index - LINEAR_VALUES) / SUB_BUCKETS + 1;
+        long lowest = (long) (SUB_BUCKETS + (index - LINEAR_VALUES) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static class Stripe implements Serializable
+    {
+        private static final long serialVersionUID = 6089208925071640338L;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+    }
+}
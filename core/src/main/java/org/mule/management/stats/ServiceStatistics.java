@@ -170,6 +170,31 @@ public class ServiceStatistics extends FlowConstructStatistics implements QueueS
         return componentStat.getExecutedEvents();
     }
 
+    public long getExecutionTimePercentile(double percentile)
+    {
+        return componentStat.getExecutionTimePercentile(percentile);
+    }
+
+    public long getExecutionTimeP50()
+    {
+        return componentStat.getExecutionTimeP50();
+    }
+
+    public long getExecutionTimeP90()
+    {
+        return componentStat.getExecutionTimeP90();
+    }
+
+    public long getExecutionTimeP99()
+    {
+        return componentStat.getExecutionTimeP99();
+    }
+
+    public long getExecutionTimeP999()
+    {
+        return componentStat.getExecutionTimeP999();
+    }
+
     public void logSummary()
     {
         logSummary(new SimplePrinter(System.out));
@@ -30,6 +30,12 @@ import java.util.Map;
  */
 public class AbstractTablePrinter extends PrintWriter
 {
+    /**
+     * The percentiles printed, as labels and values
+     */
+    protected static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+    protected static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
     public AbstractTablePrinter(Writer out)
     {
         super(out, true);
@@ -42,7 +48,7 @@ public class AbstractTablePrinter extends PrintWriter
 
     public String[] getHeaders()
     {
-        String[] column = new String[41];
+        String[] column = new String[41 + 2 * PERCENTILES.length];
         column[0] = "Name";
         column[1] = "Service Pool Max Size";
         column[2] = "Service Pool Size";
@@ -84,9 +90,26 @@ public class AbstractTablePrinter extends PrintWriter
         column[38] = "By Provider";
         column[39] = "";
         column[40] = "Sample Period";
+        addPercentileHeaders(column);
         return column;
     }
 
+    /**
+     * Names the last columns after the processing and execution time percentiles.
+     */
+    protected void addPercentileHeaders(String[] column)
+    {
+        int index = column.length - 2 * PERCENTILES.length;
+        for (String label : PERCENTILE_LABELS)
+        {
+            column[index++] = "Processing Time " + label;
+        }
+        for (String label : PERCENTILE_LABELS)
+        {
+            column[index++] = "Execution Time " + label;
+        }
+    }
+
     protected void getColumn(FlowConstructStatistics stats, String[] col)
     {
         if (stats == null)
@@ -156,6 +179,19 @@ public class AbstractTablePrinter extends PrintWriter
         }
 
         col[40] = String.valueOf(stats.getSamplePeriod());
+
+        int index = col.length - 2 * PERCENTILES.length;
+        for (double percentile : PERCENTILES)
+        {
+            col[index++] = String.valueOf(stats.getProcessingTimePercentile(percentile));
+        }
+        if (serviceStats != null)
+        {
+            for (double percentile : PERCENTILES)
+            {
+                col[index++] = String.valueOf(serviceStats.getExecutionTimePercentile(percentile));
+            }
+        }
     }
 
     protected int getRouterInfo(RouterStatistics stats, String[] col, int index)
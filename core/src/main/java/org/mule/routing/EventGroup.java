@@ -29,9 +29,9 @@ import org.mule.util.store.DeserializationPostInitialisable;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -40,6 +40,12 @@ import org.apache.commons.collections.IteratorUtils;
 /**
  * <code>EventGroup</code> is a holder over events grouped by a common group Id. This
  * can be used by components such as routers to managed related events.
+ * <p/>
+ * Every event is stored on its own in the group's event store as it arrives, so adding
+ * an event never writes the events collected before it. The group keeps the keys of its
+ * events in arrival order; when a group is read back from a persistent store the keys
+ * are reloaded from the event store the first time they are needed, and the events
+ * themselves are only read when the group is turned into an array or a collection.
  */
 // @ThreadSafe
 public class EventGroup implements Comparable<EventGroup>, Serializable, DeserializationPostInitialisable
@@ -57,6 +63,8 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
 
     private final Object groupId;
     transient ListableObjectStore<MuleEvent> events;
+    // keys of the stored events in arrival order, reloaded lazily after deserialization
+    transient private List<Serializable> eventKeys;
     private final long created;
     private final int expectedSize;
     transient private MuleContext muleContext;
@@ -198,7 +206,7 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
     {
         synchronized (events)
         {
-            if (events.allKeys().isEmpty())
+            if (getEventKeys().isEmpty())
             {
                 return IteratorUtils.emptyIterator();
             }
@@ -223,6 +231,7 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
 
     /**
      * Returns a snapshot of collected events in this group, optionally sorted by their arrival time.
+     * Unsorted events are returned in the order their store lists them.
      *
      * @return an array of collected {@link MuleEvent}s.
      * @throws ObjectStoreException
@@ -231,20 +240,17 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
     {
         synchronized (events)
         {
-            if (events.allKeys().isEmpty())
+            // the keys of this group are kept in arrival order already
+            List<Serializable> keys = sortByArrival ? getEventKeys() : events.allKeys();
+            if (keys.isEmpty())
             {
                 return EMPTY_EVENTS_ARRAY;
             }
-            List<Serializable> keys = events.allKeys();
             MuleEvent[] eventArray = new MuleEvent[keys.size()];
             for (int i = 0; i < keys.size(); i++)
             {
                 eventArray[i] = events.retrieve(keys.get(i));
             }
-            if (sortByArrival)
-            {
-                Arrays.sort(eventArray, new ArrivalOrderEventComparator());
-            }
             return eventArray;
         }
     }
@@ -259,11 +265,11 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
     {
         synchronized (events)
         {
-            //Using both event ID and CorrelationSequence since in certain instances
-            //when an event is split up, the same event IDs are used.
-            Serializable key=event.getId()+event.getMessage().getCorrelationSequence();
+            List<Serializable> keys = getEventKeys();
+            Serializable key = keyOf(event);
             event.getMessage().setInvocationProperty(MULE_ARRIVAL_ORDER_PROPERTY, ++arrivalOrderCounter);
             events.store(key, event);
+            keys.add(key);
 
             if (!hasNoCommonRootId)
             {
@@ -292,10 +298,70 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
     {
         synchronized (events)
         {
+            List<Serializable> keys = getEventKeys();
             events.remove(event.getId());
+            keys.remove(event.getId());
+        }
+    }
+
+    /**
+     * Loads the keys of the stored events in arrival order if this group has not done it
+     * yet, which is the case after it has been deserialized.
+     */
+    private List<Serializable> getEventKeys() throws ObjectStoreException
+    {
+        if (eventKeys == null)
+        {
+            List<Serializable> keys = events.allKeys();
+            List<MuleEvent> stored = new ArrayList<MuleEvent>(keys.size());
+            for (Serializable key : keys)
+            {
+                stored.add(events.retrieve(key));
+            }
+            Collections.sort(stored, new ArrivalOrderEventComparator());
+
+            List<Serializable> sortedKeys = new ArrayList<Serializable>(stored.size());
+            for (MuleEvent event : stored)
+            {
+                sortedKeys.add(keyOf(event));
+                int arrivalOrder = event.getMessage().getInvocationProperty(MULE_ARRIVAL_ORDER_PROPERTY, -1);
+                arrivalOrderCounter = Math.max(arrivalOrderCounter, arrivalOrder);
+            }
+            eventKeys = sortedKeys;
+        }
+        return eventKeys;
+    }
+
+    /**
+     * Makes this group reload the keys of its events if they no longer match the ones
+     * in the events store, which happens when the store is shared with other nodes that
+     * add or remove events of this group.
+     *
+     * @throws ObjectStoreException
+     */
+    public void refreshEvents() throws ObjectStoreException
+    {
+        synchronized (events)
+        {
+            if (eventKeys != null)
+            {
+                List<Serializable> storedKeys = events.allKeys();
+                if (storedKeys.size() != eventKeys.size()
+                    || !new HashSet<Serializable>(storedKeys).containsAll(eventKeys))
+                {
+                    eventKeys = null;
+                }
+            }
         }
     }
 
+    private Serializable keyOf(MuleEvent event)
+    {
+        //Using both event ID and CorrelationSequence since in certain instances
+        //when an event is split up, the same event IDs are used.
+        return event.getId() + event.getMessage().getCorrelationSequence();
+    }
+
     /**
      * Return the creation timestamp of the current group in nanoseconds.
      *
@@ -317,7 +383,7 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
         {
             try
             {
-                return events.allKeys().size();
+                return getEventKeys().size();
             }
             catch (ObjectStoreException e)
             {
@@ -345,7 +411,11 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
      */
     public void clear() throws ObjectStoreException
     {
-        getObjectStoreManager().disposeStore(events);
+        synchronized (events)
+        {
+            getObjectStoreManager().disposeStore(events);
+            eventKeys = new ArrayList<Serializable>();
+        }
     }
 
     @Override
@@ -361,16 +431,15 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
         {
             synchronized (events)
             {
-                int currentSize;
-
-                currentSize = events.allKeys().size();
+                List<Serializable> keys = getEventKeys();
+                int currentSize = keys.size();
 
                 buf.append(", current events=").append(currentSize);
 
                 if (currentSize > 0)
                 {
                     buf.append(" [");
-                    Iterator<Serializable> i = events.allKeys().iterator();
+                    Iterator<Serializable> i = keys.iterator();
                     while (i.hasNext())
                     {
                         Serializable id = i.next();
@@ -401,21 +470,16 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
 
     public MuleMessageCollection toMessageCollection(boolean sortByArrival) throws ObjectStoreException
     {
-        DefaultMessageCollection col = new DefaultMessageCollection(muleContext);
-        List<MuleMessage> messages = new ArrayList<MuleMessage>();
-
-        synchronized (events)
-        {
-            for (Serializable id : events.allKeys())
-            {
-                MuleMessage message = events.retrieve(id).getMessage();
-                messages.add(message);
-            }
-        }
+        return toMessageCollection(toArray(sortByArrival));
+    }
 
-        if (sortByArrival)
+    private MuleMessageCollection toMessageCollection(MuleEvent[] eventArray)
+    {
+        DefaultMessageCollection col = new DefaultMessageCollection(muleContext);
+        List<MuleMessage> messages = new ArrayList<MuleMessage>(eventArray.length);
+        for (MuleEvent event : eventArray)
         {
-            Collections.sort(messages, new ArrivalOrderMessageComparator());
+            messages.add(event.getMessage());
         }
         col.addMessages(messages);
         return col;
@@ -430,11 +494,13 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
     {
         try
         {
-            if (size() > 0)
+            // read the events once for the collection and the merged session
+            MuleEvent[] eventArray = toArray();
+            if (eventArray.length > 0)
             {
 
-                DefaultMuleEvent muleEvent = new DefaultMuleEvent(toMessageCollection(),
-                    events.retrieve(events.allKeys().get(0)), getMergedSession());
+                DefaultMuleEvent muleEvent = new DefaultMuleEvent(toMessageCollection(eventArray),
+                    eventArray[0], getMergedSession(eventArray));
                 if (getCommonRootId() != null)
                 {
                     muleEvent.getMessage().setMessageRootId(commonRootId);
@@ -455,11 +521,14 @@ public class EventGroup implements Comparable<EventGroup>, Serializable, Deseria
 
     protected MuleSession getMergedSession() throws ObjectStoreException
     {
-        MuleSession session = new DefaultMuleSession(
-            events.retrieve(events.allKeys().get(0)).getSession());
-        for (Serializable key : events.allKeys())
+        return getMergedSession(toArray());
+    }
+
+    private MuleSession getMergedSession(MuleEvent[] eventArray)
+    {
+        MuleSession session = new DefaultMuleSession(eventArray[0].getSession());
+        for (MuleEvent event : eventArray)
         {
-            MuleEvent event = events.retrieve(key);
             for (String name : event.getSession().getPropertyNamesAsSet())
             {
                 session.setProperty(name, event.getSession().getProperty(name));
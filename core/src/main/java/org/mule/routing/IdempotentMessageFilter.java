@@ -25,8 +25,12 @@ import org.mule.config.i18n.CoreMessages;
 import org.mule.processor.AbstractFilteringMessageProcessor;
 import org.mule.util.concurrent.ThreadNameHelper;
 import org.mule.util.store.InMemoryObjectStore;
+import org.mule.util.store.ScalableBloomFilter;
 
+import java.io.Serializable;
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * <code>IdempotentMessageFilter</code> ensures that only unique messages are passed
@@ -37,9 +41,25 @@ import java.text.MessageFormat;
  * <b>EIP Reference:</b> <a
  * href="http://www.eaipatterns.com/IdempotentReceiver.html">
  * http://www.eaipatterns.com/IdempotentReceiver.html</a>
+ * <p>
+ * When <code>usePreFilter</code> is set, the ids seen are also kept in a
+ * {@link ScalableBloomFilter}, which tells most new messages apart without looking them
+ * up in the store. A new message is then only written to the store, which rejects it if
+ * its id is there already, so the store must honour the {@link ObjectStore} contract of
+ * not replacing existing entries. The filter is filled from the store's keys when it is
+ * a {@link ListableObjectStore}.
  */
 public class IdempotentMessageFilter extends AbstractFilteringMessageProcessor implements FlowConstructAware, Initialisable
 {
+    private static final int ID_LOCKS = 64;
+
+    /**
+     * The pre-filter is rebuilt once it holds this many times its initial capacity, or
+     * twice the ids it was filled with if more, so that the ids expired from the store
+     * do not make it grow forever
+     */
+    private static final int PRE_FILTER_REBUILD_FACTOR = 8;
+
     protected volatile ObjectStore<String> store;
     protected FlowConstruct flowConstruct;
     protected String storePrefix;
@@ -50,9 +70,25 @@ public class IdempotentMessageFilter extends AbstractFilteringMessageProcessor i
     protected String valueExpression = MessageFormat.format("{0}message:id{1}",
         ExpressionManager.DEFAULT_EXPRESSION_PREFIX, ExpressionManager.DEFAULT_EXPRESSION_POSTFIX);
 
+    protected boolean usePreFilter = false;
+    protected int preFilterCapacity = 10000;
+    protected double preFilterFalsePositiveRate = 0.01;
+    private volatile ScalableBloomFilter preFilter;
+    private volatile int preFilterRebuildSize;
+
+    /**
+     * Serialises the lookup and store of the ids that hash to each lock
+     */
+    private final Object[] idLocks;
+
     public IdempotentMessageFilter()
     {
         super();
+        idLocks = new Object[ID_LOCKS];
+        for (int i = 0; i < ID_LOCKS; i++)
+        {
+            idLocks[i] = new Object();
+        }
     }
 
     @Override
@@ -67,6 +103,47 @@ public class IdempotentMessageFilter extends AbstractFilteringMessageProcessor i
         {
             this.store = createMessageIdStore();
         }
+        if (usePreFilter && preFilter == null)
+        {
+            try
+            {
+                installPreFilter(createPreFilter());
+            }
+            catch (ObjectStoreException e)
+            {
+                throw new InitialisationException(e, this);
+            }
+        }
+    }
+
+    /**
+     * @return a pre-filter holding the ids already in the store, if it can list them
+     */
+    protected ScalableBloomFilter createPreFilter() throws ObjectStoreException
+    {
+        List<Serializable> keys = Collections.emptyList();
+        if (store instanceof ListableObjectStore)
+        {
+            keys = ((ListableObjectStore<?>) store).allKeys();
+        }
+        // sized for as many new ids as there are ids in the store
+        ScalableBloomFilter filter = new ScalableBloomFilter(Math.max(preFilterCapacity, keys.size() * 2),
+            preFilterFalsePositiveRate);
+        for (Serializable key : keys)
+        {
+            filter.add(key.toString());
+        }
+        return filter;
+    }
+
+    /**
+     * Uses the filter from now on. It is rebuilt once it holds at least as many new ids
+     * as it was filled with, so that rebuilding it costs at most one key per id added.
+     */
+    private void installPreFilter(ScalableBloomFilter filter)
+    {
+        preFilterRebuildSize = Math.max(preFilterCapacity * PRE_FILTER_REBUILD_FACTOR, filter.size() * 2);
+        preFilter = filter;
     }
 
     protected ObjectStore<String> createMessageIdStore() throws InitialisationException
@@ -115,11 +192,39 @@ public class IdempotentMessageFilter extends AbstractFilteringMessageProcessor i
     @Override
     protected boolean accept(MuleEvent event)
     {
-        if(event != null && acceptMessageForFlowConstruct(event) && isNewMessage(event))
+        if (event == null || !acceptMessageForFlowConstruct(event))
         {
+            return false;
+        }
+
+        String id;
+        try
+        {
+            id = getIdForEvent(event);
+        }
+        catch (MessagingException e)
+        {
+            logger.warn("Could not retrieve Id or Value for event: " + e.getMessage());
+            return false;
+        }
+
+        synchronized (getIdLock(id))
+        {
+            try
+            {
+                if (!isNewId(id))
+                {
+                    return false;
+                }
+            }
+            catch (MuleException e)
+            {
+                logNewMessageCheckFailure(event, e);
+                return false;
+            }
+
             try
             {
-                String id = getIdForEvent(event);
                 String value = getValueForEvent(event);
                 try
                 {
@@ -140,6 +245,10 @@ public class IdempotentMessageFilter extends AbstractFilteringMessageProcessor i
                     logger.warn("ObjectStore exception: " + e.getMessage());
                     return false;
                 }
+                finally
+                {
+                    addToPreFilter(id);
+                }
             }
             catch (MessagingException e)
             {
@@ -147,10 +256,6 @@ public class IdempotentMessageFilter extends AbstractFilteringMessageProcessor i
                 return false;
             }
         }
-        else
-        {
-            return false;
-        }
     }
 
     protected boolean acceptMessageForFlowConstruct(MuleEvent event)
@@ -173,25 +278,79 @@ public class IdempotentMessageFilter extends AbstractFilteringMessageProcessor i
     {
         try
         {
-            String id = this.getIdForEvent(event);
-            if (store == null)
-            {
-                synchronized (this)
-                {
-                    initialise();
-                }
-            }
-            return !store.contains(id);
+            return isNewId(this.getIdForEvent(event));
         }
         catch (MuleException e)
         {
-            logger.error("Exception attempting to determine idempotency of incoming message for "
-                         + event.getFlowConstruct().getName() + " from the endpoint "
-                         + event.getMessageSourceURI(), e);
+            logNewMessageCheckFailure(event, e);
             return false;
         }
     }
 
+    private boolean isNewId(String id) throws MuleException
+    {
+        if (store == null || (usePreFilter && preFilter == null))
+        {
+            synchronized (this)
+            {
+                initialise();
+            }
+        }
+        ScalableBloomFilter filter = preFilter;
+        if (filter != null && !filter.mightContain(id))
+        {
+            // never seen here, a duplicate stored by someone else is still rejected
+            // by the store
+            return true;
+        }
+        return !store.contains(id);
+    }
+
+    private void addToPreFilter(String id)
+    {
+        ScalableBloomFilter filter = preFilter;
+        if (filter == null)
+        {
+            return;
+        }
+        filter.add(id);
+        if (filter.size() >= preFilterRebuildSize)
+        {
+            synchronized (this)
+            {
+                if (preFilter != filter)
+                {
+                    return;
+                }
+                try
+                {
+                    // ids missed meanwhile only cost a store lookup
+                    installPreFilter(createPreFilter());
+                }
+                catch (ObjectStoreException e)
+                {
+                    logger.warn("Could not rebuild the pre-filter, starting an empty one: " + e.getMessage());
+                    installPreFilter(new ScalableBloomFilter(preFilterCapacity, preFilterFalsePositiveRate));
+                }
+            }
+        }
+    }
+
+    private Object getIdLock(String id)
+    {
+        int h = id.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return idLocks[h & (idLocks.length - 1)];
+    }
+
+    private void logNewMessageCheckFailure(MuleEvent event, MuleException e)
+    {
+        logger.error("Exception attempting to determine idempotency of incoming message for "
+                     + event.getFlowConstruct().getName() + " from the endpoint "
+                     + event.getMessageSourceURI(), e);
+    }
+
     @Override
     public void setFlowConstruct(FlowConstruct flowConstruct)
     {
@@ -212,4 +371,34 @@ public class IdempotentMessageFilter extends AbstractFilteringMessageProcessor i
     {
         this.storePrefix = storePrefix;
     }
+
+    public boolean isUsePreFilter()
+    {
+        return usePreFilter;
+    }
+
+    public void setUsePreFilter(boolean usePreFilter)
+    {
+        this.usePreFilter = usePreFilter;
+    }
+
+    public int getPreFilterCapacity()
+    {
+        return preFilterCapacity;
+    }
+
+    public void setPreFilterCapacity(int preFilterCapacity)
+    {
+        this.preFilterCapacity = preFilterCapacity;
+    }
+
+    public double getPreFilterFalsePositiveRate()
+    {
+        return preFilterFalsePositiveRate;
+    }
+
+    public void setPreFilterFalsePositiveRate(double preFilterFalsePositiveRate)
+    {
+        this.preFilterFalsePositiveRate = preFilterFalsePositiveRate;
+    }
 }
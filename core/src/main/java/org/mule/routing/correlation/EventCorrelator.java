@@ -35,6 +35,7 @@ import org.mule.api.store.ObjectStoreManager;
 import org.mule.config.i18n.CoreMessages;
 import org.mule.context.notification.RoutingNotification;
 import org.mule.execution.ErrorHandlingExecutionTemplate;
+import org.mule.lifecycle.PrimaryNodeLifecycleNotificationListener;
 import org.mule.routing.EventGroup;
 import org.mule.routing.EventProcessingThread;
 import org.mule.util.StringMessageUtils;
@@ -42,16 +43,27 @@ import org.mule.util.concurrent.ThreadNameHelper;
 import org.mule.util.monitor.Expirable;
 import org.mule.util.monitor.ExpiryMonitor;
 import org.mule.util.store.DeserializationPostInitialisable;
+import org.mule.util.timer.HashedTimerWheel;
 
 import java.io.Serializable;
 import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * Correlates events into {@link EventGroup}s and aggregates them as instructed by an
+ * {@link EventCorrelatorCallback}.
+ * <p/>
+ * Groups are guarded by a fixed set of striped locks chosen by group id, so events of
+ * different groups are correlated concurrently while the events of a group, its
+ * aggregation and its expiry are still handled one at a time. Group timeouts are kept in a
+ * {@link HashedTimerWheel}, so the monitoring thread only looks at the groups that are
+ * due instead of scanning the whole group store on every run.
+ */
 public class EventCorrelator implements Startable, Stoppable, Disposable
 {
     /**
@@ -67,6 +79,10 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
 
     private static final long ONE_DAY_IN_MILLI = 1000 * 60 * 60 * 24;
 
+    private static final int GROUP_LOCK_STRIPES = 64;
+
+    private static final int TIMER_WHEEL_SIZE = 1024;
+
     protected long groupTimeToLive = ONE_DAY_IN_MILLI;
 
     /**
@@ -76,11 +92,29 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
      */
     protected ListableObjectStore<EventGroup> eventGroups;
 
-    protected final Object groupsLock = new Object();
+    /**
+     * The groups read from a persistent group store, kept so that a group is deserialized
+     * and its event keys loaded once instead of for every event it receives. As the store
+     * may be shared, a cached group is only used while it is still stored, and its events
+     * are checked against the store on every use.
+     */
+    private final ConcurrentMap<Serializable, EventGroup> activeGroups = new ConcurrentHashMap<Serializable, EventGroup>();
 
-    // @GuardedBy groupsLock
+    /**
+     * Locks guarding the groups, a group being guarded by the lock returned by
+     * {@link #getGroupLock(Object)} for its id
+     */
+    private final Object[] groupLocks;
+
+    // @GuardedBy the group lock of each id
     protected ObjectStore<Long> processedGroups = null;
 
+    /**
+     * The timeouts of the current groups, keyed by group id
+     */
+    private final HashedTimerWheel<Serializable> groupTimeouts;
+    private final ConcurrentMap<Serializable, HashedTimerWheel.Timeout<Serializable>> scheduledTimeouts = new ConcurrentHashMap<Serializable, HashedTimerWheel.Timeout<Serializable>>();
+
     private long timeout = -1; // undefined
 
     private boolean failOnTimeout = true;
@@ -99,6 +133,13 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
     private ListableObjectStore<Long> expiredAndDispatchedGroups = null;
 
     private EventCorrelator.ExpiringGroupMonitoringThread expiringGroupMonitoringThread;
+    private PrimaryNodeLifecycleNotificationListener primaryNodeLifecycleNotificationListener;
+
+    /**
+     * Set when this node takes over from another one, so that the monitoring thread
+     * schedules the groups the other node left in the shared store
+     */
+    private volatile boolean storeScanRequired = false;
     private final String name;
 
     private final boolean persistentStores;
@@ -131,6 +172,13 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
         this.timeoutMessageProcessor = timeoutMessageProcessor;
         this.persistentStores = persistentStores;
         this.storePrefix = storePrefix;
+        groupLocks = new Object[GROUP_LOCK_STRIPES];
+        for (int i = 0; i < groupLocks.length; i++)
+        {
+            groupLocks[i] = new Object();
+        }
+        groupTimeouts = new HashedTimerWheel<Serializable>(ExpiringGroupMonitoringThread.DELAY_TIME,
+            TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE);
         name = String.format("%s%s.event.correlator", ThreadNameHelper.getPrefix(muleContext),
             flowConstructName);
         ObjectStoreManager objectStoreManager = muleContext.getRegistry().get(
@@ -147,15 +195,16 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
 
     public void forceGroupExpiry(String groupId) throws MessagingException
     {
+        EventGroup group;
         try
         {
-            if (eventGroups.retrieve(groupId) != null)
+            synchronized (getGroupLock(groupId))
             {
-                handleGroupExpiry(getEventGroup(groupId));
-            }
-            else
-            {
-                addProcessedGroup(groupId);
+                group = getEventGroup(groupId);
+                if (group == null)
+                {
+                    addProcessedGroup(groupId);
+                }
             }
         }
         catch (ObjectStoreException e)
@@ -163,6 +212,11 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
             // TODO improve this
             throw new MessagingException(null, e);
         }
+        // expired outside of the group lock, as expiry may process the group in the flow
+        if (group != null)
+        {
+            handleGroupExpiry(group);
+        }
     }
 
     public MuleEvent process(MuleEvent event) throws RoutingException
@@ -189,25 +243,10 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
             throw new RoutingException(CoreMessages.noCorrelationId(), event, timeoutMessageProcessor);
         }
 
-        // indicates interleaved EventGroup removal (very rare)
-        boolean lookupMiss = false;
-
-        // spinloop for the EventGroup lookup
-        while (true)
+        // ensure that only one thread at a time evaluates this EventGroup
+        synchronized (getGroupLock(groupId))
         {
-            if (lookupMiss)
-            {
-                try
-                {
-                    // recommended over Thread.yield()
-                    Thread.sleep(1);
-                }
-                catch (InterruptedException interrupted)
-                {
-                    Thread.currentThread().interrupt();
-                }
-            }
-
+            EventGroup group;
             try
             {
                 if (isGroupAlreadyProcessed(groupId))
@@ -224,95 +263,92 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
                         RoutingNotification.MISSED_AGGREGATION_GROUP_EVENT));
                     return null;
                 }
-            }
-            catch (ObjectStoreException e)
-            {
-                throw new RoutingException(event, timeoutMessageProcessor, e);
-            }
 
-            // check for an existing group first
-            EventGroup group;
-            try
-            {
+                // check for an existing group first
                 group = this.getEventGroup(groupId);
-            }
-            catch (ObjectStoreException e)
-            {
-                throw new RoutingException(event, timeoutMessageProcessor, e);
-            }
 
-            // does the group exist?
-            if (group == null)
-            {
-                // ..apparently not, so create a new one & add it
-                try
+                // does the group exist?
+                if (group == null)
                 {
+                    // ..apparently not, so create a new one & add it
                     group = this.addEventGroup(callback.createEventGroup(event, groupId));
                 }
-                catch (ObjectStoreException e)
+
+                if (logger.isDebugEnabled())
                 {
-                    throw new RoutingException(event, timeoutMessageProcessor, e);
+                    logger.debug("Adding event to aggregator group: " + groupId);
                 }
+
+                // add the incoming event to the group
+                group.addEvent(event);
+            }
+            catch (ObjectStoreException e)
+            {
+                throw new RoutingException(event, timeoutMessageProcessor, e);
             }
 
-            // ensure that only one thread at a time evaluates this EventGroup
-            synchronized (groupsLock)
+            // check to see if the event group is ready to be aggregated
+            if (callback.shouldAggregateEvents(group))
             {
-                if (logger.isDebugEnabled())
+                // create the response event
+                MuleEvent returnEvent = callback.aggregateEvents(group);
+                returnEvent.getMessage().setCorrelationId(groupId);
+                String rootId = group.getCommonRootId();
+                if (rootId != null)
                 {
-                    logger.debug("Adding event to aggregator group: " + groupId);
+                    returnEvent.getMessage().setMessageRootId(rootId);
                 }
 
-                // add the incoming event to the group
+                // remove the eventGroup as no further message will be received
+                // for this group once we aggregate
                 try
                 {
-                    group.addEvent(event);
+                    this.removeEventGroup(group);
+                    group.clear();
                 }
                 catch (ObjectStoreException e)
                 {
                     throw new RoutingException(event, timeoutMessageProcessor, e);
                 }
 
-                // check to see if the event group is ready to be aggregated
-                if (callback.shouldAggregateEvents(group))
-                {
-                    // create the response event
-                    MuleEvent returnEvent = callback.aggregateEvents(group);
-                    returnEvent.getMessage().setCorrelationId(groupId);
-                    String rootId = group.getCommonRootId();
-                    if (rootId != null)
-                    {
-                        returnEvent.getMessage().setMessageRootId(rootId);
-                    }
-
-                    // remove the eventGroup as no further message will be received
-                    // for this group once we aggregate
-                    try
-                    {
-                        this.removeEventGroup(group);
-                        group.clear();
-                    }
-                    catch (ObjectStoreException e)
-                    {
-                        throw new RoutingException(event, timeoutMessageProcessor, e);
-                    }
-
-                    return returnEvent;
-                }
-                else
-                {
-                    return null;
-                }
+                return returnEvent;
+            }
+            else
+            {
+                return null;
             }
         }
     }
 
+    /**
+     * @return the lock guarding the group with the given id
+     */
+    protected Object getGroupLock(Object groupId)
+    {
+        int h = groupId.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return groupLocks[h & (groupLocks.length - 1)];
+    }
+
     protected EventGroup getEventGroup(Serializable groupId) throws ObjectStoreException
     {
+        EventGroup activeGroup = activeGroups.get(groupId);
+        if (activeGroup != null)
+        {
+            if (eventGroups.contains(groupId))
+            {
+                activeGroup.refreshEvents();
+                return activeGroup;
+            }
+            // another node has completed or expired the group
+            activeGroups.remove(groupId, activeGroup);
+            return null;
+        }
         try
         {
             EventGroup eventGroup = eventGroups.retrieve(groupId);
-            if (! eventGroup.isInitialised())
+            if (eventGroup != null && !eventGroup.isInitialised())
             {
                 try
                 {
@@ -323,6 +359,10 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
                     throw new ObjectStoreException(e);
                 }
             }
+            if (persistentStores && eventGroup != null)
+            {
+                activeGroups.put(groupId, eventGroup);
+            }
             return eventGroup;
         }
         catch (ObjectDoesNotExistException e)
@@ -336,6 +376,11 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
         try
         {
             eventGroups.store((Serializable) group.getGroupId(), group);
+            if (persistentStores)
+            {
+                activeGroups.put((Serializable) group.getGroupId(), group);
+            }
+            scheduleGroupExpiry(group);
             return group;
         }
         catch (ObjectAlreadyExistsException e)
@@ -348,12 +393,18 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
     {
         final Object groupId = group.getGroupId();
         eventGroups.remove((Serializable) groupId);
+        activeGroups.remove(groupId);
+        HashedTimerWheel.Timeout<Serializable> timeout = scheduledTimeouts.remove(groupId);
+        if (timeout != null)
+        {
+            timeout.cancel();
+        }
         addProcessedGroup(groupId);
     }
 
     protected void addProcessedGroup(Object id) throws ObjectStoreException
     {
-        synchronized (groupsLock)
+        synchronized (getGroupLock(id))
         {
             processedGroups.store((Serializable) id, System.nanoTime());
         }
@@ -361,12 +412,36 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
 
     protected boolean isGroupAlreadyProcessed(Object id) throws ObjectStoreException
     {
-        synchronized (groupsLock)
+        synchronized (getGroupLock(id))
         {
             return processedGroups.contains((Serializable) id);
         }
     }
 
+    /**
+     * Schedules the expiry of a group for when its timeout elapses, if the correlator has
+     * a timeout.
+     */
+    protected void scheduleGroupExpiry(EventGroup group)
+    {
+        if (timeout == 0)
+        {
+            return;
+        }
+        Serializable groupId = (Serializable) group.getGroupId();
+        HashedTimerWheel.Timeout<Serializable> previous = scheduledTimeouts.put(groupId,
+            groupTimeouts.scheduleAt(groupId, expiryTimeOf(group)));
+        if (previous != null)
+        {
+            previous.cancel();
+        }
+    }
+
+    private long expiryTimeOf(EventGroup group)
+    {
+        return group.getCreated() + getTimeout() * MILLI_TO_NANO_MULTIPLIER;
+    }
+
     public boolean isFailOnTimeout()
     {
         return failOnTimeout;
@@ -387,11 +462,24 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
         this.timeout = timeout;
     }
 
+    /**
+     * Expires a group, unless it was aggregated or expired meanwhile. The group is removed
+     * under its lock, and then dispatched or reported as timed out without holding the lock,
+     * so that processing it does not block the other groups guarded by the same lock.
+     */
     protected void handleGroupExpiry(EventGroup group) throws MessagingException
     {
+        Serializable groupId = (Serializable) group.getGroupId();
         try
         {
-            removeEventGroup(group);
+            synchronized (getGroupLock(groupId))
+            {
+                if (isGroupAlreadyProcessed(groupId))
+                {
+                    return;
+                }
+                removeEventGroup(group);
+            }
         }
         catch (ObjectStoreException e)
         {
@@ -487,8 +575,51 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
         logger.info("Starting event correlator: " + name);
         if (timeout != 0)
         {
+            // groups may have been restored by a persistent store or created before the
+            // timeout was set
+            scheduleStoredGroups();
             expiringGroupMonitoringThread = new ExpiringGroupMonitoringThread();
             expiringGroupMonitoringThread.start();
+            primaryNodeLifecycleNotificationListener = new PrimaryNodeLifecycleNotificationListener(new Startable()
+            {
+                @Override
+                public void start() throws MuleException
+                {
+                    storeScanRequired = true;
+                }
+            }, muleContext);
+            primaryNodeLifecycleNotificationListener.register();
+        }
+    }
+
+    /**
+     * Schedules the expiry of the groups in the store that are not scheduled yet: the ones
+     * restored by a persistent store on restart, and the ones left in a shared store by
+     * another node on failover. This lists the whole store, so it is not done otherwise.
+     */
+    protected void scheduleStoredGroups()
+    {
+        try
+        {
+            for (Serializable groupId : eventGroups.allKeys())
+            {
+                if (scheduledTimeouts.containsKey(groupId))
+                {
+                    continue;
+                }
+                synchronized (getGroupLock(groupId))
+                {
+                    EventGroup group = getEventGroup(groupId);
+                    if (group != null && !scheduledTimeouts.containsKey(groupId))
+                    {
+                        scheduleGroupExpiry(group);
+                    }
+                }
+            }
+        }
+        catch (ObjectStoreException e)
+        {
+            logger.warn("Could not schedule the expiry of existing groups due to ObjectStoreException " + e);
         }
     }
 
@@ -496,6 +627,11 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
     public void stop() throws MuleException
     {
         logger.info("Stopping event correlator: " + name);
+        if (primaryNodeLifecycleNotificationListener != null)
+        {
+            primaryNodeLifecycleNotificationListener.unregister();
+            primaryNodeLifecycleNotificationListener = null;
+        }
         if (expiringGroupMonitoringThread != null)
         {
             expiringGroupMonitoringThread.stopProcessing();
@@ -545,55 +681,73 @@ public class EventCorrelator implements Startable, Stoppable, Disposable
         @Override
         public void doRun()
         {
-            List<EventGroup> expired = new ArrayList<EventGroup>(1);
-            try
-            {
-                for (Serializable o : eventGroups.allKeys())
-                {
-                    EventGroup group = getEventGroup(o) ;
-                    if ((group.getCreated() + getTimeout() * MILLI_TO_NANO_MULTIPLIER) < System.nanoTime())
-                    {
-                        expired.add(group);
-                    }
-                }
-            }
-            catch (ObjectStoreException e)
+            if (storeScanRequired)
             {
-                logger.warn("expiry failed dues to ObjectStoreException " + e);
+                storeScanRequired = false;
+                scheduleStoredGroups();
             }
-            if (expired.size() > 0)
+            for (Serializable groupId : groupTimeouts.expire())
             {
-                for (Object anExpired : expired)
+                final EventGroup group;
+                synchronized (getGroupLock(groupId))
                 {
-                    final EventGroup group = (EventGroup) anExpired;
-                    ExecutionTemplate<MuleEvent> executionTemplate = ErrorHandlingExecutionTemplate.createErrorHandlingExecutionTemplate(muleContext, group.getMessageCollectionEvent().getFlowConstruct().getExceptionListener());
                     try
                     {
-                        executionTemplate.execute(new ExecutionCallback<MuleEvent>()
-                        {
-                            @Override
-                            public MuleEvent process() throws Exception
-                            {
-                                handleGroupExpiry(group);
-                                return null;
-                            }
-                        });
+                        group = getEventGroup(groupId);
                     }
-                    catch (MessagingException e)
+                    catch (ObjectStoreException e)
                     {
-                        //Already handled by TransactionTemplate
+                        logger.warn("expiry failed dues to ObjectStoreException " + e);
+                        continue;
                     }
-                    catch (Exception e)
+                    // the group may have been aggregated or replaced meanwhile
+                    if (group == null)
                     {
-                        muleContext.getExceptionListener().handleException(e);
+                        scheduledTimeouts.remove(groupId);
+                        continue;
+                    }
+                    if (expiryTimeOf(group) >= System.nanoTime())
+                    {
+                        scheduleGroupExpiry(group);
+                        continue;
                     }
                 }
+                // handleGroupExpiry claims the group under its lock and processes it outside
+                expireGroup(group);
+            }
+        }
+
+        private void expireGroup(final EventGroup group)
+        {
+            ExecutionTemplate<MuleEvent> executionTemplate = ErrorHandlingExecutionTemplate.createErrorHandlingExecutionTemplate(muleContext, group.getMessageCollectionEvent().getFlowConstruct().getExceptionListener());
+            try
+            {
+                executionTemplate.execute(new ExecutionCallback<MuleEvent>()
+                {
+                    @Override
+                    public MuleEvent process() throws Exception
+                    {
+                        handleGroupExpiry(group);
+                        return null;
+                    }
+                });
+            }
+            catch (MessagingException e)
+            {
+                //Already handled by TransactionTemplate
+            }
+            catch (Exception e)
+            {
+                muleContext.getExceptionListener().handleException(e);
             }
         }
     }
 
     public void dispose()
     {
+        groupTimeouts.clear();
+        scheduledTimeouts.clear();
+        activeGroups.clear();
         disposeIfDisposable(expiredAndDispatchedGroups);
         disposeIfDisposable(processedGroups);
         disposeIfDisposable(eventGroups);
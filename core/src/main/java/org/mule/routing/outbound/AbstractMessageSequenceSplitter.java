@@ -27,6 +27,8 @@ import org.mule.routing.CorrelationMode;
 import org.mule.routing.DefaultRouterResultsHandler;
 import org.mule.routing.MessageSequence;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -58,14 +60,21 @@ public abstract class AbstractMessageSequenceSplitter extends AbstractIntercepti
         if (isSplitRequired(event))
         {
             MessageSequence<?> seq = splitMessageIntoSequence(event);
-            if (!seq.isEmpty())
+            try
             {
-                return resultsHandler.aggregateResults(processParts(seq, event), event, muleContext);
+                if (!seq.isEmpty())
+                {
+                    return resultsHandler.aggregateResults(processParts(seq, event), event, muleContext);
+                }
+                else
+                {
+                    logger.warn("Splitter returned no results. If this is not expected, please check your split expression");
+                    return VoidMuleEvent.getInstance();
+                }
             }
-            else
+            finally
             {
-                logger.warn("Splitter returned no results. If this is not expected, please check your split expression");
-                return VoidMuleEvent.getInstance();
+                close(seq);
             }
         }
         else
@@ -144,6 +153,25 @@ public abstract class AbstractMessageSequenceSplitter extends AbstractIntercepti
         return resultEvents;
     }
 
+    /**
+     * Closes a sequence that streams its elements from a resource, such as the
+     * payload it is read from, in case processing stopped before its end.
+     */
+    private void close(MessageSequence<?> seq)
+    {
+        if (seq instanceof Closeable)
+        {
+            try
+            {
+                ((Closeable) seq).close();
+            }
+            catch (IOException e)
+            {
+                logger.debug("Failed to close the message sequence", e);
+            }
+        }
+    }
+
     private MuleMessage createMessage(Object payload, MuleMessage originalMessage)
     {
         if (payload instanceof MuleMessage)
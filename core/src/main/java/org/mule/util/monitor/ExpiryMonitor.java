@@ -14,6 +14,7 @@ import org.mule.api.MuleContext;
 import org.mule.api.lifecycle.Disposable;
 import org.mule.config.i18n.CoreMessages;
 import org.mule.util.concurrent.DaemonThreadFactory;
+import org.mule.util.timer.HashedTimerWheel;
 
 import java.util.Iterator;
 import java.util.Map;
@@ -28,6 +29,10 @@ import org.apache.commons.logging.LogFactory;
  * <code>ExpiryMonitor</code> can monitor objects beased on an expiry time and can
  * invoke a callback method once the object time has expired. If the object does
  * expire it is removed from this monitor.
+ * <p/>
+ * Expiry times are kept in a {@link HashedTimerWheel} whose ticks are a fraction of the
+ * monitor frequency, so each run only looks at the objects that are due rather than at
+ * every monitored object.
  */
 public class ExpiryMonitor implements Runnable, Disposable
 {
@@ -36,9 +41,15 @@ public class ExpiryMonitor implements Runnable, Disposable
      */
     protected static final Log logger = LogFactory.getLog(ExpiryMonitor.class);
 
+    private static final int TICKS_PER_RUN = 4;
+
+    private static final int TIMER_WHEEL_SIZE = 512;
+
     protected ScheduledThreadPoolExecutor scheduler;
 
-    private Map monitors;
+    private Map<Expirable, ExpirableHolder> monitors;
+
+    private HashedTimerWheel<ExpirableHolder> timeouts;
 
     private int monitorFrequency;
 
@@ -94,7 +105,9 @@ public class ExpiryMonitor implements Runnable, Disposable
             throw new IllegalArgumentException(CoreMessages.propertyHasInvalidValue("monitorFrequency",
                     new Integer(monitorFrequency)).toString());
         }
-        monitors = new ConcurrentHashMap();
+        monitors = new ConcurrentHashMap<Expirable, ExpirableHolder>();
+        timeouts = new HashedTimerWheel<ExpirableHolder>(Math.max(1, monitorFrequency / TICKS_PER_RUN),
+            TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE);
         if (scheduler == null)
         {
             this.scheduler = new ScheduledThreadPoolExecutor(1);
@@ -124,7 +137,9 @@ public class ExpiryMonitor implements Runnable, Disposable
             {
                 logger.debug("Adding new expirable: " + expirable);
             }
-            monitors.put(expirable, new ExpirableHolder(timeUnit.toNanos(value), expirable));
+            ExpirableHolder holder = new ExpirableHolder(timeUnit.toNanos(value), expirable);
+            monitors.put(expirable, holder);
+            holder.schedule();
         }
     }
 
@@ -139,12 +154,16 @@ public class ExpiryMonitor implements Runnable, Disposable
         {
             logger.debug("Removing expirable: " + expirable);
         }
-        monitors.remove(expirable);
+        ExpirableHolder holder = monitors.remove(expirable);
+        if (holder != null)
+        {
+            holder.cancel();
+        }
     }
 
     public void resetExpirable(Expirable expirable)
     {
-        ExpirableHolder eh = (ExpirableHolder) monitors.get(expirable);
+        ExpirableHolder eh = monitors.get(expirable);
         if (eh != null)
         {
             eh.reset();
@@ -160,17 +179,27 @@ public class ExpiryMonitor implements Runnable, Disposable
      */
     public void run()
     {
-        ExpirableHolder holder;
-
+        // timeouts are left in the wheel while this is not the polling node, so they
+        // expire once it becomes it
         if (!onPollingNodeOnly || muleContext == null || muleContext.isPrimaryPollingInstance())
         {
-            for (Iterator iterator = monitors.values().iterator(); iterator.hasNext();)
+            for (ExpirableHolder holder : timeouts.expire())
             {
-                holder = (ExpirableHolder) iterator.next();
-                if (holder.isExpired())
+                // skip holders reset, removed or replaced after their timeout expired
+                if (holder.isExpired() && monitors.remove(holder.getExpirable(), holder))
                 {
-                    removeExpirable(holder.getExpirable());
-                    holder.getExpirable().expired();
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Expiring: " + holder.getExpirable());
+                    }
+                    try
+                    {
+                        holder.getExpirable().expired();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        logger.warn("Expirable " + holder.getExpirable() + " failed to expire", e);
+                    }
                 }
             }
         }
@@ -181,9 +210,9 @@ public class ExpiryMonitor implements Runnable, Disposable
         logger.info("disposing monitor");
         scheduler.shutdown();
         ExpirableHolder holder;
-        for (Iterator iterator = monitors.values().iterator(); iterator.hasNext();)
+        for (Iterator<ExpirableHolder> iterator = monitors.values().iterator(); iterator.hasNext();)
         {
-            holder = (ExpirableHolder) iterator.next();
+            holder = iterator.next();
             removeExpirable(holder.getExpirable());
             try
             {
@@ -195,14 +224,16 @@ public class ExpiryMonitor implements Runnable, Disposable
                 logger.debug(e.getMessage());
             }
         }
+        timeouts.clear();
     }
 
-    private static class ExpirableHolder
+    private class ExpirableHolder
     {
 
         private long nanoseconds;
         private Expirable expirable;
-        private long created;
+        private volatile long created;
+        private volatile HashedTimerWheel.Timeout<ExpirableHolder> timeout;
 
         public ExpirableHolder(long nanoseconds, Expirable expirable)
         {
@@ -226,9 +257,28 @@ public class ExpiryMonitor implements Runnable, Disposable
             return (System.nanoTime() - nanoseconds) > created;
         }
 
-        public void reset()
+        public synchronized void reset()
         {
             created = System.nanoTime();
+            HashedTimerWheel.Timeout<ExpirableHolder> previous = timeout;
+            schedule();
+            if (previous != null)
+            {
+                previous.cancel();
+            }
+        }
+
+        synchronized void schedule()
+        {
+            timeout = timeouts.scheduleAt(this, created + nanoseconds);
+        }
+
+        synchronized void cancel()
+        {
+            if (timeout != null)
+            {
+                timeout.cancel();
+            }
         }
     }
 }
@@ -0,0 +1,287 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.util.queue;
+
+import org.mule.api.MuleContext;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A QueueInfoDelegate that does not serialize producers and consumers on a single monitor.
+ * Members are kept in a lock-free linked queue, the capacity is enforced through an atomic
+ * counter and blocked threads are parked and unparked individually instead of waiting on
+ * a shared monitor. Members restored through {@link #untake(Serializable)} are kept apart
+ * so they are handed out before anything else.
+ * <p/>
+ * To use it, register a {@link Factory} for the queue store type with
+ * {@link QueueInfo#registerDelegateFactory(Class, QueueInfo.QueueInfoDelegateFactory)}.
+ */
+public class LockFreeQueueInfoDelegate implements TransientQueueInfoDelegate
+{
+    protected final int capacity;
+
+    private final Queue<Serializable> members = new ConcurrentLinkedQueue<Serializable>();
+    private final LinkedList<Serializable> untaken = new LinkedList<Serializable>();
+    private final AtomicInteger untakenCount = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Queue<Thread> waitingTakers = new ConcurrentLinkedQueue<Thread>();
+    private final Queue<Thread> waitingOfferers = new ConcurrentLinkedQueue<Thread>();
+
+    public LockFreeQueueInfoDelegate(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void putNow(Serializable o)
+    {
+        size.incrementAndGet();
+        members.add(o);
+        signal(waitingTakers);
+    }
+
+    @Override
+    public boolean offer(Serializable o, int room, long timeout) throws InterruptedException
+    {
+        if (Thread.interrupted())
+        {
+            throw new InterruptedException();
+        }
+        if (capacity > 0 && capacity <= room)
+        {
+            throw new IllegalStateException("Can not add more objects than the capacity in one time");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!tryReserve(o != null, room))
+        {
+            if (!await(waitingOfferers, deadline))
+            {
+                return false;
+            }
+        }
+        if (o != null)
+        {
+            members.add(o);
+            signal(waitingTakers);
+        }
+        return true;
+    }
+
+    @Override
+    public Serializable poll(long timeout) throws InterruptedException
+    {
+        if (Thread.interrupted())
+        {
+            throw new InterruptedException();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Serializable o;
+        while ((o = tryTake()) == null)
+        {
+            if (!await(waitingTakers, deadline))
+            {
+                return null;
+            }
+        }
+        signal(waitingOfferers);
+        return o;
+    }
+
+    @Override
+    public Serializable peek() throws InterruptedException
+    {
+        if (Thread.interrupted())
+        {
+            throw new InterruptedException();
+        }
+        if (untakenCount.get() > 0)
+        {
+            synchronized (untaken)
+            {
+                if (!untaken.isEmpty())
+                {
+                    return untaken.getFirst();
+                }
+            }
+        }
+        return members.peek();
+    }
+
+    @Override
+    public void untake(Serializable item) throws InterruptedException
+    {
+        if (Thread.interrupted())
+        {
+            throw new InterruptedException();
+        }
+        synchronized (untaken)
+        {
+            untaken.addFirst(item);
+            untakenCount.incrementAndGet();
+        }
+        size.incrementAndGet();
+        signal(waitingTakers);
+    }
+
+    @Override
+    public int getSize()
+    {
+        return size.get();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Serializable> items)
+    {
+        for (Serializable item : items)
+        {
+            putNow(item);
+        }
+        return !items.isEmpty();
+    }
+
+    /**
+     * Returns the current members in the order they would be taken, used when the
+     * queue is handed over to a different delegate.
+     */
+    public List<Serializable> getMembers()
+    {
+        List<Serializable> result = new ArrayList<Serializable>(size.get());
+        synchronized (untaken)
+        {
+            result.addAll(untaken);
+        }
+        result.addAll(members);
+        return result;
+    }
+
+    private boolean tryReserve(boolean adding, int room)
+    {
+        while (true)
+        {
+            int current = size.get();
+            if (capacity > 0 && current >= capacity - room)
+            {
+                return false;
+            }
+            if (!adding || size.compareAndSet(current, current + 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    private Serializable tryTake()
+    {
+        if (untakenCount.get() > 0)
+        {
+            synchronized (untaken)
+            {
+                if (!untaken.isEmpty())
+                {
+                    untakenCount.decrementAndGet();
+                    size.decrementAndGet();
+                    return untaken.removeFirst();
+                }
+            }
+        }
+        Serializable o = members.poll();
+        if (o != null)
+        {
+            size.decrementAndGet();
+        }
+        return o;
+    }
+
+    /**
+     * Parks the current thread until it is signalled or the deadline passes. The caller
+     * re-checks its condition after this returns, so spurious wake-ups are harmless.
+     *
+     * @return false if the deadline has passed
+     */
+    private boolean await(Queue<Thread> waiters, long deadline) throws InterruptedException
+    {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+        {
+            giveUp(waiters);
+            return false;
+        }
+
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        // a signal sent before we were registered would otherwise be lost
+        if (!canProceed(waiters))
+        {
+            LockSupport.parkNanos(this, remaining);
+        }
+        waiters.remove(current);
+
+        if (Thread.interrupted())
+        {
+            giveUp(waiters);
+            throw new InterruptedException();
+        }
+        return true;
+    }
+
+    /**
+     * A thread leaving without acting may have consumed the signal meant for another
+     * waiter, so pass it on if there is something for them to do.
+     */
+    private void giveUp(Queue<Thread> waiters)
+    {
+        if (canProceed(waiters))
+        {
+            signal(waiters);
+        }
+    }
+
+    private boolean canProceed(Queue<Thread> waiters)
+    {
+        if (waiters == waitingTakers)
+        {
+            return size.get() > 0;
+        }
+        return capacity <= 0 || size.get() < capacity;
+    }
+
+    private void signal(Queue<Thread> waiters)
+    {
+        Thread waiter = waiters.poll();
+        if (waiter != null)
+        {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Creates {@link LockFreeQueueInfoDelegate}s for queues using a given store type
+     */
+    public static class Factory implements QueueInfo.QueueInfoDelegateFactory
+    {
+        @Override
+        public QueueInfoDelegate createDelegate(QueueInfo parent, MuleContext muleContext)
+        {
+            return new LockFreeQueueInfoDelegate(parent.getCapacity());
+        }
+    }
+}
@@ -16,21 +16,21 @@ import org.mule.api.store.ObjectStore;
 import org.mule.api.store.ObjectStoreException;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Stores information about a Queue
  */
 public class QueueInfo
 {
-    private QueueConfiguration config;
+    private volatile QueueConfiguration config;
     private String name;
-    private QueueInfoDelegate delegate;
+    private volatile QueueInfoDelegate delegate;
     private MuleContext muleContext;
-    private boolean delegateCanTake;
+    private volatile boolean delegateCanTake;
 
-    private static Map<Class<? extends ObjectStore>, QueueInfoDelegateFactory> delegateFactories = new HashMap<Class<? extends ObjectStore>, QueueInfoDelegateFactory>();
+    private static Map<Class<? extends ObjectStore>, QueueInfoDelegateFactory> delegateFactories = new ConcurrentHashMap<Class<? extends ObjectStore>, QueueInfoDelegateFactory>();
 
     public QueueInfo(String name, MuleContext muleContext, QueueConfiguration config)
     {
@@ -49,7 +49,7 @@ public class QueueInfo
         setConfigAndDelegate(config);
     }
 
-    private void setConfigAndDelegate(QueueConfiguration config)
+    private synchronized void setConfigAndDelegate(QueueConfiguration config)
     {
         boolean hadConfig = this.config != null;
         this.config = config;
@@ -68,6 +68,10 @@ public class QueueInfo
             {
                 newDelegate.addAll(((DefaultQueueInfoDelegate) delegate).list);
             }
+            else if (delegate instanceof LockFreeQueueInfoDelegate)
+            {
+                newDelegate.addAll(((LockFreeQueueInfoDelegate) delegate).getMembers());
+            }
             delegate = newDelegate;
         }
     }
@@ -129,7 +133,7 @@ public class QueueInfo
         return config == null ? null : config.objectStore;
     }
 
-    public static synchronized void registerDelegateFactory(Class<? extends ObjectStore>storeType, QueueInfoDelegateFactory factory)
+    public static void registerDelegateFactory(Class<? extends ObjectStore>storeType, QueueInfoDelegateFactory factory)
     {
         delegateFactories.put(storeType, factory);
     }
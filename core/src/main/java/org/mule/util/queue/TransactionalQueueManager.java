@@ -23,11 +23,11 @@ import org.mule.util.xa.ResourceManagerException;
 import org.mule.util.xa.ResourceManagerSystemException;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.transaction.xa.XAResource;
 
@@ -36,58 +36,77 @@ import javax.transaction.xa.XAResource;
  * transactional Queues. Queues can also be persistent by setting a persistence
  * strategy on the manager. Default straties are provided for Memory, Jounaling,
  * Cache and File.
+ * <p/>
+ * Queues are kept in a concurrent registry so looking up a queue by name never blocks,
+ * and configuring or disposing a queue only affects that queue.
  */
 public class TransactionalQueueManager extends AbstractXAResourceManager implements QueueManager, MuleContextAware
 {
-    private Map<String, QueueInfo> queues = new HashMap<String, QueueInfo>();
+    private final ConcurrentMap<String, QueueInfo> queues = new ConcurrentHashMap<String, QueueInfo>();
 
-    private QueueConfiguration defaultQueueConfiguration;
+    private volatile QueueConfiguration defaultQueueConfiguration;
     private MuleContext muleContext;
-    private Set<QueueStore> queueObjectStores = new HashSet<QueueStore>();
-    private Set<ListableObjectStore> listableObjectStores = new HashSet<ListableObjectStore>();
+    private final Set<QueueStore> queueObjectStores = Collections.newSetFromMap(new ConcurrentHashMap<QueueStore, Boolean>());
+    private final Set<ListableObjectStore> listableObjectStores = Collections.newSetFromMap(new ConcurrentHashMap<ListableObjectStore, Boolean>());
 
     @Override
-    public synchronized QueueSession getQueueSession()
+    public QueueSession getQueueSession()
     {
         return new TransactionalQueueSession(this, this);
     }
 
     @Override
-    public synchronized void setDefaultQueueConfiguration(QueueConfiguration config)
+    public void setDefaultQueueConfiguration(QueueConfiguration config)
     {
         this.defaultQueueConfiguration = config;
         addStore(config.objectStore);
     }
 
     @Override
-    public synchronized void setQueueConfiguration(String queueName, QueueConfiguration config)
+    public void setQueueConfiguration(String queueName, QueueConfiguration config)
     {
         getQueue(queueName, config).setConfig(config);
         addStore(config.objectStore);
     }
 
-    protected synchronized QueueInfo getQueue(String name)
+    protected QueueInfo getQueue(String name)
     {
         return getQueue(name, defaultQueueConfiguration);
     }
 
-    protected synchronized QueueInfo getQueue(String name, QueueConfiguration config)
+    protected QueueInfo getQueue(String name, QueueConfiguration config)
     {
         QueueInfo q = queues.get(name);
         if (q == null)
         {
-            q = new QueueInfo(name, muleContext, config);
-            queues.put(name, q);
+            QueueInfo newQueue = new QueueInfo(name, muleContext, config);
+            q = queues.putIfAbsent(name, newQueue);
+            if (q == null)
+            {
+                q = newQueue;
+            }
         }
         return q;
     }
 
-    public synchronized QueueInfo getQueueInfo(String name)
+    public QueueInfo getQueueInfo(String name)
     {
         QueueInfo q = queues.get(name);
         return q == null ? q : new QueueInfo(q);
     }
 
+    /**
+     * Removes a queue from this manager. Members still held in memory are discarded,
+     * while entries in a persistent store are left there to be recovered on restart.
+     * The next lookup by the same name creates a fresh queue.
+     *
+     * @return true if the queue existed
+     */
+    public boolean disposeQueue(String name)
+    {
+        return queues.remove(name) != null;
+    }
+
     @Override
     protected void doStart() throws ResourceManagerSystemException
     {
@@ -109,10 +128,7 @@ public class TransactionalQueueManager extends AbstractXAResourceManager impleme
     protected boolean shutdown(int mode, long timeoutMSecs)
     {
         // Clear queues on shutdown to avoid duplicate entries on warm restarts (MULE-3678)
-        synchronized (this)
-        {
-            queues.clear();
-        }
+        queues.clear();
         return super.shutdown(mode, timeoutMSecs);
     }
 
@@ -218,7 +234,7 @@ public class TransactionalQueueManager extends AbstractXAResourceManager impleme
         }
     }
 
-    protected synchronized void findAllQueueStores()
+    protected void findAllQueueStores()
     {
         if (muleContext != null)
         {
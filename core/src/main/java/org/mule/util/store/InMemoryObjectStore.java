@@ -15,8 +15,9 @@ import org.mule.api.store.ObjectStoreException;
 import org.mule.config.i18n.CoreMessages;
 
 import java.io.Serializable;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
 
@@ -26,14 +27,27 @@ import java.util.concurrent.TimeUnit;
  * is a <i>soft</i> limit and only enforced periodically by the expiry process; this
  * means that the store may temporarily exceed its maximum size between expiry runs, but
  * will eventually shrink to its configured size.
+ * <p/>
+ * Entries are indexed by key in a concurrent hash map, so lookups, insertions and
+ * removals take constant time without locking, while a map sorted by insertion time
+ * gives the expiry process the oldest entries first.
  */
 public class InMemoryObjectStore<T extends Serializable> extends AbstractMonitoredObjectStore<T>
 {
+    /**
+     * The stored objects by insertion time, oldest first
+     */
     protected ConcurrentSkipListMap<Long, StoredObject<T>> store;
 
+    /**
+     * The stored objects by key
+     */
+    private final ConcurrentMap<Serializable, IndexEntry<T>> index;
+
     public InMemoryObjectStore()
     {
         this.store = new ConcurrentSkipListMap<Long, StoredObject<T>>();
+        this.index = new ConcurrentHashMap<Serializable, IndexEntry<T>>();
     }
 
     @Override
@@ -50,10 +64,7 @@ public class InMemoryObjectStore<T extends Serializable> extends AbstractMonitor
             throw new ObjectStoreException(CoreMessages.objectIsNull("id"));
         }
 
-        synchronized (store)
-        {
-            return store.values().contains(new StoredObject<T>(key, null));
-        }
+        return index.containsKey(key);
     }
 
     @Override
@@ -64,80 +75,71 @@ public class InMemoryObjectStore<T extends Serializable> extends AbstractMonitor
             throw new ObjectStoreException(CoreMessages.objectIsNull("id"));
         }
 
-        // this block is unfortunately necessary to counter a possible race condition
-        // between multiple nonatomic calls to containsObject/storeObject
         StoredObject<T> obj = new StoredObject<T>(id, value);
-        synchronized (store)
+        if (index.putIfAbsent(id, new IndexEntry<T>(obj)) != null)
         {
-            if (store.values().contains(obj))
-            {
-                throw new ObjectAlreadyExistsException();
-            }
+            throw new ObjectAlreadyExistsException();
+        }
 
-            boolean written = false;
-            while (!written)
-            {
-                Long key = Long.valueOf(System.nanoTime());
-                written = (store.put(key, obj) == null);
-            }
+        Long key = Long.valueOf(System.nanoTime());
+        while (store.putIfAbsent(key, obj) != null)
+        {
+            key = Long.valueOf(System.nanoTime());
         }
+        obj.timestamp = key;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public T retrieve(Serializable key) throws ObjectStoreException
     {
-        synchronized (store)
+        IndexEntry<T> entry = key == null ? null : index.get(key);
+        if (entry == null)
         {
-            Map.Entry<?, ?> entry = findEntry(key);
-            if (entry != null)
-            {
-                StoredObject<T> object = (StoredObject<T>) entry.getValue();
-                return object.getItem();
-            }
+            throw new ObjectDoesNotExistException(CoreMessages.objectNotFound(key));
         }
-
-        throw new ObjectDoesNotExistException(CoreMessages.objectNotFound(key));
+        return entry.object.getItem();
     }
 
-    @SuppressWarnings("unchecked")
-    private Map.Entry<?, ?> findEntry(Serializable key)
+    @Override
+    public T remove(Serializable key) throws ObjectStoreException
     {
-        Iterator<?> entryIterator = store.entrySet().iterator();
-        while (entryIterator.hasNext())
+        IndexEntry<T> removedEntry = key == null ? null : index.remove(key);
+        if (removedEntry == null)
         {
-            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entryIterator.next();
-
-            StoredObject<T> object = (StoredObject<T>) entry.getValue();
-            if (object.getId().equals(key))
-            {
-                return entry;
-            }
+            throw new ObjectDoesNotExistException(CoreMessages.objectNotFound(key));
         }
-        return null;
+        removeFromStore(removedEntry.object);
+        return removedEntry.object.getItem();
     }
 
-    @Override
-    public T remove(Serializable key) throws ObjectStoreException
+    private void removeFromStore(StoredObject<T> object)
     {
-        synchronized (store)
+        // a concurrent store() of the object may not have added it to the sorted map yet
+        Long timestamp;
+        while ((timestamp = object.timestamp) == null)
         {
-            Map.Entry<?, ?> entry = findEntry(key);
-            if (entry != null)
-            {
-                StoredObject<T> removedObject = store.remove(entry.getKey());
-                return removedObject.getItem();
-            }
+            Thread.yield();
         }
+        store.remove(timestamp, object);
+    }
 
-        throw new ObjectDoesNotExistException(CoreMessages.objectNotFound(key));
+    private void removeFromIndex(StoredObject<T> object)
+    {
+        // every store() creates a new index entry and index entries are only equal to
+        // themselves, so this cannot remove an object stored again under the same id
+        Serializable id = object.getId();
+        IndexEntry<T> entry = index.get(id);
+        if (entry != null && entry.object == object)
+        {
+            index.remove(id, entry);
+        }
     }
 
     @Override
     public void expire()
     {
         // this is not guaranteed to be precise, but we don't mind
-        int currentSize = store.size();
+        int currentSize = index.size();
 
         // first trim to maxSize if necessary
         currentSize = trimToMaxSize(currentSize);
@@ -147,18 +149,21 @@ public class InMemoryObjectStore<T extends Serializable> extends AbstractMonitor
         {
             final long now = System.nanoTime();
             int expiredEntries = 0;
-            Map.Entry<?, ?> oldestEntry;
+            Map.Entry<Long, StoredObject<T>> oldestEntry;
 
             purge:
             while ((oldestEntry = store.firstEntry()) != null)
             {
-                Long oldestKey = (Long) oldestEntry.getKey();
+                Long oldestKey = oldestEntry.getKey();
                 long oldestKeyValue = oldestKey.longValue();
 
                 if (TimeUnit.NANOSECONDS.toMillis(now - oldestKeyValue) >= entryTTL)
                 {
-                    store.remove(oldestKey);
-                    expiredEntries++;
+                    if (store.remove(oldestKey, oldestEntry.getValue()))
+                    {
+                        removeFromIndex(oldestEntry.getValue());
+                        expiredEntries++;
+                    }
                 }
                 else
                 {
@@ -183,9 +188,10 @@ public class InMemoryObjectStore<T extends Serializable> extends AbstractMonitor
         int excess = (currentSize - maxEntries);
         if (excess > 0)
         {
-            while (currentSize > maxEntries)
+            Map.Entry<Long, StoredObject<T>> oldestEntry;
+            while (currentSize > maxEntries && (oldestEntry = store.pollFirstEntry()) != null)
             {
-                store.pollFirstEntry();
+                removeFromIndex(oldestEntry.getValue());
                 currentSize--;
             }
 
@@ -203,6 +209,20 @@ public class InMemoryObjectStore<T extends Serializable> extends AbstractMonitor
         return getClass().getSimpleName() + " " + store;
     }
 
+    /**
+     * Holds a stored object in the index. Unlike {@link StoredObject} it does not
+     * override <code>equals</code>, so conditional removals compare it by identity.
+     */
+    private static final class IndexEntry<T>
+    {
+        final StoredObject<T> object;
+
+        IndexEntry(StoredObject<T> object)
+        {
+            this.object = object;
+        }
+    }
+
     /**
      * Represents the object stored in the store. This class holds the Object itslef and its ID.
      */
@@ -210,6 +230,8 @@ public class InMemoryObjectStore<T extends Serializable> extends AbstractMonitor
     {
         private Serializable id;
         private T item;
+        // the key in the insertion ordered map, set once stored
+        private volatile Long timestamp;
 
         public StoredObject(Serializable id, T item)
         {
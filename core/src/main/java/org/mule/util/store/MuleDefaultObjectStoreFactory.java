@@ -39,6 +39,10 @@ public class MuleDefaultObjectStoreFactory implements DefaultObjectStoreFactory
     @Override
     public QueueStore<Serializable> createDefaultPersistentQueueStore()
     {
+        if ("true".equals(System.getProperty("mule.queue.store.journal")))
+        {
+            return new QueueStoreAdapter<Serializable>(new QueueJournalObjectStore<Serializable>());
+        }
         return new QueueStoreAdapter<Serializable>(new QueuePersistenceObjectStore<Serializable>());
     }
 
@@ -81,8 +81,14 @@ public class PartitionedPersistentObjectStore<T extends Serializable> extends
     }
 
     @Override
-    public void close(String partitionName) throws ObjectStoreException
+    public synchronized void close(String partitionName) throws ObjectStoreException
     {
+        PersistentObjectStorePartition partition = partitionsByName.get(partitionName);
+        if (partition != null)
+        {
+            // releases its files, they are reopened if the partition is used again
+            partition.close();
+        }
     }
 
     private void createPartition(String partitionName) throws ObjectStoreException
@@ -235,10 +241,15 @@ public class PartitionedPersistentObjectStore<T extends Serializable> extends
     }
 
     @Override
-    public void disposePartition(String partitionName) throws ObjectStoreException
+    public synchronized void disposePartition(String partitionName) throws ObjectStoreException
     {
-        File partitionFolder = FileUtils.newFile(storeDirectory, partitionName);
-        FileUtils.deleteQuietly(partitionFolder);
+        // partition directories are named after a generated id, so the partition
+        // empties itself and stays registered for whoever still holds it
+        PersistentObjectStorePartition partition = partitionsByName.get(partitionName);
+        if (partition != null)
+        {
+            partition.clear();
+        }
     }
 
     @Override
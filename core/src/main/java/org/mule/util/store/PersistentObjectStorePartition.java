@@ -22,6 +22,12 @@ import org.mule.config.i18n.Message;
 import org.mule.util.FileUtils;
 import org.mule.util.SerializationUtils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -30,30 +36,69 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.apache.commons.collections.BidiMap;
-import org.apache.commons.collections.bidimap.TreeBidiMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * A partition of a {@link PartitionedPersistentObjectStore}, kept in its own directory.
+ * <p/>
+ * Values are appended to <code>values.log</code> and every store or removal appends a
+ * record with the key and the location of its value to <code>keys.idx</code>, so writing
+ * an entry never creates a file. Opening the partition replays the key index only, the
+ * values being read when they are retrieved. Keys are held in memory in the order they
+ * were stored, which is also the order they expire in, so expiry only looks at the
+ * entries it removes. Once most of the log is made of removed entries both files are
+ * rewritten with the live entries.
+ * <p/>
+ * Partitions written with one file per entry by previous versions are moved into the
+ * log when they are opened.
+ */
 public class PersistentObjectStorePartition<T extends Serializable> implements ListableObjectStore<T>, ExpirableObjectStore<T>
 {
 
     private static final String OBJECT_FILE_EXTENSION = ".obj";
     private static final String PARTITION_DESCRIPTOR_FILE = "partition-descriptor";
+    private static final String VALUES_FILE = "values.log";
+    private static final String INDEX_FILE = "keys.idx";
+    private static final String COMPACTION_SUFFIX = ".compact";
+
+    private static final byte INDEX_STORE = 1;
+    private static final byte INDEX_REMOVE = 2;
+
+    /**
+     * The log is not compacted while the space taken by removed entries is below this
+     */
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    /**
+     * The index is not compacted while the records of removed entries are below this
+     */
+    private static final int MIN_COMPACTION_RECORDS = 10000;
+
     protected final Log logger = LogFactory.getLog(this.getClass());
     private final MuleContext muleContext;
 
     private File partitionDirectory;
     private String partitionName;
-    private BidiMap realKeyToUUIDIndex;
+
+    // all of the following are guarded by this partition
+    private final LinkedHashMap<Serializable, Entry> entries = new LinkedHashMap<Serializable, Entry>();
+    private RandomAccessFile values;
+    private DataOutputStream index;
+    private long liveBytes;
+    private long removedBytes;
+    private int removedRecords;
 
     PersistentObjectStorePartition(MuleContext muleContext, String partitionName, File partitionDirectory)
     {
@@ -87,56 +132,65 @@ public class PersistentObjectStorePartition<T extends Serializable> implements L
     {
         createDirectory(partitionDirectory);
         createOrRetrievePartitionDescriptorFile();
-        loadStoredKeysAndFileNames();
+        recoverCompaction();
+        loadIndex();
+        migrateValueFiles();
     }
 
     @Override
-    public void close() throws ObjectStoreException
+    public synchronized void close() throws ObjectStoreException
     {
+        closeFiles();
     }
 
     @Override
-    public List<Serializable> allKeys() throws ObjectStoreException
+    public synchronized List<Serializable> allKeys() throws ObjectStoreException
     {
-        return Collections.unmodifiableList(new ArrayList<Serializable>(realKeyToUUIDIndex.keySet()));
+        return Collections.unmodifiableList(new ArrayList<Serializable>(entries.keySet()));
     }
 
     @Override
-    public boolean contains(Serializable key) throws ObjectStoreException
+    public synchronized boolean contains(Serializable key) throws ObjectStoreException
     {
-        return realKeyToUUIDIndex.containsKey(key);
+        return entries.containsKey(key);
     }
 
     @Override
     public void store(Serializable key, T value) throws ObjectStoreException
     {
-        if (realKeyToUUIDIndex.containsKey(key))
+        byte[] data = SerializationUtils.serialize(new StoreValue<T>(key, value));
+        synchronized (this)
         {
-            throw new ObjectAlreadyExistsException();
+            if (entries.containsKey(key))
+            {
+                throw new ObjectAlreadyExistsException();
+            }
+            append(key, data, System.currentTimeMillis());
         }
-        File newFile = createFileToStoreObject();
-        realKeyToUUIDIndex.put(key, newFile.getName());
-        serialize(newFile, new StoreValue<T>(key, value));
     }
 
     @Override
     public T retrieve(Serializable key) throws ObjectStoreException
     {
-        if (!realKeyToUUIDIndex.containsKey(key))
+        byte[] data;
+        synchronized (this)
         {
-            throw new ObjectDoesNotExistException();
+            data = readValue(key);
         }
-        String filename = (String) realKeyToUUIDIndex.get(key);
-        File file = getValueFile(filename);
-        return deserialize(file).getValue();
+        return deserialize(data).getValue();
     }
 
     @Override
     public T remove(Serializable key) throws ObjectStoreException
     {
-        T value = retrieve(key);
-        deleteStoreFile(getValueFile((String) realKeyToUUIDIndex.get(key)));
-        return value;
+        byte[] data;
+        synchronized (this)
+        {
+            data = readValue(key);
+            removeEntry(key);
+            compactIfNeeded();
+        }
+        return deserialize(data).getValue();
     }
 
     @Override
@@ -145,58 +199,247 @@ public class PersistentObjectStorePartition<T extends Serializable> implements L
     }
 
     @Override
-    public void expire(int entryTTL, int maxEntries) throws ObjectStoreException
+    public synchronized void expire(int entryTTL, int maxEntries) throws ObjectStoreException
     {
-        File[] files = listValuesFiles();
-        Arrays.sort(files, new Comparator<File>()
+        // entries are kept in the order they were stored, oldest first
+        if (maxEntries >= 0)
         {
-            public int compare(File f1, File f2)
+            int excess = entries.size() - maxEntries;
+            for (int i = 0; i < excess; i++)
             {
-                int result = Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
-                if (result == 0)
-                {
-                    result = f1.getName().compareTo(f2.getName());
-                }
-                return result;
+                removeEntry(entries.keySet().iterator().next());
             }
-        });
-        int startIndex = trimToMaxSize(files, maxEntries);
+        }
         final long now = System.currentTimeMillis();
-        for (int i = startIndex; i < files.length; i++)
+        Iterator<Map.Entry<Serializable, Entry>> oldest = entries.entrySet().iterator();
+        List<Serializable> expired = new ArrayList<Serializable>();
+        while (oldest.hasNext())
         {
-            Long lastModified = files[i].lastModified();
-            if ((now - lastModified) >= entryTTL)
+            Map.Entry<Serializable, Entry> entry = oldest.next();
+            if ((now - entry.getValue().storedAt) >= entryTTL)
             {
-                deleteStoreFile(files[i]);
+                expired.add(entry.getKey());
             }
             else
             {
                 break;
             }
         }
+        for (Serializable key : expired)
+        {
+            removeEntry(key);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Removes every entry and truncates the partition's files.
+     */
+    public synchronized void clear() throws ObjectStoreException
+    {
+        closeFiles();
+        entries.clear();
+        liveBytes = 0;
+        removedBytes = 0;
+        removedRecords = 0;
+        deleteFile(new File(partitionDirectory, VALUES_FILE));
+        deleteFile(new File(partitionDirectory, INDEX_FILE));
+    }
+
+    private byte[] readValue(Serializable key) throws ObjectStoreException
+    {
+        Entry entry = entries.get(key);
+        if (entry == null)
+        {
+            throw new ObjectDoesNotExistException();
+        }
+        try
+        {
+            RandomAccessFile valuesFile = getValuesFile();
+            byte[] data = new byte[entry.length];
+            valuesFile.seek(entry.offset + 4);
+            valuesFile.readFully(data);
+            return data;
+        }
+        catch (IOException e)
+        {
+            throw new ObjectStoreException(e);
+        }
+    }
+
+    private void append(Serializable key, byte[] data, long storedAt) throws ObjectStoreException
+    {
+        try
+        {
+            // the value goes first so that the index never points past the log
+            RandomAccessFile valuesFile = getValuesFile();
+            long offset = valuesFile.length();
+            valuesFile.seek(offset);
+            valuesFile.writeInt(data.length);
+            valuesFile.write(data);
+
+            Entry entry = new Entry(offset, data.length, storedAt);
+            writeIndexRecord(getIndex(), INDEX_STORE, key, entry);
+            getIndex().flush();
+            entries.put(key, entry);
+            liveBytes += entry.size();
+        }
+        catch (IOException e)
+        {
+            throw new ObjectStoreException(e);
+        }
+    }
+
+    private void removeEntry(Serializable key) throws ObjectStoreException
+    {
+        try
+        {
+            writeIndexRecord(getIndex(), INDEX_REMOVE, key, null);
+            getIndex().flush();
+        }
+        catch (IOException e)
+        {
+            throw new ObjectStoreException(e);
+        }
+        Entry entry = entries.remove(key);
+        liveBytes -= entry.size();
+        removedBytes += entry.size();
+        removedRecords += 2;
     }
 
-    private void loadStoredKeysAndFileNames() throws ObjectStoreException
+    private void writeIndexRecord(DataOutputStream out, byte type, Serializable key, Entry entry)
+        throws IOException
     {
+        byte[] keyData = SerializationUtils.serialize(key);
+        out.writeByte(type);
+        out.writeInt(keyData.length);
+        out.write(keyData);
+        if (type == INDEX_STORE)
+        {
+            out.writeLong(entry.offset);
+            out.writeInt(entry.length);
+            out.writeLong(entry.storedAt);
+        }
+    }
+
+    /**
+     * Rebuilds the key index from <code>keys.idx</code> without reading any value. A
+     * record torn by a crash, including one whose key length is not even possible in
+     * what is left of the file, ends the index, and is cut off so that later records
+     * are appended after the last complete one.
+     */
+    private void loadIndex() throws ObjectStoreException
+    {
+        entries.clear();
+        liveBytes = 0;
+        removedBytes = 0;
+        removedRecords = 0;
+
+        File indexFile = new File(partitionDirectory, INDEX_FILE);
+        if (!indexFile.exists())
+        {
+            return;
+        }
+        long indexLength = indexFile.length();
+        long valuesLength = new File(partitionDirectory, VALUES_FILE).length();
+        long validLength = 0;
+        DataInputStream in = null;
         try
         {
-            File[] files = listValuesFiles();
-            realKeyToUUIDIndex = new TreeBidiMap();
-            for (int i = 0; i < files.length; i++)
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            while (true)
             {
-                File file = files[i];
-                StoreValue<T> storeValue = deserialize(file);
-                realKeyToUUIDIndex.put(storeValue.getKey(), file.getName());
+                byte type;
+                Serializable key;
+                Entry entry = null;
+                int recordLength;
+                try
+                {
+                    type = in.readByte();
+                    int keyLength = in.readInt();
+                    if (keyLength < 0 || keyLength > indexLength - validLength - 5)
+                    {
+                        break;
+                    }
+                    byte[] keyData = new byte[keyLength];
+                    in.readFully(keyData);
+                    key = (Serializable) SerializationUtils.deserialize(keyData, muleContext);
+                    recordLength = 5 + keyData.length;
+                    if (type == INDEX_STORE)
+                    {
+                        entry = new Entry(in.readLong(), in.readInt(), in.readLong());
+                        recordLength += 20;
+                    }
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+                validLength += recordLength;
+
+                Entry previous = entries.remove(key);
+                if (previous != null)
+                {
+                    liveBytes -= previous.size();
+                    removedBytes += previous.size();
+                    removedRecords++;
+                }
+                if (entry != null && entry.offset + entry.size() <= valuesLength)
+                {
+                    entries.put(key, entry);
+                    liveBytes += entry.size();
+                }
+                else
+                {
+                    removedRecords++;
+                }
             }
         }
         catch (Exception e)
         {
             String message = String.format("Could not restore object store data from %1s", partitionDirectory.getAbsolutePath());
-            throw new ObjectStoreException(CoreMessages.createStaticMessage(message));
+            throw new ObjectStoreException(CoreMessages.createStaticMessage(message), e);
+        }
+        finally
+        {
+            closeQuietly(in);
+        }
+
+        if (validLength < indexLength)
+        {
+            logger.warn("Discarding incomplete records at the end of " + indexFile.getAbsolutePath());
+            truncate(indexFile, validLength);
+        }
+    }
+
+    /**
+     * Completes a compaction interrupted after the old index was removed, or discards
+     * the files of one interrupted before.
+     */
+    private void recoverCompaction() throws ObjectStoreException
+    {
+        File indexFile = new File(partitionDirectory, INDEX_FILE);
+        File compactedValuesFile = new File(partitionDirectory, VALUES_FILE + COMPACTION_SUFFIX);
+        File compactedIndexFile = new File(partitionDirectory, INDEX_FILE + COMPACTION_SUFFIX);
+        if (!indexFile.exists() && compactedIndexFile.exists())
+        {
+            if (compactedValuesFile.exists())
+            {
+                replace(compactedValuesFile, new File(partitionDirectory, VALUES_FILE));
+            }
+            replace(compactedIndexFile, indexFile);
+        }
+        else
+        {
+            deleteFile(compactedValuesFile);
+            deleteFile(compactedIndexFile);
         }
     }
 
-    private File[] listValuesFiles()
+    /**
+     * Moves the entries kept in one file each by previous versions into the log.
+     */
+    private void migrateValueFiles() throws ObjectStoreException
     {
         File[] files = partitionDirectory.listFiles(new FileFilter()
         {
@@ -206,47 +449,209 @@ public class PersistentObjectStorePartition<T extends Serializable> implements L
                 return !file.isDirectory() && file.getName().endsWith(OBJECT_FILE_EXTENSION);
             }
         });
-        if (files == null)
+        if (files == null || files.length == 0)
+        {
+            return;
+        }
+        // keep their age order
+        Arrays.sort(files, new Comparator<File>()
+        {
+            public int compare(File f1, File f2)
+            {
+                int result = Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+                if (result == 0)
+                {
+                    result = f1.getName().compareTo(f2.getName());
+                }
+                return result;
+            }
+        });
+        for (File file : files)
         {
-            files = new File[0];
+            StoreValue<T> storeValue = deserialize(file);
+            if (!entries.containsKey(storeValue.getKey()))
+            {
+                append(storeValue.getKey(), SerializationUtils.serialize(storeValue), file.lastModified());
+            }
+            deleteFile(file);
         }
-        return files;
     }
 
-    protected void createDirectory(File directory) throws ObjectStoreException
+    private void compactIfNeeded() throws ObjectStoreException
     {
+        boolean compactValues = removedBytes > MIN_COMPACTION_BYTES && removedBytes > liveBytes;
+        boolean compactIndex = removedRecords > MIN_COMPACTION_RECORDS && removedRecords > entries.size();
+        if (compactValues || compactIndex)
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log and the index with the live entries only, replacing the current
+     * files once the new ones are complete.
+     */
+    private void compact() throws ObjectStoreException
+    {
+        File valuesFile = new File(partitionDirectory, VALUES_FILE);
+        File indexFile = new File(partitionDirectory, INDEX_FILE);
+        File compactedValuesFile = new File(partitionDirectory, VALUES_FILE + COMPACTION_SUFFIX);
+        File compactedIndexFile = new File(partitionDirectory, INDEX_FILE + COMPACTION_SUFFIX);
+
+        LinkedHashMap<Serializable, Entry> compacted = new LinkedHashMap<Serializable, Entry>();
+        DataOutputStream valuesOut = null;
+        DataOutputStream indexOut = null;
         try
         {
-            // To support concurrency we need to check if directory exists again inside
-            // synchronized method
-            if (!directory.exists() && !directory.mkdirs())
+            RandomAccessFile source = getValuesFile();
+            valuesOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compactedValuesFile)));
+            indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compactedIndexFile)));
+            long offset = 0;
+            for (Map.Entry<Serializable, Entry> mapEntry : entries.entrySet())
             {
-                Message message = CoreMessages.failedToCreate("object store directory "
-                        + directory.getAbsolutePath());
-                throw new MuleRuntimeException(message);
+                Entry entry = mapEntry.getValue();
+                byte[] data = new byte[entry.length];
+                source.seek(entry.offset + 4);
+                source.readFully(data);
+                valuesOut.writeInt(data.length);
+                valuesOut.write(data);
+
+                Entry moved = new Entry(offset, entry.length, entry.storedAt);
+                writeIndexRecord(indexOut, INDEX_STORE, mapEntry.getKey(), moved);
+                compacted.put(mapEntry.getKey(), moved);
+                offset += moved.size();
             }
         }
-        catch (Exception e)
+        catch (IOException e)
+        {
+            closeQuietly(valuesOut);
+            closeQuietly(indexOut);
+            compactedValuesFile.delete();
+            compactedIndexFile.delete();
+            throw new ObjectStoreException(e);
+        }
+        closeQuietly(valuesOut);
+        closeQuietly(indexOut);
+
+        closeFiles();
+        // the old index goes first so that it is never used with the new log, see
+        // recoverCompaction for a crash in between
+        deleteFile(indexFile);
+        replace(compactedValuesFile, valuesFile);
+        replace(compactedIndexFile, indexFile);
+
+        entries.clear();
+        entries.putAll(compacted);
+        removedBytes = 0;
+        removedRecords = 0;
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Compacted partition " + partitionName + " to " + entries.size() + " entries");
+        }
+    }
+
+    private RandomAccessFile getValuesFile() throws IOException
+    {
+        if (values == null)
+        {
+            values = new RandomAccessFile(new File(partitionDirectory, VALUES_FILE), "rw");
+        }
+        return values;
+    }
+
+    private DataOutputStream getIndex() throws IOException
+    {
+        if (index == null)
+        {
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(
+                partitionDirectory, INDEX_FILE), true)));
+        }
+        return index;
+    }
+
+    private void closeFiles()
+    {
+        closeQuietly(index);
+        index = null;
+        if (values != null)
+        {
+            try
+            {
+                values.close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("error closing file " + VALUES_FILE + " of partition " + partitionName);
+            }
+            values = null;
+        }
+    }
+
+    private void truncate(File file, long length) throws ObjectStoreException
+    {
+        try
+        {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try
+            {
+                randomAccessFile.setLength(length);
+            }
+            finally
+            {
+                randomAccessFile.close();
+            }
+        }
+        catch (IOException e)
         {
             throw new ObjectStoreException(e);
         }
     }
 
-    private File getValueFile(String filename)
+    private void replace(File source, File target) throws ObjectStoreException
+    {
+        if (target.exists())
+        {
+            deleteFile(target);
+        }
+        if (!source.renameTo(target))
+        {
+            throw new ObjectStoreException(CoreMessages.createStaticMessage("Renaming "
+                                                                            + source.getAbsolutePath()
+                                                                            + " failed"));
+        }
+    }
+
+    private void closeQuietly(Closeable closeable)
     {
-        return new File(partitionDirectory, filename);
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("error closing partition " + partitionName + " file: " + e.getMessage());
+            }
+        }
     }
 
-    protected File createFileToStoreObject() throws ObjectStoreException
+    protected void createDirectory(File directory) throws ObjectStoreException
     {
-        String filename = org.mule.util.UUID.getUUID() + OBJECT_FILE_EXTENSION;
         try
         {
-            return FileUtils.newFile(partitionDirectory, filename);
+            // To support concurrency we need to check if directory exists again inside
+            // synchronized method
+            if (!directory.exists() && !directory.mkdirs())
+            {
+                Message message = CoreMessages.failedToCreate("object store directory "
+                        + directory.getAbsolutePath());
+                throw new MuleRuntimeException(message);
+            }
         }
-        catch (MuleRuntimeException mre)
+        catch (Exception e)
         {
-            throw new ObjectStoreException(mre);
+            throw new ObjectStoreException(e);
         }
     }
 
@@ -278,35 +683,27 @@ public class PersistentObjectStorePartition<T extends Serializable> implements L
         }
     }
 
-    protected void serialize(File outputFile, StoreValue<T> storeValue) throws ObjectStoreException
+    @SuppressWarnings("unchecked")
+    protected StoreValue<T> deserialize(byte[] data) throws ObjectStoreException
     {
-        FileOutputStream out = null;
         try
         {
-            out = new FileOutputStream(outputFile);
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
-            SerializationUtils.serialize(storeValue, objectOutputStream);
-        }
-        catch (Exception se)
-        {
-            throw new ObjectStoreException(se);
-        }
-        finally
-        {
-            if (out != null)
+            StoreValue<T> storedValue = (StoreValue<T>) SerializationUtils.deserialize(data, muleContext);
+            if (storedValue.getValue() instanceof DeserializationPostInitialisable)
             {
-                try
-                {
-                    out.close();
-                }
-                catch (Exception e)
-                {
-                    logger.warn("error closing file " + outputFile.getAbsolutePath());
-                }
+                DeserializationPostInitialisable.Implementation.init(storedValue.getValue(),muleContext);
             }
+            return storedValue;
+        }
+        catch (Exception e)
+        {
+            throw new ObjectStoreException(e);
         }
     }
 
+    /**
+     * Reads an entry written in its own file by previous versions.
+     */
     @SuppressWarnings("unchecked")
     protected StoreValue<T> deserialize(File file) throws ObjectStoreException
     {
@@ -314,12 +711,7 @@ public class PersistentObjectStorePartition<T extends Serializable> implements L
         try
         {
             objectInputStream = new ObjectInputStream(new FileInputStream(file));
-            StoreValue<T> storedValue = (StoreValue<T>) SerializationUtils.deserialize(objectInputStream, muleContext);
-            if (storedValue.getValue() instanceof DeserializationPostInitialisable)
-            {
-                DeserializationPostInitialisable.Implementation.init(storedValue.getValue(),muleContext);
-            }
-            return storedValue;
+            return (StoreValue<T>) SerializationUtils.deserialize(objectInputStream, muleContext);
         }
         catch (FileNotFoundException e)
         {
@@ -331,60 +723,48 @@ public class PersistentObjectStorePartition<T extends Serializable> implements L
         }
         finally
         {
-            if (objectInputStream != null)
-            {
-                try
-                {
-                    objectInputStream.close();
-                }
-                catch (Exception e)
-                {
-                    logger.warn("error closing opened file " + file.getAbsolutePath());
-                }
-            }
+            closeQuietly(objectInputStream);
         }
     }
 
-    protected void deleteStoreFile(File file) throws ObjectStoreException
+    private void deleteFile(File file) throws ObjectStoreException
     {
-        if (file.exists())
+        if (file.exists() && !file.delete())
         {
-            if (!file.delete())
-            {
-                Message message = CoreMessages.createStaticMessage("Deleting " + file.getAbsolutePath()
-                        + " failed");
-                throw new ObjectStoreException(message);
-            }
-            realKeyToUUIDIndex.removeValue(file.getName());
-        }
-        else
-        {
-            throw new ObjectDoesNotExistException();
+            Message message = CoreMessages.createStaticMessage("Deleting " + file.getAbsolutePath()
+                    + " failed");
+            throw new ObjectStoreException(message);
         }
     }
 
-    private int trimToMaxSize(File[] files, int maxEntries) throws ObjectStoreException
+    public String getPartitionName()
+    {
+        return partitionName;
+    }
+
+    /**
+     * The location of a value in the log and the time it was stored at.
+     */
+    private static class Entry
     {
-        if (maxEntries < 0)
+        private final long offset;
+        private final int length;
+        private final long storedAt;
+
+        Entry(long offset, int length, long storedAt)
         {
-            return 0;
+            this.offset = offset;
+            this.length = length;
+            this.storedAt = storedAt;
         }
-        int expired = 0;
-        int excess = (files.length - maxEntries);
-        if (excess > 0)
+
+        /**
+         * @return the bytes taken in the log, including the length prefix
+         */
+        long size()
         {
-            for (int i = 0; i < excess; i++)
-            {
-                deleteStoreFile(files[i]);
-                expired++;
-            }
+            return 4 + length;
         }
-        return expired;
-    }
-
-    public String getPartitionName()
-    {
-        return partitionName;
     }
 
     public static class StoreValue<T> implements Serializable
@@ -408,4 +788,4 @@ public class PersistentObjectStorePartition<T extends Serializable> implements L
             return value;
         }
     }
-}
\ No newline at end of file
+}
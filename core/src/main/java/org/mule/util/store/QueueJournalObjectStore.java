@@ -0,0 +1,1049 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.util.store;
+
+import org.mule.api.MuleContext;
+import org.mule.api.MuleRuntimeException;
+import org.mule.api.context.MuleContextAware;
+import org.mule.api.store.ListableObjectStore;
+import org.mule.api.store.ObjectDoesNotExistException;
+import org.mule.api.store.ObjectStore;
+import org.mule.api.store.ObjectStoreException;
+import org.mule.config.i18n.CoreMessages;
+import org.mule.util.FileUtils;
+import org.mule.util.SerializationUtils;
+import org.mule.util.concurrent.DaemonThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang.SerializationException;
+
+/**
+ * <p>
+ * An {@link ObjectStore} for Mule's internal queues that appends every entry to a
+ * segmented, memory-mapped journal instead of writing one file per message. Removals
+ * are recorded as tombstones and the oldest segments are compacted in the background
+ * once most of their entries are gone.
+ * </p>
+ * <p>
+ * Writers append under a short lock and then wait for a single flusher thread to force
+ * the journal to disk, so concurrent writes share one sync (group commit). On a clean
+ * {@link #close()} the key index is written to <code>journal.idx</code>; the next
+ * {@link #open()} loads that index instead of scanning the segments. After a crash the
+ * segments are scanned sequentially, reading keys only, and torn records are detected
+ * through their checksum.
+ * </p>
+ * <p>
+ * The journal lives in <code>$MULE_HOME/.mule/queuejournal</code>. To use it, wrap it
+ * in a {@link QueueStoreAdapter} and pass it to a
+ * {@link org.mule.util.queue.QueueConfiguration}, or set the
+ * <code>mule.queue.store.journal</code> system property to make it the default
+ * persistent queue store.
+ * </p>
+ */
+public class QueueJournalObjectStore<T extends Serializable> extends AbstractObjectStore<T>
+    implements ListableObjectStore<T>, MuleContextAware
+{
+    /**
+     * The default directory for the journal, relative to the working directory
+     */
+    public static final String DEFAULT_JOURNAL_DIRECTORY = "queuejournal";
+
+    public static final int DEFAULT_MAX_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    public static final int DEFAULT_COMPACTION_INTERVAL = 10000;
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+    private static final String INDEX_FILE = "journal.idx";
+    private static final int INDEX_MAGIC = 0x4d514a31;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_TOMBSTONE = 2;
+
+    /**
+     * length + crc
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * type + sequence + key length
+     */
+    private static final int BODY_HEADER_SIZE = 13;
+
+    private MuleContext muleContext;
+    private File journalDirectory;
+    private int maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+    private int compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+    private double compactionThreshold = 0.5;
+    private boolean synchronousWrites = true;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // all of the following are guarded by lock
+    private final Map<Serializable, RecordLocation> index = new HashMap<Serializable, RecordLocation>();
+    private final TreeMap<Long, Serializable> keysBySequence = new TreeMap<Long, Serializable>();
+    private final TreeMap<Integer, JournalSegment> segments = new TreeMap<Integer, JournalSegment>();
+    private volatile JournalSegment activeSegment;
+    private long nextSequence;
+    private boolean opened;
+
+    // group commit state, guarded by syncMonitor
+    private final Object syncMonitor = new Object();
+    private long appendedCount;
+    private long syncedCount;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private ScheduledThreadPoolExecutor compactor;
+
+    /**
+     * Default constructor for Spring.
+     */
+    public QueueJournalObjectStore()
+    {
+        super();
+    }
+
+    public QueueJournalObjectStore(MuleContext context)
+    {
+        super();
+        muleContext = context;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isPersistent()
+    {
+        return true;
+    }
+
+    public void open() throws ObjectStoreException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (opened)
+            {
+                return;
+            }
+            initJournalDirectory();
+            if (!journalDirectory.exists() && !journalDirectory.mkdirs())
+            {
+                throw new ObjectStoreException(CoreMessages.failedToCreate("queue journal directory "
+                                                                           + journalDirectory.getAbsolutePath()));
+            }
+            recover();
+            if (activeSegment == null)
+            {
+                activeSegment = createSegment(segments.isEmpty() ? 0 : segments.lastKey() + 1, maxSegmentSize);
+            }
+            opened = true;
+            startBackgroundThreads();
+        }
+        catch (IOException e)
+        {
+            throw new ObjectStoreException(e);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void initJournalDirectory() throws ObjectStoreException
+    {
+        try
+        {
+            String workingDirectory = muleContext.getConfiguration().getWorkingDirectory();
+            String path = workingDirectory + File.separator + DEFAULT_JOURNAL_DIRECTORY;
+            journalDirectory = FileUtils.newFile(path);
+        }
+        catch (MuleRuntimeException mre)
+        {
+            // FileUtils throws a MuleRuntimeException if something goes wrong when creating the
+            // path. To fully conform to the ObjectStore contract we cannot just let it bubble
+            // through but rather catch it and re-throw as ObjectStoreException
+            throw new ObjectStoreException(mre);
+        }
+    }
+
+    private void startBackgroundThreads()
+    {
+        running = true;
+        String threadName = "queue.journal." + (muleContext != null ? muleContext.getConfiguration().getId() : "");
+        flusher = new DaemonThreadFactory(threadName + ".flusher", getClass().getClassLoader()).newThread(new Runnable()
+        {
+            public void run()
+            {
+                flushLoop();
+            }
+        });
+        flusher.start();
+
+        compactor = new ScheduledThreadPoolExecutor(1);
+        compactor.setThreadFactory(new DaemonThreadFactory(threadName + ".compactor", getClass().getClassLoader()));
+        compactor.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    compact();
+                }
+                catch (Exception e)
+                {
+                    logger.warn("Queue journal compaction failed", e);
+                }
+            }
+        }, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() throws ObjectStoreException
+    {
+        running = false;
+        if (compactor != null)
+        {
+            compactor.shutdown();
+        }
+        if (flusher != null)
+        {
+            synchronized (syncMonitor)
+            {
+                syncMonitor.notifyAll();
+            }
+            try
+            {
+                flusher.join(compactionInterval);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            if (!opened)
+            {
+                return;
+            }
+            for (JournalSegment segment : segments.values())
+            {
+                segment.force();
+            }
+            writeIndex();
+            for (JournalSegment segment : segments.values())
+            {
+                segment.close();
+            }
+            segments.clear();
+            index.clear();
+            keysBySequence.clear();
+            activeSegment = null;
+            opened = false;
+        }
+        catch (IOException e)
+        {
+            throw new ObjectStoreException(e);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Serializable> allKeys() throws ObjectStoreException
+    {
+        lock.readLock().lock();
+        try
+        {
+            if (!opened)
+            {
+                return Collections.emptyList();
+            }
+            return new ArrayList<Serializable>(keysBySequence.values());
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean doContains(Serializable key) throws ObjectStoreException
+    {
+        lock.readLock().lock();
+        try
+        {
+            return index.containsKey(key);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doStore(Serializable key, T value) throws ObjectStoreException
+    {
+        byte[] keyBytes = serialize(key);
+        byte[] valueBytes = serialize(value);
+
+        lock.writeLock().lock();
+        try
+        {
+            ensureOpen();
+            long sequence = nextSequence++;
+            RecordLocation location = append(RECORD_PUT, sequence, keyBytes, valueBytes);
+            index.put(key, location);
+            keysBySequence.put(sequence, key);
+        }
+        catch (IOException e)
+        {
+            throw new ObjectStoreException(e);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        awaitSync();
+    }
+
+    @Override
+    protected T doRetrieve(Serializable key) throws ObjectStoreException
+    {
+        return deserialize(readValue(key));
+    }
+
+    @Override
+    protected T doRemove(Serializable key) throws ObjectStoreException
+    {
+        byte[] keyBytes = serialize(key);
+        byte[] valueBytes;
+
+        lock.writeLock().lock();
+        try
+        {
+            RecordLocation location = index.get(key);
+            if (location == null)
+            {
+                throw new ObjectDoesNotExistException();
+            }
+            valueBytes = location.readValue();
+            append(RECORD_TOMBSTONE, location.sequence, keyBytes, new byte[0]);
+            index.remove(key);
+            keysBySequence.remove(location.sequence);
+            location.segment.release(location.length);
+        }
+        catch (IOException e)
+        {
+            throw new ObjectStoreException(e);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        awaitSync();
+        return deserialize(valueBytes);
+    }
+
+    private byte[] readValue(Serializable key) throws ObjectStoreException
+    {
+        lock.readLock().lock();
+        try
+        {
+            RecordLocation location = index.get(key);
+            if (location == null)
+            {
+                throw new ObjectDoesNotExistException();
+            }
+            return location.readValue();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureOpen() throws ObjectStoreException
+    {
+        if (!opened)
+        {
+            throw new ObjectStoreException(CoreMessages.createStaticMessage("Queue journal is not open"));
+        }
+    }
+
+    /**
+     * Appends a record to the active segment, rolling over to a new segment when the
+     * record does not fit. Must be called holding the write lock.
+     */
+    private RecordLocation append(byte type, long sequence, byte[] keyBytes, byte[] valueBytes) throws IOException
+    {
+        int bodyLength = BODY_HEADER_SIZE + keyBytes.length + valueBytes.length;
+        int recordLength = RECORD_HEADER_SIZE + bodyLength;
+
+        if (activeSegment.remaining() < recordLength)
+        {
+            rollSegment(recordLength);
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        body.put(type).putLong(sequence).putInt(keyBytes.length).put(keyBytes).put(valueBytes);
+        crc.update(body.array());
+
+        JournalSegment segment = activeSegment;
+        int offset = segment.writePosition;
+        segment.buffer.position(offset);
+        segment.buffer.putInt(bodyLength);
+        segment.buffer.putInt((int) crc.getValue());
+        segment.buffer.put(body.array());
+        segment.writePosition += recordLength;
+        if (segment.remaining() >= RECORD_HEADER_SIZE)
+        {
+            // marks the end of the journal in case stale bytes follow
+            segment.buffer.putInt(0);
+        }
+
+        synchronized (syncMonitor)
+        {
+            appendedCount++;
+            syncMonitor.notifyAll();
+        }
+
+        if (type == RECORD_PUT)
+        {
+            segment.retain(recordLength);
+            return new RecordLocation(segment, offset, recordLength, sequence, RECORD_HEADER_SIZE
+                                                                              + BODY_HEADER_SIZE
+                                                                              + keyBytes.length);
+        }
+        return null;
+    }
+
+    private void rollSegment(int recordLength) throws IOException
+    {
+        activeSegment.force();
+        int size = Math.max(maxSegmentSize, recordLength + RECORD_HEADER_SIZE);
+        activeSegment = createSegment(activeSegment.id + 1, size);
+    }
+
+    private JournalSegment createSegment(int id, int size) throws IOException
+    {
+        File file = new File(journalDirectory, segmentName(id));
+        JournalSegment segment = new JournalSegment(id, file, size);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Blocks the calling thread until the flusher has forced all records appended so far,
+     * if synchronous writes are enabled.
+     */
+    private void awaitSync() throws ObjectStoreException
+    {
+        if (!synchronousWrites)
+        {
+            return;
+        }
+        synchronized (syncMonitor)
+        {
+            long ticket = appendedCount;
+            while (syncedCount < ticket && running)
+            {
+                try
+                {
+                    syncMonitor.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new ObjectStoreException(e);
+                }
+            }
+        }
+    }
+
+    private void flushLoop()
+    {
+        while (running)
+        {
+            long target;
+            synchronized (syncMonitor)
+            {
+                while (syncedCount >= appendedCount && running)
+                {
+                    try
+                    {
+                        syncMonitor.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+                target = appendedCount;
+            }
+
+            // segments are only forced on roll-over, so anything before the
+            // current active segment is already on disk
+            JournalSegment segment = activeSegment;
+            if (segment != null)
+            {
+                segment.force();
+            }
+
+            synchronized (syncMonitor)
+            {
+                syncedCount = target;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reclaims space by rewriting the oldest segment once its live data drops below the
+     * compaction threshold. Only the oldest segment is compacted so tombstones never
+     * outlive the entries they remove.
+     */
+    protected void compact() throws ObjectStoreException
+    {
+        while (running)
+        {
+            JournalSegment oldest;
+            lock.readLock().lock();
+            try
+            {
+                if (segments.size() < 2)
+                {
+                    return;
+                }
+                oldest = segments.firstEntry().getValue();
+                if (oldest == activeSegment || oldest.liveBytes > oldest.writePosition * compactionThreshold)
+                {
+                    return;
+                }
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+
+            try
+            {
+                copyLiveRecords(oldest);
+                if (!deleteIfEmpty(oldest))
+                {
+                    // still holds entries, so compacting it again would not free anything
+                    return;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new ObjectStoreException(e);
+            }
+        }
+    }
+
+    private void copyLiveRecords(JournalSegment segment) throws IOException
+    {
+        // the segment is no longer written to, but it is unmapped when the journal is
+        // closed, so each record is read under the lock
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= segment.writePosition)
+        {
+            lock.writeLock().lock();
+            try
+            {
+                if (!opened)
+                {
+                    return;
+                }
+                buffer.position(position);
+                int bodyLength = buffer.getInt();
+                buffer.getInt();
+                byte type = buffer.get();
+                long sequence = buffer.getLong();
+                int recordLength = RECORD_HEADER_SIZE + bodyLength;
+
+                if (type == RECORD_PUT)
+                {
+                    Serializable key = keysBySequence.get(sequence);
+                    RecordLocation location = key == null ? null : index.get(key);
+                    if (location != null && location.segment == segment && location.offset == position)
+                    {
+                        RecordLocation moved = append(RECORD_PUT, sequence, serialize(key), location.readValue());
+                        index.put(key, moved);
+                        segment.release(recordLength);
+                    }
+                }
+                position += recordLength;
+            }
+            catch (ObjectStoreException e)
+            {
+                throw new IOException(e.getMessage());
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Deletes the segment if none of its entries is live any more.
+     * 
+     * @return whether the segment was deleted
+     */
+    private boolean deleteIfEmpty(JournalSegment segment) throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (!opened || segment.liveBytes != 0 || segment == activeSegment)
+            {
+                return false;
+            }
+            activeSegment.force();
+            segments.remove(segment.id);
+            segment.close();
+            if (!segment.file.delete())
+            {
+                logger.warn("Could not delete compacted queue journal segment " + segment.file.getAbsolutePath());
+            }
+            else if (logger.isDebugEnabled())
+            {
+                logger.debug("Compacted queue journal segment " + segment.file.getName());
+            }
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException, ObjectStoreException
+    {
+        File[] files = journalDirectory.listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(SEGMENT_EXTENSION);
+            }
+        });
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                int id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+                segments.put(id, new JournalSegment(id, file, (int) file.length()));
+            }
+        }
+
+        File indexFile = new File(journalDirectory, INDEX_FILE);
+        if (!(indexFile.exists() && readIndex(indexFile)))
+        {
+            // discards whatever the index had loaded before failing
+            index.clear();
+            keysBySequence.clear();
+            nextSequence = 0;
+            for (JournalSegment segment : segments.values())
+            {
+                segment.liveBytes = 0;
+                segment.writePosition = 0;
+            }
+            for (JournalSegment segment : segments.values())
+            {
+                scanSegment(segment);
+            }
+        }
+        // the index is only valid until the journal is written to again
+        FileUtils.deleteQuietly(indexFile);
+
+        if (!segments.isEmpty())
+        {
+            activeSegment = segments.lastEntry().getValue();
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Queue journal recovered " + index.size() + " entries from " + segments.size() + " segments");
+        }
+    }
+
+    private void scanSegment(JournalSegment segment) throws ObjectStoreException
+    {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        int capacity = buffer.capacity();
+        while (position + RECORD_HEADER_SIZE <= capacity)
+        {
+            buffer.position(position);
+            int bodyLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (bodyLength < BODY_HEADER_SIZE || bodyLength > capacity - position - RECORD_HEADER_SIZE)
+            {
+                break;
+            }
+            byte[] body = new byte[bodyLength];
+            buffer.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum)
+            {
+                logger.warn("Discarding torn record at offset " + position + " of queue journal segment "
+                            + segment.file.getName());
+                break;
+            }
+
+            ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+            byte type = bodyBuffer.get();
+            long sequence = bodyBuffer.getLong();
+            byte[] keyBytes = new byte[bodyBuffer.getInt()];
+            bodyBuffer.get(keyBytes);
+            Serializable key = (Serializable) deserializeObject(keyBytes);
+            int recordLength = RECORD_HEADER_SIZE + bodyLength;
+
+            RecordLocation previous = index.remove(key);
+            if (previous != null)
+            {
+                keysBySequence.remove(previous.sequence);
+                previous.segment.release(previous.length);
+            }
+            if (type == RECORD_PUT)
+            {
+                index.put(key, new RecordLocation(segment, position, recordLength, sequence, RECORD_HEADER_SIZE
+                                                                                             + BODY_HEADER_SIZE
+                                                                                             + keyBytes.length));
+                keysBySequence.put(sequence, key);
+                segment.retain(recordLength);
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            position += recordLength;
+        }
+        segment.writePosition = position;
+    }
+
+    private boolean readIndex(File indexFile)
+    {
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != INDEX_MAGIC)
+            {
+                return false;
+            }
+            nextSequence = in.readLong();
+            int segmentCount = in.readInt();
+            for (int i = 0; i < segmentCount; i++)
+            {
+                JournalSegment segment = segments.get(in.readInt());
+                if (segment == null)
+                {
+                    return false;
+                }
+                segment.writePosition = in.readInt();
+            }
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++)
+            {
+                JournalSegment segment = segments.get(in.readInt());
+                int offset = in.readInt();
+                int length = in.readInt();
+                int valueOffset = in.readInt();
+                long sequence = in.readLong();
+                byte[] keyBytes = new byte[in.readInt()];
+                in.readFully(keyBytes);
+                if (segment == null)
+                {
+                    return false;
+                }
+                Serializable key = (Serializable) deserializeObject(keyBytes);
+                index.put(key, new RecordLocation(segment, offset, length, sequence, valueOffset));
+                keysBySequence.put(sequence, key);
+                segment.liveBytes += length;
+            }
+            return true;
+        }
+        catch (Exception e)
+        {
+            logger.warn("Could not read queue journal index, scanning segments instead", e);
+            return false;
+        }
+        finally
+        {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeIndex() throws IOException, ObjectStoreException
+    {
+        File tempFile = new File(journalDirectory, INDEX_FILE + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try
+        {
+            out.writeInt(INDEX_MAGIC);
+            out.writeLong(nextSequence);
+            out.writeInt(segments.size());
+            for (JournalSegment segment : segments.values())
+            {
+                out.writeInt(segment.id);
+                out.writeInt(segment.writePosition);
+            }
+            out.writeInt(index.size());
+            for (Map.Entry<Serializable, RecordLocation> entry : index.entrySet())
+            {
+                RecordLocation location = entry.getValue();
+                byte[] keyBytes = serialize(entry.getKey());
+                out.writeInt(location.segment.id);
+                out.writeInt(location.offset);
+                out.writeInt(location.length);
+                out.writeInt(location.valueOffset);
+                out.writeLong(location.sequence);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        File indexFile = new File(journalDirectory, INDEX_FILE);
+        if (!tempFile.renameTo(indexFile))
+        {
+            FileUtils.deleteQuietly(tempFile);
+            logger.warn("Could not write queue journal index, the next start will scan all segments");
+        }
+    }
+
+    private byte[] serialize(Serializable object) throws ObjectStoreException
+    {
+        try
+        {
+            return SerializationUtils.serialize(object);
+        }
+        catch (SerializationException se)
+        {
+            throw new ObjectStoreException(se);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T deserialize(byte[] bytes) throws ObjectStoreException
+    {
+        return (T) deserializeObject(bytes);
+    }
+
+    private Object deserializeObject(byte[] bytes) throws ObjectStoreException
+    {
+        try
+        {
+            return SerializationUtils.deserialize(bytes, muleContext);
+        }
+        catch (SerializationException se)
+        {
+            throw new ObjectStoreException(se);
+        }
+    }
+
+    private void closeQuietly(DataInputStream in)
+    {
+        if (in != null)
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException e)
+            {
+                // ignore
+            }
+        }
+    }
+
+    private static String segmentName(int id)
+    {
+        return String.format("%010d%s", id, SEGMENT_EXTENSION);
+    }
+
+    public void setMuleContext(MuleContext context)
+    {
+        muleContext = context;
+    }
+
+    public void setMaxSegmentSize(int maxSegmentSize)
+    {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    public void setCompactionInterval(int compactionInterval)
+    {
+        this.compactionInterval = compactionInterval;
+    }
+
+    public void setCompactionThreshold(double compactionThreshold)
+    {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * When <code>false</code> store and remove return as soon as the record has been
+     * appended and the journal is forced to disk in the background.
+     */
+    public void setSynchronousWrites(boolean synchronousWrites)
+    {
+        this.synchronousWrites = synchronousWrites;
+    }
+
+    /**
+     * Where a live entry sits in the journal
+     */
+    private static class RecordLocation
+    {
+        final JournalSegment segment;
+        final int offset;
+        final int length;
+        final long sequence;
+        final int valueOffset;
+
+        RecordLocation(JournalSegment segment, int offset, int length, long sequence, int valueOffset)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.sequence = sequence;
+            this.valueOffset = valueOffset;
+        }
+
+        byte[] readValue()
+        {
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset + valueOffset);
+            byte[] value = new byte[length - valueOffset];
+            buffer.get(value);
+            return value;
+        }
+    }
+
+    /**
+     * A single memory-mapped journal file
+     */
+    private static class JournalSegment
+    {
+        final int id;
+        final File file;
+        final RandomAccessFile randomAccessFile;
+        final MappedByteBuffer buffer;
+        int writePosition;
+        int liveBytes;
+        private boolean closed;
+
+        JournalSegment(int id, File file, int size) throws IOException
+        {
+            this.id = id;
+            this.file = file;
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            if (randomAccessFile.length() < size)
+            {
+                randomAccessFile.setLength(size);
+            }
+            this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        int remaining()
+        {
+            return buffer.capacity() - writePosition;
+        }
+
+        void retain(int length)
+        {
+            liveBytes += length;
+        }
+
+        void release(int length)
+        {
+            liveBytes -= length;
+        }
+
+        /**
+         * Forces the segment to disk unless it has been closed, so that the flusher
+         * never touches an unmapped buffer
+         */
+        synchronized void force()
+        {
+            if (!closed)
+            {
+                buffer.force();
+            }
+        }
+
+        synchronized void close() throws IOException
+        {
+            closed = true;
+            unmap(buffer);
+            randomAccessFile.close();
+        }
+
+        /**
+         * Releases the mapping right away instead of when the buffer is garbage
+         * collected, which also lets the file be deleted on Windows
+         */
+        private static void unmap(MappedByteBuffer buffer)
+        {
+            try
+            {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null)
+                {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+            catch (Exception e)
+            {
+                // not available on this JVM, the mapping is released by the garbage collector
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.util.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings that grows with the number of keys added to it. It answers
+ * whether a key may have been added, with no false negatives and a bounded rate of
+ * false positives, using a few bits per key.
+ * <p/>
+ * Keys go into a series of filters: once the last one holds as many keys as it was sized
+ * for, a new one twice as large and with half the false positive rate is added, so the
+ * overall rate stays close to the configured one however many keys are added. Adding and
+ * looking up keys is thread-safe and lock-free, except when a new filter is created.
+ */
+public class ScalableBloomFilter
+{
+    private static final double LN2 = Math.log(2);
+
+    private final int initialCapacity;
+    private final double falsePositiveRate;
+    private volatile Stage[] stages;
+
+    /**
+     * @param initialCapacity the number of keys the first filter is sized for
+     * @param falsePositiveRate the expected rate of keys wrongly reported as added
+     */
+    public ScalableBloomFilter(int initialCapacity, double falsePositiveRate)
+    {
+        if (initialCapacity <= 0)
+        {
+            throw new IllegalArgumentException("initialCapacity must be positive: " + initialCapacity);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+        {
+            throw new IllegalArgumentException("falsePositiveRate out of range: " + falsePositiveRate);
+        }
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+        // the rates of the filters are halved each time, so that their sum stays within
+        // the overall rate
+        this.stages = new Stage[]{new Stage(initialCapacity, falsePositiveRate / 2)};
+    }
+
+    /**
+     * @return false if the key has certainly not been added, true if it may have been
+     */
+    public boolean mightContain(String key)
+    {
+        long hash = hash(key);
+        for (Stage stage : stages)
+        {
+            if (stage.mightContain(hash))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a key to the filter.
+     *
+     * @return false if the key may already have been added
+     */
+    public boolean add(String key)
+    {
+        long hash = hash(key);
+        Stage[] current = stages;
+        for (Stage stage : current)
+        {
+            if (stage.mightContain(hash))
+            {
+                return false;
+            }
+        }
+        Stage last = current[current.length - 1];
+        last.add(hash);
+        if (last.count.incrementAndGet() == last.capacity)
+        {
+            grow(current);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of keys added, not counting those reported as already added
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Stage stage : stages)
+        {
+            size += stage.count.get();
+        }
+        return size;
+    }
+
+    /**
+     * @return the memory taken by the bits of the filters, in bytes
+     */
+    public long getSizeInBytes()
+    {
+        long bytes = 0;
+        for (Stage stage : stages)
+        {
+            bytes += stage.bits.length() * 8L;
+        }
+        return bytes;
+    }
+
+    public synchronized void clear()
+    {
+        stages = new Stage[]{new Stage(initialCapacity, falsePositiveRate / 2)};
+    }
+
+    private synchronized void grow(Stage[] current)
+    {
+        if (stages != current)
+        {
+            return;
+        }
+        Stage last = current[current.length - 1];
+        Stage[] grown = new Stage[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = new Stage((int) Math.min(Integer.MAX_VALUE / 2, last.capacity * 2L),
+            last.falsePositiveRate / 2);
+        stages = grown;
+    }
+
+    /**
+     * A 64 bit hash of the characters of the key, the two halves being used as the two
+     * independent hashes from which the bit positions are derived.
+     */
+    private static long hash(String key)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++)
+        {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // final mix so that the low and high halves do not depend on each other
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Stage
+    {
+        private final int capacity;
+        private final double falsePositiveRate;
+        private final int hashes;
+        private final long bitCount;
+        private final AtomicLongArray bits;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Stage(int capacity, double falsePositiveRate)
+        {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+            this.bitCount = Math.max(64, (optimalBits + 63) & ~63L);
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * LN2));
+            this.bits = new AtomicLongArray((int) (bitCount >>> 6));
+        }
+
+        boolean mightContain(long hash)
+        {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++)
+            {
+                long bit = index(h1 + i * h2);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(long hash)
+        {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++)
+            {
+                long bit = index(h1 + i * h2);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                while (true)
+                {
+                    long value = bits.get(word);
+                    if ((value & mask) != 0 || bits.compareAndSet(word, value, value | mask))
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+
+        private long index(int combinedHash)
+        {
+            return (combinedHash & 0x7fffffffL) % bitCount;
+        }
+    }
+}
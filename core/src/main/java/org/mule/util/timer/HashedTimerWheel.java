@@ -0,0 +1,299 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.util.timer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * <code>HashedTimerWheel</code> keeps a large number of timeouts and finds the expired
+ * ones without looking at the others. Time is divided into ticks and every timeout is put
+ * in the bucket of the tick its deadline falls in, buckets being reused once per
+ * revolution of the wheel. Scheduling and cancelling are constant time, and advancing the
+ * wheel only looks at the buckets of the ticks that have passed.
+ * <p/>
+ * The wheel has no thread of its own: the owner calls {@link #expire(Collection)}
+ * periodically, ideally once per tick, and handles the expired tasks. Timeouts may be
+ * scheduled and cancelled from any thread, but only one thread at a time should call
+ * <code>expire</code>. A timeout is reported at most one tick after its deadline,
+ * provided the wheel is advanced on time.
+ */
+public class HashedTimerWheel<T>
+{
+    private final long tickNanos;
+    private final long startTime;
+    private final int mask;
+    private final Bucket<T>[] buckets;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // last tick whose bucket has been processed, only advanced while holding that bucket's lock
+    private volatile long processedTick = -1;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel)
+    {
+        if (tickDuration <= 0)
+        {
+            throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30)
+        {
+            throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+        }
+        int size = 1;
+        while (size < ticksPerWheel)
+        {
+            size <<= 1;
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.startTime = System.nanoTime();
+        this.mask = size - 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++)
+        {
+            buckets[i] = new Bucket<T>();
+        }
+    }
+
+    /**
+     * Schedules a task to expire after the given delay.
+     */
+    public Timeout<T> schedule(T task, long delay, TimeUnit unit)
+    {
+        return scheduleAt(task, System.nanoTime() + unit.toNanos(delay));
+    }
+
+    /**
+     * Schedules a task to expire at the given {@link System#nanoTime()}.
+     */
+    public Timeout<T> scheduleAt(T task, long deadline)
+    {
+        Timeout<T> timeout = new Timeout<T>(this, task, deadline);
+        long deadlineTick = tickOf(deadline);
+        pending.incrementAndGet();
+        while (true)
+        {
+            // a deadline that has passed goes in the next bucket to be processed
+            long tick = Math.max(deadlineTick, processedTick + 1);
+            Bucket<T> bucket = buckets[(int) (tick & mask)];
+            synchronized (bucket)
+            {
+                if (processedTick < tick)
+                {
+                    bucket.timeouts.add(timeout);
+                    return timeout;
+                }
+            }
+            // the wheel moved past the bucket meanwhile, try again
+        }
+    }
+
+    /**
+     * Removes the timeouts that have expired by now.
+     *
+     * @param expired receives the tasks of the expired timeouts, in no particular order
+     * @return the number of expired timeouts
+     */
+    public int expire(Collection<? super T> expired)
+    {
+        return expire(System.nanoTime(), expired);
+    }
+
+    /**
+     * Removes the timeouts that have expired by the given {@link System#nanoTime()}.
+     */
+    public int expire(long now, Collection<? super T> expired)
+    {
+        // a tick is processed once it has completely passed, so that every timeout in
+        // its bucket for this revolution is due
+        long currentTick = tickOf(now) - 1;
+        long from = processedTick + 1;
+        if (currentTick < from)
+        {
+            return 0;
+        }
+        // after a long pause every bucket is visited only once
+        from = Math.max(from, currentTick - mask);
+
+        int count = 0;
+        for (long tick = from; tick <= currentTick; tick++)
+        {
+            Bucket<T> bucket = buckets[(int) (tick & mask)];
+            synchronized (bucket)
+            {
+                processedTick = tick;
+                count += bucket.expire(currentTick, expired);
+            }
+        }
+        pending.addAndGet(-count);
+        return count;
+    }
+
+    /**
+     * @return the tasks that have expired by now
+     */
+    public List<T> expire()
+    {
+        List<T> expired = new ArrayList<T>();
+        expire(expired);
+        return expired;
+    }
+
+    /**
+     * @return the number of scheduled timeouts that have not expired nor been cancelled
+     */
+    public int size()
+    {
+        return pending.get();
+    }
+
+    /**
+     * Cancels all the timeouts.
+     */
+    public void clear()
+    {
+        for (Bucket<T> bucket : buckets)
+        {
+            List<Timeout<T>> timeouts;
+            synchronized (bucket)
+            {
+                timeouts = new ArrayList<Timeout<T>>(bucket.timeouts);
+            }
+            for (Timeout<T> timeout : timeouts)
+            {
+                timeout.cancel();
+            }
+        }
+    }
+
+    public long getTickDuration(TimeUnit unit)
+    {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private long tickOf(long time)
+    {
+        long elapsed = time - startTime;
+        return elapsed <= 0 ? 0 : elapsed / tickNanos;
+    }
+
+    private static class Bucket<T>
+    {
+        private final List<Timeout<T>> timeouts = new ArrayList<Timeout<T>>();
+
+        /**
+         * Moves out the timeouts due by the given tick and drops the cancelled ones,
+         * keeping those that belong to a later revolution.
+         */
+        int expire(long currentTick, Collection<? super T> expired)
+        {
+            int count = 0;
+            int kept = 0;
+            for (int i = 0; i < timeouts.size(); i++)
+            {
+                Timeout<T> timeout = timeouts.get(i);
+                if (timeout.isCancelled())
+                {
+                    continue;
+                }
+                if (timeout.wheel.tickOf(timeout.deadline) <= currentTick)
+                {
+                    if (timeout.markExpired())
+                    {
+                        expired.add(timeout.task);
+                        count++;
+                    }
+                    continue;
+                }
+                timeouts.set(kept++, timeout);
+            }
+            for (int i = timeouts.size() - 1; i >= kept; i--)
+            {
+                timeouts.remove(i);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A handle to a scheduled task, which can be used to cancel it.
+     */
+    public static class Timeout<T>
+    {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(
+            Timeout.class, "state");
+
+        private final HashedTimerWheel<T> wheel;
+        private final T task;
+        private final long deadline;
+        private volatile int state = PENDING;
+
+        Timeout(HashedTimerWheel<T> wheel, T task, long deadline)
+        {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public T getTask()
+        {
+            return task;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} the task is due at
+         */
+        public long getDeadline()
+        {
+            return deadline;
+        }
+
+        /**
+         * Cancels the timeout. The wheel forgets about it the next time its bucket is
+         * processed.
+         *
+         * @return false if it had already expired or been cancelled
+         */
+        public boolean cancel()
+        {
+            if (STATE.compareAndSet(this, PENDING, CANCELLED))
+            {
+                wheel.pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled()
+        {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired()
+        {
+            return state == EXPIRED;
+        }
+
+        boolean markExpired()
+        {
+            return STATE.compareAndSet(this, PENDING, EXPIRED);
+        }
+    }
+}
@@ -11,6 +11,7 @@
 package org.mule;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -31,6 +32,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import javax.activation.DataHandler;
 
@@ -82,6 +84,53 @@ public class DefaultMuleMessageTestCase extends AbstractMuleContextTestCase
         assertOutboundMessageProperty("MuleMessage", message);
     }
 
+    @Test
+    public void testCopiedMessagePropertiesAreIndependent()
+    {
+        Map<String, Object> inbound = new HashMap<String, Object>();
+        inbound.put("Inbound", "Inbound");
+        DefaultMuleMessage original = new DefaultMuleMessage(TEST_MESSAGE, inbound, null, null, muleContext);
+        original.setOutboundProperty("Shared", "Shared");
+
+        MuleMessage copy = new DefaultMuleMessage(original);
+        copy.setOutboundProperty("Copy", "Copy");
+        original.setOutboundProperty("Original", "Original");
+        original.removeProperty("Shared", PropertyScope.OUTBOUND);
+
+        assertOutboundMessageProperty("Shared", copy);
+        assertOutboundMessageProperty("Copy", copy);
+        assertNull(copy.getOutboundProperty("Original"));
+        assertNull(original.getOutboundProperty("Copy"));
+        assertNull(original.getOutboundProperty("Shared"));
+        assertEquals("Inbound", copy.getInboundProperty("inbound"));
+        assertTrue(copy.getPropertyNames().contains("Inbound"));
+        assertTrue(copy.getPropertyNames().contains("Shared"));
+    }
+
+    @Test
+    public void testCopiedMessagesSerializedTogetherAreIndependent() throws Exception
+    {
+        DefaultMuleMessage original = new DefaultMuleMessage(TEST_MESSAGE, muleContext);
+        original.setOutboundProperty("Shared", "Shared");
+        MuleMessage copy = new DefaultMuleMessage(original, null, null, null, muleContext);
+
+        // both messages in one stream, so that the shared property maps are written once
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(new MuleMessage[]{original, copy});
+        oos.flush();
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        MuleMessage[] deserialized = (MuleMessage[]) ois.readObject();
+
+        deserialized[0].setOutboundProperty("Original", "Original");
+        Set<String> copyNames = deserialized[1].getPropertyNames(PropertyScope.OUTBOUND);
+        deserialized[1].setOutboundProperty("Copy", "Copy");
+
+        assertNull(deserialized[1].getOutboundProperty("Original"));
+        assertNull(deserialized[0].getOutboundProperty("Copy"));
+        assertFalse(copyNames.contains("Copy"));
+    }
+
     //
     // ctor with message properties
     //
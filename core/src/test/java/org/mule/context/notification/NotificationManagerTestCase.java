@@ -10,12 +10,29 @@
 
 package org.mule.context.notification;
 
+import org.mule.api.MuleContext;
+import org.mule.api.context.WorkManager;
+import org.mule.api.context.notification.ServerNotification;
 import org.mule.tck.junit4.AbstractMuleTestCase;
 import org.mule.tck.size.SmallTest;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.resource.spi.work.ExecutionContext;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkListener;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
@@ -183,6 +200,173 @@ public class NotificationManagerTestCase extends AbstractMuleTestCase
         assertTrue(listener2.isNotified());
     }
 
+    @Test
+    public void testNotificationsDroppedWhenQueueFull() throws Exception
+    {
+        registerDefaultEvents();
+        registerDefaultListeners();
+        useMockMuleContext();
+        manager.setNotificationQueueCapacity(4);
+        manager.setOverflowPolicy(ServerNotificationManager.OverflowPolicy.DROP);
+        for (int i = 0; i < 10; i++)
+        {
+            manager.fireNotification(new SubEvent1());
+        }
+        assertEquals(4, manager.getQueuedNotifications());
+        assertEquals(6, manager.getDroppedNotifications());
+    }
+
+    @Test
+    public void testSampledNotificationsDroppedBeforeStart() throws Exception
+    {
+        registerDefaultEvents();
+        registerDefaultListeners();
+        useMockMuleContext();
+        manager.setNotificationQueueCapacity(4);
+        manager.setOverflowPolicy(ServerNotificationManager.OverflowPolicy.SAMPLE);
+        for (int i = 0; i < 10; i++)
+        {
+            manager.fireNotification(new SubEvent1());
+        }
+        // nothing drains the queue yet, so even the sampled ones cannot wait for it
+        assertEquals(6, manager.getDroppedNotifications());
+    }
+
+    @Test
+    public void testQueuedNotificationsFannedOutByType() throws Exception
+    {
+        final CountDownLatch delivered = new CountDownLatch(2000);
+        final List<ServerNotification> received = new CopyOnWriteArrayList<ServerNotification>();
+        manager.addInterfaceToType(Listener1.class, SubEvent1.class);
+        manager.addInterfaceToType(Listener2.class, Event2.class);
+        manager.addListener(new Listener1()
+        {
+            @Override
+            public void onNotification(ServerNotification notification)
+            {
+                received.add(notification);
+                delivered.countDown();
+            }
+        });
+        manager.addListener(new Listener2()
+        {
+            @Override
+            public void onNotification(ServerNotification notification)
+            {
+                delivered.countDown();
+            }
+        });
+        manager.setNotificationQueueCapacity(16);
+        manager.setDispatcherThreads(2);
+        startManager();
+        try
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                manager.fireNotification(new SubEvent1(String.valueOf(i)));
+                manager.fireNotification(new Event2());
+            }
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            assertEquals(0, manager.getDroppedNotifications());
+            assertEquals(2000, manager.getDispatchedNotifications());
+            for (int i = 0; i < 1000; i++)
+            {
+                assertEquals(String.valueOf(i), received.get(i).getResourceIdentifier());
+            }
+        }
+        finally
+        {
+            manager.dispose();
+        }
+    }
+
+    @Test
+    public void testQueueAndDispatchersConfiguredOnceStarted() throws Exception
+    {
+        final CountDownLatch delivered = new CountDownLatch(200);
+        manager.addInterfaceToType(Listener1.class, SubEvent1.class);
+        manager.addInterfaceToType(Listener2.class, Event2.class);
+        manager.addListener(new Listener1()
+        {
+            @Override
+            public void onNotification(ServerNotification notification)
+            {
+                delivered.countDown();
+            }
+        });
+        manager.addListener(new Listener2()
+        {
+            @Override
+            public void onNotification(ServerNotification notification)
+            {
+                delivered.countDown();
+            }
+        });
+        // the context starts the manager before the configuration is applied
+        WorkManager workManager = startManager();
+        try
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                manager.fireNotification(new SubEvent1());
+                manager.fireNotification(new Event2());
+            }
+            manager.setNotificationQueueCapacity(64);
+            manager.setDispatcherThreads(2);
+            for (int i = 0; i < 50; i++)
+            {
+                manager.fireNotification(new SubEvent1());
+                manager.fireNotification(new Event2());
+            }
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            assertEquals(64, manager.getNotificationQueueCapacity());
+            assertEquals(200, manager.getDispatchedNotifications());
+            // the manager's own work and the two dispatchers
+            Mockito.verify(workManager, Mockito.times(3)).scheduleWork(Mockito.any(Work.class),
+                Mockito.anyLong(), Mockito.any(ExecutionContext.class), Mockito.any(WorkListener.class));
+
+            manager.setDispatcherThreads(0);
+            manager.fireNotification(new Event2());
+            long deadline = System.currentTimeMillis() + 10000;
+            while (manager.getDispatchedNotifications() < 201 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            assertEquals(201, manager.getDispatchedNotifications());
+        }
+        finally
+        {
+            manager.dispose();
+        }
+    }
+
+    private void useMockMuleContext()
+    {
+        MuleContext muleContext = Mockito.mock(MuleContext.class, Answers.RETURNS_DEEP_STUBS.get());
+        Mockito.when(muleContext.getConfiguration().getDefaultQueueTimeout()).thenReturn(100);
+        manager.setMuleContext(muleContext);
+    }
+
+    private WorkManager startManager() throws Exception
+    {
+        useMockMuleContext();
+        WorkManager workManager = Mockito.mock(WorkManager.class);
+        Mockito.doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                Thread thread = new Thread((Work) invocation.getArguments()[0]);
+                thread.setDaemon(true);
+                thread.start();
+                return null;
+            }
+        }).when(workManager).scheduleWork(Mockito.any(Work.class), Mockito.anyLong(),
+            Mockito.any(ExecutionContext.class), Mockito.any(WorkListener.class));
+        manager.start(workManager, null);
+        return workManager;
+    }
+
     protected void assertNoListenersNotified()
     {
         assertFalse(listener1.isNotified());
@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.context.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+@SmallTest
+public class NotificationRingBufferTestCase extends AbstractMuleTestCase
+{
+
+    @Test
+    public void keepsOrderAndRejectsWhenFull() throws Exception
+    {
+        NotificationRingBuffer<Integer> buffer = new NotificationRingBuffer<Integer>(3);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(4));
+
+        List<Integer> batch = new ArrayList<Integer>();
+        assertEquals(3, buffer.drainTo(batch, 3));
+        assertEquals(3, batch.size());
+        assertEquals(Integer.valueOf(1), batch.get(0));
+        assertEquals(Integer.valueOf(4), buffer.poll());
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void concurrentProducersLoseNothing() throws Exception
+    {
+        final NotificationRingBuffer<String> buffer = new NotificationRingBuffer<String>(64);
+        final int perThread = 20000;
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++)
+        {
+            final int id = t;
+            producers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < perThread; i++)
+                    {
+                        while (!buffer.offer(id + "-" + i))
+                        {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            producers[t].start();
+        }
+
+        Set<String> received = new HashSet<String>();
+        int[] lastSeen = new int[producers.length];
+        Arrays.fill(lastSeen, -1);
+        List<String> batch = new ArrayList<String>();
+        long deadline = System.currentTimeMillis() + 30000;
+        while (received.size() < producers.length * perThread && System.currentTimeMillis() < deadline)
+        {
+            if (buffer.drainTo(batch, 100) == 0)
+            {
+                buffer.awaitElements(10, TimeUnit.MILLISECONDS);
+            }
+            for (String element : batch)
+            {
+                String[] parts = element.split("-");
+                int producer = Integer.parseInt(parts[0]);
+                int sequence = Integer.parseInt(parts[1]);
+                // each producer's elements come out in the order they went in
+                assertTrue(sequence > lastSeen[producer]);
+                lastSeen[producer] = sequence;
+                received.add(element);
+            }
+            batch.clear();
+        }
+        assertEquals(producers.length * perThread, received.size());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.el.mvel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import org.junit.Test;
+import org.mvel2.ParserContext;
+
+@SmallTest
+public class CompiledExpressionCacheTestCase extends AbstractMuleTestCase
+{
+
+    @Test
+    public void countsHitsAndMisses()
+    {
+        CompiledExpressionCache cache = new CompiledExpressionCache(10);
+        Object context = new Object();
+
+        assertNull(cache.get(context, "payload"));
+        assertEquals("compiled", cache.putIfAbsent(context, "payload", "compiled"));
+        assertEquals("compiled", cache.get(context, "payload"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void keepsFirstCompiledExpression()
+    {
+        CompiledExpressionCache cache = new CompiledExpressionCache(10);
+        Object context = new Object();
+        String first = "first";
+
+        assertSame(first, cache.putIfAbsent(context, "payload", first));
+        assertSame(first, cache.putIfAbsent(context, "payload", "second"));
+    }
+
+    @Test
+    public void keysOnParserContextIdentity()
+    {
+        CompiledExpressionCache cache = new CompiledExpressionCache(10);
+        cache.putIfAbsent(new ParserContext(), "payload", "compiled");
+
+        assertNull(cache.get(new ParserContext(), "payload"));
+    }
+
+    @Test
+    public void evictsWhenFull()
+    {
+        CompiledExpressionCache cache = new CompiledExpressionCache(100);
+        Object context = new Object();
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.putIfAbsent(context, "expression" + i, "compiled" + i);
+        }
+
+        assertTrue(cache.size() <= cache.getMaxSize());
+        assertEquals(1000 - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed()
+    {
+        CompiledExpressionCache cache = new CompiledExpressionCache(2);
+        Object context = new Object();
+        cache.putIfAbsent(context, "a", "A");
+        cache.putIfAbsent(context, "b", "B");
+        cache.get(context, "a");
+        cache.putIfAbsent(context, "c", "C");
+
+        assertEquals("A", cache.get(context, "a"));
+        assertNull(cache.get(context, "b"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void executorUsesCache()
+    {
+        MVELExpressionExecutor executor = new MVELExpressionExecutor(new ParserContext());
+        executor.execute("2*2", null);
+        executor.execute("2*2", null);
+
+        CompiledExpressionCache cache = executor.getCompiledExpressionsCache();
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+}
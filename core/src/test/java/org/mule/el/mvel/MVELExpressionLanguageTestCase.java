@@ -365,6 +365,18 @@ public class MVELExpressionLanguageTestCase extends AbstractMuleContextTestCase
 
     }
 
+    @Test
+    public void precompile()
+    {
+        int compiled = mvel.precompile(Arrays.asList("#[2*2]", "prefix #['a'] and #[3+3]", "no expression", "#[2*'2]"));
+
+        assertEquals(3, compiled);
+        assertEquals(3, mvel.getCompiledExpressionCache().size());
+        mvel.getCompiledExpressionCache().resetStatistics();
+        evaluate("2*2");
+        assertEquals(0, mvel.getCompiledExpressionCache().getMisses());
+    }
+
     static class DummyExpressionLanguageExtension implements ExpressionLanguageExtension
     {
         @Override
@@ -0,0 +1,166 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.el.mvel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.api.MuleEvent;
+import org.mule.api.el.ExpressionLanguageContext;
+import org.mule.api.el.ExpressionLanguageExtension;
+import org.mule.api.el.ExpressionLanguageFunction;
+import org.mule.api.expression.ExpressionRuntimeException;
+import org.mule.tck.junit4.AbstractMuleContextTestCase;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReusableEventContextTestCase extends AbstractMuleContextTestCase
+{
+    private static final Log logger = LogFactory.getLog(ReusableEventContextTestCase.class);
+
+    private static final int EVALUATIONS = 20000;
+
+    private MVELExpressionLanguage mvel;
+    private MuleEvent nestedEvent;
+
+    @Before
+    public void setupMVEL() throws Exception
+    {
+        muleContext.getRegistry().registerObject("nestedExtension", new ExpressionLanguageExtension()
+        {
+            @Override
+            public void configureContext(ExpressionLanguageContext context)
+            {
+                context.declareFunction("nested", new ExpressionLanguageFunction()
+                {
+                    @Override
+                    public Object call(Object[] params, ExpressionLanguageContext context)
+                    {
+                        return mvel.evaluate("payload", nestedEvent);
+                    }
+                });
+            }
+        });
+        mvel = new MVELExpressionLanguage(muleContext);
+        mvel.initialise();
+    }
+
+    @Test
+    public void rebindsToEachEvent() throws Exception
+    {
+        MuleEvent first = getTestEvent("first");
+        MuleEvent second = getTestEvent("second");
+
+        assertEquals("first", mvel.evaluate("payload", first));
+        assertEquals("second", mvel.evaluate("payload", second));
+        assertEquals("first", mvel.evaluate("message.payload", first));
+        assertNotSame(mvel.evaluate("message", first), mvel.evaluate("message", first));
+    }
+
+    @Test
+    public void flowVarsFollowEvent() throws Exception
+    {
+        MuleEvent first = getTestEvent("");
+        first.getMessage().setInvocationProperty("foo", "bar");
+        MuleEvent second = getTestEvent("");
+
+        assertEquals("bar", mvel.evaluate("flowVars['foo']", first));
+        assertEquals("bar", mvel.evaluate("foo", first));
+        assertEquals(null, mvel.evaluate("flowVars['foo']", second));
+    }
+
+    @Test
+    public void payloadAssignmentUpdatesMessage() throws Exception
+    {
+        MuleEvent event = getTestEvent("before");
+
+        mvel.evaluate("payload = 'after'", event);
+
+        assertEquals("after", event.getMessage().getPayload());
+        assertEquals("after", mvel.evaluate("payload", event));
+    }
+
+    @Test(expected = ExpressionRuntimeException.class)
+    public void localVariablesAreNotKept() throws Exception
+    {
+        MuleEvent event = getTestEvent("");
+        assertEquals(1, mvel.evaluate("local = 1; local", event));
+
+        mvel.evaluate("local", event);
+    }
+
+    @Test
+    public void nestedEvaluation() throws Exception
+    {
+        nestedEvent = getTestEvent("inner");
+
+        assertEquals("innerouter", mvel.evaluate("nested() + payload", getTestEvent("outer")));
+    }
+
+    @Test
+    public void allocationPerEvaluation() throws Exception
+    {
+        MuleEvent event = getTestEvent("payload");
+        Map<String, Object> noVars = Collections.emptyMap();
+
+        // an empty variables map takes the path that builds a new resolver chain each time
+        long fresh = allocatedPerEvaluation(event, noVars);
+        long reused = allocatedPerEvaluation(event, null);
+
+        if (fresh >= 0)
+        {
+            logger.info(String.format("Bytes allocated per evaluation of 'payload': new chain %d, reused chain %d",
+                fresh, reused));
+            assertTrue(reused < fresh);
+        }
+    }
+
+    private long allocatedPerEvaluation(MuleEvent event, Map<String, Object> vars) throws Exception
+    {
+        for (int i = 0; i < EVALUATIONS; i++)
+        {
+            mvel.evaluate("payload", event, vars);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < EVALUATIONS; i++)
+        {
+            mvel.evaluate("payload", event, vars);
+        }
+        long after = allocatedBytes();
+        return before < 0 ? -1 : (after - before) / EVALUATIONS;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread, or -1 if the JVM does not tell
+     */
+    private long allocatedBytes()
+    {
+        try
+        {
+            Class<?> beanType = Class.forName("com.sun.management.ThreadMXBean");
+            Method method = beanType.getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+        }
+        catch (Exception e)
+        {
+            return -1;
+        }
+    }
+}
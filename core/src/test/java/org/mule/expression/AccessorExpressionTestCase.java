@@ -0,0 +1,118 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.expression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.mule.DefaultMuleMessage;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleMessage;
+import org.mule.api.transport.PropertyScope;
+import org.mule.tck.junit4.AbstractMuleContextTestCase;
+import org.mule.transport.NullPayload;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class AccessorExpressionTestCase extends AbstractMuleContextTestCase
+{
+
+    @Test
+    public void recognisesAccessors()
+    {
+        assertNotNull(AccessorExpression.parse("payload"));
+        assertNotNull(AccessorExpression.parse(" message.payload "));
+        assertNotNull(AccessorExpression.parse("flowVars.foo"));
+        assertNotNull(AccessorExpression.parse("flowVars['foo']"));
+        assertNotNull(AccessorExpression.parse("sessionVars[\"foo bar\"]"));
+        assertNotNull(AccessorExpression.parse("message.inboundProperties['x']"));
+        assertNotNull(AccessorExpression.parse("message.outboundProperties.x"));
+    }
+
+    @Test
+    public void rejectsOtherExpressions()
+    {
+        assertNull(AccessorExpression.parse("payload.foo"));
+        assertNull(AccessorExpression.parse("flowVars"));
+        assertNull(AccessorExpression.parse("flowVars.foo.bar"));
+        assertNull(AccessorExpression.parse("flowVars[foo]"));
+        assertNull(AccessorExpression.parse("flowVars['foo'] + 1"));
+        assertNull(AccessorExpression.parse("flowVars['a'] == flowVars['b']"));
+        assertNull(AccessorExpression.parse("flowVars['it\\'s']"));
+        assertNull(AccessorExpression.parse("flowVarsX.foo"));
+        assertNull(AccessorExpression.parse("message.inboundAttachments['x']"));
+        assertNull(AccessorExpression.parse("message.payload == null"));
+    }
+
+    @Test
+    public void matchesExpressionLanguage() throws Exception
+    {
+        MuleMessage message = new DefaultMuleMessage("test", Collections.<String, Object> singletonMap("in",
+            "inbound"), null, null, muleContext);
+        MuleEvent event = getTestEvent(message);
+        message = event.getMessage();
+        message.setProperty("foo", "flow", PropertyScope.INVOCATION);
+        message.setProperty("foo", "session", PropertyScope.SESSION);
+        message.setProperty("out", "outbound", PropertyScope.OUTBOUND);
+
+        assertMatches("payload", event);
+        assertMatches("message.payload", event);
+        assertMatches("flowVars.foo", event);
+        assertMatches("flowVars['foo']", event);
+        assertMatches("flowVars['missing']", event);
+        assertMatches("sessionVars.foo", event);
+        assertMatches("sessionVars[\"foo\"]", event);
+        assertMatches("message.inboundProperties.in", event);
+        assertMatches("message.inboundProperties['in']", event);
+        assertMatches("message.inboundProperties['missing']", event);
+        assertMatches("message.outboundProperties['out']", event);
+    }
+
+    @Test
+    public void nullPayload() throws Exception
+    {
+        MuleEvent event = getTestEvent(NullPayload.getInstance());
+
+        assertMatches("payload", event);
+        assertMatches("message.payload", event);
+        assertNull(AccessorExpression.parse("message.payload").evaluate(event.getMessage()));
+    }
+
+    @Test
+    public void missingPropertyWithDotNotationIsUnresolved() throws Exception
+    {
+        MuleEvent event = getTestEvent("");
+
+        assertSame(AccessorExpression.UNRESOLVED,
+            AccessorExpression.parse("flowVars.missing").evaluate(event.getMessage()));
+    }
+
+    @Test
+    public void expressionManagerUsesAccessors() throws Exception
+    {
+        MuleEvent event = getTestEvent("");
+        event.getMessage().setInvocationProperty("foo", "bar");
+
+        assertEquals("bar", muleContext.getExpressionManager().evaluate("#[flowVars['foo']]", event));
+        assertEquals("bar", muleContext.getExpressionManager().parse("#[flowVars.foo]-#[payload]", event)
+            .substring(0, 3));
+    }
+
+    private void assertMatches(String expression, MuleEvent event)
+    {
+        Object expected = muleContext.getExpressionLanguage().evaluate(expression, event);
+        assertEquals(expected, AccessorExpression.parse(expression).evaluate(event.getMessage()));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.management.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.management.stats.printers.CSVPrinter;
+import org.mule.management.stats.printers.XMLPrinter;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import java.io.StringWriter;
+import java.util.Collections;
+
+import org.junit.Test;
+
+@SmallTest
+public class ComponentStatisticsTestCase extends AbstractMuleTestCase
+{
+
+    @Test
+    public void executionTimes() throws Exception
+    {
+        ComponentStatistics statistics = new ComponentStatistics();
+        statistics.addExecutionTime(10);
+        statistics.addExecutionTime(0);
+        statistics.addExecutionTime(30);
+
+        assertEquals(3, statistics.getExecutedEvents());
+        assertEquals(1, statistics.getMinExecutionTime());
+        assertEquals(30, statistics.getMaxExecutionTime());
+        assertEquals(41, statistics.getTotalExecutionTime());
+        assertEquals(13, statistics.getAverageExecutionTime());
+        assertEquals(10, statistics.getExecutionTimeP50());
+        assertEquals(30, statistics.getExecutionTimeP99());
+
+        statistics.clear();
+        assertEquals(0, statistics.getExecutedEvents());
+        assertEquals(0, statistics.getExecutionTimeP99());
+    }
+
+    @Test
+    public void branchTimes() throws Exception
+    {
+        ComponentStatistics statistics = new ComponentStatistics();
+        statistics.addExecutionBranchTime(true, 5, 5);
+        statistics.addExecutionBranchTime(false, 7, 12);
+        statistics.addCompleteExecutionTime(12);
+
+        assertEquals(1, statistics.getExecutedEvents());
+        assertEquals(12, statistics.getTotalExecutionTime());
+        assertEquals(12, statistics.getMaxExecutionTime());
+        assertEquals(12, statistics.getMinExecutionTime());
+        assertEquals(12, statistics.getExecutionTimeP50());
+    }
+
+    @Test
+    public void concurrentExecutionsAreAllCounted() throws Exception
+    {
+        final ComponentStatistics statistics = new ComponentStatistics();
+        final int perThread = 50000;
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 1; i <= perThread; i++)
+                    {
+                        statistics.addExecutionTime(i % 100 + 1);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(threads.length * perThread, statistics.getExecutedEvents());
+        assertEquals(1, statistics.getMinExecutionTime());
+        assertEquals(100, statistics.getMaxExecutionTime());
+        assertEquals(threads.length * perThread / 100 * 5050, statistics.getTotalExecutionTime());
+    }
+
+    @Test
+    public void printersShowPercentiles() throws Exception
+    {
+        FlowConstructStatistics statistics = new FlowConstructStatistics("Flow", "test");
+        statistics.setEnabled(true);
+        statistics.addFlowExecutionBranchTime(20, 20);
+        statistics.addCompleteFlowExecutionTime(20);
+
+        assertEquals(20, statistics.getProcessingTimeP99());
+
+        StringWriter csv = new StringWriter();
+        new CSVPrinter(csv).print(Collections.singletonList(statistics));
+        assertTrue(csv.toString().contains("Processing Time p99"));
+
+        StringWriter xml = new StringWriter();
+        new XMLPrinter(xml).print(Collections.singletonList(statistics));
+        assertTrue(xml.toString().contains("<Statistic name=\"Processing Time p99\" value=\"20\"/>"));
+    }
+}
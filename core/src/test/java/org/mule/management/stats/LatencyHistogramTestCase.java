@@ -0,0 +1,123 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.management.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import org.junit.Test;
+
+@SmallTest
+public class LatencyHistogramTestCase extends AbstractMuleTestCase
+{
+
+    @Test
+    public void bucketsCoverEveryValueOnce() throws Exception
+    {
+        for (long value = 0; value < 100000; value++)
+        {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.highestValueOf(index));
+            if (index > 0)
+            {
+                assertTrue(value > LatencyHistogram.highestValueOf(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinPrecision() throws Exception
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++)
+        {
+            histogram.record(i);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertWithinPrecision(5000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(9000, histogram.getValueAtPercentile(90));
+        assertWithinPrecision(9900, histogram.getValueAtPercentile(99));
+        assertWithinPrecision(9990, histogram.getValueAtPercentile(99.9));
+        assertWithinPrecision(10000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void smallValuesAreExact() throws Exception
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(7);
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(99));
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void histogramsMerge() throws Exception
+    {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        for (int i = 0; i < 99; i++)
+        {
+            fast.record(10);
+        }
+        slow.record(5000);
+
+        LatencyHistogram merged = fast.copy();
+        merged.add(slow);
+        assertEquals(100, merged.getCount());
+        assertEquals(10, merged.getValueAtPercentile(99));
+        assertWithinPrecision(5000, merged.getValueAtPercentile(99.9));
+
+        merged.reset();
+        assertEquals(0, merged.getCount());
+        assertEquals(99, fast.getCount());
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws Exception
+    {
+        final LatencyHistogram histogram = new LatencyHistogram(4);
+        final int perThread = 100000;
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < perThread; i++)
+                    {
+                        histogram.record(i % 100);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(threads.length * perThread, histogram.getCount());
+        assertWithinPrecision(49, histogram.getValueAtPercentile(50));
+    }
+
+    private void assertWithinPrecision(long expected, long actual)
+    {
+        assertTrue("expected about " + expected + " but was " + actual,
+            Math.abs(actual - expected) <= expected * 0.07);
+    }
+}
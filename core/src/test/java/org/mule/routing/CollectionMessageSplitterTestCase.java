@@ -14,6 +14,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -22,6 +23,8 @@ import static org.mockito.Mockito.when;
 import org.mule.DefaultMuleEvent;
 import org.mule.DefaultMuleMessage;
 import org.mule.VoidMuleEvent;
+import org.mule.api.DefaultMuleException;
+import org.mule.api.MessagingException;
 import org.mule.api.MuleEvent;
 import org.mule.api.MuleException;
 import org.mule.api.MuleMessage;
@@ -29,14 +32,17 @@ import org.mule.api.MuleSession;
 import org.mule.api.config.MuleProperties;
 import org.mule.api.processor.MessageProcessor;
 import org.mule.api.service.Service;
+import org.mule.config.i18n.MessageFactory;
 import org.mule.routing.outbound.IteratorMessageSequence;
 import org.mule.tck.junit4.AbstractMuleContextTestCase;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -147,6 +153,38 @@ public class CollectionMessageSplitterTestCase extends AbstractMuleContextTestCa
         assertRouted(new IteratorMessageSequence<String>(TEST_LIST_SINGLE.iterator()), 1, false);
     }
 
+    @Test
+    public void testStreamedSequenceIsClosedIfProcessingFails() throws Exception
+    {
+        ClosingMessageSequence payload = new ClosingMessageSequence(TEST_LIST_MULTIPLE.iterator());
+        Service fc = getTestService();
+        MuleSession session = getTestSession(fc, muleContext);
+        MuleMessage toSplit = new DefaultMuleMessage(payload, new HashMap<String, Object>(),
+            new HashMap<String, Object>(), null, muleContext);
+        CollectionSplitter splitter = new CollectionSplitter();
+        splitter.setMuleContext(muleContext);
+        splitter.setListener(new MessageProcessor()
+        {
+            @Override
+            public MuleEvent process(MuleEvent event) throws MuleException
+            {
+                throw new DefaultMuleException(MessageFactory.createStaticMessage("failed"));
+            }
+        });
+        DefaultMuleEvent event = new DefaultMuleEvent(toSplit, getTestInboundEndpoint("ep"), fc, session);
+        try
+        {
+            splitter.process(event);
+            fail("the processing of the first element fails");
+        }
+        catch (MessagingException e)
+        {
+            // expected
+        }
+        assertTrue(payload.hasNext());
+        assertTrue(payload.closed);
+    }
+
     private void assertRouted(Object payload, int count, boolean counted) throws Exception, MuleException
     {
         Service fc = getTestService();
@@ -224,6 +262,41 @@ public class CollectionMessageSplitterTestCase extends AbstractMuleContextTestCa
         }
     }
 
+    private static class ClosingMessageSequence extends AbstractMessageSequence<String> implements Closeable
+    {
+        private final Iterator<String> iterator;
+        private boolean closed;
+
+        public ClosingMessageSequence(Iterator<String> iterator)
+        {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public int size()
+        {
+            return UNKNOWN_SIZE;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public String next()
+        {
+            return iterator.next();
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+
     private static class Grabber implements MessageProcessor
     {
         private List<MuleMessage> messages = new ArrayList<MuleMessage>();
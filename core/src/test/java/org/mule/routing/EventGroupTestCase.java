@@ -13,12 +13,18 @@ package org.mule.routing;
 import org.mule.DefaultMuleEvent;
 import org.mule.DefaultMuleMessage;
 import org.mule.api.MuleEvent;
+import org.mule.api.store.ObjectStoreException;
 import org.mule.tck.junit4.AbstractMuleContextTestCase;
+import org.mule.util.SerializationUtils;
 import org.mule.util.UUID;
+import org.mule.util.store.SimpleMemoryObjectStore;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.collections.IteratorUtils;
@@ -219,6 +225,83 @@ public class EventGroupTestCase extends AbstractMuleContextTestCase
         assertEquals("value3", result.getSession().getProperty("key3"));
         assertEquals("value4", result.getSession().getProperty("key4"));
     }
+
+    @Test
+    public void deserializedGroupKeepsArrivalOrder() throws Exception
+    {
+        EventGroup eg = new EventGroup(UUID.getUUID(), muleContext, 3, true, "EventGroupTestCase");
+        eg.addEvent(getTestEvent("foo1"));
+        eg.addEvent(getTestEvent("foo2"));
+
+        EventGroup restored = (EventGroup) SerializationUtils.deserialize(
+            SerializationUtils.serialize(eg), muleContext);
+        restored.initAfterDeserialisation(muleContext);
+        assertEquals(2, restored.size());
+
+        restored.addEvent(getTestEvent("foo3"));
+        MuleEvent[] events = restored.toArray();
+        assertEquals(3, events.length);
+        for (int i = 0; i < events.length; i++)
+        {
+            assertEquals("foo" + (i + 1), events[i].getMessage().getPayload());
+            assertEquals(Integer.valueOf(i + 1),
+                events[i].getMessage().getInvocationProperty(EventGroup.MULE_ARRIVAL_ORDER_PROPERTY));
+        }
+        restored.clear();
+    }
+
+    @Test
+    public void eventsAddedThroughAnotherInstanceAreSeenAfterRefresh() throws Exception
+    {
+        String groupId = UUID.getUUID();
+        EventGroup eg = new EventGroup(groupId, muleContext, 3, false, "EventGroupTestCase");
+        EventGroup other = new EventGroup(groupId, muleContext, 3, false, "EventGroupTestCase");
+        eg.addEvent(getTestEvent("foo1"));
+        assertEquals(1, other.size());
+
+        eg.addEvent(getTestEvent("foo2"));
+        assertEquals(1, other.size());
+        other.refreshEvents();
+        assertEquals(2, other.size());
+        assertEquals("foo2", other.toArray()[1].getMessage().getPayload());
+    }
+
+    @Test
+    public void unsortedEventsAreInStoreOrder() throws Exception
+    {
+        EventGroup eg = new EventGroup(UUID.getUUID(), muleContext);
+        eg.events = new ReverseListingObjectStore();
+        eg.addEvent(getTestEvent("foo1"));
+        eg.addEvent(getTestEvent("foo2"));
+        eg.addEvent(getTestEvent("foo3"));
+
+        MuleEvent[] sorted = eg.toArray(true);
+        MuleEvent[] unsorted = eg.toArray(false);
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals("foo" + (i + 1), sorted[i].getMessage().getPayload());
+            assertEquals("foo" + (3 - i), unsorted[i].getMessage().getPayload());
+        }
+    }
+
+    private static class ReverseListingObjectStore extends SimpleMemoryObjectStore<MuleEvent>
+    {
+        private final List<Serializable> keys = new ArrayList<Serializable>();
+
+        @Override
+        protected void doStore(Serializable key, MuleEvent value) throws ObjectStoreException
+        {
+            super.doStore(key, value);
+            keys.add(0, key);
+        }
+
+        @Override
+        public List<Serializable> allKeys() throws ObjectStoreException
+        {
+            return new ArrayList<Serializable>(keys);
+        }
+    }
+
     private static class MyEventGroup extends EventGroup
     {
         private static final long serialVersionUID = 1L;
@@ -30,6 +30,7 @@ import java.io.Serializable;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -159,7 +160,9 @@ public class IdempotentMessageFilterMule6079TestCase extends AbstractMuleContext
             barrier.countDown();
             try
             {
-                barrier.await();
+                // the filter serialises messages with the same id, in which case the
+                // other thread only gets here once this one is done
+                barrier.await(1, TimeUnit.SECONDS);
             }
             catch (Exception e)
             {
@@ -10,8 +10,10 @@
 
 package org.mule.routing;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -24,6 +26,11 @@ import org.mule.api.endpoint.InboundEndpoint;
 import org.mule.api.service.Service;
 import org.mule.tck.junit4.AbstractMuleContextTestCase;
 import org.mule.util.store.InMemoryObjectStore;
+import org.mule.util.store.SimpleMemoryObjectStore;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -61,4 +68,105 @@ public class IdempotentMessageFilterTestCase extends AbstractMuleContextTestCase
         event = ir.process(event);
         assertNull(event);
     }
+
+    @Test
+    public void testPreFilterSkipsStoreLookupsOfNewIds() throws Exception
+    {
+        Service service = getTestService();
+        MuleSession session = mock(MuleSession.class);
+        when(session.getFlowConstruct()).thenReturn(service);
+        InboundEndpoint endpoint = getTestInboundEndpoint("Test1Provider", "test://Test1Provider?exchangePattern=one-way");
+
+        CountingObjectStore store = new CountingObjectStore();
+        store.store("0", "0");
+
+        IdempotentMessageFilter ir = new IdempotentMessageFilter();
+        ir.setIdExpression("#[header:id]");
+        ir.setFlowConstruct(service);
+        ir.setThrowOnUnaccepted(false);
+        ir.setStorePrefix("foo");
+        ir.setStore(store);
+        ir.setUsePreFilter(true);
+
+        for (int i = 0; i < 100; i++)
+        {
+            MuleMessage message = new DefaultMuleMessage("OK", muleContext);
+            message.setOutboundProperty("id", String.valueOf(i));
+            MuleEvent event = ir.process(new DefaultMuleEvent(message, endpoint, service, session));
+            if (i == 0)
+            {
+                // known from the keys of the store
+                assertNull(event);
+            }
+            else
+            {
+                assertNotNull(event);
+            }
+        }
+        // only the ids reported by the pre-filter as maybe seen are looked up
+        assertTrue(store.lookups.get() < 10);
+
+        MuleMessage duplicate = new DefaultMuleMessage("OK", muleContext);
+        duplicate.setOutboundProperty("id", "50");
+        assertNull(ir.process(new DefaultMuleEvent(duplicate, endpoint, service, session)));
+    }
+
+    @Test
+    public void testPreFilterIsRebuiltFromTheStoreKeys() throws Exception
+    {
+        Service service = getTestService();
+        MuleSession session = mock(MuleSession.class);
+        when(session.getFlowConstruct()).thenReturn(service);
+        InboundEndpoint endpoint = getTestInboundEndpoint("Test1Provider", "test://Test1Provider?exchangePattern=one-way");
+
+        ListingObjectStore store = new ListingObjectStore();
+        IdempotentMessageFilter ir = new IdempotentMessageFilter();
+        ir.setIdExpression("#[header:id]");
+        ir.setFlowConstruct(service);
+        ir.setThrowOnUnaccepted(false);
+        ir.setStorePrefix("foo");
+        ir.setStore(store);
+        ir.setUsePreFilter(true);
+        ir.setPreFilterCapacity(10);
+
+        // rebuilt at 80 ids, then once the filter holds twice the ids of the store
+        for (int i = 0; i < 1000; i++)
+        {
+            MuleMessage message = new DefaultMuleMessage("OK", muleContext);
+            message.setOutboundProperty("id", String.valueOf(i));
+            assertNotNull(ir.process(new DefaultMuleEvent(message, endpoint, service, session)));
+        }
+        assertTrue(store.listings.get() <= 5);
+
+        for (int i = 0; i < 1000; i += 100)
+        {
+            MuleMessage duplicate = new DefaultMuleMessage("OK", muleContext);
+            duplicate.setOutboundProperty("id", String.valueOf(i));
+            assertNull(ir.process(new DefaultMuleEvent(duplicate, endpoint, service, session)));
+        }
+    }
+
+    private static class ListingObjectStore extends SimpleMemoryObjectStore<String>
+    {
+        private final AtomicInteger listings = new AtomicInteger();
+
+        @Override
+        public List<Serializable> allKeys() throws org.mule.api.store.ObjectStoreException
+        {
+            listings.incrementAndGet();
+            return super.allKeys();
+        }
+    }
+
+    private static class CountingObjectStore extends InMemoryObjectStore<String>
+    {
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        @Override
+        public boolean contains(Serializable key) throws org.mule.api.store.ObjectStoreException
+        {
+            lookups.incrementAndGet();
+            return super.contains(key);
+        }
+    }
 }
@@ -26,14 +26,21 @@ import org.mule.api.MuleMessage;
 import org.mule.api.MuleMessageCollection;
 import org.mule.api.MuleSession;
 import org.mule.api.endpoint.InboundEndpoint;
+import org.mule.api.processor.MessageProcessor;
 import org.mule.api.service.Service;
+import org.mule.routing.correlation.CollectionCorrelatorCallback;
+import org.mule.routing.correlation.EventCorrelator;
 import org.mule.tck.MuleTestUtils;
 import org.mule.tck.SensingNullMessageProcessor;
 import org.mule.tck.junit4.AbstractMuleContextTestCase;
 import org.mule.tck.testmodels.fruit.Apple;
+import org.mule.util.concurrent.Latch;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -189,4 +196,99 @@ public class SimpleCollectionAggregatorTestCase extends AbstractMuleContextTestC
 
     }
 
+    @Test
+    public void testAggregateInterleavedGroupsConcurrently() throws Exception
+    {
+        final Service testService = getTestService("test", Apple.class);
+        final AtomicInteger aggregated = new AtomicInteger();
+
+        final SimpleCollectionAggregator router = new SimpleCollectionAggregator();
+        router.setListener(new MessageProcessor()
+        {
+            @Override
+            public MuleEvent process(MuleEvent event)
+            {
+                assertEquals(3, ((List<?>) event.getMessage().getPayload()).size());
+                aggregated.incrementAndGet();
+                return event;
+            }
+        });
+        router.setMuleContext(muleContext);
+        router.setFlowConstruct(testService);
+        router.initialise();
+
+        final InboundEndpoint endpoint = MuleTestUtils.getTestInboundEndpoint(MessageExchangePattern.ONE_WAY,
+            muleContext);
+        final int groups = 100;
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] senders = new Thread[3];
+        for (int t = 0; t < senders.length; t++)
+        {
+            final int part = t;
+            senders[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        // every thread sends one event of every group
+                        for (int i = 0; i < groups; i++)
+                        {
+                            MuleMessage message = new DefaultMuleMessage("event " + part, muleContext);
+                            message.setCorrelationId("group-" + i);
+                            message.setCorrelationGroupSize(3);
+                            router.process(new DefaultMuleEvent(message, endpoint, testService));
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            senders[t].start();
+        }
+        for (Thread sender : senders)
+        {
+            sender.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(groups, aggregated.get());
+    }
+
+    @Test
+    public void testExpireIncompleteGroup() throws Exception
+    {
+        Service testService = getTestService("test", Apple.class);
+        final CountDownLatch expired = new Latch();
+        EventCorrelator correlator = new EventCorrelator(new CollectionCorrelatorCallback(muleContext, false,
+            "expiry"), null, new MuleMessageInfoMapping(), muleContext, "test", false, "expiry")
+        {
+            @Override
+            protected void handleGroupExpiry(EventGroup group)
+            {
+                expired.countDown();
+            }
+        };
+        correlator.setTimeout(50);
+        correlator.start();
+        try
+        {
+            MuleMessage message = new DefaultMuleMessage("test event A", muleContext);
+            message.setCorrelationId(message.getUniqueId());
+            message.setCorrelationGroupSize(2);
+            InboundEndpoint endpoint = MuleTestUtils.getTestInboundEndpoint(MessageExchangePattern.ONE_WAY,
+                muleContext);
+            assertNull(correlator.process(new DefaultMuleEvent(message, endpoint, testService)));
+
+            assertTrue(expired.await(RECEIVE_TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+        finally
+        {
+            correlator.stop();
+            correlator.dispose();
+        }
+    }
 }
@@ -9,10 +9,15 @@
  */
 package org.mule.routing.correlation;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -22,19 +27,29 @@ import org.mule.api.MuleContext;
 import org.mule.api.MuleEvent;
 import org.mule.api.MuleMessage;
 import org.mule.api.config.MuleProperties;
+import org.mule.api.context.notification.ServerNotificationListener;
 import org.mule.api.lifecycle.Disposable;
 import org.mule.api.processor.MessageProcessor;
 import org.mule.api.routing.MessageInfoMapping;
 import org.mule.api.store.ListableObjectStore;
 import org.mule.api.store.ObjectAlreadyExistsException;
+import org.mule.api.store.ObjectDoesNotExistException;
 import org.mule.api.store.ObjectStoreManager;
+import org.mule.context.notification.ClusterNodeNotification;
 import org.mule.routing.EventGroup;
 import org.mule.tck.size.SmallTest;
 
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.runners.MockitoJUnitRunner;
 
 @SmallTest
@@ -106,6 +121,93 @@ public class EventCorrelatorTestCase
         verify(mockEventGroup, times(1)).initAfterDeserialisation(mockMuleContext);
     }
 
+    @Test
+    public void expiredGroupIsDispatchedOutsideTheGroupLock() throws Exception
+    {
+        final EventCorrelator eventCorrelator = createEventCorrelator();
+        eventCorrelator.setFailOnTimeout(false);
+        when(mockEventGroup.getCreated()).thenReturn(System.currentTimeMillis());
+        final AtomicBoolean lockHeld = new AtomicBoolean(true);
+        when(mockTimeoutMessageProcessor.process(any(MuleEvent.class))).thenAnswer(new Answer<MuleEvent>()
+        {
+            public MuleEvent answer(InvocationOnMock invocation) throws Throwable
+            {
+                lockHeld.set(Thread.holdsLock(eventCorrelator.getGroupLock(TEST_GROUP_ID)));
+                return null;
+            }
+        });
+        eventCorrelator.forceGroupExpiry(TEST_GROUP_ID);
+        verify(mockTimeoutMessageProcessor, times(1)).process(any(MuleEvent.class));
+        assertFalse(lockHeld.get());
+    }
+
+    @Test
+    public void groupLeftInTheStoreByAnotherNodeIsExpiredOnFailover() throws Exception
+    {
+        EventCorrelator eventCorrelator = createEventCorrelator();
+        eventCorrelator.setFailOnTimeout(false);
+        eventCorrelator.setTimeout(1);
+        when(mockEventGroup.getCreated()).thenReturn(System.currentTimeMillis());
+        eventCorrelator.start();
+        try
+        {
+            ArgumentCaptor<ServerNotificationListener> listener = ArgumentCaptor.forClass(ServerNotificationListener.class);
+            verify(mockMuleContext).registerListener(listener.capture());
+
+            // the group shows up in the shared store when this node takes over
+            when(mockObjectStore.allKeys()).thenReturn(Collections.<Serializable>singletonList(TEST_GROUP_ID));
+            listener.getValue().onNotification(new ClusterNodeNotification("primary",
+                ClusterNodeNotification.PRIMARY_CLUSTER_NODE_SELECTED));
+            verify(mockTimeoutMessageProcessor, timeout(5000)).process(any(MuleEvent.class));
+        }
+        finally
+        {
+            eventCorrelator.stop();
+        }
+    }
+
+    @Test
+    public void storeIsNotScannedWhileRunning() throws Exception
+    {
+        EventCorrelator eventCorrelator = createEventCorrelator();
+        eventCorrelator.setTimeout(1);
+        eventCorrelator.start();
+        try
+        {
+            Thread.sleep(1500);
+            verify(mockObjectStore, times(1)).allKeys();
+        }
+        finally
+        {
+            eventCorrelator.stop();
+        }
+    }
+
+    @Test
+    public void cachedGroupIsRefreshedFromTheStore() throws Exception
+    {
+        EventCorrelator eventCorrelator = createEventCorrelator(true);
+        assertSame(mockEventGroup, eventCorrelator.getEventGroup(TEST_GROUP_ID));
+
+        when(mockObjectStore.contains(TEST_GROUP_ID)).thenReturn(true);
+        assertSame(mockEventGroup, eventCorrelator.getEventGroup(TEST_GROUP_ID));
+        verify(mockObjectStore, times(1)).retrieve(TEST_GROUP_ID);
+        verify(mockEventGroup, times(1)).refreshEvents();
+    }
+
+    @Test
+    public void cachedGroupRemovedFromTheStoreIsNotUsed() throws Exception
+    {
+        EventCorrelator eventCorrelator = createEventCorrelator(true);
+        assertSame(mockEventGroup, eventCorrelator.getEventGroup(TEST_GROUP_ID));
+
+        // another node completed the group
+        when(mockObjectStore.contains(TEST_GROUP_ID)).thenReturn(false);
+        when(mockObjectStore.retrieve(TEST_GROUP_ID)).thenThrow(new ObjectDoesNotExistException());
+        assertNull(eventCorrelator.getEventGroup(TEST_GROUP_ID));
+        assertNull(eventCorrelator.getEventGroup(TEST_GROUP_ID));
+    }
+
     @Test
     public void disposeObjectStoresIfDisposable() throws Exception
     {
@@ -118,15 +220,20 @@ public class EventCorrelatorTestCase
     }
 
     private EventCorrelator createEventCorrelator() throws Exception
+    {
+        return createEventCorrelator(USE_PERSISTENT_STORE);
+    }
+
+    private EventCorrelator createEventCorrelator(boolean persistentStores) throws Exception
     {
         when(mockMuleContext.getRegistry().get(MuleProperties.OBJECT_STORE_MANAGER)).thenReturn(mockObjectStoreManager);
-        when(mockObjectStoreManager.getObjectStore(OBJECT_STOR_NAME_PREFIX + ".eventGroups", USE_PERSISTENT_STORE)).thenReturn(mockObjectStore);
-        when(mockObjectStoreManager.getObjectStore(OBJECT_STOR_NAME_PREFIX + ".expiredAndDispatchedGroups", USE_PERSISTENT_STORE)).thenReturn(mockExpireGroupsObjectStore);
-        when(mockObjectStoreManager.getObjectStore(OBJECT_STOR_NAME_PREFIX + ".processedGroups", USE_PERSISTENT_STORE, EventCorrelator.MAX_PROCESSED_GROUPS, -1, 1000)).thenReturn(mockProcessedGroups);
+        when(mockObjectStoreManager.getObjectStore(OBJECT_STOR_NAME_PREFIX + ".eventGroups", persistentStores)).thenReturn(mockObjectStore);
+        when(mockObjectStoreManager.getObjectStore(OBJECT_STOR_NAME_PREFIX + ".expiredAndDispatchedGroups", persistentStores)).thenReturn(mockExpireGroupsObjectStore);
+        when(mockObjectStoreManager.getObjectStore(OBJECT_STOR_NAME_PREFIX + ".processedGroups", persistentStores, EventCorrelator.MAX_PROCESSED_GROUPS, -1, 1000)).thenReturn(mockProcessedGroups);
         when(mockObjectStore.retrieve(TEST_GROUP_ID)).thenReturn(mockEventGroup);
         when(mockEventGroup.getGroupId()).thenReturn(TEST_GROUP_ID);
         when(mockEventGroup.toMessageCollection()).thenReturn(null);
-        return new EventCorrelator(mockEventCorrelatorCallback, mockTimeoutMessageProcessor, mockMessagingInfoMapping, mockMuleContext, "flowName", USE_PERSISTENT_STORE, OBJECT_STOR_NAME_PREFIX);
+        return new EventCorrelator(mockEventCorrelatorCallback, mockTimeoutMessageProcessor, mockMessagingInfoMapping, mockMuleContext, "flowName", persistentStores, OBJECT_STOR_NAME_PREFIX);
     }
 
     public interface DisposableListableObjectStore extends ListableObjectStore, Disposable
@@ -108,4 +108,30 @@ public class ExpiryMonitorTestCase extends AbstractMuleTestCase
         assertTrue(!monitor.isRegistered(e));
     }
 
+    @Test
+    public void testFailingExpirableDoesNotStopOthers() throws InterruptedException
+    {
+        ExpiryMonitor monitor = new ExpiryMonitor("test", 100, null, false);
+        Expirable failing = new Expirable()
+        {
+            public void expired()
+            {
+                throw new IllegalStateException("failed on purpose");
+            }
+        };
+        Expirable e = new Expirable()
+        {
+            public void expired()
+            {
+                expired = true;
+            }
+        };
+        monitor.addExpirable(200, TimeUnit.MILLISECONDS, failing);
+        monitor.addExpirable(200, TimeUnit.MILLISECONDS, e);
+        Thread.sleep(700);
+        assertTrue(expired);
+        assertTrue(!monitor.isRegistered(failing));
+        assertTrue(!monitor.isRegistered(e));
+    }
+
 }
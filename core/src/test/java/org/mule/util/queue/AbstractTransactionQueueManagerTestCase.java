@@ -13,7 +13,9 @@ package org.mule.util.queue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.mule.tck.junit4.AbstractMuleContextTestCase;
 import org.mule.util.concurrent.Latch;
@@ -23,6 +25,8 @@ import org.mule.util.xa.AbstractResourceManager;
 
 import java.io.Serializable;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -767,6 +771,51 @@ public abstract class AbstractTransactionQueueManagerTestCase extends AbstractMu
         assertEquals("Queue must be fully consumed after successful test run. Queue size:", 0, queue.size());
     }
 
+    @Test
+    public void testConcurrentQueueLookupAndDispose() throws Exception
+    {
+        final TransactionalQueueManager mgr = createQueueManager();
+        mgr.start();
+
+        final int threads = 8;
+        final QueueInfo[] found = new QueueInfo[threads];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++)
+        {
+            final int index = i;
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        found[index] = mgr.getQueue("lookupQueue");
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // fails the assertions below
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        start.countDown();
+        assertTrue(done.await(RECEIVE_TIMEOUT, TimeUnit.MILLISECONDS));
+        for (QueueInfo queue : found)
+        {
+            assertSame(found[0], queue);
+        }
+
+        assertTrue(mgr.disposeQueue("lookupQueue"));
+        assertFalse(mgr.disposeQueue("lookupQueue"));
+        assertNotSame(found[0], mgr.getQueue("lookupQueue"));
+
+        mgr.stop(AbstractResourceManager.SHUTDOWN_MODE_NORMAL);
+    }
+
     @Test
     public void testRecoverWarmRestart() throws Exception
     {
@@ -0,0 +1,50 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.util.queue;
+
+import org.mule.api.store.ListableObjectStore;
+import org.mule.util.store.QueueStoreAdapter;
+import org.mule.util.store.SimpleMemoryObjectStore;
+
+import java.io.Serializable;
+
+public class LockFreeDelegatePersistenceTestCase extends AbstractTransactionQueueManagerTestCase
+{
+    static
+    {
+        QueueInfo.registerDelegateFactory(LockFreeMemoryQueueStore.class, new LockFreeQueueInfoDelegate.Factory());
+    }
+
+    @Override
+    protected TransactionalQueueManager createQueueManager() throws Exception
+    {
+        TransactionalQueueManager mgr = new TransactionalQueueManager();
+        mgr.setDefaultQueueConfiguration(new QueueConfiguration(0, new LockFreeMemoryQueueStore(new SimpleMemoryObjectStore<Serializable>())));
+        return mgr;
+    }
+
+    @Override
+    protected boolean isPersistent()
+    {
+        return false;
+    }
+
+    /**
+     * A store type of its own so the delegate factory does not leak into other tests
+     */
+    private static class LockFreeMemoryQueueStore extends QueueStoreAdapter<Serializable>
+    {
+        public LockFreeMemoryQueueStore(ListableObjectStore<Serializable> store)
+        {
+            super(store);
+        }
+    }
+}
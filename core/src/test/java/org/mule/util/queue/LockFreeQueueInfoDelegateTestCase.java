@@ -0,0 +1,192 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.util.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+public class LockFreeQueueInfoDelegateTestCase extends AbstractMuleTestCase
+{
+    private static final Log logger = LogFactory.getLog(LockFreeQueueInfoDelegateTestCase.class);
+
+    private static final int TIMEOUT = 5000;
+
+    @Test
+    public void testFifoWithUntakeAtHead() throws Exception
+    {
+        LockFreeQueueInfoDelegate delegate = new LockFreeQueueInfoDelegate(0);
+        delegate.putNow("1");
+        delegate.putNow("2");
+
+        assertEquals("1", delegate.poll(0));
+        delegate.untake("1");
+        assertEquals(2, delegate.getSize());
+        assertEquals("1", delegate.peek());
+        assertEquals(Arrays.<Serializable> asList("1", "2"), delegate.getMembers());
+        assertEquals("1", delegate.poll(0));
+        assertEquals("2", delegate.poll(0));
+        assertNull(delegate.poll(10));
+        assertEquals(0, delegate.getSize());
+    }
+
+    @Test
+    public void testOfferRespectsCapacityAndRoom() throws Exception
+    {
+        LockFreeQueueInfoDelegate delegate = new LockFreeQueueInfoDelegate(2);
+        assertTrue(delegate.offer("1", 0, 0));
+        assertFalse(delegate.offer("2", 1, 10));
+        assertTrue(delegate.offer("2", 0, 0));
+        assertFalse(delegate.offer("3", 0, 10));
+        assertEquals(2, delegate.getSize());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRoomLargerThanCapacity() throws Exception
+    {
+        new LockFreeQueueInfoDelegate(2).offer("1", 2, 0);
+    }
+
+    @Test
+    public void testBlockedOfferIsReleasedByPoll() throws Exception
+    {
+        final LockFreeQueueInfoDelegate delegate = new LockFreeQueueInfoDelegate(1);
+        delegate.putNow("1");
+
+        final CountDownLatch offered = new CountDownLatch(1);
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    if (delegate.offer("2", 0, TIMEOUT))
+                    {
+                        offered.countDown();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    // fail below
+                }
+            }
+        }.start();
+
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+        assertEquals("1", delegate.poll(0));
+        assertTrue(offered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("2", delegate.poll(0));
+    }
+
+    @Test
+    public void testContendedProducersAndConsumers() throws Exception
+    {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int perProducer = 50000;
+
+        long defaultTime = transfer(new DefaultQueueInfoDelegate(1024), threads, perProducer);
+        long lockFreeTime = transfer(new LockFreeQueueInfoDelegate(1024), threads, perProducer);
+
+        long messages = (long) threads * perProducer;
+        logger.info(String.format("%d producers/%d consumers, %d messages: DefaultQueueInfoDelegate %d msg/s, "
+                                  + "LockFreeQueueInfoDelegate %d msg/s", threads, threads, messages,
+            messages * 1000 / Math.max(1, defaultTime), messages * 1000 / Math.max(1, lockFreeTime)));
+    }
+
+    /**
+     * Moves messages from the given number of producers to as many consumers and checks
+     * nothing is lost or duplicated.
+     *
+     * @return elapsed time in milliseconds
+     */
+    private long transfer(final QueueInfoDelegate delegate, int threads, final int perProducer) throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads * 2);
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicLong checksum = new AtomicLong();
+        final int total = threads * perProducer;
+
+        for (int i = 0; i < threads; i++)
+        {
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for (int j = 0; j < perProducer; j++)
+                        {
+                            delegate.offer(j, 0, Long.MAX_VALUE / 2);
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        logger.error(e);
+                    }
+                    done.countDown();
+                }
+            }.start();
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        while (received.get() < total)
+                        {
+                            Serializable item = delegate.poll(10);
+                            if (item != null)
+                            {
+                                checksum.addAndGet((Integer) item);
+                                received.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        logger.error(e);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        long startTime = System.currentTimeMillis();
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        assertEquals(total, received.get());
+        assertEquals(threads * ((long) perProducer * (perProducer - 1) / 2), checksum.get());
+        assertEquals(0, delegate.getSize());
+        return elapsed;
+    }
+}
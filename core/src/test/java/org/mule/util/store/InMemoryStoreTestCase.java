@@ -13,8 +13,11 @@ package org.mule.util.store;
 import org.mule.api.lifecycle.InitialisationException;
 import org.mule.tck.junit4.AbstractMuleTestCase;
 
+import java.io.Serializable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.After;
 import org.junit.Test;
 
@@ -138,6 +141,79 @@ public class InMemoryStoreTestCase extends AbstractMuleTestCase
         assertObjectsExpired("3", "4", "5", "6");
     }
 
+    @Test
+    public void testLookupsDoNotDependOnSize() throws Exception
+    {
+        createUnboundedObjectStore();
+        AtomicInteger comparisons = new AtomicInteger();
+        int stored = 0;
+        for (int size : new int[] {1000, 10000, 100000})
+        {
+            for (; stored < size; stored++)
+            {
+                store.store(new CountingKey(stored, comparisons), "value");
+            }
+
+            int lookups = 1000;
+            comparisons.set(0);
+            for (int i = 0; i < lookups; i++)
+            {
+                CountingKey key = new CountingKey((i * 7919) % size, comparisons);
+                assertTrue(store.contains(key));
+                assertEquals("value", store.retrieve(key));
+            }
+            // one comparison per hit, give or take a hash collision
+            assertTrue(comparisons.get() <= 3 * lookups);
+
+            comparisons.set(0);
+            for (int i = 0; i < lookups; i++)
+            {
+                CountingKey key = new CountingKey(size - 1 - i, comparisons);
+                store.remove(key);
+                store.store(key, "value");
+            }
+            assertTrue(comparisons.get() <= 3 * lookups);
+        }
+
+        // trimming still removes the oldest entries, the last ones stored are the
+        // last keys removed and stored again above
+        store.setMaxEntries(10);
+        store.expire();
+        assertFalse(store.contains(new CountingKey(0, comparisons)));
+        assertTrue(store.contains(new CountingKey(stored - 1000, comparisons)));
+    }
+
+    @Test
+    public void testExpiryKeepsObjectStoredAgainUnderTheSameKey() throws Exception
+    {
+        createBoundedObjectStore(1);
+        final RestoringKey expired = new RestoringKey("1");
+        store.store(expired, "old");
+        store.store("2", "2");
+
+        // the key is removed and stored again while the trimmed entry is being dropped
+        // from the index
+        expired.onSecondHash = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    store.remove(new RestoringKey("1"));
+                    store.store(new RestoringKey("1"), "new");
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        store.expire();
+
+        assertTrue(expired.fired);
+        assertEquals("new", store.retrieve(new RestoringKey("1")));
+    }
+
     private void storeObjects(String... objects) throws Exception
     {
         for (String entry : objects)
@@ -197,6 +273,64 @@ public class InMemoryStoreTestCase extends AbstractMuleTestCase
         store = new NonExpiringInMemoryObjectStore();
     }
     
+    private static class CountingKey implements Serializable
+    {
+        private final int value;
+        private final transient AtomicInteger comparisons;
+
+        CountingKey(int value, AtomicInteger comparisons)
+        {
+            this.value = value;
+            this.comparisons = comparisons;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            comparisons.incrementAndGet();
+            return o instanceof CountingKey && ((CountingKey) o).value == value;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Runs an action the second time it is hashed once the action is set
+     */
+    private static class RestoringKey implements Serializable
+    {
+        private final String value;
+        private transient Runnable onSecondHash;
+        private transient int hashes;
+        private transient boolean fired;
+
+        RestoringKey(String value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof RestoringKey && ((RestoringKey) o).value.equals(value);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            if (onSecondHash != null && ++hashes == 2 && !fired)
+            {
+                fired = true;
+                onSecondHash.run();
+            }
+            return value.hashCode();
+        }
+    }
+
     /**
      * Special subclass that coordinates with the expire thread. Upon calling <code>initialize</code>
      * the scheduler in {@link AbstractMonitoredObjectStore} runs once. The tests in this test case
@@ -18,11 +18,16 @@ import org.mule.api.store.ObjectAlreadyExistsException;
 import org.mule.api.store.ObjectStoreException;
 import org.mule.tck.junit4.AbstractMuleTestCase;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.SerializationUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Answers;
@@ -105,6 +110,148 @@ public class PartitionedPersistentObjectStoreTestCase extends AbstractMuleTestCa
         assertNotNull(value.getMuleContext());
     }
 
+    @Test
+    public void newStoreRestoresEntriesFromIndex() throws Exception
+    {
+        os.open();
+        for (int i = 0; i < 10; i++)
+        {
+            os.store(OBJECT_KEY + i, OBJECT_BASE_VALUE + i);
+        }
+        os.remove(OBJECT_KEY + 3);
+        os.close();
+
+        PartitionedPersistentObjectStore<Serializable> restored = new PartitionedPersistentObjectStore<Serializable>(mockMuleContext);
+        restored.open();
+        assertThat(restored.allKeys().size(), is(9));
+        assertThat(restored.allKeys().get(0), is((Serializable) (OBJECT_KEY + 0)));
+        assertThat(restored.contains(OBJECT_KEY + 3), is(false));
+        assertThat((String) restored.retrieve(OBJECT_KEY + 9), is(OBJECT_BASE_VALUE + 9));
+
+        restored.store(OBJECT_KEY + 3, OBJECT_BASE_VALUE);
+        assertThat((String) restored.retrieve(OBJECT_KEY + 3), is(OBJECT_BASE_VALUE));
+    }
+
+    @Test
+    public void indexRecordWithANegativeKeyLengthIsDiscarded() throws Exception
+    {
+        assertIndexRecordIsDiscarded(-1);
+    }
+
+    @Test
+    public void indexRecordWithAKeyLongerThanTheIndexIsDiscarded() throws Exception
+    {
+        assertIndexRecordIsDiscarded(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void expireRemovesOldestEntries() throws Exception
+    {
+        os.open();
+        for (int i = 0; i < 10; i++)
+        {
+            os.store(OBJECT_KEY + i, OBJECT_BASE_VALUE + i);
+        }
+        os.expire(60000, 4);
+        assertThat(os.allKeys(), is(Arrays.<Serializable> asList(OBJECT_KEY + 6, OBJECT_KEY + 7,
+            OBJECT_KEY + 8, OBJECT_KEY + 9)));
+
+        os.expire(0, 10);
+        assertThat(os.allKeys().size(), is(0));
+    }
+
+    @Test
+    public void removedEntriesAreCompacted() throws Exception
+    {
+        os.open();
+        char[] large = new char[100 * 1024];
+        Arrays.fill(large, 'x');
+        String largeValue = new String(large);
+        for (int i = 0; i < 50; i++)
+        {
+            os.store(OBJECT_KEY + i, largeValue);
+            if (i % 10 != 0)
+            {
+                os.remove(OBJECT_KEY + i);
+            }
+        }
+        File partitionDirectory = new File(PartitionedPersistentObjectStore.OBJECT_STORE_DIR).listFiles()[0];
+        long logLength = new File(partitionDirectory, "values.log").length();
+        assertThat(logLength < 2 * 1024 * 1024, is(true));
+
+        os.close();
+        PartitionedPersistentObjectStore<Serializable> restored = new PartitionedPersistentObjectStore<Serializable>(mockMuleContext);
+        restored.open();
+        assertThat(restored.allKeys().size(), is(5));
+        for (int i = 0; i < 50; i += 10)
+        {
+            assertThat((String) restored.retrieve(OBJECT_KEY + i), is(largeValue));
+        }
+    }
+
+    @Test
+    public void disposePartitionRemovesEntries() throws Exception
+    {
+        openPartitions();
+        storeInPartitions(OBJECT_KEY, OBJECT_BASE_VALUE);
+        os.disposePartition(getPartitionName(0));
+        assertThat(os.allKeys(getPartitionName(0)).size(), is(0));
+        assertThat((String) os.retrieve(OBJECT_KEY, getPartitionName(1)), is(OBJECT_BASE_VALUE + 1));
+
+        os.store(OBJECT_KEY, OBJECT_BASE_VALUE, getPartitionName(0));
+        assertThat((String) os.retrieve(OBJECT_KEY, getPartitionName(0)), is(OBJECT_BASE_VALUE));
+    }
+
+    @Test
+    public void entriesStoredInTheirOwnFilesAreMigrated() throws Exception
+    {
+        os.open();
+        os.store(OBJECT_KEY, OBJECT_BASE_VALUE);
+        File partitionDirectory = new File(PartitionedPersistentObjectStore.OBJECT_STORE_DIR).listFiles()[0];
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(new File(partitionDirectory, "legacy.obj")));
+        try
+        {
+            // as written by previous versions
+            SerializationUtils.serialize(new PersistentObjectStorePartition.StoreValue<String>("legacyKey", "legacyValue"), out);
+        }
+        finally
+        {
+            out.close();
+        }
+        os.close();
+
+        PartitionedPersistentObjectStore<Serializable> restored = new PartitionedPersistentObjectStore<Serializable>(mockMuleContext);
+        restored.open();
+        assertThat((String) restored.retrieve("legacyKey"), is("legacyValue"));
+        assertThat((String) restored.retrieve(OBJECT_KEY), is(OBJECT_BASE_VALUE));
+        assertThat(new File(partitionDirectory, "legacy.obj").exists(), is(false));
+    }
+
+    private void assertIndexRecordIsDiscarded(int keyLength) throws Exception
+    {
+        os.open();
+        os.store(OBJECT_KEY, OBJECT_BASE_VALUE);
+        os.close();
+        File indexFile = new File(new File(PartitionedPersistentObjectStore.OBJECT_STORE_DIR).listFiles()[0], "keys.idx");
+        long indexLength = indexFile.length();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile, true));
+        try
+        {
+            // a record torn by a crash after its type and key length
+            out.writeByte(0);
+            out.writeInt(keyLength);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        PartitionedPersistentObjectStore<Serializable> restored = new PartitionedPersistentObjectStore<Serializable>(mockMuleContext);
+        restored.open();
+        assertThat((String) restored.retrieve(OBJECT_KEY), is(OBJECT_BASE_VALUE));
+        assertThat(indexFile.length(), is(indexLength));
+    }
+
     private void closePartitions() throws ObjectStoreException
     {
         for (int i = 0; i < numberOfPartitions; i++)
@@ -0,0 +1,248 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.util.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.mule.api.MuleContext;
+import org.mule.api.config.MuleConfiguration;
+import org.mule.api.store.ObjectStoreException;
+import org.mule.util.UUID;
+import org.mule.util.queue.QueueKey;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QueueJournalObjectStoreTestCase extends AbstractObjectStoreContractTestCase
+{
+    private static final String QUEUE_NAME = "the-queue";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File persistenceFolder;
+    private MuleContext mockMuleContext;
+
+    @Override
+    protected void doSetUp() throws Exception
+    {
+        super.doSetUp();
+        persistenceFolder = tempFolder.newFolder("persistence");
+
+        MuleConfiguration mockConfig = mock(MuleConfiguration.class);
+        when(mockConfig.getWorkingDirectory()).thenReturn(persistenceFolder.getAbsolutePath());
+
+        mockMuleContext = mock(MuleContext.class);
+        when(mockMuleContext.getConfiguration()).thenReturn(mockConfig);
+        when(mockMuleContext.getExecutionClassLoader()).thenReturn(getClass().getClassLoader());
+    }
+
+    @Override
+    public QueueJournalObjectStore<Serializable> getObjectStore() throws ObjectStoreException
+    {
+        QueueJournalObjectStore<Serializable> store = new QueueJournalObjectStore<Serializable>(mockMuleContext);
+        store.open();
+        return store;
+    }
+
+    @Override
+    public Serializable getStorableValue()
+    {
+        return TEST_MESSAGE;
+    }
+
+    @Override
+    protected Serializable createKey()
+    {
+        return new QueueKey(QUEUE_NAME, UUID.getUUID());
+    }
+
+    @Test
+    public void testAllKeysOnNotYetOpenedStore() throws ObjectStoreException
+    {
+        QueueJournalObjectStore<Serializable> store = new QueueJournalObjectStore<Serializable>(mockMuleContext);
+        assertEquals(0, store.allKeys().size());
+    }
+
+    @Test
+    public void testStoreRetrieveAndRemove() throws Exception
+    {
+        QueueJournalObjectStore<Serializable> store = getObjectStore();
+        QueueKey key = new QueueKey(QUEUE_NAME, "1");
+
+        store.store(key, TEST_MESSAGE);
+        assertTrue(store.contains(key));
+        assertEquals(TEST_MESSAGE, store.retrieve(key));
+        assertEquals(TEST_MESSAGE, store.remove(key));
+        assertFalse(store.contains(key));
+        store.close();
+    }
+
+    @Test
+    public void testRecoverKeysInInsertionOrderAfterCrash() throws Exception
+    {
+        QueueJournalObjectStore<Serializable> store = getObjectStore();
+        for (int i = 0; i < 10; i++)
+        {
+            store.store(new QueueKey(QUEUE_NAME, String.valueOf(i)), "value" + i);
+        }
+        store.remove(new QueueKey(QUEUE_NAME, "3"));
+
+        // no close(), so the segments must be scanned
+        QueueJournalObjectStore<Serializable> recovered = getObjectStore();
+        List<Serializable> keys = recovered.allKeys();
+        assertEquals(9, keys.size());
+        assertEquals(new QueueKey(QUEUE_NAME, "0"), keys.get(0));
+        assertEquals(new QueueKey(QUEUE_NAME, "4"), keys.get(3));
+        assertEquals("value9", recovered.retrieve(new QueueKey(QUEUE_NAME, "9")));
+        assertFalse(recovered.contains(new QueueKey(QUEUE_NAME, "3")));
+        recovered.close();
+    }
+
+    @Test
+    public void testRecoverFromIndexAfterClose() throws Exception
+    {
+        QueueJournalObjectStore<Serializable> store = getObjectStore();
+        store.store(new QueueKey(QUEUE_NAME, "1"), "value1");
+        store.store(new QueueKey(QUEUE_NAME, "2"), "value2");
+        store.close();
+        assertTrue(new File(journalDirectory(), "journal.idx").exists());
+
+        QueueJournalObjectStore<Serializable> recovered = getObjectStore();
+        assertEquals(2, recovered.allKeys().size());
+        assertEquals("value2", recovered.retrieve(new QueueKey(QUEUE_NAME, "2")));
+        assertFalse(new File(journalDirectory(), "journal.idx").exists());
+
+        recovered.store(new QueueKey(QUEUE_NAME, "3"), "value3");
+        recovered.close();
+        assertEquals(3, getObjectStore().allKeys().size());
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws Exception
+    {
+        QueueJournalObjectStore<Serializable> store = getObjectStore();
+        store.store(new QueueKey(QUEUE_NAME, "1"), "value1");
+        store.store(new QueueKey(QUEUE_NAME, "2"), "value2");
+
+        File segment = journalDirectory().listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try
+        {
+            // corrupt the last byte of the second record's value
+            long firstLength = 8 + file.readInt();
+            file.seek(firstLength);
+            long secondLength = 8 + file.readInt();
+            file.seek(firstLength + secondLength - 1);
+            file.write(0x7f);
+        }
+        finally
+        {
+            file.close();
+        }
+
+        List<Serializable> keys = getObjectStore().allKeys();
+        assertEquals(1, keys.size());
+        assertEquals(new QueueKey(QUEUE_NAME, "1"), keys.get(0));
+    }
+
+    @Test
+    public void testCompactionRemovesDrainedSegments() throws Exception
+    {
+        QueueJournalObjectStore<Serializable> store = new QueueJournalObjectStore<Serializable>(mockMuleContext);
+        store.setMaxSegmentSize(1024);
+        store.open();
+
+        for (int i = 0; i < 50; i++)
+        {
+            store.store(new QueueKey(QUEUE_NAME, String.valueOf(i)), "value" + i);
+        }
+        for (int i = 0; i < 49; i++)
+        {
+            store.remove(new QueueKey(QUEUE_NAME, String.valueOf(i)));
+        }
+        int segmentsBefore = journalDirectory().listFiles().length;
+        store.compact();
+        int segmentsAfter = journalDirectory().listFiles().length;
+
+        assertTrue(segmentsBefore > 2);
+        assertTrue(segmentsAfter < segmentsBefore);
+        assertEquals("value49", store.retrieve(new QueueKey(QUEUE_NAME, "49")));
+        store.close();
+
+        QueueJournalObjectStore<Serializable> recovered = getObjectStore();
+        assertEquals(1, recovered.allKeys().size());
+        assertEquals("value49", recovered.retrieve(new QueueKey(QUEUE_NAME, "49")));
+    }
+
+    @Test(timeout = 5000)
+    public void testCompactionAfterRejectedIndexCountsEntriesOnce() throws Exception
+    {
+        QueueJournalObjectStore<Serializable> store = new QueueJournalObjectStore<Serializable>(mockMuleContext);
+        store.setMaxSegmentSize(1024);
+        store.open();
+        for (int i = 0; i < 50; i++)
+        {
+            store.store(new QueueKey(QUEUE_NAME, String.valueOf(i)), "value" + i);
+        }
+        for (int i = 1; i < 49; i++)
+        {
+            store.remove(new QueueKey(QUEUE_NAME, String.valueOf(i)));
+        }
+        store.close();
+
+        // an entry in an unknown segment makes the index be rejected after its other
+        // entries have been loaded
+        RandomAccessFile index = new RandomAccessFile(new File(journalDirectory(), "journal.idx"), "rw");
+        try
+        {
+            index.seek(12);
+            long entryCountOffset = 16 + 8 * index.readInt();
+            index.seek(entryCountOffset);
+            int entryCount = index.readInt();
+            index.seek(entryCountOffset);
+            index.writeInt(entryCount + 1);
+            index.seek(index.length());
+            index.writeInt(Integer.MAX_VALUE);
+            index.write(new byte[24]);
+        }
+        finally
+        {
+            index.close();
+        }
+
+        QueueJournalObjectStore<Serializable> recovered = getObjectStore();
+        assertEquals(2, recovered.allKeys().size());
+        File firstSegment = new File(journalDirectory(), "0000000000.seg");
+        assertTrue(firstSegment.exists());
+
+        recovered.compact();
+        assertFalse(firstSegment.exists());
+        assertEquals("value0", recovered.retrieve(new QueueKey(QUEUE_NAME, "0")));
+        assertEquals("value49", recovered.retrieve(new QueueKey(QUEUE_NAME, "49")));
+        recovered.close();
+    }
+
+    private File journalDirectory()
+    {
+        return new File(persistenceFolder, QueueJournalObjectStore.DEFAULT_JOURNAL_DIRECTORY);
+    }
+}
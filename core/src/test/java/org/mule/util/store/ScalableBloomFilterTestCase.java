@@ -0,0 +1,110 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.util.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import org.junit.Test;
+
+@SmallTest
+public class ScalableBloomFilterTestCase extends AbstractMuleTestCase
+{
+
+    @Test
+    public void addedKeysAreAlwaysFound() throws Exception
+    {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 100000; i++)
+        {
+            filter.add("key" + i);
+        }
+        for (int i = 0; i < 100000; i++)
+        {
+            assertTrue(filter.mightContain("key" + i));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateStaysBoundedWhileGrowing() throws Exception
+    {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 100000; i++)
+        {
+            filter.add("key" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++)
+        {
+            if (filter.mightContain("other" + i))
+            {
+                falsePositives++;
+            }
+        }
+        // the expected rate is 1%, leave room for the variance of a sample
+        assertTrue("false positives: " + falsePositives, falsePositives < 1500);
+        logger.info(String.format("%d keys in %d bytes, %d false positives in 100000 lookups",
+            filter.size(), filter.getSizeInBytes(), falsePositives));
+    }
+
+    @Test
+    public void addReportsKeysAlreadyAdded() throws Exception
+    {
+        ScalableBloomFilter filter = new ScalableBloomFilter(10, 0.01);
+        assertTrue(filter.add("key"));
+        assertFalse(filter.add("key"));
+        assertEquals(1, filter.size());
+
+        filter.clear();
+        assertFalse(filter.mightContain("key"));
+        assertEquals(0, filter.size());
+    }
+
+    @Test
+    public void concurrentAddsLoseNothing() throws Exception
+    {
+        final ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+        final int perThread = 20000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int id = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < perThread; i++)
+                    {
+                        filter.add(id + "-" + i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        for (int t = 0; t < threads.length; t++)
+        {
+            for (int i = 0; i < perThread; i++)
+            {
+                assertTrue(filter.mightContain(t + "-" + i));
+            }
+        }
+    }
+}
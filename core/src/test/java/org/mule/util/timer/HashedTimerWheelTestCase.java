@@ -0,0 +1,224 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.util.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+@SmallTest
+public class HashedTimerWheelTestCase extends AbstractMuleTestCase
+{
+    private static final Log logger = LogFactory.getLog(HashedTimerWheelTestCase.class);
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final HashedTimerWheel<String> wheel = new HashedTimerWheel<String>(10, TimeUnit.MILLISECONDS, 8);
+
+    @Test
+    public void expiresOnlyDueTimeouts() throws Exception
+    {
+        long now = System.nanoTime();
+        wheel.scheduleAt("first", now + TICK);
+        wheel.scheduleAt("second", now + 5 * TICK);
+        assertEquals(2, wheel.size());
+
+        List<String> expired = new ArrayList<String>();
+        assertEquals(0, wheel.expire(now, expired));
+        assertEquals(1, wheel.expire(now + 3 * TICK, expired));
+        assertEquals("first", expired.get(0));
+        assertEquals(1, wheel.size());
+
+        assertEquals(1, wheel.expire(now + 7 * TICK, expired));
+        assertEquals("second", expired.get(1));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void keepsTimeoutsOfLaterRevolutions() throws Exception
+    {
+        long now = System.nanoTime();
+        // eight buckets, so this shares a bucket with ticks one revolution earlier
+        wheel.scheduleAt("later", now + 20 * TICK);
+
+        List<String> expired = new ArrayList<String>();
+        assertEquals(0, wheel.expire(now + 10 * TICK, expired));
+        assertEquals(0, wheel.expire(now + 18 * TICK, expired));
+        assertEquals(1, wheel.expire(now + 22 * TICK, expired));
+        assertEquals("later", expired.get(0));
+    }
+
+    @Test
+    public void expiresEverythingAfterLongPause() throws Exception
+    {
+        long now = System.nanoTime();
+        Set<String> scheduled = new HashSet<String>();
+        for (int i = 0; i < 100; i++)
+        {
+            wheel.scheduleAt("task" + i, now + i * TICK);
+            scheduled.add("task" + i);
+        }
+
+        Set<String> expired = new HashSet<String>();
+        assertEquals(100, wheel.expire(now + 200 * TICK, expired));
+        assertEquals(scheduled, expired);
+    }
+
+    @Test
+    public void pastDeadlineExpiresOnNextTick() throws Exception
+    {
+        long now = System.nanoTime();
+        List<String> expired = new ArrayList<String>();
+        wheel.expire(now + 10 * TICK, expired);
+
+        HashedTimerWheel.Timeout<String> timeout = wheel.scheduleAt("late", now);
+        assertEquals(1, wheel.expire(now + 12 * TICK, expired));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotExpire() throws Exception
+    {
+        long now = System.nanoTime();
+        HashedTimerWheel.Timeout<String> timeout = wheel.scheduleAt("cancelled", now + TICK);
+        wheel.scheduleAt("kept", now + TICK);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(1, wheel.size());
+
+        List<String> expired = new ArrayList<String>();
+        assertEquals(1, wheel.expire(now + 3 * TICK, expired));
+        assertEquals("kept", expired.get(0));
+    }
+
+    @Test
+    public void clearCancelsEverything() throws Exception
+    {
+        long now = System.nanoTime();
+        for (int i = 0; i < 10; i++)
+        {
+            wheel.scheduleAt("task" + i, now + i * TICK);
+        }
+        wheel.clear();
+
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.expire(now + 20 * TICK, new ArrayList<String>()));
+    }
+
+    @Test
+    public void concurrentSchedulingLosesNothing() throws Exception
+    {
+        final int threads = 4;
+        final int perThread = 2000;
+        final Set<String> expired = new HashSet<String>();
+        Thread[] schedulers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            final int id = t;
+            schedulers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < perThread; i++)
+                    {
+                        wheel.schedule(id + "-" + i, i % 5, TimeUnit.MILLISECONDS);
+                    }
+                }
+            };
+            schedulers[t].start();
+        }
+        while (isAlive(schedulers))
+        {
+            wheel.expire(expired);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (expired.size() < threads * perThread && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+            wheel.expire(expired);
+        }
+        assertEquals(threads * perThread, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void millionTimeouts() throws Exception
+    {
+        final int count = 1000000;
+        HashedTimerWheel<Integer> large = new HashedTimerWheel<Integer>(10, TimeUnit.MILLISECONDS, 1024);
+        List<HashedTimerWheel.Timeout<Integer>> scheduled = new ArrayList<HashedTimerWheel.Timeout<Integer>>(count);
+
+        long now = System.nanoTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++)
+        {
+            // spread over two revolutions of the wheel
+            scheduled.add(large.scheduleAt(i, now + (i % 2048) * TICK));
+        }
+        long scheduling = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i += 2)
+        {
+            scheduled.get(i).cancel();
+        }
+        long cancelling = System.nanoTime() - start;
+
+        // a run that finds one tick due only looks at that tick's bucket
+        List<Integer> expired = new ArrayList<Integer>();
+        start = System.nanoTime();
+        large.expire(now + 2 * TICK, expired);
+        long singleRun = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int tick = 3; tick <= 2050; tick++)
+        {
+            large.expire(now + tick * TICK, expired);
+        }
+        long draining = System.nanoTime() - start;
+
+        assertEquals(count / 2, expired.size());
+        assertEquals(0, large.size());
+        logger.info(String.format("%d timeouts: scheduled in %d ms, half cancelled in %d ms, "
+                                  + "one tick expired in %d us, all expired in %d ms", count,
+            TimeUnit.NANOSECONDS.toMillis(scheduling), TimeUnit.NANOSECONDS.toMillis(cancelling),
+            TimeUnit.NANOSECONDS.toMicros(singleRun), TimeUnit.NANOSECONDS.toMillis(draining)));
+    }
+
+    private boolean isAlive(Thread[] threads)
+    {
+        for (Thread thread : threads)
+        {
+            if (thread.isAlive())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.json;
+
+import org.mule.api.MuleRuntimeException;
+import org.mule.config.i18n.MessageFactory;
+import org.mule.routing.AbstractMessageSequence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.NoSuchElementException;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * A {@link org.mule.routing.MessageSequence} of the elements of a JSON array, read
+ * one at a time from a {@link JsonParser}. Only the element being returned is held
+ * in memory, so arrays of any size can be split.
+ * <p/>
+ * If an item class is given each element is mapped to it by the {@link ObjectMapper},
+ * otherwise each element is returned as a JSON string. The parser is closed once the
+ * end of the array is reached, or by {@link #close()} if the sequence is not consumed
+ * to the end, as splitters do when processing an element fails.
+ */
+public class JsonArraySequence<T> extends AbstractMessageSequence<T> implements Closeable
+{
+
+    private final JsonParser parser;
+    private final ObjectMapper mapper;
+    private final Class<T> itemClass;
+
+    private boolean started;
+    private boolean atElement;
+    private boolean closed;
+
+    /**
+     * @param parser a parser positioned before the array, or at its start
+     * @param mapper the mapper that reads the elements
+     * @param itemClass the class to map elements to, or null for JSON strings
+     */
+    public JsonArraySequence(JsonParser parser, ObjectMapper mapper, Class<T> itemClass)
+    {
+        this.parser = parser;
+        this.mapper = mapper;
+        this.itemClass = itemClass;
+    }
+
+    public int size()
+    {
+        return UNKNOWN_SIZE;
+    }
+
+    public boolean hasNext()
+    {
+        if (atElement)
+        {
+            return true;
+        }
+        if (closed)
+        {
+            return false;
+        }
+        try
+        {
+            atElement = advance();
+            if (!atElement)
+            {
+                close();
+            }
+            return atElement;
+        }
+        catch (IOException e)
+        {
+            close();
+            throw new MuleRuntimeException(MessageFactory.createStaticMessage("Failed to read the next JSON element"), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        atElement = false;
+        try
+        {
+            if (itemClass != null)
+            {
+                return mapper.readValue(parser, itemClass);
+            }
+            StringWriter element = new StringWriter();
+            JsonGenerator generator = mapper.getJsonFactory().createJsonGenerator(element);
+            generator.copyCurrentStructure(parser);
+            generator.close();
+            return (T) element.toString();
+        }
+        catch (IOException e)
+        {
+            close();
+            throw new MuleRuntimeException(MessageFactory.createStaticMessage("Failed to read the next JSON element"), e);
+        }
+    }
+
+    /**
+     * Closes the underlying parser, ending the sequence.
+     */
+    public void close()
+    {
+        if (!closed)
+        {
+            closed = true;
+            try
+            {
+                parser.close();
+            }
+            catch (IOException e)
+            {
+                // nothing more will be read from it
+            }
+        }
+    }
+
+    /**
+     * Moves the parser to the first token of the next element to return.
+     *
+     * @return false if the array has no more of them
+     */
+    private boolean advance() throws IOException
+    {
+        if (!started)
+        {
+            started = true;
+            JsonToken token = parser.getCurrentToken();
+            if (token == null)
+            {
+                token = parser.nextToken();
+            }
+            if (token == null)
+            {
+                return false;
+            }
+            if (token != JsonToken.START_ARRAY)
+            {
+                throw new IOException("Expected a JSON array but found " + token);
+            }
+        }
+        JsonToken token = parser.nextToken();
+        return token != null && token != JsonToken.END_ARRAY;
+    }
+}
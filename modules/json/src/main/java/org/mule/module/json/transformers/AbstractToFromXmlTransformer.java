@@ -9,7 +9,10 @@
  */
 package org.mule.module.json.transformers;
 
+import org.mule.api.MuleEvent;
+import org.mule.api.transport.OutputHandler;
 import org.mule.transformer.AbstractTransformer;
+import org.mule.util.IOUtils;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -21,10 +24,14 @@ import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stax.StAXResult;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 
 /**
- * Superclass for transformers that convert JSON to and from XML
+ * Superclass for transformers that convert JSON to and from XML. The result is a string, unless the
+ * returnClass is {@link OutputHandler}: the conversion is then streamed to the output stream the result
+ * is written to, without holding the converted document in memory.
  */
 public abstract class AbstractToFromXmlTransformer extends AbstractTransformer
 {
@@ -47,4 +54,48 @@ public abstract class AbstractToFromXmlTransformer extends AbstractTransformer
         transformer.transform(source, result);
         return writer.toString();
     }
+
+    /**
+     * @return whether the result should be streamed by an {@link OutputHandler}
+     */
+    protected boolean isStreaming()
+    {
+        return OutputHandler.class.equals(getReturnDataType().getType());
+    }
+
+    /**
+     * Return an output handler that runs the transformation as the result is written, closing the
+     * inputs afterwards
+     */
+    protected OutputHandler convertLater(final Source source, final XMLOutputFactory factory,
+                                         final String encoding, final TransformerInputs inputs)
+    {
+        return new OutputHandler()
+        {
+            public void write(MuleEvent event, OutputStream out) throws IOException
+            {
+                try
+                {
+                    XMLStreamWriter output = factory.createXMLStreamWriter(out, encoding);
+                    Transformer transformer = transformerFactory.newTransformer();
+                    transformer.transform(source, new StAXResult(output));
+                    output.flush();
+                }
+                catch (Exception e)
+                {
+                    IOException ioe = new IOException(e.toString());
+                    ioe.initCause(e);
+                    throw ioe;
+                }
+                finally
+                {
+                    if (inputs != null)
+                    {
+                        IOUtils.closeQuietly(inputs.getInputStream());
+                        IOUtils.closeQuietly(inputs.getReader());
+                    }
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.json.transformers;
+
+import org.mule.api.MuleMessage;
+import org.mule.api.transformer.TransformerException;
+import org.mule.config.i18n.CoreMessages;
+import org.mule.module.json.JsonArraySequence;
+import org.mule.routing.MessageSequence;
+import org.mule.transformer.types.DataTypeFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * Turns a JSON array payload into a {@link MessageSequence} of its elements that is
+ * parsed from the payload as it is iterated, so that <code>foreach</code> or a
+ * <code>collection-splitter</code> can process each element of a large array without
+ * loading the whole array in memory. See {@link JsonArraySequence}.
+ * <p/>
+ * Elements are mapped to <code>itemClass</code> if it is set, or returned as JSON
+ * strings otherwise. As the sequence reads the payload, it can only be iterated once.
+ */
+public class JsonToArraySequence extends AbstractJsonTransformer
+{
+
+    private Class<?> itemClass;
+
+    public JsonToArraySequence()
+    {
+        this.registerSourceType(DataTypeFactory.STRING);
+        this.registerSourceType(DataTypeFactory.INPUT_STREAM);
+        this.registerSourceType(DataTypeFactory.BYTE_ARRAY);
+        this.registerSourceType(DataTypeFactory.create(Reader.class));
+        this.registerSourceType(DataTypeFactory.create(URL.class));
+        this.registerSourceType(DataTypeFactory.create(File.class));
+        setReturnDataType(DataTypeFactory.create(MessageSequence.class));
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Object transformMessage(MuleMessage message, String outputEncoding) throws TransformerException
+    {
+        TransformerInputs inputs = new TransformerInputs(this, message.getPayload());
+        try
+        {
+            JsonParser parser;
+            if (inputs.getInputStream() != null)
+            {
+                // the parser detects the encoding of the stream itself
+                parser = getMapper().getJsonFactory().createJsonParser(inputs.getInputStream());
+            }
+            else
+            {
+                parser = getMapper().getJsonFactory().createJsonParser(inputs.getReader());
+            }
+            return new JsonArraySequence(parser, getMapper(), itemClass);
+        }
+        catch (IOException e)
+        {
+            throw new TransformerException(CoreMessages.transformFailed("json",
+                MessageSequence.class.getName()), this, e);
+        }
+    }
+
+    public Class<?> getItemClass()
+    {
+        return itemClass;
+    }
+
+    public void setItemClass(Class<?> itemClass)
+    {
+        this.itemClass = itemClass;
+    }
+}
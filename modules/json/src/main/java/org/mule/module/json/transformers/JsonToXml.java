@@ -51,6 +51,7 @@ public class JsonToXml extends AbstractToFromXmlTransformer
         inputFactory.setProperty(JsonXMLInputFactory.PROP_MULTIPLE_PI, false);
         TransformerInputs inputs = new TransformerInputs(this,src);
         Source source;
+        boolean streaming = false;
         try
         {
             if (inputs.getInputStream() != null)
@@ -63,6 +64,11 @@ public class JsonToXml extends AbstractToFromXmlTransformer
             }
 
             XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+            if (isStreaming())
+            {
+                streaming = true;
+                return convertLater(source, outputFactory, enc == null ? "UTF-8" : enc, inputs);
+            }
             return convert(source, outputFactory);
         }
         catch (Exception ex)
@@ -71,8 +77,11 @@ public class JsonToXml extends AbstractToFromXmlTransformer
         }
         finally
         {
-            IOUtils.closeQuietly(inputs.getInputStream());
-            IOUtils.closeQuietly(inputs.getReader());
+            if (!streaming)
+            {
+                IOUtils.closeQuietly(inputs.getInputStream());
+                IOUtils.closeQuietly(inputs.getReader());
+            }
         }
     }
 }
@@ -10,9 +10,11 @@
 
 package org.mule.module.json.transformers;
 
+import org.mule.api.MuleEvent;
 import org.mule.api.MuleMessage;
 import org.mule.api.lifecycle.InitialisationException;
 import org.mule.api.transformer.TransformerException;
+import org.mule.api.transport.OutputHandler;
 import org.mule.module.json.filters.IsJsonFilter;
 import org.mule.transformer.types.DataTypeFactory;
 
@@ -20,6 +22,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
@@ -27,11 +31,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.codehaus.jackson.JsonGenerator;
+
 /**
  * Converts a java object to a JSON encoded object that can be consumed by other languages such as
  * Javascript or Ruby.
  * <p/>
- * The returnClass for this transformer is always java.lang.String, there is no need to set this.
+ * The returnClass for this transformer is java.lang.String by default. It can be set to byte[], or to
+ * {@link OutputHandler} for the object to be serialized straight to the output stream it is written to,
+ * without building the whole JSON document in memory.
  */
 public class ObjectToJson extends AbstractJsonTransformer
 {
@@ -97,6 +105,23 @@ public class ObjectToJson extends AbstractJsonTransformer
             src = this.getException(message.getExceptionPayload().getException());
         }
 
+        if (returnType.getType().equals(OutputHandler.class))
+        {
+            final Object value = src;
+            final String encoding = outputEncoding == null ? "UTF-8" : outputEncoding;
+            return new OutputHandler()
+            {
+                public void write(MuleEvent event, OutputStream out) throws IOException
+                {
+                    // the generator writes through to the stream as it serializes
+                    JsonGenerator generator = getMapper().getJsonFactory().createJsonGenerator(
+                        new OutputStreamWriter(out, encoding));
+                    getMapper().writeValue(generator, value);
+                    generator.flush();
+                }
+            };
+        }
+
         StringWriter writer = new StringWriter();
         try
         {
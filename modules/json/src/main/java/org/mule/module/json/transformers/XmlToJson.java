@@ -54,6 +54,7 @@ public class XmlToJson  extends AbstractToFromXmlTransformer
 
         TransformerInputs inputs = null;
         Source source;
+        boolean streaming = false;
         try
         {
             if (src instanceof Document)
@@ -81,7 +82,12 @@ public class XmlToJson  extends AbstractToFromXmlTransformer
             XMLOutputFactory outputFactory = new JsonXMLOutputFactory();
             outputFactory.setProperty(JsonXMLOutputFactory.PROP_AUTO_ARRAY, true);
             outputFactory.setProperty(JsonXMLOutputFactory.PROP_PRETTY_PRINT, true);
-           return convert(source, outputFactory);
+            if (isStreaming())
+            {
+                streaming = true;
+                return convertLater(source, outputFactory, enc == null ? "UTF-8" : enc, inputs);
+            }
+            return convert(source, outputFactory);
         }
         catch (Exception ex)
         {
@@ -89,7 +95,7 @@ public class XmlToJson  extends AbstractToFromXmlTransformer
         }
         finally
         {
-            if (inputs != null)
+            if (inputs != null && !streaming)
             {
                 IOUtils.closeQuietly(inputs.getInputStream());
                 IOUtils.closeQuietly(inputs.getReader());
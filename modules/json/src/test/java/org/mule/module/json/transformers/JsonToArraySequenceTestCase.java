@@ -0,0 +1,185 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.json.transformers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.mule.api.MuleRuntimeException;
+import org.mule.module.json.JsonArraySequence;
+import org.mule.module.json.TestBean;
+import org.mule.routing.MessageSequence;
+import org.mule.tck.junit4.AbstractMuleContextTestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class JsonToArraySequenceTestCase extends AbstractMuleContextTestCase
+{
+
+    private static final String BEANS = "[{\"name\":\"first\",\"id\":1},\n"
+                                        + " {\"name\":\"second\",\"id\":2,\"options\":[\"a\",\"b\"]},"
+                                        + " {\"name\":\"third\",\"id\":3}]";
+
+    @Test
+    public void splitsTheElementsAsJsonStrings() throws Exception
+    {
+        List<Object> elements = split(createTransformer(null).transform(BEANS));
+        assertEquals(3, elements.size());
+        assertEquals("{\"name\":\"first\",\"id\":1}", elements.get(0));
+        assertEquals("{\"name\":\"second\",\"id\":2,\"options\":[\"a\",\"b\"]}", elements.get(1));
+    }
+
+    @Test
+    public void mapsTheElementsToTheItemClass() throws Exception
+    {
+        List<Object> elements = split(createTransformer(TestBean.class).transform(BEANS.getBytes("UTF-8")));
+        assertEquals(3, elements.size());
+        TestBean second = (TestBean) elements.get(1);
+        assertEquals("second", second.getName());
+        assertEquals(2, second.getId());
+        assertEquals(2, second.getOptions().length);
+    }
+
+    @Test
+    public void emptyArrayIsAnEmptySequence() throws Exception
+    {
+        MessageSequence<?> sequence = (MessageSequence<?>) createTransformer(null).transform("[ ]");
+        assertTrue(sequence.isEmpty());
+    }
+
+    @Test
+    public void documentMustBeAnArray() throws Exception
+    {
+        MessageSequence<?> sequence = (MessageSequence<?>) createTransformer(null).transform("{\"id\":1}");
+        try
+        {
+            sequence.hasNext();
+            fail("the document is not an array");
+        }
+        catch (MuleRuntimeException e)
+        {
+            // expected
+        }
+        assertFalse(sequence.hasNext());
+    }
+
+    @Test
+    public void elementsAreReadOnlyWhenRequested() throws Exception
+    {
+        ScriptedStream payload = new ScriptedStream("[{\"name\":\"first\",\"id\":1}", ",{\"name\":\"second\",\"id\":2}]");
+        MessageSequence<?> sequence = (MessageSequence<?>) createTransformer(TestBean.class).transform(payload);
+
+        assertTrue(sequence.hasNext());
+        assertEquals(1, ((TestBean) sequence.next()).getId());
+        assertEquals(1, payload.partsRead);
+
+        payload.readable = 2;
+        assertEquals(2, ((TestBean) sequence.next()).getId());
+        assertFalse(sequence.hasNext());
+        assertTrue("the payload is closed at the end of the array", payload.closed);
+    }
+
+    @Test
+    public void closingTheSequenceClosesThePayload() throws Exception
+    {
+        ScriptedStream payload = new ScriptedStream("[1, 2, 3]");
+        payload.readable = 1;
+        JsonArraySequence<?> sequence = (JsonArraySequence<?>) createTransformer(null).transform(payload);
+        assertEquals("1", sequence.next());
+        assertFalse(payload.closed);
+        sequence.close();
+        assertTrue(payload.closed);
+        assertFalse(sequence.hasNext());
+    }
+
+    private List<Object> split(Object sequence)
+    {
+        List<Object> elements = new ArrayList<Object>();
+        for (MessageSequence<?> it = (MessageSequence<?>) sequence; it.hasNext();)
+        {
+            elements.add(it.next());
+        }
+        return elements;
+    }
+
+    private JsonToArraySequence createTransformer(Class<?> itemClass) throws Exception
+    {
+        JsonToArraySequence transformer = new JsonToArraySequence();
+        transformer.setItemClass(itemClass);
+        transformer.setMuleContext(muleContext);
+        transformer.initialise();
+        return transformer;
+    }
+
+    /**
+     * A payload made of parts that fails if a part is read before the test allows it.
+     */
+    private static class ScriptedStream extends InputStream
+    {
+        private final byte[][] parts;
+        private int part;
+        private int position;
+        int readable = 1;
+        int partsRead;
+        boolean closed;
+
+        ScriptedStream(String... parts) throws Exception
+        {
+            this.parts = new byte[parts.length][];
+            for (int i = 0; i < parts.length; i++)
+            {
+                this.parts[i] = parts[i].getBytes("UTF-8");
+            }
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (part < parts.length && position == parts[part].length)
+            {
+                part++;
+                position = 0;
+            }
+            if (part == parts.length)
+            {
+                return -1;
+            }
+            if (part >= readable)
+            {
+                throw new IOException("Part " + (part + 1) + " read ahead of the sequence");
+            }
+            partsRead = part + 1;
+            int count = Math.min(len, parts[part].length - position);
+            System.arraycopy(parts[part], position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+}
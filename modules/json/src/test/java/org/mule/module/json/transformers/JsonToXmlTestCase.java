@@ -10,9 +10,12 @@
 package org.mule.module.json.transformers;
 
 import org.mule.api.transformer.TransformerException;
+import org.mule.api.transport.OutputHandler;
 import org.mule.module.json.transformers.JsonToXml;
+import org.mule.transformer.types.DataTypeFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
 
 import org.junit.Test;
@@ -66,4 +69,45 @@ public class JsonToXmlTestCase
             assertTrue(ex instanceof TransformerException);
         }
     }
+
+    @Test
+    public void outputHandlerWritesTheDocumentAndThenClosesThePayload() throws Exception
+    {
+        String json = "{\"order\" : {\"id\" : 1, \"item\" : [ \"a\", \"b\" ]}}";
+        JsonToXml jToX = new JsonToXml();
+        String xml = (String) jToX.transform(json);
+
+        jToX.setReturnDataType(DataTypeFactory.create(OutputHandler.class));
+        ClosingReader payload = new ClosingReader(json);
+        OutputHandler handler = (OutputHandler) jToX.transform(payload);
+        assertFalse("the payload is read as the result is written", payload.closed);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.write(null, out);
+        assertTrue(payload.closed);
+        // the XML declaration of the streamed document also names its encoding
+        assertEquals(withoutDeclaration(xml), withoutDeclaration(out.toString("UTF-8")));
+    }
+
+    private String withoutDeclaration(String xml)
+    {
+        return xml.replaceFirst("^<\\?xml[^>]*\\?>", "");
+    }
+
+    private static class ClosingReader extends StringReader
+    {
+        boolean closed;
+
+        ClosingReader(String s)
+        {
+            super(s);
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+            super.close();
+        }
+    }
 }
@@ -0,0 +1,39 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.json.transformers;
+
+import static org.junit.Assert.assertEquals;
+
+import org.mule.api.transport.OutputHandler;
+import org.mule.module.json.TestBean;
+import org.mule.tck.junit4.AbstractMuleContextTestCase;
+import org.mule.transformer.types.DataTypeFactory;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class ObjectToJsonTestCase extends AbstractMuleContextTestCase
+{
+
+    @Test
+    public void outputHandlerWritesTheSameJsonAsTheString() throws Exception
+    {
+        TestBean bean = new TestBean("json", 12, 4.3, "this is cool");
+        String json = (String) createObject(ObjectToJson.class).transform(bean);
+
+        ObjectToJson transformer = createObject(ObjectToJson.class);
+        transformer.setReturnDataType(DataTypeFactory.create(OutputHandler.class));
+        OutputHandler handler = (OutputHandler) transformer.transform(bean);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.write(null, out);
+        assertEquals(json, out.toString("UTF-8"));
+    }
+}
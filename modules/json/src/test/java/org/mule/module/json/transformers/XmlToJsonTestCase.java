@@ -9,12 +9,20 @@
  */
 package org.mule.module.json.transformers;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import org.mule.api.transformer.TransformerException;
+import org.mule.api.transport.OutputHandler;
 import org.mule.module.xml.util.XMLUtils;
 import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.transformer.types.DataTypeFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
@@ -150,4 +158,30 @@ public class XmlToJsonTestCase extends AbstractMuleTestCase
         String jsonResponse = (String) transformer.transform(XML_WITH_NAMESPACE);
         JSONAssert.assertEquals(EXPECTED_JSON_WITH_NAMESPACE, jsonResponse, false);
     }
+
+    @Test
+    public void outputHandlerWritesTheSameJsonAsTheString() throws Exception
+    {
+        String json = (String) new XmlToJson().transform(XML);
+
+        XmlToJson transformer = new XmlToJson();
+        transformer.setReturnDataType(DataTypeFactory.create(OutputHandler.class));
+        final AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayInputStream input = new ByteArrayInputStream(XML.getBytes())
+        {
+            @Override
+            public void close() throws IOException
+            {
+                closed.set(true);
+                super.close();
+            }
+        };
+        OutputHandler handler = (OutputHandler) transformer.transform(input);
+        assertFalse("the input is read as the result is written", closed.get());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.write(null, out);
+        assertTrue(closed.get());
+        JSONAssert.assertEquals(json, out.toString("UTF-8"), true);
+    }
 }
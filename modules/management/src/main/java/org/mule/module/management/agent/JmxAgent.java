@@ -13,6 +13,7 @@ import org.mule.AbstractAgent;
 import org.mule.api.MuleException;
 import org.mule.api.MuleRuntimeException;
 import org.mule.api.context.notification.MuleContextNotificationListener;
+import org.mule.api.el.ExpressionLanguage;
 import org.mule.api.lifecycle.InitialisationException;
 import org.mule.api.model.Model;
 import org.mule.api.service.Service;
@@ -22,6 +23,7 @@ import org.mule.config.i18n.CoreMessages;
 import org.mule.construct.AbstractFlowConstruct;
 import org.mule.context.notification.MuleContextNotification;
 import org.mule.context.notification.NotificationException;
+import org.mule.el.mvel.MVELExpressionLanguage;
 import org.mule.management.stats.FlowConstructStatistics;
 import org.mule.module.management.i18n.ManagementMessages;
 import org.mule.module.management.mbean.ApplicationService;
@@ -29,6 +31,8 @@ import org.mule.module.management.mbean.ConnectorService;
 import org.mule.module.management.mbean.ConnectorServiceMBean;
 import org.mule.module.management.mbean.EndpointService;
 import org.mule.module.management.mbean.EndpointServiceMBean;
+import org.mule.module.management.mbean.ExpressionLanguageService;
+import org.mule.module.management.mbean.ExpressionLanguageServiceMBean;
 import org.mule.module.management.mbean.FlowConstructService;
 import org.mule.module.management.mbean.FlowConstructServiceMBean;
 import org.mule.module.management.mbean.ModelService;
@@ -405,6 +409,21 @@ public class JmxAgent extends AbstractAgent
         mBeanServer.registerMBean(mBean, on);
     }
 
+    protected void registerExpressionLanguageService() throws NotCompliantMBeanException, MBeanRegistrationException,
+            InstanceAlreadyExistsException, MalformedObjectNameException
+    {
+        ExpressionLanguage expressionLanguage = muleContext.getExpressionLanguage();
+        if (!(expressionLanguage instanceof MVELExpressionLanguage))
+        {
+            return;
+        }
+        ObjectName on = jmxSupport.getObjectName(String.format("%s:%s", jmxSupport.getDomainName(muleContext, !containerMode), ExpressionLanguageServiceMBean.DEFAULT_JMX_NAME));
+        ExpressionLanguageServiceMBean service = new ExpressionLanguageService(((MVELExpressionLanguage) expressionLanguage).getCompiledExpressionCache());
+        ClassloaderSwitchingMBeanWrapper mBean = new ClassloaderSwitchingMBeanWrapper(service, ExpressionLanguageServiceMBean.class, muleContext.getExecutionClassLoader());
+        logger.debug("Registering expression language with name: " + on);
+        mBeanServer.registerMBean(mBean, on);
+    }
+
     protected void registerServiceServices() throws NotCompliantMBeanException, MBeanRegistrationException,
         InstanceAlreadyExistsException, MalformedObjectNameException
     {
@@ -707,6 +726,7 @@ public class JmxAgent extends AbstractAgent
                     registerStatisticsService();
                     registerMuleService();
                     registerConfigurationService();
+                    registerExpressionLanguageService();
                     registerModelServices();
                     registerServiceServices();
                     registerFlowConstructServices();
@@ -0,0 +1,56 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.management.mbean;
+
+import org.mule.el.mvel.CompiledExpressionCache;
+
+/**
+ * <code>ExpressionLanguageService</code> exposes the compiled expression cache counters
+ * as a management service.
+ */
+public class ExpressionLanguageService implements ExpressionLanguageServiceMBean
+{
+    private final CompiledExpressionCache cache;
+
+    public ExpressionLanguageService(CompiledExpressionCache cache)
+    {
+        this.cache = cache;
+    }
+
+    public long getCompiledExpressionCacheHits()
+    {
+        return cache.getHits();
+    }
+
+    public long getCompiledExpressionCacheMisses()
+    {
+        return cache.getMisses();
+    }
+
+    public long getCompiledExpressionCacheEvictions()
+    {
+        return cache.getEvictions();
+    }
+
+    public int getCompiledExpressionCacheSize()
+    {
+        return cache.size();
+    }
+
+    public int getCompiledExpressionCacheMaxSize()
+    {
+        return cache.getMaxSize();
+    }
+
+    public void clearCompiledExpressionCacheStatistics()
+    {
+        cache.resetStatistics();
+    }
+}
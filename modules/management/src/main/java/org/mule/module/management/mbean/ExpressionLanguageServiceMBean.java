@@ -0,0 +1,31 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.management.mbean;
+
+/**
+ * <code>ExpressionLanguageServiceMBean</code> is a JMX service interface for the
+ * compiled expression cache of the Mule expression language.
+ */
+public interface ExpressionLanguageServiceMBean
+{
+    String DEFAULT_JMX_NAME = "name=ExpressionLanguage";
+
+    long getCompiledExpressionCacheHits();
+
+    long getCompiledExpressionCacheMisses();
+
+    long getCompiledExpressionCacheEvictions();
+
+    int getCompiledExpressionCacheSize();
+
+    int getCompiledExpressionCacheMaxSize();
+
+    void clearCompiledExpressionCacheStatistics();
+}
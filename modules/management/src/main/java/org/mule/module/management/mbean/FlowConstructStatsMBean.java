@@ -34,6 +34,14 @@ public interface FlowConstructStatsMBean
 
     long getTotalProcessingTime();
 
+    long getProcessingTimeP50();
+
+    long getProcessingTimeP90();
+
+    long getProcessingTimeP99();
+
+    long getProcessingTimeP999();
+
     long getFatalErrors();
 
     long getExecutionErrors();
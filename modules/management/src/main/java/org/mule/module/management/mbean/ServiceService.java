@@ -258,4 +258,24 @@ public class ServiceService extends FlowConstructService implements ServiceServi
     {
         return statistics.getTotalExecutionTime();
     }
+
+    public long getExecutionTimeP50()
+    {
+        return statistics.getExecutionTimeP50();
+    }
+
+    public long getExecutionTimeP90()
+    {
+        return statistics.getExecutionTimeP90();
+    }
+
+    public long getExecutionTimeP99()
+    {
+        return statistics.getExecutionTimeP99();
+    }
+
+    public long getExecutionTimeP999()
+    {
+        return statistics.getExecutionTimeP999();
+    }
 }
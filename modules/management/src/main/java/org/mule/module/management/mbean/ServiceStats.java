@@ -109,6 +109,26 @@ public class ServiceStats extends FlowConstructStats implements ServiceStatsMBea
         return statistics.getTotalExecutionTime();
     }
 
+    public long getExecutionTimeP50()
+    {
+        return statistics.getExecutionTimeP50();
+    }
+
+    public long getExecutionTimeP90()
+    {
+        return statistics.getExecutionTimeP90();
+    }
+
+    public long getExecutionTimeP99()
+    {
+        return statistics.getExecutionTimeP99();
+    }
+
+    public long getExecutionTimeP999()
+    {
+        return statistics.getExecutionTimeP999();
+    }
+
     @Override
     public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception
     {
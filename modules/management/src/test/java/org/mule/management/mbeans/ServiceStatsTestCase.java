@@ -11,6 +11,7 @@
 package org.mule.management.mbeans;
 
 import org.mule.management.AbstractMuleJmxTestCase;
+import org.mule.management.stats.ComponentStatistics;
 import org.mule.management.stats.RouterStatistics;
 import org.mule.management.stats.SedaServiceStatistics;
 import org.mule.module.management.mbean.ServiceStats;
@@ -22,6 +23,7 @@ import javax.management.ObjectName;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ServiceStatsTestCase extends AbstractMuleJmxTestCase
 {
@@ -54,4 +56,33 @@ public class ServiceStatsTestCase extends AbstractMuleJmxTestCase
 
         assertEquals("There should be no MBeans left in the domain", 0, mbeans.size());
     }
+
+    @Test
+    public void testExecutionTimePercentiles() throws Exception
+    {
+        final SedaServiceStatistics statistics = new SedaServiceStatistics("TEST_PERCENTILES", 0, 0);
+        statistics.setInboundRouterStat(new RouterStatistics(RouterStatistics.TYPE_INBOUND));
+        statistics.setOutboundRouterStat(new RouterStatistics(RouterStatistics.TYPE_OUTBOUND));
+        statistics.setComponentStat(new ComponentStatistics());
+        for (int i = 1; i <= 1000; i++)
+        {
+            statistics.getComponentStat().addExecutionTime(i % 20 == 0 ? 100 : 10);
+        }
+
+        final ObjectName name = ObjectName.getInstance("TEST_DOMAIN_2:type=TEST_NAME");
+        mBeanServer.registerMBean(new ServiceStats(statistics), name);
+        try
+        {
+            ComponentStatistics component = statistics.getComponentStat();
+            assertEquals(10L, mBeanServer.getAttribute(name, "ExecutionTimeP50"));
+            assertEquals(component.getExecutionTimeP90(), mBeanServer.getAttribute(name, "ExecutionTimeP90"));
+            assertEquals(component.getExecutionTimeP99(), mBeanServer.getAttribute(name, "ExecutionTimeP99"));
+            assertEquals(component.getExecutionTimeP999(), mBeanServer.getAttribute(name, "ExecutionTimeP999"));
+            assertTrue(component.getExecutionTimeP99() >= 100);
+        }
+        finally
+        {
+            mBeanServer.unregisterMBean(name);
+        }
+    }
 }
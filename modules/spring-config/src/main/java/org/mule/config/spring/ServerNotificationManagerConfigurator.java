@@ -34,6 +34,10 @@ public class ServerNotificationManagerConfigurator
     private ApplicationContext applicationContext;
 
     private Boolean dynamic;
+    private Integer queueCapacity;
+    private ServerNotificationManager.OverflowPolicy overflowPolicy;
+    private Integer sampleRate;
+    private Integer dispatcherThreads;
     private Map interfaceToEvents;
     private Collection interfaces;
     private Collection<ListenerSubscriptionPair> pairs;
@@ -50,6 +54,22 @@ public class ServerNotificationManagerConfigurator
         {
             notificationManager.setNotificationDynamic(dynamic.booleanValue());
         }
+        if (queueCapacity != null)
+        {
+            notificationManager.setNotificationQueueCapacity(queueCapacity.intValue());
+        }
+        if (overflowPolicy != null)
+        {
+            notificationManager.setOverflowPolicy(overflowPolicy);
+        }
+        if (sampleRate != null)
+        {
+            notificationManager.setSampleRate(sampleRate.intValue());
+        }
+        if (dispatcherThreads != null)
+        {
+            notificationManager.setDispatcherThreads(dispatcherThreads.intValue());
+        }
         if (interfaceToEvents != null)
         {
             notificationManager.setInterfaceToTypes(interfaceToEvents);
@@ -133,6 +153,26 @@ public class ServerNotificationManagerConfigurator
         this.dynamic = new Boolean(dynamic);
     }
 
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = Integer.valueOf(queueCapacity);
+    }
+
+    public void setOverflowPolicy(ServerNotificationManager.OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public void setSampleRate(int sampleRate)
+    {
+        this.sampleRate = Integer.valueOf(sampleRate);
+    }
+
+    public void setDispatcherThreads(int dispatcherThreads)
+    {
+        this.dispatcherThreads = Integer.valueOf(dispatcherThreads);
+    }
+
     public void setInterfaceToTypes(Map interfaceToEvents) throws ClassNotFoundException
     {
         this.interfaceToEvents = interfaceToEvents;
@@ -0,0 +1,150 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.config.spring.processors;
+
+import org.mule.api.MuleContext;
+import org.mule.api.context.MuleContextAware;
+import org.mule.api.context.notification.MuleContextNotificationListener;
+import org.mule.api.el.ExpressionLanguage;
+import org.mule.api.expression.ExpressionManager;
+import org.mule.context.notification.MuleContextNotification;
+import org.mule.context.notification.NotificationException;
+import org.mule.el.mvel.MVELExpressionLanguage;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.TypedStringValue;
+
+/**
+ * Collects every expression found in the configured bean definitions and has the
+ * expression language compile them while the application starts, so flows do not pay
+ * for compilation on their first messages.
+ */
+public class ExpressionPrecompilationProcessor implements BeanFactoryPostProcessor, MuleContextAware
+{
+    private static final Log logger = LogFactory.getLog(ExpressionPrecompilationProcessor.class);
+
+    private MuleContext muleContext;
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException
+    {
+        final Set<String> expressions = new LinkedHashSet<String>();
+        for (String name : beanFactory.getBeanDefinitionNames())
+        {
+            collect(beanFactory.getBeanDefinition(name), expressions);
+        }
+        if (expressions.isEmpty() || muleContext == null)
+        {
+            return;
+        }
+
+        try
+        {
+            muleContext.registerListener(new MuleContextNotificationListener<MuleContextNotification>()
+            {
+                @Override
+                public void onNotification(MuleContextNotification notification)
+                {
+                    if (notification.getAction() == MuleContextNotification.CONTEXT_STARTING)
+                    {
+                        precompile(expressions);
+                    }
+                }
+            });
+        }
+        catch (NotificationException e)
+        {
+            logger.warn("Could not register expression precompilation, expressions will be compiled on first use", e);
+        }
+    }
+
+    protected void precompile(Collection<String> expressions)
+    {
+        ExpressionLanguage expressionLanguage = muleContext.getExpressionLanguage();
+        if (expressionLanguage instanceof MVELExpressionLanguage)
+        {
+            int compiled = ((MVELExpressionLanguage) expressionLanguage).precompile(expressions);
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Precompiled " + compiled + " expressions");
+            }
+        }
+    }
+
+    protected void collect(Object value, Set<String> expressions)
+    {
+        if (value instanceof String)
+        {
+            if (((String) value).contains(ExpressionManager.DEFAULT_EXPRESSION_PREFIX))
+            {
+                expressions.add((String) value);
+            }
+        }
+        else if (value instanceof TypedStringValue)
+        {
+            collect(((TypedStringValue) value).getValue(), expressions);
+        }
+        else if (value instanceof BeanDefinitionHolder)
+        {
+            collect(((BeanDefinitionHolder) value).getBeanDefinition(), expressions);
+        }
+        else if (value instanceof BeanDefinition)
+        {
+            BeanDefinition definition = (BeanDefinition) value;
+            for (PropertyValue propertyValue : definition.getPropertyValues().getPropertyValues())
+            {
+                collect(propertyValue.getValue(), expressions);
+            }
+            ConstructorArgumentValues arguments = definition.getConstructorArgumentValues();
+            for (ConstructorArgumentValues.ValueHolder holder : arguments.getIndexedArgumentValues().values())
+            {
+                collect(holder.getValue(), expressions);
+            }
+            for (ConstructorArgumentValues.ValueHolder holder : arguments.getGenericArgumentValues())
+            {
+                collect(holder.getValue(), expressions);
+            }
+        }
+        else if (value instanceof Collection)
+        {
+            for (Object element : (Collection<?>) value)
+            {
+                collect(element, expressions);
+            }
+        }
+        else if (value instanceof Map)
+        {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+            {
+                collect(entry.getKey(), expressions);
+                collect(entry.getValue(), expressions);
+            }
+        }
+    }
+
+    @Override
+    public void setMuleContext(MuleContext context)
+    {
+        this.muleContext = context;
+    }
+}
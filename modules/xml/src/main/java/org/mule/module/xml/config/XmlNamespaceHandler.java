@@ -29,6 +29,7 @@ import org.mule.module.xml.transformer.XPathExtractor;
 import org.mule.module.xml.transformer.XQueryTransformer;
 import org.mule.module.xml.transformer.XmlPrettyPrinter;
 import org.mule.module.xml.transformer.XmlToDomDocument;
+import org.mule.module.xml.transformer.XmlToElementSequence;
 import org.mule.module.xml.transformer.XmlToObject;
 import org.mule.module.xml.transformer.XmlToOutputHandler;
 import org.mule.module.xml.transformer.jaxb.JAXBMarshallerTransformer;
@@ -51,6 +52,7 @@ public class XmlNamespaceHandler extends AbstractMuleNamespaceHandler
         registerBeanDefinitionParser("dom-to-output-handler-transformer", new MessageProcessorDefinitionParser(XmlToOutputHandler.class));
         registerBeanDefinitionParser("jxpath-extractor-transformer", new MessageProcessorDefinitionParser(JXPathExtractor.class));
         registerBeanDefinitionParser("xml-to-dom-transformer", new MessageProcessorDefinitionParser(XmlToDomDocument.class));
+        registerBeanDefinitionParser("xml-to-element-sequence-transformer", new MessageProcessorDefinitionParser(XmlToElementSequence.class));
         registerBeanDefinitionParser("xml-prettyprinter-transformer", new MessageProcessorDefinitionParser(XmlPrettyPrinter.class));
         registerBeanDefinitionParser("xpath-extractor-transformer", new MessageProcessorDefinitionParser(XPathExtractor.class));
 
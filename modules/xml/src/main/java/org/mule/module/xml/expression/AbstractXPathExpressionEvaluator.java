@@ -24,13 +24,13 @@ import org.mule.api.transformer.TransformerException;
 import org.mule.config.i18n.CoreMessages;
 import org.mule.context.notification.MuleContextNotification;
 import org.mule.module.xml.i18n.XmlMessages;
+import org.mule.module.xml.util.CompiledXPathPool;
 import org.mule.module.xml.util.NamespaceManager;
 import org.mule.transformer.types.DataTypeFactory;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 
 import org.dom4j.Document;
 import org.jaxen.JaxenException;
@@ -43,10 +43,10 @@ import org.w3c.dom.Node;
  */
 public abstract class AbstractXPathExpressionEvaluator implements ExpressionEvaluator, Initialisable, Disposable, MuleContextAware
 {
-    private Map<String, XPath> cache = new WeakHashMap<String, XPath>(8);
+    private final CompiledXPathPool<XPath> pool = new CompiledXPathPool<XPath>();
 
     private MuleContext muleContext;
-    private NamespaceManager namespaceManager;
+    private volatile NamespaceManager namespaceManager;
 
     @Override
     public void setMuleContext(MuleContext context)
@@ -78,7 +78,7 @@ public abstract class AbstractXPathExpressionEvaluator implements ExpressionEval
                     {
                         try
                         {
-                            namespaceManager = muleContext.getRegistry().lookupObject(NamespaceManager.class);
+                            setNamespaceManager(muleContext.getRegistry().lookupObject(NamespaceManager.class));
                         }
                         catch (RegistrationException e)
                         {
@@ -98,7 +98,7 @@ public abstract class AbstractXPathExpressionEvaluator implements ExpressionEval
     {
         try
         {
-            namespaceManager = muleContext.getRegistry().lookupObject(NamespaceManager.class);
+            setNamespaceManager(muleContext.getRegistry().lookupObject(NamespaceManager.class));
         }
         catch (RegistrationException e)
         {
@@ -116,14 +116,18 @@ public abstract class AbstractXPathExpressionEvaluator implements ExpressionEval
 
             List<?> result;
 
-            /*  XPath context state is not thread safe so synchronization must be enforced when adding a new namespace and
-                on evaluation when the context is read.
+            /*  XPath context state is not thread safe so each evaluation borrows an instance of its own from the
+                pool and gives it back once done.
              */
             XPath xpath = getXPath(expression, payload);
-            synchronized (xpath)
+            try
             {
                 result = xpath.selectNodes(payload);
             }
+            finally
+            {
+                releaseXPath(expression, payload, xpath);
+            }
 
             result = extractResultsFromNodes(result);
             if(result.size()==1)
@@ -171,30 +175,35 @@ public abstract class AbstractXPathExpressionEvaluator implements ExpressionEval
         }
     }
 
-    /*
-        The cache is not thread safe, more than one instance of the same xpath can be created, it wouldn't be an
-        issue in this case since one will eventually be selected for GC
-        A ReadWriteLock could be used to guard the cache but it would add unnecessary complexity
+    /**
+     * Takes an XPath for the expression out of the pool, compiling a new one if all of them are in use. The
+     * caller has the XPath to itself until it gives it back with {@link #releaseXPath(String, Object, XPath)}.
      */
     protected XPath getXPath(String expression, Object object) throws JaxenException
     {
-        String xPathCacheKey = expression + getXPathClassName(object);
-        XPath xpath = cache.get(xPathCacheKey);
+        XPath xpath = pool.borrow(getXPathCacheKey(expression, object));
         if(xpath==null)
         {
             xpath = createXPath(expression, object);
-            synchronized (xpath)
+            NamespaceManager namespaceManager = this.namespaceManager;
+            if(namespaceManager!=null)
             {
-                if(namespaceManager!=null)
-                {
-                    addNamespaces(namespaceManager, xpath);
-                }
+                addNamespaces(namespaceManager, xpath);
             }
-            cache.put(xPathCacheKey, xpath);
         }
         return xpath;
     }
 
+    protected void releaseXPath(String expression, Object object, XPath xpath)
+    {
+        pool.release(getXPathCacheKey(expression, object), xpath);
+    }
+
+    private String getXPathCacheKey(String expression, Object object)
+    {
+        return expression + getXPathClassName(object);
+    }
+
     protected String getXPathClassName(Object object)
     {
         return getClass().getName();
@@ -224,7 +233,7 @@ public abstract class AbstractXPathExpressionEvaluator implements ExpressionEval
     @Override
     public void dispose()
     {
-        cache.clear();
+        pool.clear();
     }
 
     public NamespaceManager getNamespaceManager()
@@ -235,6 +244,17 @@ public abstract class AbstractXPathExpressionEvaluator implements ExpressionEval
     public void setNamespaceManager(NamespaceManager namespaceManager)
     {
         this.namespaceManager = namespaceManager;
+        // the pooled XPaths were compiled with the namespaces of the previous manager
+        pool.clear();
+    }
+
+    /**
+     * @return the pool of compiled XPaths, which also tells how often evaluations of the same expression
+     *         overlapped
+     */
+    public CompiledXPathPool<XPath> getXPathPool()
+    {
+        return pool;
     }
 
     public MuleContext getMuleContext()
@@ -22,12 +22,10 @@ import org.mule.api.registry.RegistrationException;
 import org.mule.context.notification.MuleContextNotification;
 import org.mule.module.xml.i18n.XmlMessages;
 import org.mule.module.xml.stax.MapNamespaceContext;
+import org.mule.module.xml.util.CompiledXPathPool;
 import org.mule.module.xml.util.NamespaceManager;
 import org.mule.transformer.types.DataTypeFactory;
 
-import java.util.Map;
-import java.util.WeakHashMap;
-
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -51,10 +49,10 @@ import org.w3c.dom.Node;
  */
 public class JaxpXPathExpressionEvaluator implements ExpressionEvaluator, Initialisable, Disposable, MuleContextAware
 {
-    private Map<String, XPathExpression> cache = new WeakHashMap<String, XPathExpression>(8);
+    private final CompiledXPathPool<XPathExpression> pool = new CompiledXPathPool<XPathExpression>();
 
     private MuleContext muleContext;
-    private NamespaceManager namespaceManager;
+    private volatile NamespaceManager namespaceManager;
     private QName returnType = XPathConstants.STRING;
 
     public JaxpXPathExpressionEvaluator()
@@ -100,7 +98,7 @@ public class JaxpXPathExpressionEvaluator implements ExpressionEvaluator, Initia
                     {
                         try
                         {
-                            namespaceManager = muleContext.getRegistry().lookupObject(NamespaceManager.class);
+                            setNamespaceManager(muleContext.getRegistry().lookupObject(NamespaceManager.class));
                         }
                         catch (RegistrationException e)
                         {
@@ -162,8 +160,14 @@ public class JaxpXPathExpressionEvaluator implements ExpressionEvaluator, Initia
             Node payload = message.getPayload(DataTypeFactory.create(Node.class));
 
             XPathExpression xpath = getXPath(expression);
-
-            return xpath.evaluate(payload, retType);
+            try
+            {
+                return xpath.evaluate(payload, retType);
+            }
+            finally
+            {
+                releaseXPath(expression, xpath);
+            }
         }
         catch (Exception e)
         {
@@ -171,18 +175,25 @@ public class JaxpXPathExpressionEvaluator implements ExpressionEvaluator, Initia
         }
     }
 
+    /**
+     * Takes a compiled expression out of the pool, compiling a new one if all of them are in use. The
+     * caller has it to itself until it gives it back with {@link #releaseXPath(String, XPathExpression)}.
+     */
     protected XPathExpression getXPath(String expression) throws XPathExpressionException
     {
-        String key = expression + getClass().getName();
-        XPathExpression xpath = cache.get(key);
+        XPathExpression xpath = pool.borrow(expression);
         if (xpath == null)
         {
             xpath = createXPath(expression);
-            cache.put(key, xpath);
         }
         return xpath;
     }
 
+    protected void releaseXPath(String expression, XPathExpression xpath)
+    {
+        pool.release(expression, xpath);
+    }
+
     protected XPathExpression createXPath(String expression) throws XPathExpressionException
     {
         XPath xp = XPathFactory.newInstance().newXPath();
@@ -201,7 +212,7 @@ public class JaxpXPathExpressionEvaluator implements ExpressionEvaluator, Initia
     @Override
     public void dispose()
     {
-        cache.clear();
+        pool.clear();
     }
 
     public NamespaceManager getNamespaceManager()
@@ -212,6 +223,17 @@ public class JaxpXPathExpressionEvaluator implements ExpressionEvaluator, Initia
     public void setNamespaceManager(NamespaceManager namespaceManager)
     {
         this.namespaceManager = namespaceManager;
+        // the pooled expressions were compiled with the namespaces of the previous manager
+        pool.clear();
+    }
+
+    /**
+     * @return the pool of compiled expressions, which also tells how often evaluations of the same
+     *         expression overlapped
+     */
+    public CompiledXPathPool<XPathExpression> getXPathPool()
+    {
+        return pool;
     }
 
     public MuleContext getMuleContext()
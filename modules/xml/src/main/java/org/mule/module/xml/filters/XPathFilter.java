@@ -20,6 +20,7 @@ import org.mule.api.registry.RegistrationException;
 import org.mule.api.routing.filter.Filter;
 import org.mule.config.i18n.CoreMessages;
 import org.mule.config.i18n.MessageFactory;
+import org.mule.module.xml.util.CompiledXPathPool;
 import org.mule.module.xml.util.NamespaceManager;
 import org.mule.util.ClassUtils;
 
@@ -33,6 +34,8 @@ import java.util.Map;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.logging.Log;
@@ -52,6 +55,7 @@ public class XPathFilter extends AbstractJaxpFilter  implements Filter, Initiali
     private String expectedValue;
     private XPath xpath;
     private Map<String, String> prefixToNamespaceMap = null;
+    private final CompiledXPathPool<XPathExpression> pool = new CompiledXPathPool<XPathExpression>();
 
     private NamespaceManager namespaceManager;
 
@@ -235,9 +239,18 @@ public class XPathFilter extends AbstractJaxpFilter  implements Filter, Initiali
         Object xpathResult;
         boolean accept = false;
 
+        String pattern = this.pattern;
         try
         {
-            xpathResult = getXpath().evaluate(pattern, node, XPathConstants.STRING);
+            XPathExpression expression = getExpression(pattern);
+            try
+            {
+                xpathResult = expression.evaluate(node, XPathConstants.STRING);
+            }
+            finally
+            {
+                pool.release(pattern, expression);
+            }
         }
         catch (Exception e)
         {
@@ -287,6 +300,34 @@ public class XPathFilter extends AbstractJaxpFilter  implements Filter, Initiali
         return accept;
     }
 
+    /**
+     * Takes a compiled pattern out of the pool so that concurrent evaluations don't
+     * share the same one, compiling it if all of them are in use.
+     */
+    private XPathExpression getExpression(String pattern) throws XPathExpressionException
+    {
+        XPathExpression expression = pool.borrow(pattern);
+        if (expression == null)
+        {
+            // an XPath can only compile one expression at a time
+            XPath xpath = getXpath();
+            synchronized (xpath)
+            {
+                expression = xpath.compile(pattern);
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * @return the pool of compiled patterns, which also tells how often evaluations
+     *         overlapped
+     */
+    public CompiledXPathPool<XPathExpression> getXPathPool()
+    {
+        return pool;
+    }
+
     /**
      * @return XPath expression
      */
@@ -339,6 +380,7 @@ public class XPathFilter extends AbstractJaxpFilter  implements Filter, Initiali
     public void setXpath(XPath xpath)
     {
         this.xpath = xpath;
+        pool.clear();
     }
 
 
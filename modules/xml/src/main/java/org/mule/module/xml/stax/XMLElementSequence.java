@@ -0,0 +1,334 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.xml.stax;
+
+import org.mule.api.MuleRuntimeException;
+import org.mule.config.i18n.MessageFactory;
+import org.mule.routing.AbstractMessageSequence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * A {@link org.mule.routing.MessageSequence} of the elements of an XML document,
+ * read one at a time from an {@link XMLStreamReader}. Each item is an element
+ * subtree serialized as a standalone XML string, carrying the declarations of the
+ * namespaces it inherits from its ancestors. Only the element being returned is
+ * held in memory, so documents of any size can be split.
+ * <p/>
+ * The elements returned are the ones with the given name, matched on the local name
+ * only if the name has no namespace, or the children of the root element if no name
+ * is given. Elements nested in a returned element are part of it and are not
+ * returned on their own.
+ * <p/>
+ * The reader, and the source it reads if one is given, are closed once the end of
+ * the document is reached, or by {@link #close()} if the sequence is not consumed to
+ * the end, as splitters do when processing an element fails.
+ */
+public class XMLElementSequence extends AbstractMessageSequence<String> implements Closeable
+{
+
+    private final XMLStreamReader reader;
+    private final Closeable source;
+    private final QName elementName;
+    private final XMLOutputFactory outputFactory;
+
+    // the prefixes and URIs declared by each of the open ancestors of the current event
+    private final List<String[]> namespaces = new ArrayList<String[]>();
+    private final List<Integer> namespaceCounts = new ArrayList<Integer>();
+    private boolean atElement;
+    private boolean afterElement;
+    private boolean closed;
+
+    public XMLElementSequence(XMLStreamReader reader, QName elementName, XMLOutputFactory outputFactory)
+    {
+        this(reader, null, elementName, outputFactory);
+    }
+
+    /**
+     * @param source the stream or reader the reader reads from, as closing an
+     *            {@link XMLStreamReader} does not close it, or null
+     */
+    public XMLElementSequence(XMLStreamReader reader,
+                              Closeable source,
+                              QName elementName,
+                              XMLOutputFactory outputFactory)
+    {
+        this.reader = reader;
+        this.source = source;
+        this.elementName = elementName;
+        this.outputFactory = outputFactory;
+    }
+
+    public int size()
+    {
+        return UNKNOWN_SIZE;
+    }
+
+    public boolean hasNext()
+    {
+        if (atElement)
+        {
+            return true;
+        }
+        if (closed)
+        {
+            return false;
+        }
+        try
+        {
+            atElement = advance();
+            if (!atElement)
+            {
+                close();
+            }
+            return atElement;
+        }
+        catch (XMLStreamException e)
+        {
+            close();
+            throw new MuleRuntimeException(MessageFactory.createStaticMessage("Failed to read the next XML element"), e);
+        }
+    }
+
+    public String next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        atElement = false;
+        afterElement = true;
+        try
+        {
+            StringWriter output = new StringWriter();
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(output);
+            writeElement(writer);
+            writer.close();
+            return output.toString();
+        }
+        catch (XMLStreamException e)
+        {
+            close();
+            throw new MuleRuntimeException(MessageFactory.createStaticMessage("Failed to read the next XML element"), e);
+        }
+    }
+
+    /**
+     * Closes the underlying reader and source, ending the sequence.
+     */
+    public void close()
+    {
+        if (!closed)
+        {
+            closed = true;
+            try
+            {
+                reader.close();
+            }
+            catch (XMLStreamException e)
+            {
+                // nothing more will be read from it
+            }
+            if (source != null)
+            {
+                try
+                {
+                    source.close();
+                }
+                catch (IOException e)
+                {
+                    // nothing more will be read from it
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the reader to the start of the next element to return.
+     *
+     * @return false if the document has no more of them
+     */
+    private boolean advance() throws XMLStreamException
+    {
+        int event = reader.getEventType();
+        if (afterElement)
+        {
+            // the reader is still at the end tag of the element returned last
+            afterElement = false;
+            event = reader.next();
+        }
+        while (true)
+        {
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                if (matches())
+                {
+                    return true;
+                }
+                pushNamespaces();
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                popNamespaces();
+            }
+            else if (event == XMLStreamConstants.END_DOCUMENT)
+            {
+                return false;
+            }
+            if (!reader.hasNext())
+            {
+                return false;
+            }
+            event = reader.next();
+        }
+    }
+
+    private boolean matches()
+    {
+        if (elementName == null)
+        {
+            return namespaceCounts.size() == 1;
+        }
+        return elementName.getLocalPart().equals(reader.getLocalName())
+               && (elementName.getNamespaceURI().length() == 0
+                   || elementName.getNamespaceURI().equals(reader.getNamespaceURI()));
+    }
+
+    private void pushNamespaces()
+    {
+        int count = reader.getNamespaceCount();
+        for (int i = 0; i < count; i++)
+        {
+            namespaces.add(new String[]{nullToEmpty(reader.getNamespacePrefix(i)), nullToEmpty(reader.getNamespaceURI(i))});
+        }
+        namespaceCounts.add(count);
+    }
+
+    private void popNamespaces()
+    {
+        if (!namespaceCounts.isEmpty())
+        {
+            int count = namespaceCounts.remove(namespaceCounts.size() - 1);
+            for (int i = 0; i < count; i++)
+            {
+                namespaces.remove(namespaces.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Copies the element the reader is at, leaving the reader at its end tag.
+     */
+    private void writeElement(XMLStreamWriter writer) throws XMLStreamException
+    {
+        int depth = 0;
+        int event = reader.getEventType();
+        while (true)
+        {
+            switch (event)
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    writeStartElement(writer, depth == 0);
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    writer.writeEntityRef(reader.getLocalName());
+                    break;
+                default:
+                    break;
+            }
+            if (depth == 0)
+            {
+                return;
+            }
+            event = reader.next();
+        }
+    }
+
+    private void writeStartElement(XMLStreamWriter writer, boolean root) throws XMLStreamException
+    {
+        writer.writeStartElement(nullToEmpty(reader.getPrefix()), reader.getLocalName(),
+            nullToEmpty(reader.getNamespaceURI()));
+
+        Map<String, String> declared = new LinkedHashMap<String, String>();
+        if (root)
+        {
+            for (String[] namespace : namespaces)
+            {
+                declared.put(namespace[0], namespace[1]);
+            }
+        }
+        for (int i = 0; i < reader.getNamespaceCount(); i++)
+        {
+            declared.put(nullToEmpty(reader.getNamespacePrefix(i)), nullToEmpty(reader.getNamespaceURI(i)));
+        }
+        for (Map.Entry<String, String> namespace : declared.entrySet())
+        {
+            if (namespace.getKey().length() == 0)
+            {
+                writer.writeDefaultNamespace(namespace.getValue());
+            }
+            else
+            {
+                writer.writeNamespace(namespace.getKey(), namespace.getValue());
+            }
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++)
+        {
+            String namespaceURI = reader.getAttributeNamespace(i);
+            if (namespaceURI == null || namespaceURI.length() == 0)
+            {
+                writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+            else
+            {
+                writer.writeAttribute(nullToEmpty(reader.getAttributePrefix(i)), namespaceURI,
+                    reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+    }
+
+    private static String nullToEmpty(String value)
+    {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.xml.transformer;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.transform.Templates;
+
+/**
+ * Compiled stylesheets shared by all the {@link XsltTransformer}s that use the same
+ * stylesheet with the same kind of <code>TransformerFactory</code>, so that each
+ * stylesheet is compiled once. {@link Templates} are thread safe and only weakly
+ * referenced here: a stylesheet is dropped once no transformer uses it anymore.
+ * <p/>
+ * Only stylesheets that do not depend on anything but their own text can be shared,
+ * which the caller has to check: one that includes or imports others may resolve
+ * them differently for each transformer.
+ */
+final class SharedTemplates
+{
+
+    private static final ConcurrentMap<Key, WeakReference<Templates>> templates = new ConcurrentHashMap<Key, WeakReference<Templates>>();
+
+    private SharedTemplates()
+    {
+        // static access only
+    }
+
+    /**
+     * @return the stylesheet compiled by the given kind of factory, or null if it is
+     *         not shared
+     */
+    static Templates lookup(Class<?> factoryClass, String xslt)
+    {
+        WeakReference<Templates> reference = templates.get(new Key(factoryClass, xslt));
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Shares a compiled stylesheet, unless another thread shared the same one first.
+     *
+     * @return the stylesheet to use, which is the one given or the one shared first
+     */
+    static Templates share(Class<?> factoryClass, String xslt, Templates compiled)
+    {
+        removeCollected();
+        Key key = new Key(factoryClass, xslt);
+        WeakReference<Templates> reference = new WeakReference<Templates>(compiled);
+        while (true)
+        {
+            WeakReference<Templates> shared = templates.putIfAbsent(key, reference);
+            if (shared == null)
+            {
+                return compiled;
+            }
+            Templates sharedTemplates = shared.get();
+            if (sharedTemplates != null)
+            {
+                return sharedTemplates;
+            }
+            templates.remove(key, shared);
+        }
+    }
+
+    static int size()
+    {
+        return templates.size();
+    }
+
+    private static void removeCollected()
+    {
+        for (Iterator<WeakReference<Templates>> it = templates.values().iterator(); it.hasNext();)
+        {
+            if (it.next().get() == null)
+            {
+                it.remove();
+            }
+        }
+    }
+
+    private static class Key
+    {
+
+        private final Class<?> factoryClass;
+        private final String xslt;
+
+        Key(Class<?> factoryClass, String xslt)
+        {
+            this.factoryClass = factoryClass;
+            this.xslt = xslt;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return factoryClass.equals(other.factoryClass) && xslt.equals(other.xslt);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * factoryClass.hashCode() + xslt.hashCode();
+        }
+    }
+}
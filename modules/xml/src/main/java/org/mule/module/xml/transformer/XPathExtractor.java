@@ -18,6 +18,7 @@ import org.mule.api.registry.RegistrationException;
 import org.mule.api.transformer.TransformerException;
 import org.mule.config.i18n.CoreMessages;
 import org.mule.config.i18n.MessageFactory;
+import org.mule.module.xml.util.CompiledXPathPool;
 import org.mule.module.xml.util.NamespaceManager;
 import org.mule.transformer.AbstractTransformer;
 import org.mule.transformer.types.DataTypeFactory;
@@ -32,6 +33,7 @@ import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -62,6 +64,7 @@ public class XPathExtractor extends AbstractTransformer implements MuleContextAw
     private volatile String expression;
     private volatile ResultType resultType = ResultType.STRING;
     private NamespaceManager namespaceManager;
+    private final CompiledXPathPool<XPathExpression> pool = new CompiledXPathPool<XPathExpression>();
 
     public XPathExtractor()
     {
@@ -169,15 +172,24 @@ public class XPathExtractor extends AbstractTransformer implements MuleContextAw
                 break;
         }
 
+        String expression = this.expression;
         try
         {
-            if (src instanceof InputSource)
+            XPathExpression compiled = getCompiledExpression(expression);
+            try
             {
-                return xpath.evaluate(expression, (InputSource) src, resultType);
+                if (src instanceof InputSource)
+                {
+                    return compiled.evaluate((InputSource) src, resultType);
+                }
+                else
+                {
+                    return compiled.evaluate(src, resultType);
+                }
             }
-            else
+            finally
             {
-                return xpath.evaluate(expression, src, resultType);
+                pool.release(expression, compiled);
             }
         }
         catch (XPathExpressionException e)
@@ -186,6 +198,34 @@ public class XPathExtractor extends AbstractTransformer implements MuleContextAw
         }
     }
 
+    /**
+     * Takes a compiled expression out of the pool so that concurrent transformations
+     * don't share the same one, compiling it if all of them are in use.
+     */
+    private XPathExpression getCompiledExpression(String expression) throws XPathExpressionException
+    {
+        XPathExpression compiled = pool.borrow(expression);
+        if (compiled == null)
+        {
+            // an XPath can only compile one expression at a time
+            XPath xpath = this.xpath;
+            synchronized (xpath)
+            {
+                compiled = xpath.compile(expression);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the pool of compiled expressions, which also tells how often
+     *         transformations overlapped
+     */
+    public CompiledXPathPool<XPathExpression> getXPathPool()
+    {
+        return pool;
+    }
+
     /**
      * @return Returns the expression.
      */
@@ -240,6 +280,7 @@ public class XPathExtractor extends AbstractTransformer implements MuleContextAw
     public void setXpath(XPath xPath)
     {
         this.xpath = xPath;
+        pool.clear();
     }
 
     /**
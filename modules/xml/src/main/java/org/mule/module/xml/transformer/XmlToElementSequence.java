@@ -0,0 +1,86 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.xml.transformer;
+
+import org.mule.api.MuleMessage;
+import org.mule.api.transformer.TransformerException;
+import org.mule.config.i18n.MessageFactory;
+import org.mule.module.xml.stax.XMLElementSequence;
+import org.mule.module.xml.util.XMLUtils;
+import org.mule.routing.MessageSequence;
+import org.mule.transformer.types.DataTypeFactory;
+
+import java.io.InputStream;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+
+import org.w3c.dom.Document;
+
+/**
+ * Turns an XML payload into a {@link MessageSequence} of its elements that is read
+ * from the payload as it is iterated, so that <code>foreach</code> or a
+ * <code>collection-splitter</code> can process each element of a large document
+ * without loading the whole document in memory. See {@link XMLElementSequence}.
+ * <p/>
+ * <code>elementName</code> selects the elements to split on, either as a local name
+ * or as <code>{namespace}localName</code>; by default the children of the root
+ * element are split. As the sequence reads the payload, it can only be iterated once.
+ */
+public class XmlToElementSequence extends AbstractXmlTransformer
+{
+
+    private String elementName;
+
+    public XmlToElementSequence()
+    {
+        super();
+        registerSourceType(DataTypeFactory.create(Source.class));
+        registerSourceType(DataTypeFactory.INPUT_STREAM);
+        registerSourceType(DataTypeFactory.create(Document.class));
+        registerSourceType(DataTypeFactory.BYTE_ARRAY);
+        registerSourceType(DataTypeFactory.STRING);
+
+        setReturnDataType(DataTypeFactory.create(MessageSequence.class));
+    }
+
+    @Override
+    public Object transformMessage(MuleMessage message, String encoding) throws TransformerException
+    {
+        Object src = message.getPayload();
+        try
+        {
+            XMLStreamReader xsr = XMLUtils.toXMLStreamReader(getXMLInputFactory(), src);
+            if (xsr == null)
+            {
+                throw new TransformerException(MessageFactory
+                    .createStaticMessage("Unable to convert " + src.getClass() + " to XMLStreamReader."), this);
+            }
+            return new XMLElementSequence(xsr, src instanceof InputStream ? (InputStream) src : null,
+                elementName == null ? null : QName.valueOf(elementName), getXMLOutputFactory());
+        }
+        catch (XMLStreamException e)
+        {
+            throw new TransformerException(this, e);
+        }
+    }
+
+    public String getElementName()
+    {
+        return elementName;
+    }
+
+    public void setElementName(String elementName)
+    {
+        this.elementName = elementName;
+    }
+}
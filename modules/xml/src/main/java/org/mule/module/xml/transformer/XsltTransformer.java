@@ -25,14 +25,20 @@ import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.ErrorListener;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.URIResolver;
+import javax.xml.transform.stax.StAXSource;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.pool.BasePoolableObjectFactory;
@@ -42,8 +48,13 @@ import org.apache.commons.pool.impl.GenericObjectPool;
  * <code>XsltTransformer</code> performs an XSLT transform on a DOM (or other XML-ish)
  * object.
  * <p/>
- * This transformer maintains a pool of {@link javax.xml.transform.Transformer} objects to speed up processing of concurrent requests.
- * The pool can be configured using {@link #setMaxIdleTransformers(int)}.
+ * The stylesheet is compiled once into {@link Templates}, which are shared with the other transformers using the
+ * same stylesheet as long as it does not include or import other ones. This transformer maintains a pool of the
+ * {@link javax.xml.transform.Transformer} objects created from them to speed up processing of concurrent requests.
+ * The pool can be configured using {@link #setMaxIdleTransformers(int)}. As new transformer objects are cheap to
+ * create from the compiled stylesheet, the pool grows when all of them are in use, unless
+ * {@link #setMaxActiveTransformers(int)} is set, in which case callers wait for one to be returned. The time spent
+ * waiting is reported by {@link #getTransformerWaitTime()}.
  * <p/>
  * Parameter can also be set as part of the transformation context and these can be mapped to conent in the current message using
  * property extractors or can be fixed values.
@@ -102,6 +113,9 @@ public class XsltTransformer extends AbstractXmlTransformer
 
     protected final GenericObjectPool transformerPool;
 
+    private final AtomicLong transformerBorrowCount = new AtomicLong();
+    private final AtomicLong transformerWaitNanos = new AtomicLong();
+
     /**
      * Default to Saxon
      */
@@ -112,6 +126,9 @@ public class XsltTransformer extends AbstractXmlTransformer
 
     private URIResolver uriResolver;
 
+    private volatile Templates templates;
+    private volatile boolean staxSourceSupported;
+
     public XsltTransformer()
     {
         super();
@@ -119,6 +136,7 @@ public class XsltTransformer extends AbstractXmlTransformer
         transformerPool.setMinIdle(MIN_IDLE_TRANSFORMERS);
         transformerPool.setMaxIdle(MAX_IDLE_TRANSFORMERS);
         transformerPool.setMaxActive(MAX_ACTIVE_TRANSFORMERS);
+        transformerPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_GROW);
         contextProperties = new HashMap<String, Object>();
     }
 
@@ -139,6 +157,7 @@ public class XsltTransformer extends AbstractXmlTransformer
                 this.uriResolver = new LocalURIResolver(xslFile);
             }
 
+            templates = compileTemplates();
             transformerPool.addObject();
         }
         catch (Throwable te)
@@ -158,7 +177,16 @@ public class XsltTransformer extends AbstractXmlTransformer
         Object src = message.getPayload();
         try
         {
-            Source sourceDoc = XMLUtils.toXmlSource(getXMLInputFactory(), isUseStaxSource(), src);
+            Source sourceDoc;
+            if (staxSourceSupported && isAtDocumentOrElementStart(src))
+            {
+                // the transformer pulls the events itself, without bridging them to SAX
+                sourceDoc = new StAXSource((XMLStreamReader) src);
+            }
+            else
+            {
+                sourceDoc = XMLUtils.toXmlSource(getXMLInputFactory(), isUseStaxSource(), src);
+            }
             if (sourceDoc == null)
             {
                 return null;
@@ -223,7 +251,7 @@ public class XsltTransformer extends AbstractXmlTransformer
 
         try
         {
-            transformer = (javax.xml.transform.Transformer) transformerPool.borrowObject();
+            transformer = borrowTransformer();
 
             transformer.setErrorListener(errorListener);
             transformer.setOutputProperty(OutputKeys.ENCODING, outputEncoding);
@@ -258,6 +286,106 @@ public class XsltTransformer extends AbstractXmlTransformer
         }
     }
 
+    private boolean isAtDocumentOrElementStart(Object src)
+    {
+        if (src instanceof XMLStreamReader)
+        {
+            int event = ((XMLStreamReader) src).getEventType();
+            return event == XMLStreamConstants.START_DOCUMENT || event == XMLStreamConstants.START_ELEMENT;
+        }
+        return false;
+    }
+
+    private javax.xml.transform.Transformer borrowTransformer() throws Exception
+    {
+        long start = System.nanoTime();
+        javax.xml.transform.Transformer transformer = (javax.xml.transform.Transformer) transformerPool.borrowObject();
+        transformerWaitNanos.addAndGet(System.nanoTime() - start);
+        transformerBorrowCount.incrementAndGet();
+        return transformer;
+    }
+
+    /**
+     * Compiles the stylesheet, unless another transformer already compiled the same
+     * one with the same kind of factory.
+     */
+    protected Templates compileTemplates() throws Exception
+    {
+        TransformerFactory factory = createTransformerFactory();
+        staxSourceSupported = factory.getFeature(StAXSource.FEATURE);
+
+        // only share what nothing specific to this transformer or its application went into
+        ClassLoader factoryClassLoader = factory.getClass().getClassLoader();
+        boolean shareable = factoryClassLoader == null || factoryClassLoader == XsltTransformer.class.getClassLoader();
+        String xslt = getStreamSourceText();
+        if (shareable)
+        {
+            Templates shared = SharedTemplates.lookup(factory.getClass(), xslt);
+            if (shared != null)
+            {
+                return shared;
+            }
+        }
+
+        RecordingURIResolver resolver = new RecordingURIResolver(getUriResolver());
+        factory.setURIResolver(resolver);
+        Templates compiled = factory.newTemplates(getStreamSource());
+        if (shareable && !resolver.isUsed())
+        {
+            return SharedTemplates.share(factory.getClass(), xslt, compiled);
+        }
+        return compiled;
+    }
+
+    protected TransformerFactory createTransformerFactory() throws Exception
+    {
+        String factoryClassName = getXslTransformerFactory();
+
+        if (PREFERRED_TRANSFORMER_FACTORY.equals(factoryClassName) && !ClassUtils.isClassOnPath(factoryClassName, getClass()))
+        {
+            logger.warn("Preferred Transfomer Factory " + PREFERRED_TRANSFORMER_FACTORY + " not on classpath and no default is set, defaulting to JDK");
+            factoryClassName = null;
+        }
+
+        if (StringUtils.isNotEmpty(factoryClassName))
+        {
+            return (TransformerFactory) ClassUtils.instanciateClass(factoryClassName,
+                    ClassUtils.NO_ARGS, this.getClass());
+        }
+
+        // fall back to JDK default
+        try
+        {
+            return TransformerFactory.newInstance();
+        }
+        catch (TransformerFactoryConfigurationError e)
+        {
+            System.setProperty("javax.xml.transform.TransformerFactory", XMLUtils.TRANSFORMER_FACTORY_JDK5);
+            return TransformerFactory.newInstance();
+        }
+    }
+
+    /**
+     * @return the compiled stylesheet the transformer objects of the pool are created from
+     */
+    protected Templates getTemplates() throws Exception
+    {
+        Templates templates = this.templates;
+        if (templates == null)
+        {
+            synchronized (this)
+            {
+                templates = this.templates;
+                if (templates == null)
+                {
+                    templates = compileTemplates();
+                    this.templates = templates;
+                }
+            }
+        }
+        return templates;
+    }
+
     /**
      * Returns the name of the currently configured javax.xml.transform.Transformer
      * factory class used to create XSLT Transformers.
@@ -317,15 +445,17 @@ public class XsltTransformer extends AbstractXmlTransformer
      * @return The StreamSource
      */
     protected StreamSource getStreamSource() throws InitialisationException
+    {
+        return new StreamSource(new StringReader(getStreamSourceText()));
+    }
+
+    private String getStreamSourceText() throws InitialisationException
     {
         if (xslt == null)
         {
             throw new InitialisationException(CoreMessages.propertiesNotSet("xsl-file or xsl-text"), this);
         }
-        else
-        {
-            return new StreamSource(new StringReader(xslt));
-        }
+        return xslt;
     }
 
     protected class PooledXsltTransformerFactory extends BasePoolableObjectFactory
@@ -333,38 +463,36 @@ public class XsltTransformer extends AbstractXmlTransformer
         @Override
         public Object makeObject() throws Exception
         {
-            StreamSource source = XsltTransformer.this.getStreamSource();
-            String factoryClassName = XsltTransformer.this.getXslTransformerFactory();
-            TransformerFactory factory;
+            javax.xml.transform.Transformer transformer = getTemplates().newTransformer();
+            // the templates may be shared, so documents read at run time are resolved the way this transformer does
+            transformer.setURIResolver(getUriResolver());
+            return transformer;
+        }
+    }
 
-            if (PREFERRED_TRANSFORMER_FACTORY.equals(factoryClassName) && !ClassUtils.isClassOnPath(factoryClassName, getClass()))
-            {
-                logger.warn("Preferred Transfomer Factory " + PREFERRED_TRANSFORMER_FACTORY + " not on classpath and no default is set, defaulting to JDK");
-                factoryClassName = null;
-            }
+    /**
+     * Tells whether the stylesheet being compiled resolved any other resource.
+     */
+    private static class RecordingURIResolver implements URIResolver
+    {
+        private final URIResolver delegate;
+        private volatile boolean used;
 
-            if (StringUtils.isNotEmpty(factoryClassName))
-            {
+        RecordingURIResolver(URIResolver delegate)
+        {
+            this.delegate = delegate;
+        }
 
-                factory = (TransformerFactory) ClassUtils.instanciateClass(factoryClassName,
-                        ClassUtils.NO_ARGS, this.getClass());
-            }
-            else
-            {
-                // fall back to JDK default
-                try
-                {
-                    factory = TransformerFactory.newInstance();
-                }
-                catch (TransformerFactoryConfigurationError e)
-                {
-                    System.setProperty("javax.xml.transform.TransformerFactory", XMLUtils.TRANSFORMER_FACTORY_JDK5);
-                    factory = TransformerFactory.newInstance();
-                }
-            }
+        @Override
+        public Source resolve(String href, String base) throws javax.xml.transform.TransformerException
+        {
+            used = true;
+            return delegate == null ? null : delegate.resolve(href, base);
+        }
 
-            factory.setURIResolver(getUriResolver());
-            return factory.newTransformer(source);
+        boolean isUsed()
+        {
+            return used;
         }
     }
 
@@ -421,13 +549,40 @@ public class XsltTransformer extends AbstractXmlTransformer
 
     /**
      * Sets the the current maximum number of active transformer objects allowed in the
-     * pool
+     * pool. Once it is set, callers wait for a transformer object to be returned when
+     * all of them are in use instead of creating a new one.
      *
      * @param maxActiveTransformers New maximum size to set
      */
     public void setMaxActiveTransformers(int maxActiveTransformers)
     {
         transformerPool.setMaxActive(maxActiveTransformers);
+        transformerPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+    }
+
+    /**
+     * @return the number of transformer objects currently in use
+     */
+    public int getActiveTransformers()
+    {
+        return transformerPool.getNumActive();
+    }
+
+    /**
+     * @return the number of times a transformer object was taken from the pool
+     */
+    public long getTransformerBorrowCount()
+    {
+        return transformerBorrowCount.get();
+    }
+
+    /**
+     * @return the total time, in milliseconds, spent getting transformer objects from
+     *         the pool, including waiting for one to be returned
+     */
+    public long getTransformerWaitTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(transformerWaitNanos.get());
     }
 
     /**
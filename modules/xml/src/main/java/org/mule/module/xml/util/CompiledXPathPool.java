@@ -0,0 +1,183 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.xml.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps compiled XPath objects so that they can be reused without sharing one instance
+ * between threads. Compiled XPaths (jaxen <code>XPath</code>s as well as JAXP
+ * <code>XPathExpression</code>s) are not safe for concurrent evaluation, so each thread
+ * borrows an instance for the duration of an evaluation and gives it back afterwards:
+ * <pre>
+ * T xpath = pool.borrow(key);
+ * if (xpath == null)
+ * {
+ *     xpath = compile(expression);
+ * }
+ * try
+ * {
+ *     // evaluate
+ * }
+ * finally
+ * {
+ *     pool.release(key, xpath);
+ * }
+ * </pre>
+ * Nothing blocks: when all the instances of a key are in use the caller compiles a new
+ * one, which is counted as contended. The key must identify everything the compiled
+ * XPath depends on, typically the expression and its namespace context.
+ * <p/>
+ * At most <code>maxIdlePerKey</code> idle instances are kept for each key and at most
+ * <code>maxKeys</code> keys are pooled; instances for further keys are simply dropped
+ * when they are released.
+ */
+public class CompiledXPathPool<T>
+{
+
+    public static final int DEFAULT_MAX_IDLE_PER_KEY = 16;
+    public static final int DEFAULT_MAX_KEYS = 1000;
+
+    private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<String, Entry<T>>();
+    private final int maxIdlePerKey;
+    private final int maxKeys;
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong compileCount = new AtomicLong();
+    private final AtomicLong contendedCount = new AtomicLong();
+
+    public CompiledXPathPool()
+    {
+        this(DEFAULT_MAX_IDLE_PER_KEY, DEFAULT_MAX_KEYS);
+    }
+
+    public CompiledXPathPool(int maxIdlePerKey, int maxKeys)
+    {
+        this.maxIdlePerKey = maxIdlePerKey;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Takes an idle instance compiled for the given key.
+     *
+     * @return the instance, or null if there is none idle, in which case the caller
+     *         has to compile one and release it once done with it
+     */
+    public T borrow(String key)
+    {
+        borrowCount.incrementAndGet();
+        Entry<T> entry = entries.get(key);
+        if (entry == null && entries.size() < maxKeys)
+        {
+            Entry<T> newEntry = new Entry<T>();
+            entry = entries.putIfAbsent(key, newEntry);
+            if (entry == null)
+            {
+                entry = newEntry;
+            }
+        }
+
+        T xpath = entry == null ? null : entry.idle.poll();
+        if (xpath == null)
+        {
+            compileCount.incrementAndGet();
+            if (entry != null && entry.created.getAndIncrement() > 0)
+            {
+                contendedCount.incrementAndGet();
+            }
+        }
+        else
+        {
+            entry.idleCount.decrementAndGet();
+        }
+        return xpath;
+    }
+
+    /**
+     * Gives back an instance taken with {@link #borrow(String)} or compiled after it
+     * returned null.
+     */
+    public void release(String key, T xpath)
+    {
+        Entry<T> entry = entries.get(key);
+        if (entry != null && entry.idleCount.incrementAndGet() <= maxIdlePerKey)
+        {
+            entry.idle.offer(xpath);
+        }
+        else if (entry != null)
+        {
+            entry.idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Drops all the pooled instances, for example after the namespaces they were
+     * compiled with changed.
+     */
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of instances currently idle for the given key
+     */
+    public int getIdleCount(String key)
+    {
+        Entry<T> entry = entries.get(key);
+        return entry == null ? 0 : entry.idleCount.get();
+    }
+
+    /**
+     * @return the number of keys instances are pooled for
+     */
+    public int getKeyCount()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of calls to {@link #borrow(String)}
+     */
+    public long getBorrowCount()
+    {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return the number of times {@link #borrow(String)} had no idle instance to
+     *         return, so the caller had to compile one
+     */
+    public long getCompileCount()
+    {
+        return compileCount.get();
+    }
+
+    /**
+     * @return the number of times {@link #borrow(String)} had no idle instance to
+     *         return because all the instances of the key were in use by other threads
+     */
+    public long getContendedCount()
+    {
+        return contendedCount.get();
+    }
+
+    private static class Entry<T>
+    {
+
+        final Queue<T> idle = new ConcurrentLinkedQueue<T>();
+        final AtomicInteger idleCount = new AtomicInteger();
+        final AtomicInteger created = new AtomicInteger();
+    }
+}
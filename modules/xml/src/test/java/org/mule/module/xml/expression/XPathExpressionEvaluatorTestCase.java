@@ -24,6 +24,7 @@ import org.junit.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -42,6 +43,7 @@ public class XPathExpressionEvaluatorTestCase extends AbstractMuleTestCase
         XPathExpressionEvaluator xPathExpressionEvaluator = new XPathExpressionEvaluator();
         XPath xPathDOM1 = xPathExpressionEvaluator.getXPath(EXPRESSION, new DOMDocument());
         assertTrue(xPathDOM1 instanceof DOMXPath);
+        xPathExpressionEvaluator.releaseXPath(EXPRESSION, new DOMDocument(), xPathDOM1);
         XPath xPathDOM2 = xPathExpressionEvaluator.getXPath(EXPRESSION, new DOMDocument());
         assertTrue(xPathDOM2 == xPathDOM1);
         XPath xPathDom4j3 = xPathExpressionEvaluator.getXPath(EXPRESSION, new DefaultDocument());
@@ -51,6 +53,16 @@ public class XPathExpressionEvaluatorTestCase extends AbstractMuleTestCase
         assertTrue(xPathDOM1 != xPathDOM3);
     }
 
+    @Test
+    public void testXPathInUseIsNotShared() throws JaxenException
+    {
+        XPathExpressionEvaluator xPathExpressionEvaluator = new XPathExpressionEvaluator();
+        XPath xPathDOM1 = xPathExpressionEvaluator.getXPath(EXPRESSION, new DOMDocument());
+        XPath xPathDOM2 = xPathExpressionEvaluator.getXPath(EXPRESSION, new DOMDocument());
+        assertTrue(xPathDOM1 != xPathDOM2);
+        assertEquals(1, xPathExpressionEvaluator.getXPathPool().getContendedCount());
+    }
+
     @Test
     public void testEmptyElement() throws ParserConfigurationException
     {
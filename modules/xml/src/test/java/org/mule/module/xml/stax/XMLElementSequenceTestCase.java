@@ -0,0 +1,226 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.xml.stax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.mule.routing.outbound.PartitionedMessageSequence;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+import org.junit.Test;
+
+@SmallTest
+public class XMLElementSequenceTestCase extends AbstractMuleTestCase
+{
+
+    private static final String ORDERS = "<?xml version='1.0'?>"
+                                         + "<orders xmlns='http://orders' xmlns:p='http://products' date='today'>"
+                                         + "<!-- first --><order id='1'><p:item>a &amp; b</p:item></order>\n"
+                                         + "<order id='2'><![CDATA[<raw>]]></order>"
+                                         + "<batch><order id='3'/></batch>"
+                                         + "</orders>";
+
+    @Test
+    public void splitsTheChildrenOfTheRootElement() throws Exception
+    {
+        List<String> elements = split(ORDERS, null);
+        assertEquals(3, elements.size());
+        assertEquals("<order xmlns=\"http://orders\" xmlns:p=\"http://products\" id=\"1\">"
+                     + "<p:item>a &amp; b</p:item></order>", elements.get(0));
+        // depending on the parser, CDATA sections are reported as such or as text
+        String second = elements.get(1);
+        assertTrue(second, second.startsWith("<order xmlns=\"http://orders\" xmlns:p=\"http://products\" id=\"2\">"));
+        assertTrue(second, second.endsWith("<![CDATA[<raw>]]></order>") || second.endsWith("&lt;raw&gt;</order>"));
+        assertEquals("<batch xmlns=\"http://orders\" xmlns:p=\"http://products\">"
+                     + "<order id=\"3\"></order></batch>", elements.get(2));
+    }
+
+    @Test
+    public void splitsTheElementsWithTheGivenName() throws Exception
+    {
+        List<String> elements = split(ORDERS, "order");
+        assertEquals(3, elements.size());
+        assertTrue(elements.get(2).startsWith("<order xmlns=\"http://orders\" xmlns:p=\"http://products\" id=\"3\""));
+
+        assertEquals(3, split(ORDERS, "{http://orders}order").size());
+        assertEquals(0, split(ORDERS, "{http://other}order").size());
+        assertEquals(1, split(ORDERS, "{http://products}item").size());
+    }
+
+    @Test
+    public void nestedMatchesArePartOfTheirAncestor() throws Exception
+    {
+        List<String> elements = split("<a><b id='1'><b id='2'/></b><b id='3'/></a>", "b");
+        assertEquals(2, elements.size());
+        assertEquals("<b id=\"1\"><b id=\"2\"></b></b>", elements.get(0));
+        assertEquals("<b id=\"3\"></b>", elements.get(1));
+    }
+
+    @Test
+    public void sequenceEndsWithTheDocument() throws Exception
+    {
+        XMLElementSequence sequence = createSequence("<root/>", null);
+        assertTrue(sequence.isEmpty());
+        assertFalse(sequence.hasNext());
+        try
+        {
+            sequence.next();
+            fail("the sequence is empty");
+        }
+        catch (NoSuchElementException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void elementsCanBeProcessedInBatches() throws Exception
+    {
+        PartitionedMessageSequence<String> batches = new PartitionedMessageSequence<String>(
+            createSequence("<root><a/><a/><a/><a/><a/></root>", null), 2);
+        List<Integer> sizes = new ArrayList<Integer>();
+        while (batches.hasNext())
+        {
+            sizes.add(batches.next().size());
+        }
+        assertEquals(3, sizes.size());
+        assertEquals(2, sizes.get(0).intValue());
+        assertEquals(1, sizes.get(2).intValue());
+    }
+
+    @Test
+    public void elementsAreReadOnlyWhenRequested() throws Exception
+    {
+        ScriptedStream document = new ScriptedStream("<records><record id='1'>one</record>",
+            "<record id='2'>two</record>", "</records>");
+        XMLElementSequence sequence = createSequence(document, "record");
+
+        assertTrue(sequence.hasNext());
+        assertEquals("<record id=\"1\">one</record>", sequence.next());
+        assertEquals(1, document.partsRead);
+
+        document.readable = 2;
+        assertEquals("<record id=\"2\">two</record>", sequence.next());
+        assertEquals(2, document.partsRead);
+
+        document.readable = 3;
+        assertFalse(sequence.hasNext());
+        assertTrue("the document is closed at its end", document.closed);
+    }
+
+    @Test
+    public void closingTheSequenceClosesTheDocument() throws Exception
+    {
+        ScriptedStream document = new ScriptedStream("<records><record id='1'/>", "<record id='2'/></records>");
+        XMLElementSequence sequence = createSequence(document, "record");
+        assertEquals("<record id=\"1\"></record>", sequence.next());
+        assertFalse(document.closed);
+
+        sequence.close();
+        assertTrue(document.closed);
+        assertFalse(sequence.hasNext());
+    }
+
+    private List<String> split(String xml, String elementName) throws Exception
+    {
+        XMLElementSequence sequence = createSequence(xml, elementName);
+        List<String> elements = new ArrayList<String>();
+        while (sequence.hasNext())
+        {
+            elements.add(sequence.next());
+        }
+        return elements;
+    }
+
+    private XMLElementSequence createSequence(String xml, String elementName) throws Exception
+    {
+        return new XMLElementSequence(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)),
+            elementName == null ? null : QName.valueOf(elementName), XMLOutputFactory.newInstance());
+    }
+
+    private XMLElementSequence createSequence(InputStream document, String elementName) throws Exception
+    {
+        return new XMLElementSequence(XMLInputFactory.newInstance().createXMLStreamReader(document, "UTF-8"),
+            document, QName.valueOf(elementName), XMLOutputFactory.newInstance());
+    }
+
+    /**
+     * A document made of parts that fails if a part is read before the test allows it.
+     */
+    private static class ScriptedStream extends InputStream
+    {
+        private final byte[][] parts;
+        private int part;
+        private int position;
+        int readable = 1;
+        int partsRead;
+        boolean closed;
+
+        ScriptedStream(String... parts) throws Exception
+        {
+            this.parts = new byte[parts.length][];
+            for (int i = 0; i < parts.length; i++)
+            {
+                this.parts[i] = parts[i].getBytes("UTF-8");
+            }
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (part < parts.length && position == parts[part].length)
+            {
+                part++;
+                position = 0;
+            }
+            if (part == parts.length)
+            {
+                return -1;
+            }
+            if (part >= readable)
+            {
+                throw new IOException("Part " + (part + 1) + " read ahead of the sequence");
+            }
+            partsRead = part + 1;
+            int count = Math.min(len, parts[part].length - position);
+            System.arraycopy(parts[part], position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.module.xml.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+@SmallTest
+public class CompiledXPathPoolTestCase extends AbstractMuleTestCase
+{
+
+    private static final String EXPRESSION = "/order/item[@id='2']/text()";
+
+    @Test
+    public void releasedInstanceIsBorrowedAgain() throws Exception
+    {
+        CompiledXPathPool<Object> pool = new CompiledXPathPool<Object>();
+        assertNull(pool.borrow("key"));
+        Object xpath = new Object();
+        pool.release("key", xpath);
+        assertEquals(1, pool.getIdleCount("key"));
+
+        assertSame(xpath, pool.borrow("key"));
+        assertEquals(0, pool.getIdleCount("key"));
+        assertEquals(2, pool.getBorrowCount());
+        assertEquals(1, pool.getCompileCount());
+        assertEquals(0, pool.getContendedCount());
+    }
+
+    @Test
+    public void instanceInUseIsNotBorrowedAgain() throws Exception
+    {
+        CompiledXPathPool<Object> pool = new CompiledXPathPool<Object>();
+        assertNull(pool.borrow("key"));
+        assertNull(pool.borrow("key"));
+        assertNull(pool.borrow("other"));
+        assertEquals(3, pool.getCompileCount());
+        assertEquals(1, pool.getContendedCount());
+    }
+
+    @Test
+    public void idleInstancesAreBounded() throws Exception
+    {
+        CompiledXPathPool<Object> pool = new CompiledXPathPool<Object>(2, 1);
+        for (int i = 0; i < 3; i++)
+        {
+            pool.borrow("key");
+        }
+        for (int i = 0; i < 3; i++)
+        {
+            pool.release("key", new Object());
+        }
+        assertEquals(2, pool.getIdleCount("key"));
+
+        assertNull(pool.borrow("other"));
+        pool.release("other", new Object());
+        assertEquals(0, pool.getIdleCount("other"));
+        assertEquals(1, pool.getKeyCount());
+    }
+
+    /**
+     * Evaluates the same expression from many threads at once, the way concurrent
+     * flows do, to check that no compiled expression is evaluated by two threads at
+     * the same time and that only a few of them need to be compiled.
+     */
+    @Test
+    public void concurrentEvaluationsGetTheirOwnInstance() throws Exception
+    {
+        final CompiledXPathPool<XPathExpression> pool = new CompiledXPathPool<XPathExpression>();
+        final int threads = 8;
+        final int evaluations = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < threads; i++)
+            {
+                results.add(executor.submit(new Callable<Integer>()
+                {
+                    public Integer call() throws Exception
+                    {
+                        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                            new InputSource(new StringReader("<order><item id='1'>one</item><item id='2'>two</item></order>")));
+                        start.await();
+                        int matches = 0;
+                        for (int j = 0; j < evaluations; j++)
+                        {
+                            XPathExpression xpath = pool.borrow(EXPRESSION);
+                            if (xpath == null)
+                            {
+                                xpath = XPathFactory.newInstance().newXPath().compile(EXPRESSION);
+                            }
+                            try
+                            {
+                                if ("two".equals(xpath.evaluate(document, XPathConstants.STRING)))
+                                {
+                                    matches++;
+                                }
+                            }
+                            finally
+                            {
+                                pool.release(EXPRESSION, xpath);
+                            }
+                        }
+                        return matches;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results)
+            {
+                assertEquals(evaluations, result.get().intValue());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals(threads * evaluations, pool.getBorrowCount());
+        assertTrue(pool.getCompileCount() <= threads);
+        assertEquals(pool.getCompileCount() - 1, pool.getContendedCount());
+        assertEquals(pool.getCompileCount(), pool.getIdleCount(EXPRESSION));
+    }
+}
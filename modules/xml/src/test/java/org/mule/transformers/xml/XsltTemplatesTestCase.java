@@ -0,0 +1,243 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transformers.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.api.MuleMessage;
+import org.mule.api.transformer.TransformerException;
+import org.mule.module.xml.transformer.XsltTransformer;
+import org.mule.tck.junit4.AbstractMuleContextTestCase;
+import org.mule.transformer.types.DataTypeFactory;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.transform.Templates;
+
+import org.junit.Test;
+
+public class XsltTemplatesTestCase extends AbstractMuleContextTestCase
+{
+
+    private static final String ECHO_XSLT = "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='1.0'>"
+                                            + "<xsl:param name='echo'/>"
+                                            + "<xsl:template match='/'><echo-value><xsl:value-of select='$echo'/>"
+                                            + "<xsl:value-of select='/root/@value'/></echo-value></xsl:template>"
+                                            + "</xsl:stylesheet>";
+
+    private static final String IMPORTING_XSLT = "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='1.0'>"
+                                                 + "<xsl:import href='parameter-echo.xsl'/>"
+                                                 + "</xsl:stylesheet>";
+
+    @Test
+    public void stylesheetIsCompiledOnceForAllTransformers() throws Exception
+    {
+        TestXsltTransformer first = createTransformer(ECHO_XSLT);
+        TestXsltTransformer second = createTransformer(ECHO_XSLT);
+        assertSame(first.getTemplates(), second.getTemplates());
+
+        assertTrue(first.transform("<root value='first'/>").toString().endsWith("<echo-value>first</echo-value>"));
+        assertTrue(second.transform("<root value='second'/>").toString().endsWith("<echo-value>second</echo-value>"));
+    }
+
+    @Test
+    public void stylesheetResolvingOtherResourcesIsNotShared() throws Exception
+    {
+        TestXsltTransformer first = createTransformer(IMPORTING_XSLT);
+        TestXsltTransformer second = createTransformer(IMPORTING_XSLT);
+        assertNotSame(first.getTemplates(), second.getTemplates());
+    }
+
+    @Test
+    public void streamReaderIsTransformed() throws Exception
+    {
+        TestXsltTransformer transformer = createTransformer(ECHO_XSLT);
+        Object result = transformer.transform(XMLInputFactory.newInstance().createXMLStreamReader(
+            new StringReader("<root value='streamed'/>")));
+        assertTrue(result.toString().endsWith("<echo-value>streamed</echo-value>"));
+    }
+
+    @Test
+    public void poolGrowsWhenAllTransformersAreInUse() throws Exception
+    {
+        final TestXsltTransformer transformer = createTransformer(ECHO_XSLT);
+        final AtomicInteger activeWhileTransforming = new AtomicInteger(-1);
+        transformer.setContextProperties(Collections.<String, Object>singletonMap("echo", "value"));
+        transformer.setMaxActive(1);
+        transformer.inTransformation = new CountDownLatch(2);
+        transformer.release = new CountDownLatch(1);
+
+        Thread other = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    transformer.transform("<root/>");
+                }
+                catch (TransformerException e)
+                {
+                    // checked by the counters
+                }
+            }
+        };
+        other.start();
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    // both transformations hold a transformer object at the same time
+                    if (transformer.inTransformation.await(5, TimeUnit.SECONDS))
+                    {
+                        activeWhileTransforming.set(transformer.getActiveTransformers());
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    transformer.release.countDown();
+                }
+            }
+        }.start();
+
+        assertEquals("<echo-value>value</echo-value>", stripDeclaration(transformer.transform("<root/>")));
+        other.join(5000);
+        assertEquals(2, activeWhileTransforming.get());
+        assertEquals(0, transformer.getActiveTransformers());
+        assertEquals(2, transformer.getTransformerBorrowCount());
+    }
+
+    @Test
+    public void waitingForATransformerIsMeasured() throws Exception
+    {
+        final TestXsltTransformer transformer = createTransformer(ECHO_XSLT);
+        transformer.setContextProperties(Collections.<String, Object>singletonMap("echo", "value"));
+        transformer.setMaxActiveTransformers(1);
+        transformer.inTransformation = new CountDownLatch(1);
+        transformer.release = new CountDownLatch(1);
+
+        Thread other = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    transformer.transform("<root/>");
+                }
+                catch (TransformerException e)
+                {
+                    // checked by the borrow count
+                }
+            }
+        };
+        other.start();
+        assertTrue(transformer.inTransformation.await(5, TimeUnit.SECONDS));
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    // the only transformer object is held until then
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    transformer.release.countDown();
+                }
+            }
+        }.start();
+
+        assertEquals("<echo-value>value</echo-value>", stripDeclaration(transformer.transform("<root/>")));
+        other.join(5000);
+        assertEquals(2, transformer.getTransformerBorrowCount());
+        assertTrue(transformer.getTransformerWaitTime() > 0);
+    }
+
+    private String stripDeclaration(Object result)
+    {
+        String text = result.toString();
+        return text.startsWith("<?xml") ? text.substring(text.indexOf("?>") + 2).trim() : text;
+    }
+
+    private TestXsltTransformer createTransformer(String xslt) throws Exception
+    {
+        TestXsltTransformer transformer = new TestXsltTransformer();
+        transformer.setReturnDataType(DataTypeFactory.STRING);
+        transformer.setXslt(xslt);
+        transformer.setMuleContext(muleContext);
+        transformer.initialise();
+        return transformer;
+    }
+
+    private static class TestXsltTransformer extends XsltTransformer
+    {
+
+        volatile CountDownLatch inTransformation;
+        volatile CountDownLatch release;
+
+        @Override
+        protected Templates getTemplates() throws Exception
+        {
+            return super.getTemplates();
+        }
+
+        void setMaxActive(int maxActive)
+        {
+            transformerPool.setMaxActive(maxActive);
+        }
+
+        @Override
+        protected Object evaluateTransformParameter(String key, Object value, MuleMessage message)
+            throws TransformerException
+        {
+            if (inTransformation != null)
+            {
+                inTransformation.countDown();
+                try
+                {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.evaluateTransformParameter(key, value, message);
+        }
+
+        Object transform(String xml) throws TransformerException
+        {
+            return transform((Object) xml);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.config.spring.parsers.specific;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.config.spring.parsers.specific.ServerNotificationManagerTestCase.TestEvent;
+import org.mule.config.spring.parsers.specific.ServerNotificationManagerTestCase.TestListener;
+import org.mule.context.notification.ServerNotificationManager;
+import org.mule.tck.junit4.FunctionalTestCase;
+import org.mule.tck.probe.PollingProber;
+import org.mule.tck.probe.Probe;
+
+import org.junit.Test;
+
+public class ServerNotificationManagerQueueTestCase extends FunctionalTestCase
+{
+
+    @Override
+    protected String getConfigResources()
+    {
+        return "org/mule/config/spring/parsers/specific/server-notification-manager-queue-test.xml";
+    }
+
+    @Test
+    public void queueSettingsAreApplied() throws Exception
+    {
+        ServerNotificationManager manager = muleContext.getNotificationManager();
+        assertEquals(64, manager.getNotificationQueueCapacity());
+        assertEquals(ServerNotificationManager.OverflowPolicy.DROP, manager.getOverflowPolicy());
+        assertEquals(2, manager.getDispatcherThreads());
+    }
+
+    @Test
+    public void notificationsAreDeliveredByTheDispatchers() throws Exception
+    {
+        final TestListener listener = (TestListener) muleContext.getRegistry().lookupObject("listener");
+        muleContext.getNotificationManager().fireNotification(new TestEvent());
+        new PollingProber(5000, 50).check(new Probe()
+        {
+            public boolean isSatisfied()
+            {
+                return listener.isCalled();
+            }
+
+            public String describeFailure()
+            {
+                return "The notification was not delivered";
+            }
+        });
+        assertTrue(listener.isCalled());
+    }
+}
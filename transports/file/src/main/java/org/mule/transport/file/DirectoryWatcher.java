@@ -0,0 +1,223 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reports the files created or modified in a directory, and optionally in its
+ * subdirectories, using the <code>java.nio.file.WatchService</code> of the JVM
+ * instead of listing the directory. The watch service is only available as of Java
+ * 7, so it is accessed reflectively and {@link #isSupported()} tells whether it can
+ * be used.
+ * <p/>
+ * The watch service may lose events, for example when too many files change at once.
+ * {@link #drainEvents(Collection)} reports it so that the caller can list the
+ * directory again.
+ */
+class DirectoryWatcher
+{
+
+    private static final Api api = Api.load();
+
+    private final Object watchService;
+    private final boolean recursive;
+
+    DirectoryWatcher(File directory, boolean recursive) throws IOException
+    {
+        if (api == null)
+        {
+            throw new IOException("The JVM does not support watching directories");
+        }
+        this.recursive = recursive;
+        Object fileSystem = api.invoke(api.getDefaultFileSystem, null);
+        this.watchService = api.invoke(api.newWatchService, fileSystem);
+        register(directory.getAbsoluteFile(), null);
+    }
+
+    /**
+     * @return whether the JVM provides a watch service
+     */
+    static boolean isSupported()
+    {
+        return api != null;
+    }
+
+    /**
+     * Adds the files changed since the last call to <code>changed</code>, without
+     * waiting for more changes. When a subdirectory is created under a recursive
+     * watcher, the files it already contains are added as well.
+     *
+     * @return false if changes were lost and the directory has to be listed again
+     */
+    boolean drainEvents(Collection<File> changed) throws IOException
+    {
+        boolean complete = true;
+        Object key;
+        while ((key = api.invoke(api.poll, watchService)) != null)
+        {
+            File directory = (File) api.invoke(api.toFile, api.invoke(api.watchable, key));
+            for (Object event : (List<?>) api.invoke(api.pollEvents, key))
+            {
+                Object kind = api.invoke(api.kind, event);
+                if (kind == api.overflow)
+                {
+                    complete = false;
+                    continue;
+                }
+                File file = new File(directory, api.invoke(api.context, event).toString());
+                if (file.isDirectory())
+                {
+                    if (recursive && kind == api.entryCreate)
+                    {
+                        register(file, changed);
+                    }
+                }
+                else
+                {
+                    changed.add(file);
+                }
+            }
+            // a key that can't be reset is for a directory that is gone
+            api.invoke(api.reset, key);
+        }
+        return complete;
+    }
+
+    void close() throws IOException
+    {
+        api.invoke(api.close, watchService);
+    }
+
+    private void register(File directory, Collection<File> existing) throws IOException
+    {
+        Object path = api.invoke(api.toPath, directory);
+        api.invoke(api.register, path, watchService, api.kinds);
+        if (!recursive && existing == null)
+        {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        for (File file : files)
+        {
+            if (file.isDirectory())
+            {
+                if (recursive)
+                {
+                    register(file, existing);
+                }
+            }
+            else if (existing != null)
+            {
+                existing.add(file);
+            }
+        }
+    }
+
+    /**
+     * The reflective handles on the <code>java.nio.file</code> API.
+     */
+    private static class Api
+    {
+
+        Method getDefaultFileSystem;
+        Method newWatchService;
+        Method toPath;
+        Method toFile;
+        Method register;
+        Method poll;
+        Method pollEvents;
+        Method watchable;
+        Method reset;
+        Method kind;
+        Method context;
+        Method close;
+        Object entryCreate;
+        Object overflow;
+        Object kinds;
+
+        static Api load()
+        {
+            try
+            {
+                ClassLoader loader = DirectoryWatcher.class.getClassLoader();
+                Class<?> fileSystems = Class.forName("java.nio.file.FileSystems", true, loader);
+                Class<?> fileSystem = Class.forName("java.nio.file.FileSystem", true, loader);
+                Class<?> path = Class.forName("java.nio.file.Path", true, loader);
+                Class<?> watchService = Class.forName("java.nio.file.WatchService", true, loader);
+                Class<?> watchKey = Class.forName("java.nio.file.WatchKey", true, loader);
+                Class<?> watchEvent = Class.forName("java.nio.file.WatchEvent", true, loader);
+                Class<?> kind = Class.forName("java.nio.file.WatchEvent$Kind", true, loader);
+                Class<?> kinds = Class.forName("java.nio.file.StandardWatchEventKinds", true, loader);
+
+                Api api = new Api();
+                api.getDefaultFileSystem = fileSystems.getMethod("getDefault");
+                api.newWatchService = fileSystem.getMethod("newWatchService");
+                api.toPath = File.class.getMethod("toPath");
+                api.toFile = path.getMethod("toFile");
+                Object kindArray = Array.newInstance(kind, 2);
+                api.register = path.getMethod("register", watchService, kindArray.getClass());
+                api.poll = watchService.getMethod("poll");
+                api.close = watchService.getMethod("close");
+                api.pollEvents = watchKey.getMethod("pollEvents");
+                api.watchable = watchKey.getMethod("watchable");
+                api.reset = watchKey.getMethod("reset");
+                api.kind = watchEvent.getMethod("kind");
+                api.context = watchEvent.getMethod("context");
+                api.entryCreate = kinds.getField("ENTRY_CREATE").get(null);
+                api.overflow = kinds.getField("OVERFLOW").get(null);
+                Array.set(kindArray, 0, api.entryCreate);
+                Array.set(kindArray, 1, kinds.getField("ENTRY_MODIFY").get(null));
+                api.kinds = kindArray;
+                return api;
+            }
+            catch (Exception e)
+            {
+                // before Java 7
+                return null;
+            }
+        }
+
+        Object invoke(Method method, Object target, Object... args) throws IOException
+        {
+            try
+            {
+                return method.invoke(target, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                IOException ioe = new IOException(String.valueOf(cause));
+                ioe.initCause(cause);
+                throw ioe;
+            }
+            catch (IllegalAccessException e)
+            {
+                IOException ioe = new IOException(e.toString());
+                ioe.initCause(e);
+                throw ioe;
+            }
+        }
+    }
+}
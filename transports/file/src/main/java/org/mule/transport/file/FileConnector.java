@@ -77,6 +77,8 @@ public class FileConnector extends AbstractConnector
 
     public static final long DEFAULT_POLLING_FREQUENCY = 1000;
 
+    public static final int DEFAULT_MAX_PENDING_FILES = 10000;
+
     /**
      * Time in milliseconds to poll. On each poll the poll() method is called
      */
@@ -114,6 +116,10 @@ public class FileConnector extends AbstractConnector
 
     private boolean recursive = false;
 
+    private boolean watchDirectory = false;
+
+    private int maxPendingFiles = DEFAULT_MAX_PENDING_FILES;
+
     public FileConnector(MuleContext context)
     {
         super(context);
@@ -631,4 +637,24 @@ public class FileConnector extends AbstractConnector
     {
         this.recursive = recursive;
     }
+
+    public boolean isWatchDirectory()
+    {
+        return watchDirectory;
+    }
+
+    public void setWatchDirectory(boolean watchDirectory)
+    {
+        this.watchDirectory = watchDirectory;
+    }
+
+    public int getMaxPendingFiles()
+    {
+        return maxPendingFiles;
+    }
+
+    public void setMaxPendingFiles(int maxPendingFiles)
+    {
+        this.maxPendingFiles = maxPendingFiles;
+    }
 }
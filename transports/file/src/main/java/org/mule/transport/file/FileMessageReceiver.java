@@ -18,6 +18,7 @@ import org.mule.api.MuleException;
 import org.mule.api.MuleMessage;
 import org.mule.api.config.MuleProperties;
 import org.mule.api.construct.FlowConstruct;
+import org.mule.api.context.WorkManager;
 import org.mule.api.endpoint.InboundEndpoint;
 import org.mule.api.lifecycle.CreateException;
 import org.mule.api.lifecycle.InitialisationException;
@@ -48,15 +49,33 @@ import java.nio.channels.FileLock;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 
+import javax.resource.spi.work.Work;
+
 import org.apache.commons.collections.comparators.ReverseComparator;
 
 /**
  * <code>FileMessageReceiver</code> is a polling listener that reads files from a
  * directory.
+ * <p/>
+ * When the connector's <code>watchDirectory</code> is set and the JVM provides a
+ * watch service (Java 7 or later), the directory is listed once and then only the
+ * files reported as created or modified are considered. They wait in a queue of at
+ * most <code>maxPendingFiles</code> files until they have not been modified for
+ * <code>fileAge</code> ms, or for one polling interval if no file age is set, and are
+ * then processed in parallel by the receiver's threads. Files that are still in place
+ * once processed, for example because they were locked or not old enough, are
+ * queued again. Files found while the queue is full wait in a backlog and are
+ * queued as it drains. The directory is listed again if the watch service lost
+ * events.
  */
 
 public class FileMessageReceiver extends AbstractPollingMessageReceiver
@@ -81,6 +100,15 @@ public class FileMessageReceiver extends AbstractPollingMessageReceiver
     private LockFactory lockFactory;
     private boolean poolOnPrimaryInstanceOnly;
     private ObjectStore<String> filesBeingProcessingObjectStore;
+    private volatile DirectoryWatcher directoryWatcher;
+    // the files found by the watcher that are not processed yet, in the order they were found
+    // @GuardedBy pendingFiles, as are the backlog and the listing flag
+    private final Set<File> pendingFiles = new LinkedHashSet<File>();
+    // the files found while pendingFiles was full, queued as it drains
+    private final Set<File> backlogFiles = new LinkedHashSet<File>();
+    // the files handed to the receiver's threads that were left in the directory
+    private final Queue<File> unconsumedFiles = new ConcurrentLinkedQueue<File>();
+    private boolean listingRequired;
 
     public FileMessageReceiver(Connector connector,
                                FlowConstruct flowConstruct,
@@ -173,18 +201,57 @@ public class FileMessageReceiver extends AbstractPollingMessageReceiver
                 throw new ConnectException(FileMessages.moveToDirectoryNotWritable(), this);
             }
         }
+
+        if (fileConnector.isWatchDirectory() && readDirectory != null)
+        {
+            if (DirectoryWatcher.isSupported())
+            {
+                synchronized (pendingFiles)
+                {
+                    directoryWatcher = new DirectoryWatcher(readDirectory, fileConnector.isRecursive());
+                    listingRequired = true;
+                }
+            }
+            else
+            {
+                logger.warn("Watching directories requires Java 7 or later, polling " + readDirectory.getAbsolutePath() + " instead");
+            }
+        }
     }
 
     @Override
     protected void doDisconnect() throws Exception
     {
-        // template method
+        closeDirectoryWatcher();
     }
 
     @Override
     protected void doDispose()
     {
-        // nothing to do
+        closeDirectoryWatcher();
+    }
+
+    private void closeDirectoryWatcher()
+    {
+        // waits for a poll that is queuing files, which then finds the watcher gone
+        synchronized (pendingFiles)
+        {
+            if (directoryWatcher != null)
+            {
+                try
+                {
+                    directoryWatcher.close();
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Failed to stop watching " + readDirectory, e);
+                }
+                directoryWatcher = null;
+                pendingFiles.clear();
+                backlogFiles.clear();
+                unconsumedFiles.clear();
+            }
+        }
     }
 
     @Override
@@ -192,6 +259,13 @@ public class FileMessageReceiver extends AbstractPollingMessageReceiver
     {
         try
         {
+            DirectoryWatcher watcher = directoryWatcher;
+            if (watcher != null)
+            {
+                pollWatchedFiles(watcher);
+                return;
+            }
+
             List<File> files = this.listFiles();
             if (logger.isDebugEnabled())
             {
@@ -211,38 +285,7 @@ public class FileMessageReceiver extends AbstractPollingMessageReceiver
                 // don't process directories
                 if (file.isFile())
                 {
-                    Lock fileLock = lockFactory.createLock(file.getName());
-                    if (fileLock.tryLock())
-                    {
-                        try
-                        {
-                            String fileAbsolutePath = file.getAbsolutePath();
-                            try
-                            {
-                                filesBeingProcessingObjectStore.store(fileAbsolutePath, fileAbsolutePath);
-                                if (logger.isDebugEnabled())
-                                {
-                                    logger.debug(String.format("Flag for $ stored successfully.", fileAbsolutePath));
-                                }
-                            }
-                            catch (ObjectAlreadyExistsException e)
-                            {
-                                if (logger.isDebugEnabled())
-                                {
-                                    logger.debug(String.format("Flag for %s being processed is on. Skipping file.", fileAbsolutePath));
-                                }
-                                continue;
-                            }
-                            if (file.exists())
-                            {
-                                processFile(file);
-                            }
-                        }
-                        finally
-                        {
-                            fileLock.unlock();
-                        }
-                    }
+                    processFileIfAvailable(file);
                 }
             }
         }
@@ -252,6 +295,170 @@ public class FileMessageReceiver extends AbstractPollingMessageReceiver
         }
     }
 
+    /**
+     * Queues the files reported by the watcher, or found by listing the directory
+     * when required, and hands the ones that are no longer being written to the
+     * receiver's threads.
+     */
+    private void pollWatchedFiles(DirectoryWatcher watcher) throws Exception
+    {
+        List<File> stableFiles = new ArrayList<File>();
+        synchronized (pendingFiles)
+        {
+            if (watcher != directoryWatcher)
+            {
+                // closed meanwhile
+                return;
+            }
+            try
+            {
+                if (!watcher.drainEvents(backlogFiles))
+                {
+                    listingRequired = true;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new DefaultMuleException(FileMessages.errorWhileListingFiles(), e);
+            }
+            for (File file; (file = unconsumedFiles.poll()) != null;)
+            {
+                backlogFiles.add(file);
+            }
+            if (listingRequired)
+            {
+                listingRequired = false;
+                backlogFiles.addAll(listFiles());
+            }
+            int maxPendingFiles = fileConnector.getMaxPendingFiles();
+            for (Iterator<File> it = backlogFiles.iterator(); it.hasNext() && pendingFiles.size() < maxPendingFiles;)
+            {
+                File file = it.next();
+                it.remove();
+                if (accept(file))
+                {
+                    pendingFiles.add(file);
+                }
+            }
+
+            long stableAge = fileConnector.getCheckFileAge() ? fileConnector.getFileAge() : getTimeUnit().toMillis(getFrequency());
+            long now = System.currentTimeMillis();
+            for (Iterator<File> it = pendingFiles.iterator(); it.hasNext();)
+            {
+                File file = it.next();
+                if (!file.isFile())
+                {
+                    // already processed, or moved away
+                    it.remove();
+                }
+                else if (now - file.lastModified() >= stableAge)
+                {
+                    it.remove();
+                    stableFiles.add(file);
+                }
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Files: " + stableFiles + ", " + pendingFiles.size() + " file(s) still being written, "
+                             + backlogFiles.size() + " waiting");
+            }
+        }
+        Comparator<File> comparator = getComparator();
+        if (comparator != null)
+        {
+            Collections.sort(stableFiles, comparator);
+        }
+        for (int i = 0; i < stableFiles.size(); i++)
+        {
+            if (getLifecycleState().isStopping())
+            {
+                requeue(watcher, stableFiles.subList(i, stableFiles.size()));
+                break;
+            }
+            try
+            {
+                getWorkManager().scheduleWork(new FileWork(stableFiles.get(i)), WorkManager.INDEFINITE, null, connector);
+            }
+            catch (Exception e)
+            {
+                // the work was rejected, the files are scheduled again on the next poll
+                requeue(watcher, stableFiles.subList(i, stableFiles.size()));
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the number of files found by the watcher that wait to be processed
+     */
+    int getQueuedFileCount()
+    {
+        synchronized (pendingFiles)
+        {
+            return pendingFiles.size() + backlogFiles.size();
+        }
+    }
+
+    private void requeue(DirectoryWatcher watcher, List<File> files)
+    {
+        synchronized (pendingFiles)
+        {
+            if (watcher == directoryWatcher)
+            {
+                pendingFiles.addAll(files);
+            }
+        }
+    }
+
+    private boolean accept(File file)
+    {
+        if (fileFilter != null)
+        {
+            return fileFilter.accept(file);
+        }
+        return filenameFilter == null || filenameFilter.accept(file.getParentFile(), file.getName());
+    }
+
+    /**
+     * Processes a file unless another thread or, in a cluster, another node is
+     * already processing it.
+     */
+    private void processFileIfAvailable(File file) throws MuleException
+    {
+        Lock fileLock = lockFactory.createLock(file.getName());
+        if (fileLock.tryLock())
+        {
+            try
+            {
+                String fileAbsolutePath = file.getAbsolutePath();
+                try
+                {
+                    filesBeingProcessingObjectStore.store(fileAbsolutePath, fileAbsolutePath);
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug(String.format("Flag for $ stored successfully.", fileAbsolutePath));
+                    }
+                }
+                catch (ObjectAlreadyExistsException e)
+                {
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug(String.format("Flag for %s being processed is on. Skipping file.", fileAbsolutePath));
+                    }
+                    return;
+                }
+                if (file.exists())
+                {
+                    processFile(file);
+                }
+            }
+            finally
+            {
+                fileLock.unlock();
+            }
+        }
+    }
+
     @Override
     protected boolean pollOnPrimaryInstanceOnly()
     {
@@ -742,4 +949,43 @@ public class FileMessageReceiver extends AbstractPollingMessageReceiver
         }
         return null;
     }
+
+    private final class FileWork implements Work
+    {
+        private final File file;
+
+        private FileWork(File file)
+        {
+            this.file = file;
+        }
+
+        public void run()
+        {
+            try
+            {
+                if (file.isFile())
+                {
+                    processFileIfAvailable(file);
+                }
+            }
+            catch (Exception e)
+            {
+                getConnector().getMuleContext().getExceptionListener().handleException(e);
+            }
+            finally
+            {
+                // a file that was skipped or failed is not reported by the watcher again
+                // until it is modified, so it is queued to be processed again
+                if (file.isFile())
+                {
+                    unconsumedFiles.add(file);
+                }
+            }
+        }
+
+        public void release()
+        {
+            // nothing to release
+        }
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+import org.mule.util.FileUtils;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SmallTest
+public class DirectoryWatcherTestCase extends AbstractMuleTestCase
+{
+
+    private static final long TIMEOUT = 10000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private DirectoryWatcher watcher;
+
+    @Before
+    public void createDirectory() throws Exception
+    {
+        assumeTrue(DirectoryWatcher.isSupported());
+        directory = temporaryFolder.newFolder("watched");
+    }
+
+    @After
+    public void closeWatcher() throws Exception
+    {
+        if (watcher != null)
+        {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void reportsCreatedAndModifiedFiles() throws Exception
+    {
+        File existing = createFile(directory, "existing.txt");
+        watcher = new DirectoryWatcher(directory, false);
+
+        File created = createFile(directory, "created.txt");
+        awaitChanges(created);
+
+        FileUtils.writeStringToFile(existing, "modified");
+        awaitChanges(existing);
+    }
+
+    @Test
+    public void ignoresSubdirectoriesIfNotRecursive() throws Exception
+    {
+        File subdirectory = FileUtils.newFile(directory, "sub");
+        assertTrue(subdirectory.mkdir());
+        watcher = new DirectoryWatcher(directory, false);
+
+        createFile(subdirectory, "nested.txt");
+        File created = createFile(directory, "created.txt");
+        assertEquals(1, awaitChanges(created).size());
+    }
+
+    @Test
+    public void watchesSubdirectoriesIfRecursive() throws Exception
+    {
+        File subdirectory = FileUtils.newFile(directory, "sub");
+        assertTrue(subdirectory.mkdir());
+        watcher = new DirectoryWatcher(directory, true);
+
+        File nested = createFile(subdirectory, "nested.txt");
+        awaitChanges(nested);
+
+        // the files of a new directory are reported along with it
+        File newDirectory = FileUtils.newFile(directory, "new");
+        File inNewDirectory = createFile(newDirectory, "inNew.txt");
+        awaitChanges(inNewDirectory);
+
+        File laterInNewDirectory = createFile(newDirectory, "later.txt");
+        awaitChanges(laterInNewDirectory);
+    }
+
+    @Test
+    public void nothingIsReportedWithoutChanges() throws Exception
+    {
+        createFile(directory, "existing.txt");
+        watcher = new DirectoryWatcher(directory, false);
+
+        Set<File> changed = new HashSet<File>();
+        assertTrue(watcher.drainEvents(changed));
+        assertFalse(changed.contains(FileUtils.newFile(directory, "existing.txt")));
+    }
+
+    private File createFile(File parent, String name) throws Exception
+    {
+        File file = FileUtils.newFile(parent, name);
+        FileUtils.writeStringToFile(file, name);
+        return file;
+    }
+
+    /**
+     * Waits for the watch service, which reports changes asynchronously, to report
+     * the given file.
+     *
+     * @return the files reported until then
+     */
+    private Set<File> awaitChanges(File expected) throws Exception
+    {
+        Set<File> changed = new HashSet<File>();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!changed.contains(expected.getAbsoluteFile()) && System.currentTimeMillis() < deadline)
+        {
+            assertTrue(watcher.drainEvents(changed));
+            Thread.sleep(50);
+        }
+        assertTrue("Not reported: " + expected + " in " + changed, changed.contains(expected.getAbsoluteFile()));
+        return changed;
+    }
+}
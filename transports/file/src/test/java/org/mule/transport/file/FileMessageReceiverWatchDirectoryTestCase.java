@@ -0,0 +1,380 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.mule.api.MuleContext;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.MuleMessage;
+import org.mule.api.config.MuleProperties;
+import org.mule.api.construct.FlowConstruct;
+import org.mule.api.context.WorkManager;
+import org.mule.api.endpoint.InboundEndpoint;
+import org.mule.api.processor.MessageProcessor;
+import org.mule.api.store.ObjectStoreManager;
+import org.mule.api.transport.PropertyScope;
+import org.mule.execution.MessageProcessingManager;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+import org.mule.util.FileUtils;
+import org.mule.util.UUID;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.resource.spi.work.ExecutionContext;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkListener;
+import javax.resource.spi.work.WorkRejectedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Polls a {@link FileMessageReceiver} that watches its directory, running the work
+ * it schedules synchronously.
+ */
+@RunWith(MockitoJUnitRunner.class)
+@SmallTest
+public class FileMessageReceiverWatchDirectoryTestCase extends AbstractMuleTestCase
+{
+
+    private static final long TIMEOUT = 10000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MuleContext mockMuleContext = mock(MuleContext.class, Answers.RETURNS_DEEP_STUBS.get());
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private FileConnector mockFileConnector;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private FlowConstruct mockFlowConstruct;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private InboundEndpoint mockInboundEndpoint;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private MuleMessage mockMessage;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private MessageProcessingManager mockMessageManager;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ObjectStoreManager mockObjectStoreManager;
+    @Mock
+    private WorkManager mockWorkManager;
+
+    private final MessageProcessor listener = new MessageProcessor()
+    {
+        public MuleEvent process(MuleEvent event) throws MuleException
+        {
+            return event;
+        }
+    };
+    private File readDirectory;
+    private File moveDirectory;
+    private final Set<File> lockedFiles = new HashSet<File>();
+    private final AtomicInteger listings = new AtomicInteger();
+    private volatile Runnable onListing;
+    private FileMessageReceiver receiver;
+
+    @Before
+    public void configureMocks() throws Exception
+    {
+        assumeTrue(DirectoryWatcher.isSupported());
+        readDirectory = temporaryFolder.newFolder("read");
+        moveDirectory = temporaryFolder.newFolder("move");
+
+        when(mockInboundEndpoint.getConnector()).thenReturn(mockFileConnector);
+        when(mockInboundEndpoint.getFilter()).thenReturn(null);
+        when(mockInboundEndpoint.getProperty(anyString())).thenReturn(null);
+        when(mockFileConnector.isWatchDirectory()).thenReturn(true);
+        when(mockFileConnector.getMaxPendingFiles()).thenReturn(FileConnector.DEFAULT_MAX_PENDING_FILES);
+        when(mockFileConnector.getMuleContext().getLockFactory().createLock(anyString())).thenAnswer(new Answer<Lock>()
+        {
+            public Lock answer(InvocationOnMock invocation) throws Throwable
+            {
+                return new ReentrantLock();
+            }
+        });
+        when(mockFileConnector.getMuleContext().getRegistry().get(MuleProperties.OBJECT_DEFAULT_MESSAGE_PROCESSING_MANAGER)).thenReturn(mockMessageManager);
+        when(mockFileConnector.getMuleContext().getRegistry().get(MuleProperties.OBJECT_STORE_MANAGER)).thenReturn(mockObjectStoreManager);
+        when(mockMessage.getProperty(MuleProperties.MULE_FORCE_SYNC_PROPERTY, PropertyScope.INBOUND, Boolean.FALSE)).thenReturn(true);
+        when(mockMessage.getInboundProperty(MuleProperties.MULE_ROOT_MESSAGE_ID_PROPERTY)).thenReturn(UUID.getUUID());
+        doAnswer(new Answer<Object>()
+        {
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                ((Work) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(mockWorkManager).scheduleWork(any(Work.class), anyLong(), any(ExecutionContext.class), any(WorkListener.class));
+    }
+
+    @After
+    public void disconnect() throws Exception
+    {
+        if (receiver != null)
+        {
+            receiver.doDisconnect();
+        }
+    }
+
+    @Test
+    public void listedAndWatchedFilesAreMoved() throws Exception
+    {
+        File existing = createFile("existing.txt");
+        connect(moveDirectory);
+
+        receiver.poll();
+        assertMoved(existing);
+
+        File created = createFile("created.txt");
+        pollUntilGone(created);
+        assertMoved(created);
+    }
+
+    @Test
+    public void watchedFilesAreDeleted() throws Exception
+    {
+        when(mockFileConnector.isAutoDelete()).thenReturn(true);
+        connect(null);
+
+        File created = createFile("created.txt");
+        pollUntilGone(created);
+    }
+
+    @Test
+    public void filesAreProcessedOnceOldEnough() throws Exception
+    {
+        when(mockFileConnector.getCheckFileAge()).thenReturn(true);
+        when(mockFileConnector.getFileAge()).thenReturn(60000L);
+        File file = createFile("young.txt");
+        assertTrue(file.setLastModified(System.currentTimeMillis()));
+        connect(moveDirectory);
+
+        receiver.poll();
+        assertTrue(file.exists());
+
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 120000));
+        receiver.poll();
+        assertMoved(file);
+    }
+
+    @Test
+    public void filesBeyondMaxPendingFilesWaitWithoutListingAgain() throws Exception
+    {
+        when(mockFileConnector.getMaxPendingFiles()).thenReturn(2);
+        for (int i = 0; i < 5; i++)
+        {
+            createFile("file" + i + ".txt");
+        }
+        connect(moveDirectory);
+
+        receiver.poll();
+        assertEquals(3, readDirectory.list().length);
+        receiver.poll();
+        assertEquals(1, readDirectory.list().length);
+        receiver.poll();
+        assertEquals(0, readDirectory.list().length);
+        assertEquals(5, moveDirectory.list().length);
+        assertEquals(1, listings.get());
+    }
+
+    @Test
+    public void disconnectWaitsForThePollQueuingFiles() throws Exception
+    {
+        when(mockFileConnector.getCheckFileAge()).thenReturn(true);
+        when(mockFileConnector.getFileAge()).thenReturn(60000L);
+        for (int i = 0; i < 5; i++)
+        {
+            assertTrue(createFile("young" + i + ".txt").setLastModified(System.currentTimeMillis()));
+        }
+        connect(moveDirectory);
+        final Thread disconnecting = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    receiver.doDisconnect();
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        onListing = new Runnable()
+        {
+            public void run()
+            {
+                disconnecting.start();
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        receiver.poll();
+        disconnecting.join(TIMEOUT);
+        assertFalse(disconnecting.isAlive());
+        assertEquals(0, receiver.getQueuedFileCount());
+        assertEquals(5, readDirectory.list().length);
+    }
+
+    @Test
+    public void lockedFileIsProcessedOnceReleased() throws Exception
+    {
+        File file = createFile("locked.txt");
+        lockedFiles.add(file);
+        connect(moveDirectory);
+
+        receiver.poll();
+        assertTrue(file.exists());
+
+        // the file is not modified, so only the receiver can tell that it is still there
+        lockedFiles.clear();
+        receiver.poll();
+        assertMoved(file);
+    }
+
+    @Test
+    public void filesAreScheduledAgainIfTheWorkIsRejected() throws Exception
+    {
+        File file = createFile("rejected.txt");
+        connect(moveDirectory);
+
+        doAnswer(new Answer<Object>()
+        {
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                throw new WorkRejectedException("busy");
+            }
+        }).doAnswer(new Answer<Object>()
+        {
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                ((Work) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(mockWorkManager).scheduleWork(any(Work.class), anyLong(), any(ExecutionContext.class), any(WorkListener.class));
+
+        receiver.poll();
+        assertTrue(file.exists());
+        receiver.poll();
+        assertMoved(file);
+    }
+
+    private void connect(File moveTo) throws Exception
+    {
+        String moveDir = moveTo == null ? null : moveTo.getAbsolutePath();
+        receiver = new FileMessageReceiver(mockFileConnector, mockFlowConstruct, mockInboundEndpoint,
+            readDirectory.getAbsolutePath(), moveDir, null, 100)
+        {
+            @Override
+            List<File> listFiles() throws MuleException
+            {
+                listings.incrementAndGet();
+                if (onListing != null)
+                {
+                    onListing.run();
+                }
+                return super.listFiles();
+            }
+
+            @Override
+            protected boolean attemptFileLock(File sourceFile) throws MuleException
+            {
+                return !lockedFiles.contains(sourceFile);
+            }
+
+            @Override
+            protected void initializeMessageFactory()
+            {
+                this.muleMessageFactory = new FileMuleMessageFactory(mockMuleContext)
+                {
+                    @Override
+                    public MuleMessage create(Object transportMessage, String encoding) throws Exception
+                    {
+                        when(mockMessage.getPayload()).thenReturn(transportMessage);
+                        return mockMessage;
+                    }
+                };
+            }
+
+            @Override
+            protected WorkManager getWorkManager()
+            {
+                return mockWorkManager;
+            }
+        };
+        receiver.setListener(listener);
+        receiver.initialise();
+        receiver.doConnect();
+    }
+
+    private File createFile(String name) throws Exception
+    {
+        File file = FileUtils.newFile(readDirectory, name);
+        FileUtils.writeStringToFile(file, name);
+        // older than the polling frequency, so that it is not considered as being written
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 10000));
+        return file;
+    }
+
+    /**
+     * Polls until the watch service, which reports changes asynchronously, reported
+     * the file and it was processed.
+     */
+    private void pollUntilGone(File file) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (file.exists() && System.currentTimeMillis() < deadline)
+        {
+            receiver.poll();
+            Thread.sleep(50);
+        }
+        assertFalse("Not processed: " + file, file.exists());
+    }
+
+    private void assertMoved(File file)
+    {
+        assertFalse(file.exists());
+        assertTrue(FileUtils.newFile(moveDirectory, file.getName()).exists());
+    }
+}
@@ -0,0 +1,810 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.http;
+
+import org.mule.transport.tcp.ByteBufferPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.ChunkedInputStream;
+import org.apache.commons.httpclient.ContentLengthInputStream;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpParser;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Sends HTTP requests without blocking the threads that submit them.
+ * <p/>
+ * A single thread connects, writes the requests and reads the responses of all the
+ * connections with a selector. Connections are kept per host and reused while the
+ * server keeps them alive. At most <code>maxConnectionsPerHost</code> are open to a
+ * host at a time; further requests wait in the host's queue, which holds at most
+ * <code>maxQueuedRequestsPerHost</code> requests before new ones are rejected.
+ * <p/>
+ * Each request ends with a call to its {@link Callback}, run by the given executor,
+ * once the whole response has been received or the request failed or timed out. The
+ * timeout of a request includes the time it waits in the queue. Responses are kept
+ * in memory.
+ * <p/>
+ * A request whose kept alive connection is closed by the server before any response
+ * arrives is sent again on a new connection if none of it had been written, or if its
+ * method is idempotent.
+ */
+class AsyncHttpClient implements Runnable
+{
+
+    private static Log logger = LogFactory.getLog(AsyncHttpClient.class);
+
+    private static final long SELECT_TIMEOUT = 500;
+    private static final String ENCODING = "ISO-8859-1";
+
+    /**
+     * Receives the outcome of a request.
+     */
+    interface Callback
+    {
+
+        void completed(Response response);
+
+        void failed(Exception e);
+    }
+
+    private final String name;
+    private final int maxConnectionsPerHost;
+    private final int maxQueuedRequestsPerHost;
+    private final long idleTimeout;
+    private final ByteBufferPool bufferPool;
+    private final Executor callbackExecutor;
+    private final ThreadFactory threadFactory;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<String, Host>();
+    private final Queue<Host> hostsWithRequests = new ConcurrentLinkedQueue<Host>();
+    private final Set<Connection> busyConnections = new HashSet<Connection>();
+    private final Selector selector;
+    private volatile boolean disposed;
+    private Thread thread;
+
+    AsyncHttpClient(String name, int maxConnectionsPerHost, int maxQueuedRequestsPerHost, long idleTimeout,
+                    ByteBufferPool bufferPool, Executor callbackExecutor, ThreadFactory threadFactory)
+        throws IOException
+    {
+        this.name = name;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxQueuedRequestsPerHost = maxQueuedRequestsPerHost;
+        this.idleTimeout = idleTimeout;
+        this.bufferPool = bufferPool;
+        this.callbackExecutor = callbackExecutor;
+        this.threadFactory = threadFactory;
+        this.selector = Selector.open();
+    }
+
+    synchronized void start()
+    {
+        if (thread == null)
+        {
+            thread = threadFactory.newThread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Closes all connections. Requests not completed yet are failed.
+     */
+    void dispose()
+    {
+        disposed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Queues the request for its host and returns at once.
+     *
+     * @throws RejectedExecutionException if the client is disposed or too many
+     *             requests are already queued for the host
+     */
+    void execute(Request request, Callback callback)
+    {
+        if (disposed)
+        {
+            throw new RejectedExecutionException("HTTP client " + name + " is disposed");
+        }
+        Host host = hosts.get(request.hostKey);
+        if (host == null)
+        {
+            Host created = new Host(request.address);
+            host = hosts.putIfAbsent(request.hostKey, created);
+            if (host == null)
+            {
+                host = created;
+            }
+        }
+        if (maxQueuedRequestsPerHost >= 0 && host.queued.incrementAndGet() > maxQueuedRequestsPerHost)
+        {
+            host.queued.decrementAndGet();
+            throw new RejectedExecutionException("More than " + maxQueuedRequestsPerHost
+                                                 + " requests are queued for " + request.hostKey);
+        }
+        host.pending.add(new Exchange(request, callback));
+        hostsWithRequests.add(host);
+        selector.wakeup();
+    }
+
+    /**
+     * @return the number of requests waiting for a connection to the host
+     */
+    int getQueuedRequests(String host, int port)
+    {
+        Host state = hosts.get(host + ":" + port);
+        return state == null ? 0 : state.queued.get();
+    }
+
+    /**
+     * @return the number of connections open to the host, busy or idle
+     */
+    int getOpenConnections(String host, int port)
+    {
+        Host state = hosts.get(host + ":" + port);
+        return state == null ? 0 : state.open;
+    }
+
+    public void run()
+    {
+        try
+        {
+            while (!disposed)
+            {
+                try
+                {
+                    selector.select(SELECT_TIMEOUT);
+                    startPendingRequests();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext())
+                    {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid())
+                        {
+                            handle(key, (Connection) key.attachment());
+                        }
+                    }
+                    expireConnections();
+                }
+                catch (ClosedSelectorException e)
+                {
+                    break;
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Failure in HTTP client " + name, e);
+                }
+                catch (RuntimeException e)
+                {
+                    // this thread serves all the requests, so it must keep running
+                    logger.error("Unexpected failure in HTTP client " + name, e);
+                }
+            }
+        }
+        finally
+        {
+            closeAll();
+        }
+    }
+
+    private void startPendingRequests()
+    {
+        Host host;
+        while ((host = hostsWithRequests.poll()) != null)
+        {
+            startPendingRequests(host);
+        }
+    }
+
+    private void startPendingRequests(Host host)
+    {
+        if (disposed)
+        {
+            // what is still pending is failed once the connections are closed
+            return;
+        }
+        while (!host.pending.isEmpty() && (!host.idle.isEmpty() || host.open < maxConnectionsPerHost))
+        {
+            Exchange exchange = host.pending.poll();
+            host.queued.decrementAndGet();
+            Connection connection = host.idle.poll();
+            if (connection == null)
+            {
+                try
+                {
+                    connection = open(host);
+                }
+                catch (IOException e)
+                {
+                    complete(exchange, null, e);
+                    continue;
+                }
+                catch (RuntimeException e)
+                {
+                    // such as an UnresolvedAddressException
+                    complete(exchange, null, e);
+                    continue;
+                }
+            }
+            start(connection, exchange);
+        }
+    }
+
+    private Connection open(Host host) throws IOException
+    {
+        SocketChannel channel = SocketChannel.open();
+        try
+        {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(host, channel);
+            int ops = channel.connect(host.address) ? 0 : SelectionKey.OP_CONNECT;
+            connection.key = channel.register(selector, ops, connection);
+            host.open++;
+            return connection;
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void start(Connection connection, Exchange exchange)
+    {
+        connection.exchange = exchange;
+        connection.received = false;
+        connection.request = ByteBuffer.wrap(exchange.request.bytes);
+        connection.responses.setHeadRequest(exchange.request.head);
+        connection.deadline = exchange.deadline;
+        busyConnections.add(connection);
+        if (connection.channel.isConnected())
+        {
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void handle(SelectionKey key, Connection connection)
+    {
+        try
+        {
+            if (key.isConnectable())
+            {
+                connection.channel.finishConnect();
+                key.interestOps(connection.exchange == null ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+            }
+            else if (key.isWritable())
+            {
+                connection.channel.write(connection.request);
+                if (!connection.request.hasRemaining())
+                {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            else if (key.isReadable())
+            {
+                read(connection);
+            }
+        }
+        catch (IOException e)
+        {
+            fail(connection, e);
+        }
+        catch (RuntimeException e)
+        {
+            fail(connection, e);
+        }
+    }
+
+    private void read(Connection connection) throws IOException
+    {
+        if (connection.exchange == null)
+        {
+            // an idle connection is only readable once the server closes it
+            close(connection);
+            return;
+        }
+        int read;
+        ByteBuffer readBuffer = bufferPool.acquire();
+        try
+        {
+            do
+            {
+                readBuffer.clear();
+                read = connection.channel.read(readBuffer);
+                if (read > 0)
+                {
+                    readBuffer.flip();
+                    connection.received = true;
+                    connection.responses.append(readBuffer);
+                }
+            }
+            while (read == readBuffer.capacity());
+        }
+        finally
+        {
+            bufferPool.release(readBuffer);
+        }
+
+        if (read < 0)
+        {
+            connection.responses.endOfInput();
+        }
+        while (connection.responses.hasRequest())
+        {
+            Response response = new Response(connection.responses.takeRequest());
+            if (response.getStatusCode() < HttpConstants.SC_OK)
+            {
+                // informational responses precede the actual one
+                continue;
+            }
+            Exchange exchange = connection.exchange;
+            release(connection, read >= 0 && response.isKeepAlive() && !connection.responses.isPartial());
+            complete(exchange, response, null);
+            return;
+        }
+        if (read < 0)
+        {
+            fail(connection, new IOException("Connection closed before the response was received"));
+        }
+    }
+
+    /**
+     * Ends the use of a connection for its current request, keeping it for the next
+     * request to the host if possible.
+     */
+    private void release(Connection connection, boolean reuse)
+    {
+        busyConnections.remove(connection);
+        connection.exchange = null;
+        connection.request = null;
+        if (reuse)
+        {
+            connection.idleSince = System.currentTimeMillis();
+            connection.reused = true;
+            connection.host.idle.add(connection);
+        }
+        else
+        {
+            close(connection);
+        }
+        startPendingRequests(connection.host);
+    }
+
+    private void fail(Connection connection, Exception e)
+    {
+        Exchange exchange = connection.exchange;
+        if (exchange != null && connection.reused && !connection.received && !disposed
+            && !(e instanceof SocketTimeoutException)
+            && (connection.request.position() == 0 || exchange.request.idempotent))
+        {
+            // the server closed the kept alive connection, most likely before it got the
+            // request, which is then sent again on a new connection unless the server may
+            // have acted on it already
+            busyConnections.remove(connection);
+            close(connection);
+            connection.host.pending.add(exchange);
+            connection.host.queued.incrementAndGet();
+            startPendingRequests(connection.host);
+            return;
+        }
+        if (exchange != null)
+        {
+            release(connection, false);
+            complete(exchange, null, e);
+        }
+        else
+        {
+            close(connection);
+        }
+    }
+
+    private void complete(final Exchange exchange, final Response response, final Exception failure)
+    {
+        Runnable callback = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    if (failure == null)
+                    {
+                        exchange.callback.completed(response);
+                    }
+                    else
+                    {
+                        exchange.callback.failed(failure);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    logger.warn("HTTP client callback failed", e);
+                }
+            }
+        };
+        try
+        {
+            callbackExecutor.execute(callback);
+        }
+        catch (RejectedExecutionException e)
+        {
+            callback.run();
+        }
+    }
+
+    private void expireConnections()
+    {
+        long now = System.currentTimeMillis();
+        for (Connection connection : new LinkedList<Connection>(busyConnections))
+        {
+            if (now >= connection.deadline)
+            {
+                fail(connection, new SocketTimeoutException("No response from " + connection.host.address + " within "
+                                                            + connection.exchange.request.timeout + " ms"));
+            }
+        }
+        for (Host host : hosts.values())
+        {
+            Iterator<Exchange> pending = host.pending.iterator();
+            while (pending.hasNext())
+            {
+                Exchange exchange = pending.next();
+                if (now >= exchange.deadline && host.pending.remove(exchange))
+                {
+                    host.queued.decrementAndGet();
+                    complete(exchange, null, new SocketTimeoutException("No connection to " + host.address
+                                                                        + " within " + exchange.request.timeout + " ms"));
+                }
+            }
+        }
+        if (idleTimeout > 0)
+        {
+            for (Host host : hosts.values())
+            {
+                Iterator<Connection> idle = host.idle.iterator();
+                while (idle.hasNext())
+                {
+                    Connection connection = idle.next();
+                    if (now - connection.idleSince >= idleTimeout)
+                    {
+                        idle.remove();
+                        close(connection);
+                    }
+                }
+            }
+        }
+    }
+
+    private void close(Connection connection)
+    {
+        if (connection.closed)
+        {
+            return;
+        }
+        connection.closed = true;
+        connection.host.idle.remove(connection);
+        connection.host.open--;
+        connection.key.cancel();
+        try
+        {
+            connection.channel.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("Failed to close connection: " + e.getMessage());
+        }
+    }
+
+    private void closeAll()
+    {
+        IOException disposedException = new IOException("HTTP client " + name + " is disposed");
+        for (Connection connection : new LinkedList<Connection>(busyConnections))
+        {
+            fail(connection, disposedException);
+        }
+        for (Host host : hosts.values())
+        {
+            Exchange exchange;
+            while ((exchange = host.pending.poll()) != null)
+            {
+                host.queued.decrementAndGet();
+                complete(exchange, null, disposedException);
+            }
+            while (!host.idle.isEmpty())
+            {
+                close(host.idle.peek());
+            }
+        }
+        try
+        {
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("Failed to close selector: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The connections to a host. Only the pending queue and its counter are used by
+     * other threads than the selector one.
+     */
+    private static class Host
+    {
+
+        final InetSocketAddress address;
+        final Queue<Exchange> pending = new ConcurrentLinkedQueue<Exchange>();
+        final AtomicInteger queued = new AtomicInteger();
+        final LinkedList<Connection> idle = new LinkedList<Connection>();
+        volatile int open;
+
+        Host(InetSocketAddress address)
+        {
+            this.address = address;
+        }
+    }
+
+    private static class Exchange
+    {
+
+        final Request request;
+        final Callback callback;
+        final long deadline;
+
+        Exchange(Request request, Callback callback)
+        {
+            this.request = request;
+            this.callback = callback;
+            this.deadline = request.timeout > 0 ? System.currentTimeMillis() + request.timeout : Long.MAX_VALUE;
+        }
+    }
+
+    private static class Connection
+    {
+
+        final Host host;
+        final SocketChannel channel;
+        final HttpResponseBuffer responses = new HttpResponseBuffer();
+        SelectionKey key;
+        Exchange exchange;
+        ByteBuffer request;
+        long deadline;
+        long idleSince;
+        boolean reused;
+        boolean received;
+        boolean closed;
+
+        Connection(Host host, SocketChannel channel)
+        {
+            this.host = host;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * The bytes of a request, with its body fully written out, so that it can be sent
+     * by the selector thread after the method and its message are no longer used.
+     */
+    static class Request
+    {
+
+        final InetSocketAddress address;
+        final String hostKey;
+        final byte[] bytes;
+        final boolean head;
+        final boolean idempotent;
+        final long timeout;
+
+        /**
+         * @param cookies the value of the Cookie header, or null for no cookies
+         * @param timeout the time in milliseconds to wait for the response, or 0 to
+         *            wait without limit
+         */
+        Request(HttpMethod method, URI uri, String cookies, long timeout) throws IOException
+        {
+            int port = uri.getPort() == -1 ? HttpConstants.DEFAULT_HTTP_PORT : uri.getPort();
+            this.address = new InetSocketAddress(uri.getHost(), port);
+            this.hostKey = uri.getHost() + ":" + port;
+            this.head = HttpConstants.METHOD_HEAD.equalsIgnoreCase(method.getName());
+            this.idempotent = head || HttpConstants.METHOD_GET.equalsIgnoreCase(method.getName())
+                              || HttpConstants.METHOD_PUT.equalsIgnoreCase(method.getName())
+                              || HttpConstants.METHOD_DELETE.equalsIgnoreCase(method.getName())
+                              || HttpConstants.METHOD_OPTIONS.equalsIgnoreCase(method.getName())
+                              || HttpConstants.METHOD_TRACE.equalsIgnoreCase(method.getName());
+            this.timeout = timeout;
+
+            ByteArrayOutputStream body = null;
+            RequestEntity entity = null;
+            if (method instanceof EntityEnclosingMethod)
+            {
+                entity = ((EntityEnclosingMethod) method).getRequestEntity();
+                body = new ByteArrayOutputStream();
+                if (entity != null)
+                {
+                    entity.writeRequest(body);
+                }
+            }
+
+            StringBuilder head = new StringBuilder(256);
+            head.append(method.getName()).append(' ').append(method.getPath());
+            if (method.getQueryString() != null)
+            {
+                head.append('?').append(method.getQueryString());
+            }
+            head.append(' ').append(HttpConstants.HTTP11).append("\r\n");
+            if (method.getRequestHeader(HttpConstants.HEADER_HOST) == null)
+            {
+                head.append(HttpConstants.HEADER_HOST).append(": ").append(uri.getHost());
+                if (port != HttpConstants.DEFAULT_HTTP_PORT)
+                {
+                    head.append(':').append(port);
+                }
+                head.append("\r\n");
+            }
+            for (Header header : method.getRequestHeaders())
+            {
+                String headerName = header.getName();
+                if (header.getValue() != null
+                    && !HttpConstants.HEADER_CONTENT_LENGTH.equalsIgnoreCase(headerName)
+                    && !HttpConstants.HEADER_TRANSFER_ENCODING.equalsIgnoreCase(headerName)
+                    && !HttpConstants.HEADER_EXPECT.equalsIgnoreCase(headerName))
+                {
+                    head.append(header.toExternalForm());
+                }
+            }
+            if (entity != null && entity.getContentType() != null
+                && method.getRequestHeader(HttpConstants.HEADER_CONTENT_TYPE) == null)
+            {
+                head.append(HttpConstants.HEADER_CONTENT_TYPE).append(": ").append(entity.getContentType()).append("\r\n");
+            }
+            if (cookies != null)
+            {
+                head.append(HttpConstants.HEADER_COOKIE).append(": ").append(cookies).append("\r\n");
+            }
+            if (body != null)
+            {
+                head.append(HttpConstants.HEADER_CONTENT_LENGTH).append(": ").append(body.size()).append("\r\n");
+            }
+            head.append("\r\n");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(head.length() + (body == null ? 0 : body.size()));
+            bytes.write(head.toString().getBytes(ENCODING));
+            if (body != null)
+            {
+                body.writeTo(bytes);
+            }
+            this.bytes = bytes.toByteArray();
+        }
+    }
+
+    /**
+     * A response fully received, its body decoded.
+     */
+    static class Response
+    {
+
+        private final String version;
+        private final int statusCode;
+        private final String statusText;
+        private final Header[] headers;
+        private final byte[] body;
+
+        Response(byte[] bytes) throws IOException
+        {
+            InputStream in = new ByteArrayInputStream(bytes);
+            String statusLine = HttpParser.readLine(in, ENCODING);
+            while (statusLine != null && statusLine.trim().length() == 0)
+            {
+                statusLine = HttpParser.readLine(in, ENCODING);
+            }
+            if (statusLine == null)
+            {
+                throw new IOException("Empty response");
+            }
+            String[] parts = statusLine.trim().split(" ", 3);
+            this.version = parts[0];
+            this.statusCode = HttpResponseBuffer.statusCode(parts);
+            if (statusCode < 0)
+            {
+                throw new IOException("Invalid status line: " + statusLine);
+            }
+            this.statusText = parts.length > 2 ? parts[2] : "";
+            this.headers = HttpParser.parseHeaders(in, ENCODING);
+
+            String transferEncoding = getHeader(HttpConstants.HEADER_TRANSFER_ENCODING);
+            String contentLength = getHeader(HttpConstants.HEADER_CONTENT_LENGTH);
+            if (transferEncoding != null
+                && transferEncoding.toLowerCase().indexOf(HttpConstants.TRANSFER_ENCODING_CHUNKED) != -1)
+            {
+                in = new ChunkedInputStream(in);
+            }
+            else if (transferEncoding == null && contentLength != null)
+            {
+                in = new ContentLengthInputStream(in, Long.parseLong(contentLength.trim()));
+            }
+            this.body = IOUtils.toByteArray(in);
+        }
+
+        int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        String getStatusText()
+        {
+            return statusText;
+        }
+
+        byte[] getBody()
+        {
+            return body;
+        }
+
+        String getHeader(String name)
+        {
+            for (Header header : headers)
+            {
+                if (header.getName().equalsIgnoreCase(name))
+                {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+
+        boolean isKeepAlive()
+        {
+            String connection = getHeader(HttpConstants.HEADER_CONNECTION);
+            if (connection != null && connection.equalsIgnoreCase("close"))
+            {
+                return false;
+            }
+            return HttpConstants.HTTP11.equals(version)
+                   || (connection != null && connection.equalsIgnoreCase("keep-alive"));
+        }
+    }
+}
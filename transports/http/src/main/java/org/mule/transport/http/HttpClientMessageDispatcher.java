@@ -35,10 +35,13 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 
+import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.cookie.CookiePolicy;
+import org.apache.commons.httpclient.cookie.CookieSpec;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.params.HttpMethodParams;
@@ -108,6 +111,13 @@ public class HttpClientMessageDispatcher extends AbstractMessageDispatcher
         HttpMethod httpMethod = getMethod(event);
         httpConnector.setupClientAuthorization(event, httpMethod, client, endpoint);
 
+        URI uri = endpoint.getEndpointURI().getUri();
+        if (isAsyncDispatch(uri))
+        {
+            dispatchAsync(event, httpMethod, uri);
+            return;
+        }
+
         try
         {
             execute(event, httpMethod);
@@ -134,6 +144,96 @@ public class HttpClientMessageDispatcher extends AbstractMessageDispatcher
         }
     }
 
+    /**
+     * Requests are sent by the asynchronous client when the connector is set to and the
+     * request goes straight to the server over plain HTTP.
+     */
+    protected boolean isAsyncDispatch(URI uri)
+    {
+        return httpConnector.isUseAsyncClient() && HttpConnector.HTTP.equalsIgnoreCase(uri.getScheme())
+               && StringUtils.isBlank(httpConnector.getProxyHostname());
+    }
+
+    /**
+     * Hands the request over to the asynchronous client. The response is checked once
+     * received, on a dispatcher thread, and failures go to the exception listener of the
+     * flow as they do when the dispatch is done by a dispatcher thread.
+     */
+    protected void dispatchAsync(final MuleEvent event, HttpMethod httpMethod, URI uri) throws Exception
+    {
+        try
+        {
+            processCookies(event);
+            processMuleSession(event, httpMethod);
+            AsyncHttpClient.Request request = new AsyncHttpClient.Request(httpMethod, uri, getCookieHeader(httpMethod, uri),
+                                                  endpoint.getResponseTimeout());
+            httpConnector.getAsyncClient().execute(request, new AsyncHttpClient.Callback()
+            {
+                public void completed(AsyncHttpClient.Response response)
+                {
+                    if (returnException(event, response.getStatusCode()))
+                    {
+                        logger.error(new String(response.getBody()));
+
+                        Exception cause = new Exception(String.format("Http call returned a status of: %1d %1s",
+                            response.getStatusCode(), response.getStatusText()));
+                        handleAsyncException(new DispatchException(event, getEndpoint(), cause));
+                    }
+                    else if (response.getStatusCode() >= REDIRECT_STATUS_CODE_RANGE_START)
+                    {
+                        if (logger.isInfoEnabled())
+                        {
+                            logger.info("Received a redirect response code: " + response.getStatusCode() + " " + response.getStatusText());
+                        }
+                    }
+                }
+
+                public void failed(Exception e)
+                {
+                    handleAsyncException(new DispatchException(event, getEndpoint(), e));
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            throw new DispatchException(event, getEndpoint(), e);
+        }
+        finally
+        {
+            httpMethod.releaseConnection();
+        }
+    }
+
+    protected void handleAsyncException(DispatchException e)
+    {
+        MuleEvent event = e.getEvent();
+        if (event != null && event.getFlowConstruct() != null)
+        {
+            event.getFlowConstruct().getExceptionListener().handleException(e, event);
+        }
+        else
+        {
+            httpConnector.getMuleContext().getExceptionListener().handleException(e);
+        }
+    }
+
+    /**
+     * @return the cookies of the client state that go to the given URI, formatted as
+     *         HttpClient would, or null if there are none
+     */
+    private String getCookieHeader(HttpMethod httpMethod, URI uri)
+    {
+        Cookie[] cookies = client.getState().getCookies();
+        if (cookies.length == 0)
+        {
+            return null;
+        }
+        CookieSpec spec = CookiePolicy.getCookieSpec(client.getParams().getCookiePolicy());
+        int port = uri.getPort() == -1 ? HttpConstants.DEFAULT_HTTP_PORT : uri.getPort();
+        cookies = spec.match(uri.getHost(), port, httpMethod.getPath(), false, cookies);
+        return cookies == null || cookies.length == 0 ? null : spec.formatCookies(cookies);
+    }
+
     protected HttpMethod execute(MuleEvent event, HttpMethod httpMethod) throws Exception
     {
         // TODO set connection timeout buffer etc
@@ -355,13 +455,18 @@ public class HttpClientMessageDispatcher extends AbstractMessageDispatcher
     }
 
     protected boolean returnException(MuleEvent event, HttpMethod httpMethod)
+    {
+        return returnException(event, httpMethod.getStatusCode());
+    }
+
+    protected boolean returnException(MuleEvent event, int statusCode)
     {
         String disableCheck = event.getMessage().getInvocationProperty(HttpConnector.HTTP_DISABLE_STATUS_CODE_EXCEPTION_CHECK);
         if (disableCheck == null)
         {
             disableCheck = event.getMessage().getOutboundProperty(HttpConnector.HTTP_DISABLE_STATUS_CODE_EXCEPTION_CHECK);
         }
-        return httpMethod.getStatusCode() >= ERROR_STATUS_CODE_RANGE_START
+        return statusCode >= ERROR_STATUS_CODE_RANGE_START
                 && !BooleanUtils.toBoolean(disableCheck);
     }
 
@@ -14,6 +14,7 @@ import org.mule.api.endpoint.EndpointURI;
 import org.mule.transport.ConnectException;
 
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -61,8 +62,17 @@ class HttpConnectionManager
             }
             else
             {
-                ServerSocket serverSocket = connector.getServerSocket(endpointURI.getUri());
-                HttpRequestDispatcher httpRequestDispatcher = new HttpRequestDispatcher(connector, connector.getRetryPolicyTemplate(), serverSocket, workManager);
+                HttpRequestDispatcher httpRequestDispatcher;
+                if (connector.isUseNioReceiver())
+                {
+                    ServerSocketChannel serverSocketChannel = connector.getServerSocketChannel(endpointURI.getUri());
+                    httpRequestDispatcher = new NioHttpRequestDispatcher(connector, connector.getRetryPolicyTemplate(), serverSocketChannel, workManager);
+                }
+                else
+                {
+                    ServerSocket serverSocket = connector.getServerSocket(endpointURI.getUri());
+                    httpRequestDispatcher = new HttpRequestDispatcher(connector, connector.getRetryPolicyTemplate(), serverSocket, workManager);
+                }
                 socketDispatchers.put(endpointKey, httpRequestDispatcher);
                 socketDispatcherCount.put(endpointKey, new Integer(1));
                 workManager.scheduleWork(httpRequestDispatcher, WorkManager.INDEFINITE, null, connector);
@@ -28,6 +28,8 @@ import org.mule.transport.http.i18n.HttpMessages;
 import org.mule.transport.http.ntlm.NTLMScheme;
 import org.mule.transport.tcp.TcpConnector;
 import org.mule.util.MapUtils;
+import org.mule.util.concurrent.NamedThreadFactory;
+import org.mule.util.concurrent.ThreadNameHelper;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -176,6 +178,15 @@ public class HttpConnector extends TcpConnector
     public static final String COOKIE_SPEC_RFC2109 = "rfc2109";
     public static final String ROOT_PATH = "/";
 
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS_PER_HOST = 1000;
+    /**
+     * How long connections of the asynchronous client are kept idle when no keep
+     * alive timeout is set.
+     */
+    public static final int DEFAULT_ASYNC_CLIENT_IDLE_TIMEOUT = 30000;
+    public static final int DEFAULT_MAX_REQUEST_BODY_SIZE = 10 * 1024 * 1024;
+
     private String proxyHostname = null;
 
     private int proxyPort = HttpConstants.DEFAULT_HTTP_PORT;
@@ -198,6 +209,16 @@ public class HttpConnector extends TcpConnector
 
     private org.mule.transport.http.HttpConnectionManager connectionManager;
 
+    private boolean useAsyncClient = false;
+
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    private int maxQueuedRequestsPerHost = DEFAULT_MAX_QUEUED_REQUESTS_PER_HOST;
+
+    private AsyncHttpClient asyncClient;
+
+    private int maxRequestBodySize = DEFAULT_MAX_REQUEST_BODY_SIZE;
+
     public HttpConnector(MuleContext context)
     {
         super(context);
@@ -275,6 +296,14 @@ public class HttpConnector extends TcpConnector
             connectionManager.dispose();
             connectionManager = null;
         }
+        synchronized (this)
+        {
+            if (asyncClient != null)
+            {
+                asyncClient.dispose();
+                asyncClient = null;
+            }
+        }
         super.doDispose();
     }
 
@@ -326,6 +355,16 @@ public class HttpConnector extends TcpConnector
         super.registerListener(endpoint, listener, flowConstruct);
     }
 
+    /**
+     * HTTP receivers are served by the connection manager, which reads the requests
+     * with a selector itself when {@link #isUseNioReceiver()}.
+     */
+    @Override
+    protected MessageReceiver createReceiver(FlowConstruct flowConstruct, InboundEndpoint endpoint) throws Exception
+    {
+        return getServiceDescriptor().createMessageReceiver(this, flowConstruct, endpoint);
+    }
+
     /**
      * The method determines the key used to store the receiver against.
      *
@@ -424,6 +463,83 @@ public class HttpConnector extends TcpConnector
         this.enableCookies = enableCookies;
     }
 
+    public boolean isUseAsyncClient()
+    {
+        return useAsyncClient;
+    }
+
+    /**
+     * Sends the requests of one-way outbound endpoints with a selector based client, so
+     * that no thread waits for the responses. Only plain HTTP without proxy is sent this
+     * way, other requests and request-response endpoints use HttpClient.
+     */
+    public void setUseAsyncClient(boolean useAsyncClient)
+    {
+        this.useAsyncClient = useAsyncClient;
+    }
+
+    public int getMaxConnectionsPerHost()
+    {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Limits the connections the asynchronous client opens to each host, further
+     * requests wait for one of them.
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost)
+    {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public int getMaxQueuedRequestsPerHost()
+    {
+        return maxQueuedRequestsPerHost;
+    }
+
+    /**
+     * Limits the requests waiting for a connection to each host when using the
+     * asynchronous client. Requests beyond it fail at once. A negative value means no
+     * limit.
+     */
+    public void setMaxQueuedRequestsPerHost(int maxQueuedRequestsPerHost)
+    {
+        this.maxQueuedRequestsPerHost = maxQueuedRequestsPerHost;
+    }
+
+    public int getMaxRequestBodySize()
+    {
+        return maxRequestBodySize;
+    }
+
+    /**
+     * Limits the body of the requests received with {@link #isUseNioReceiver()}, which
+     * are kept in memory until complete. Larger requests are answered with 413 and
+     * their connection is closed. Zero or a negative value means no limit.
+     */
+    public void setMaxRequestBodySize(int maxRequestBodySize)
+    {
+        this.maxRequestBodySize = maxRequestBodySize;
+    }
+
+    /**
+     * @return the asynchronous client shared by the dispatchers of this connector,
+     *         started on first use
+     */
+    synchronized AsyncHttpClient getAsyncClient() throws MuleException, IOException
+    {
+        if (asyncClient == null)
+        {
+            String name = String.format("%s%s.async.client", ThreadNameHelper.getPrefix(muleContext), getName());
+            long idleTimeout = getKeepAliveTimeout() > 0 ? getKeepAliveTimeout() : DEFAULT_ASYNC_CLIENT_IDLE_TIMEOUT;
+            asyncClient = new AsyncHttpClient(name, maxConnectionsPerHost, maxQueuedRequestsPerHost, idleTimeout,
+                                              getBufferPool(), getDispatcherWorkManager(),
+                                              new NamedThreadFactory(name, muleContext.getExecutionClassLoader()));
+            asyncClient.start();
+        }
+        return asyncClient;
+    }
+
 
     public HttpConnectionManager getClientConnectionManager()
     {
@@ -0,0 +1,501 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Accumulates the bytes read from a connection and finds where each request ends, so
+ * that a request is only handed over for processing once it has been fully received.
+ * <p/>
+ * Bytes can be added as they arrive, in pieces of any size: the request line and the
+ * headers are scanned only once and the body is delimited by its Content-Length or its
+ * chunks, without being decoded. Requests sent back to back on the same connection are
+ * returned one at a time, in order. Not thread-safe.
+ * <p/>
+ * A body larger than the maximum body size is rejected as soon as its length is known:
+ * from its Content-Length, the size of its chunks or the bytes received so far.
+ */
+class HttpRequestBuffer
+{
+
+    public static final int DEFAULT_MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final int INITIAL_SIZE = 4 * 1024;
+    private static final int MAX_CHUNK_LINE_SIZE = 1024;
+
+    private enum State
+    {
+        HEADERS, BODY, UNTIL_CLOSED, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, COMPLETE
+    }
+
+    private final int maxHeaderSize;
+    private final long maxBodySize;
+    private byte[] data = new byte[INITIAL_SIZE];
+    // first byte of the current request
+    private int start;
+    // position the parsing goes on from
+    private int position;
+    private int limit;
+    private State state = State.HEADERS;
+    private long remaining;
+    private long bodySize;
+    private boolean expectContinue;
+    private boolean endOfInput;
+
+    HttpRequestBuffer()
+    {
+        this(DEFAULT_MAX_HEADER_SIZE);
+    }
+
+    HttpRequestBuffer(int maxHeaderSize)
+    {
+        this(maxHeaderSize, 0);
+    }
+
+    /**
+     * @param maxBodySize the largest body accepted, zero or less for no limit
+     */
+    HttpRequestBuffer(int maxHeaderSize, long maxBodySize)
+    {
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Adds the remaining bytes of the given buffer.
+     *
+     * @throws IOException if the request is malformed or its headers too large
+     * @throws BodyTooLargeException if the body of the request is too large
+     */
+    void append(ByteBuffer bytes) throws IOException
+    {
+        int length = bytes.remaining();
+        ensureCapacity(length);
+        bytes.get(data, limit, length);
+        limit += length;
+        parse();
+    }
+
+    void append(byte[] bytes) throws IOException
+    {
+        append(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Tells that no more bytes will be added, which completes a request whose body
+     * is delimited by the end of the connection.
+     */
+    void endOfInput()
+    {
+        endOfInput = true;
+        if (state == State.UNTIL_CLOSED)
+        {
+            position = limit;
+            state = State.COMPLETE;
+        }
+    }
+
+    /**
+     * @return whether a complete request can be taken
+     */
+    boolean hasRequest()
+    {
+        return state == State.COMPLETE;
+    }
+
+    /**
+     * @return the bytes of the next complete request, or null if it has not been fully
+     *         received yet
+     */
+    byte[] takeRequest() throws IOException
+    {
+        if (state != State.COMPLETE)
+        {
+            return null;
+        }
+        byte[] request = new byte[position - start];
+        System.arraycopy(data, start, request, 0, request.length);
+        start = position;
+        state = State.HEADERS;
+        expectContinue = false;
+        parse();
+        return request;
+    }
+
+    /**
+     * Tells whether the client of the current request waits for an interim 100 response
+     * before sending its body. Returns true only once per request.
+     */
+    boolean takeContinueExpectation()
+    {
+        boolean waiting = expectContinue && state != State.HEADERS && state != State.COMPLETE;
+        if (waiting)
+        {
+            expectContinue = false;
+        }
+        return waiting;
+    }
+
+    /**
+     * @return whether bytes of a request not yet complete have been received
+     */
+    boolean isPartial()
+    {
+        return state != State.COMPLETE && limit > start;
+    }
+
+    boolean isEndOfInput()
+    {
+        return endOfInput;
+    }
+
+    private void parse() throws IOException
+    {
+        boolean progress = true;
+        while (progress)
+        {
+            switch (state)
+            {
+                case HEADERS:
+                    progress = parseHeaders();
+                    break;
+                case BODY:
+                    progress = skipBody();
+                    if (progress && remaining == 0)
+                    {
+                        state = State.COMPLETE;
+                    }
+                    break;
+                case UNTIL_CLOSED:
+                    addToBody(limit - position);
+                    position = limit;
+                    progress = endOfInput;
+                    if (endOfInput)
+                    {
+                        state = State.COMPLETE;
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    progress = parseChunkSize();
+                    break;
+                case CHUNK_DATA:
+                    progress = skipBody();
+                    if (progress && remaining == 0)
+                    {
+                        state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_END:
+                    progress = skipLine() >= 0;
+                    if (progress)
+                    {
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    int lineStart = position;
+                    int lineLength = skipLine();
+                    progress = lineLength >= 0;
+                    if (progress && lineLength == 0)
+                    {
+                        state = State.COMPLETE;
+                    }
+                    else if (!progress && limit - lineStart > maxHeaderSize)
+                    {
+                        throw new IOException("Request trailers exceed " + maxHeaderSize + " bytes");
+                    }
+                    break;
+                default:
+                    progress = false;
+            }
+        }
+    }
+
+    private boolean parseHeaders() throws IOException
+    {
+        // empty lines before the request line are ignored
+        if (position == start)
+        {
+            while (start < limit && (data[start] == '\r' || data[start] == '\n'))
+            {
+                start++;
+            }
+            position = start;
+        }
+        int end = -1;
+        int i = position;
+        for (; i < limit; i++)
+        {
+            if (data[i] == '\n')
+            {
+                if (i + 1 < limit && data[i + 1] == '\n')
+                {
+                    end = i + 2;
+                    break;
+                }
+                if (i + 2 < limit && data[i + 1] == '\r' && data[i + 2] == '\n')
+                {
+                    end = i + 3;
+                    break;
+                }
+                if (i + 2 >= limit)
+                {
+                    // the end of the headers may be cut, look at this line end again
+                    break;
+                }
+            }
+        }
+        if (end == -1)
+        {
+            position = i;
+            if (limit - start > maxHeaderSize)
+            {
+                throw new IOException("Request headers exceed " + maxHeaderSize + " bytes");
+            }
+            return false;
+        }
+        readHeaders(end);
+        position = end;
+        return true;
+    }
+
+    private void readHeaders(int end) throws IOException
+    {
+        String[] startLine = null;
+        String version = null;
+        long contentLength = -1;
+        boolean chunked = false;
+        boolean transferEncoded = false;
+        boolean expect = false;
+        bodySize = 0;
+
+        int lineStart = start;
+        while (lineStart < end)
+        {
+            int lineEnd = lineStart;
+            while (lineEnd < end && data[lineEnd] != '\n')
+            {
+                lineEnd++;
+            }
+            String line = new String(data, lineStart, lineEnd - lineStart, "ISO-8859-1").trim();
+            lineStart = lineEnd + 1;
+            if (line.length() == 0)
+            {
+                continue;
+            }
+            if (startLine == null)
+            {
+                startLine = line.split(" ");
+                version = startLine[startLine.length - 1];
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0)
+            {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (HttpConstants.HEADER_CONTENT_LENGTH.equalsIgnoreCase(name))
+            {
+                try
+                {
+                    contentLength = Long.parseLong(value);
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IOException("Invalid Content-Length: " + value);
+                }
+            }
+            else if (HttpConstants.HEADER_TRANSFER_ENCODING.equalsIgnoreCase(name))
+            {
+                transferEncoded = true;
+                chunked = value.toLowerCase().indexOf(HttpConstants.TRANSFER_ENCODING_CHUNKED) != -1;
+            }
+            else if (HttpConstants.HEADER_EXPECT.equalsIgnoreCase(name))
+            {
+                expect = HttpConstants.HEADER_EXPECT_CONTINUE_REQUEST_VALUE.equalsIgnoreCase(value);
+            }
+        }
+
+        // the same rules HttpRequest uses to read the body, a Transfer-Encoding
+        // taking precedence over the Content-Length
+        if (!hasBody(startLine))
+        {
+            state = State.COMPLETE;
+        }
+        else if (chunked)
+        {
+            state = State.CHUNK_SIZE;
+        }
+        else if (transferEncoded || (contentLength < 0 && hasBodyUntilClosed(startLine)))
+        {
+            state = State.UNTIL_CLOSED;
+        }
+        else if (contentLength > 0)
+        {
+            addToBody(contentLength);
+            remaining = contentLength;
+            state = State.BODY;
+        }
+        else
+        {
+            state = State.COMPLETE;
+        }
+        expectContinue = expect && state != State.COMPLETE && HttpConstants.HTTP11.equals(version);
+    }
+
+    /**
+     * @param startLine the parts of the request line
+     * @return whether a body may follow the headers
+     */
+    boolean hasBody(String[] startLine)
+    {
+        return true;
+    }
+
+    /**
+     * @param startLine the parts of the request line
+     * @return whether a body without length or transfer encoding ends with the
+     *         connection
+     */
+    boolean hasBodyUntilClosed(String[] startLine)
+    {
+        String method = startLine[0];
+        return HttpConstants.METHOD_POST.equalsIgnoreCase(method)
+               || HttpConstants.METHOD_PUT.equalsIgnoreCase(method)
+               || HttpConstants.METHOD_PATCH.equalsIgnoreCase(method);
+    }
+
+    private boolean parseChunkSize() throws IOException
+    {
+        int lineStart = position;
+        int length = skipLine();
+        if (length < 0)
+        {
+            if (limit - lineStart > MAX_CHUNK_LINE_SIZE)
+            {
+                throw new IOException("Chunk size line exceeds " + MAX_CHUNK_LINE_SIZE + " bytes");
+            }
+            return false;
+        }
+        String line = new String(data, lineStart, length, "ISO-8859-1");
+        int extension = line.indexOf(';');
+        if (extension != -1)
+        {
+            line = line.substring(0, extension);
+        }
+        long size;
+        try
+        {
+            size = Long.parseLong(line.trim(), 16);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Invalid chunk size: " + line);
+        }
+        if (size == 0)
+        {
+            state = State.TRAILERS;
+        }
+        else
+        {
+            addToBody(size);
+            remaining = size;
+            state = State.CHUNK_DATA;
+        }
+        return true;
+    }
+
+    private void addToBody(long length) throws BodyTooLargeException
+    {
+        bodySize += length;
+        if (maxBodySize > 0 && bodySize > maxBodySize)
+        {
+            throw new BodyTooLargeException(maxBodySize);
+        }
+    }
+
+    /**
+     * Moves past the next line end.
+     *
+     * @return the length of the line without its line end, or -1 if there is no
+     *         complete line
+     */
+    private int skipLine()
+    {
+        for (int i = position; i < limit; i++)
+        {
+            if (data[i] == '\n')
+            {
+                int length = i - position;
+                if (length > 0 && data[i - 1] == '\r')
+                {
+                    length--;
+                }
+                position = i + 1;
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    private boolean skipBody()
+    {
+        int available = limit - position;
+        if (available == 0)
+        {
+            return false;
+        }
+        int skipped = (int) Math.min(available, remaining);
+        position += skipped;
+        remaining -= skipped;
+        return true;
+    }
+
+    private void ensureCapacity(int length)
+    {
+        if (start == limit)
+        {
+            start = position = limit = 0;
+        }
+        if (data.length - limit >= length)
+        {
+            return;
+        }
+        int used = limit - start;
+        byte[] target = data;
+        if (used + length > data.length)
+        {
+            target = new byte[Math.max(data.length * 2, used + length)];
+        }
+        System.arraycopy(data, start, target, 0, used);
+        data = target;
+        position -= start;
+        limit -= start;
+        start = 0;
+    }
+
+    /**
+     * Thrown when the body of a request exceeds the maximum body size
+     */
+    static class BodyTooLargeException extends IOException
+    {
+
+        private static final long serialVersionUID = -3207468921583290718L;
+
+        BodyTooLargeException(long maxBodySize)
+        {
+            super("Request body exceeds " + maxBodySize + " bytes");
+        }
+    }
+}
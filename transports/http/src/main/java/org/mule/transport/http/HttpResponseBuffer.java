@@ -0,0 +1,60 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.http;
+
+/**
+ * Finds where each response read from a connection ends, the same way
+ * {@link HttpRequestBuffer} does for requests. A response without length or transfer
+ * encoding ends with the connection, and responses to HEAD requests, informational,
+ * 204 and 304 responses have no body.
+ */
+class HttpResponseBuffer extends HttpRequestBuffer
+{
+
+    private boolean headRequest;
+
+    /**
+     * Tells whether the response expected next answers a HEAD request.
+     */
+    void setHeadRequest(boolean headRequest)
+    {
+        this.headRequest = headRequest;
+    }
+
+    @Override
+    boolean hasBody(String[] startLine)
+    {
+        if (headRequest)
+        {
+            return false;
+        }
+        int status = statusCode(startLine);
+        return status >= HttpConstants.SC_OK && status != HttpConstants.SC_NO_CONTENT
+               && status != HttpConstants.SC_NOT_MODIFIED;
+    }
+
+    @Override
+    boolean hasBodyUntilClosed(String[] startLine)
+    {
+        return true;
+    }
+
+    static int statusCode(String[] startLine)
+    {
+        try
+        {
+            return startLine.length > 1 ? Integer.parseInt(startLine[1]) : -1;
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+}
@@ -79,8 +79,36 @@ public class HttpServerConnection implements HandshakeCompletedListener
             ((SSLSocket) socket).addHandshakeCompletedListener(this);
         }
 
-        setSocketTcpNoDelay(connector.isSendTcpNoDelay());
-        this.socket.setKeepAlive(connector.isKeepAlive());
+        configureSocket(socket, connector);
+
+        this.in = socket.getInputStream();
+        this.out = new DataOutputStream(socket.getOutputStream());
+        this.encoding = encoding;
+    }
+
+    /**
+     * Creates a connection that reads the request from and writes the response to the
+     * given streams instead of those of the socket, whose options must already be set.
+     */
+    HttpServerConnection(final Socket socket, InputStream in, OutputStream out, String encoding)
+    {
+        if (socket == null)
+        {
+            throw new IllegalArgumentException("Socket may not be null");
+        }
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Applies the socket options of the connector to an accepted socket.
+     */
+    static void configureSocket(Socket socket, HttpConnector connector) throws IOException
+    {
+        setSocketTcpNoDelay(socket, connector.isSendTcpNoDelay());
+        socket.setKeepAlive(connector.isKeepAlive());
 
         if (connector.getReceiveBufferSize() != Connector.INT_VALUE_NOT_SET
             && socket.getReceiveBufferSize() != connector.getReceiveBufferSize())
@@ -92,13 +120,9 @@ public class HttpServerConnection implements HandshakeCompletedListener
         {
             socket.setSoTimeout(connector.getServerSoTimeout());
         }
-
-        this.in = socket.getInputStream();
-        this.out = new DataOutputStream(socket.getOutputStream());
-        this.encoding = encoding;
     }
 
-    private void setSocketTcpNoDelay(boolean tcpNoDelay) throws IOException
+    private static void setSocketTcpNoDelay(Socket socket, boolean tcpNoDelay) throws IOException
     {
         try
         {
@@ -70,6 +70,16 @@ public class HttpsConnector extends HttpConnector implements TlsDirectKeyStore,
         return serverSocket;
     }
 
+    /**
+     * Reading requests with a selector does not support TLS, so HTTPS inbound
+     * endpoints always read each connection in its own thread.
+     */
+    @Override
+    public boolean isUseNioReceiver()
+    {
+        return false;
+    }
+
     @Override
     protected void doInitialise() throws InitialisationException
     {
@@ -0,0 +1,479 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.http;
+
+import org.mule.api.context.WorkManager;
+import org.mule.api.retry.RetryPolicyTemplate;
+import org.mule.api.transport.Connector;
+import org.mule.api.transport.NoReceiverForEndpointException;
+import org.mule.transport.http.i18n.HttpMessages;
+import org.mule.transport.tcp.ByteBufferPool;
+import org.mule.transport.tcp.ChannelOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Manage a ServerSocketChannel with a selector.
+ * <p/>
+ * A single thread accepts the connections and reads from all of them without blocking,
+ * so idle keep-alive connections take no thread. Once the bytes of a whole request have
+ * been read it is handed to the request dispatch thread pool and processed by the
+ * {@link HttpMessageReceiver} it is for, reading from the received bytes. Requests
+ * pipelined on a connection are processed one after the other, and the connection goes
+ * back to the selector once there is no complete request left.
+ * <p/>
+ * Requests are kept in memory until they are complete, so this suits many clients
+ * sending small requests rather than large uploads. A request whose body exceeds the
+ * connector's maximum request body size is answered with 413 and its connection closed.
+ */
+class NioHttpRequestDispatcher extends HttpRequestDispatcher
+{
+
+    private static Log logger = LogFactory.getLog(NioHttpRequestDispatcher.class);
+
+    private static final long SELECT_TIMEOUT = 1000;
+    private static final byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes();
+    private static final byte[] TOO_LARGE_RESPONSE = ("HTTP/1.1 " + HttpConstants.SC_REQUEST_TOO_LONG
+                                                      + " Request Entity Too Large\r\nContent-Length: 0\r\n"
+                                                      + "Connection: close\r\n\r\n").getBytes();
+
+    private final HttpConnector httpConnector;
+    private final ServerSocketChannel serverSocketChannel;
+    private final Selector selector;
+    private final SelectionKey acceptKey;
+    private final Queue<Connection> resumedConnections = new ConcurrentLinkedQueue<Connection>();
+    private final AtomicBoolean disconnect = new AtomicBoolean(false);
+    private final long idleTimeout;
+    private final int maxRequestBodySize;
+    private final String encoding;
+    private long lastIdleCheck = System.currentTimeMillis();
+
+    public NioHttpRequestDispatcher(final HttpConnector httpConnector, final RetryPolicyTemplate retryPolicyTemplate, final ServerSocketChannel serverSocketChannel, final WorkManager workManager) throws IOException
+    {
+        super(httpConnector, retryPolicyTemplate, serverSocketChannel == null ? null : serverSocketChannel.socket(), workManager);
+        this.httpConnector = httpConnector;
+        this.serverSocketChannel = serverSocketChannel;
+        this.idleTimeout = getIdleTimeout(httpConnector);
+        this.maxRequestBodySize = httpConnector.getMaxRequestBodySize();
+        this.encoding = httpConnector.getMuleContext().getConfiguration().getDefaultEncoding();
+        serverSocketChannel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.acceptKey = serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Idle connections are closed after the keep alive timeout or, if not set, the
+     * server socket timeout, which are what limit the wait for the next request when
+     * a thread reads from each connection.
+     */
+    private static long getIdleTimeout(HttpConnector httpConnector)
+    {
+        if (httpConnector.getKeepAliveTimeout() > 0)
+        {
+            return httpConnector.getKeepAliveTimeout();
+        }
+        if (httpConnector.getServerSoTimeout() != Connector.INT_VALUE_NOT_SET && httpConnector.getServerSoTimeout() > 0)
+        {
+            return httpConnector.getServerSoTimeout();
+        }
+        return 0;
+    }
+
+    @Override
+    public void run()
+    {
+        while (!disconnect.get())
+        {
+            try
+            {
+                acceptKey.interestOps(httpConnector.isStarted() ? SelectionKey.OP_ACCEPT : 0);
+                selector.select(SELECT_TIMEOUT);
+                resumeConnections();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                    {
+                        continue;
+                    }
+                    if (key.isAcceptable())
+                    {
+                        accept();
+                    }
+                    else if (key.isReadable())
+                    {
+                        read(key, (Connection) key.attachment());
+                    }
+                }
+                closeIdleConnections();
+            }
+            catch (ClosedSelectorException e)
+            {
+                break;
+            }
+            catch (Exception e)
+            {
+                if (!httpConnector.isDisposed() && !disconnect.get())
+                {
+                    httpConnector.getMuleContext().getExceptionListener().handleException(e);
+                }
+            }
+        }
+        closeSelector();
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = serverSocketChannel.accept()) != null)
+        {
+            try
+            {
+                channel.configureBlocking(false);
+                HttpServerConnection.configureSocket(channel.socket(), httpConnector);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+            catch (IOException e)
+            {
+                logger.debug("Failed to accept connection: " + e.getMessage());
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void read(SelectionKey key, Connection connection)
+    {
+        // taken for this read only, so that idle selector threads hold no buffer
+        ByteBufferPool bufferPool = httpConnector.getBufferPool();
+        ByteBuffer readBuffer = bufferPool.acquire();
+        try
+        {
+            int read;
+            do
+            {
+                readBuffer.clear();
+                read = connection.channel.read(readBuffer);
+                if (read > 0)
+                {
+                    readBuffer.flip();
+                    connection.requests.append(readBuffer);
+                }
+            }
+            while (read == readBuffer.capacity() && !connection.requests.hasRequest());
+
+            connection.lastActivity = System.currentTimeMillis();
+            if (read < 0)
+            {
+                connection.requests.endOfInput();
+            }
+
+            if (connection.requests.hasRequest())
+            {
+                dispatch(key, connection);
+            }
+            else if (read < 0)
+            {
+                connection.close();
+            }
+            else if (connection.requests.takeContinueExpectation())
+            {
+                // the client waits for this before sending the body of the request
+                connection.channel.write(ByteBuffer.wrap(CONTINUE_RESPONSE));
+                connection.continueSent = true;
+            }
+        }
+        catch (HttpRequestBuffer.BodyTooLargeException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Rejecting HTTP request: " + e.getMessage());
+            }
+            rejectTooLarge(connection);
+        }
+        catch (IOException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Closing HTTP connection: " + e.getMessage());
+            }
+            connection.close();
+        }
+        finally
+        {
+            bufferPool.release(readBuffer);
+        }
+    }
+
+    private void rejectTooLarge(Connection connection)
+    {
+        try
+        {
+            // written without waiting, the connection is closed right after anyway
+            connection.channel.write(ByteBuffer.wrap(TOO_LARGE_RESPONSE));
+        }
+        catch (IOException e)
+        {
+            logger.debug("Failed to send the 413 response: " + e.getMessage());
+        }
+        connection.close();
+    }
+
+    private void dispatch(SelectionKey key, Connection connection)
+    {
+        // nothing more is read until the requests received have been processed
+        key.interestOps(0);
+        connection.processing = true;
+        try
+        {
+            requestHandOffExecutor.execute(connection);
+        }
+        catch (RejectedExecutionException e)
+        {
+            logger.warn("Closing HTTP connection since no thread is available to process its request");
+            connection.close();
+        }
+    }
+
+    private void resume(Connection connection)
+    {
+        resumedConnections.add(connection);
+        selector.wakeup();
+    }
+
+    private void resumeConnections()
+    {
+        Connection connection;
+        while ((connection = resumedConnections.poll()) != null)
+        {
+            if (connection.key.isValid())
+            {
+                connection.processing = false;
+                connection.lastActivity = System.currentTimeMillis();
+                connection.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void closeIdleConnections()
+    {
+        long now = System.currentTimeMillis();
+        if (idleTimeout <= 0 || now - lastIdleCheck < SELECT_TIMEOUT)
+        {
+            return;
+        }
+        lastIdleCheck = now;
+        for (SelectionKey key : selector.keys())
+        {
+            Connection connection = (Connection) key.attachment();
+            if (connection != null && !connection.processing && now - connection.lastActivity >= idleTimeout)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Closing idle HTTP connection: " + connection.channel.socket());
+                }
+                connection.close();
+            }
+        }
+    }
+
+    private void closeSelector()
+    {
+        try
+        {
+            for (SelectionKey key : selector.keys())
+            {
+                closeQuietly(key.channel());
+            }
+            selector.close();
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to close selector: " + e.getMessage(), e);
+        }
+    }
+
+    private static void closeQuietly(Channel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("(Ignored) Error closing the channel: " + e.getMessage());
+        }
+    }
+
+    @Override
+    void disconnect()
+    {
+        disconnect.set(true);
+        super.disconnect();
+        selector.wakeup();
+    }
+
+    /**
+     * The state of an accepted connection. It is processed by one thread at a time:
+     * the selector while receiving a request, then a request dispatch thread.
+     */
+    private class Connection implements Runnable
+    {
+        private final SocketChannel channel;
+        private final Socket socket;
+        private final HttpRequestBuffer requests = new HttpRequestBuffer(HttpRequestBuffer.DEFAULT_MAX_HEADER_SIZE, maxRequestBodySize);
+        private final ChannelOutputStream out;
+        private SelectionKey key;
+        private boolean processing;
+        private long lastActivity = System.currentTimeMillis();
+        private boolean continueSent;
+
+        Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+            this.socket = channel.socket();
+            this.out = new ChannelOutputStream(channel, getWriteTimeout());
+        }
+
+        @Override
+        public void run()
+        {
+            boolean keepAlive = true;
+            try
+            {
+                while (keepAlive && requests.hasRequest())
+                {
+                    keepAlive = process(requests.takeRequest());
+                }
+            }
+            catch (Exception e)
+            {
+                keepAlive = false;
+                httpConnector.getMuleContext().getExceptionListener().handleException(e);
+            }
+
+            if (keepAlive && !requests.isEndOfInput())
+            {
+                resume(this);
+            }
+            else
+            {
+                logger.debug("Closing HTTP connection.");
+                close();
+            }
+        }
+
+        /**
+         * @return whether the connection must be kept open for the next request
+         */
+        private boolean process(byte[] request) throws Exception
+        {
+            HttpServerConnection httpServerConnection = new SelectorHttpServerConnection(socket, new ByteArrayInputStream(request), out, encoding, continueSent);
+            continueSent = false;
+            httpServerConnection.setKeepAlive(false);
+            try
+            {
+                RequestLine requestLine = httpServerConnection.getRequestLine();
+                if (requestLine == null)
+                {
+                    return false;
+                }
+                try
+                {
+                    HttpMessageReceiver httpMessageReceiver = httpConnector.lookupReceiver(socket, requestLine);
+                    httpMessageReceiver.processRequest(httpServerConnection);
+                }
+                catch (NoReceiverForEndpointException e)
+                {
+                    httpServerConnection.writeFailureResponse(HttpConstants.SC_NOT_FOUND, HttpMessages.cannotBindToAddress(httpServerConnection.getFullUri()).toString());
+                }
+                out.flush();
+                return httpServerConnection.isKeepAlive() && httpServerConnection.isOpen();
+            }
+            catch (HttpMessageReceiver.EmptyRequestException e)
+            {
+                logger.debug("Discarding request since content was empty");
+                return false;
+            }
+            catch (HttpMessageReceiver.FailureProcessingRequestException e)
+            {
+                logger.debug("Closing socket due to failure during request processing");
+                return false;
+            }
+        }
+
+        private int getWriteTimeout()
+        {
+            int timeout = httpConnector.getServerSoTimeout();
+            return timeout == Connector.INT_VALUE_NOT_SET ? 0 : timeout;
+        }
+
+        void close()
+        {
+            try
+            {
+                socket.shutdownOutput();
+            }
+            catch (IOException e)
+            {
+                // the connection may already be closed
+            }
+            closeQuietly(channel);
+            out.closeSelector();
+        }
+    }
+
+    /**
+     * Reads a request from the bytes received and skips the interim response to an
+     * Expect handshake when the selector already sent it.
+     */
+    private static class SelectorHttpServerConnection extends HttpServerConnection
+    {
+        private final boolean continueSent;
+
+        SelectorHttpServerConnection(Socket socket, ByteArrayInputStream in, OutputStream out, String encoding, boolean continueSent)
+        {
+            super(socket, in, out, encoding);
+            this.continueSent = continueSent;
+        }
+
+        @Override
+        public void writeResponse(HttpResponse response, Map<String, String> headers) throws IOException
+        {
+            if (continueSent && response != null && response.getStatusCode() == HttpConstants.SC_CONTINUE)
+            {
+                return;
+            }
+            super.writeResponse(response, headers);
+        }
+    }
+}
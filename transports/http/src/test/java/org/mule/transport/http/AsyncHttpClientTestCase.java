@@ -0,0 +1,406 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.junit4.rule.DynamicPort;
+import org.mule.tck.size.SmallTest;
+import org.mule.transport.tcp.ByteBufferPool;
+import org.mule.util.concurrent.NamedThreadFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+@SmallTest
+public class AsyncHttpClientTestCase extends AbstractMuleTestCase
+{
+
+    private static final int TIMEOUT = 5000;
+
+    @Rule
+    public DynamicPort port = new DynamicPort("port");
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger requestsReceived = new AtomicInteger();
+    private final BlockingQueue<String> requests = new LinkedBlockingQueue<String>();
+    private volatile String response = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+    private volatile CountDownLatch respond = new CountDownLatch(0);
+    // the request, counted from 1, after which the server closes the connection without responding
+    private volatile int closedRequest;
+    private ServerSocket serverSocket;
+    private AsyncHttpClient client;
+
+    @Before
+    public void startServer() throws Exception
+    {
+        serverSocket = new ServerSocket(port.getNumber());
+        Thread server = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                while (!serverSocket.isClosed())
+                {
+                    try
+                    {
+                        final Socket socket = serverSocket.accept();
+                        connections.incrementAndGet();
+                        new Thread()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                serve(socket);
+                            }
+                        }.start();
+                    }
+                    catch (IOException e)
+                    {
+                        // closed
+                    }
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+    }
+
+    @After
+    public void stop() throws Exception
+    {
+        if (client != null)
+        {
+            client.dispose();
+        }
+        respond.countDown();
+        serverSocket.close();
+    }
+
+    @Test
+    public void connectionIsReusedForRequestsToTheSameHost() throws Exception
+    {
+        client = createClient(5, 10);
+        for (int i = 0; i < 3; i++)
+        {
+            Result result = execute(new GetMethod("/request" + i));
+            assertEquals(200, result.await().getStatusCode());
+            assertEquals("ok", new String(result.response.getBody()));
+            assertTrue(requests.poll().startsWith("GET /request" + i + " HTTP/1.1"));
+        }
+        assertEquals(1, connections.get());
+    }
+
+    @Test
+    public void bodyIsSentWithItsLength() throws Exception
+    {
+        client = createClient(5, 10);
+        PostMethod post = new PostMethod("/post");
+        post.setRequestEntity(new StringRequestEntity("hello", "text/plain", "UTF-8"));
+        assertEquals(200, execute(post).await().getStatusCode());
+        String request = requests.poll();
+        assertTrue(request, request.indexOf("Content-Length: 5\r\n") != -1);
+        assertTrue(request, request.indexOf("Content-Type: text/plain; charset=UTF-8\r\n") != -1);
+        assertTrue(request, request.endsWith("\r\n\r\nhello"));
+    }
+
+    @Test
+    public void chunkedResponseIsDecoded() throws Exception
+    {
+        response = "HTTP/1.1 500 Server Error\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n6\r\n world\r\n0\r\n\r\n";
+        client = createClient(5, 10);
+        AsyncHttpClient.Response result = execute(new GetMethod("/chunked")).await();
+        assertEquals(500, result.getStatusCode());
+        assertEquals("Server Error", result.getStatusText());
+        assertEquals("hello world", new String(result.getBody()));
+    }
+
+    @Test
+    public void responseWithoutLengthEndsWithTheConnection() throws Exception
+    {
+        response = "HTTP/1.0 200 OK\r\n\r\nuntil closed";
+        client = createClient(5, 10);
+        assertEquals("until closed", new String(execute(new GetMethod("/close")).await().getBody()));
+        assertEquals("until closed", new String(execute(new GetMethod("/close")).await().getBody()));
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    public void requestsWaitForTheConnectionsOfTheirHost() throws Exception
+    {
+        respond = new CountDownLatch(1);
+        client = createClient(2, 10);
+        Result[] results = new Result[5];
+        for (int i = 0; i < results.length; i++)
+        {
+            results[i] = execute(new GetMethod("/queued" + i));
+        }
+        Thread.sleep(200);
+        assertEquals(2, client.getOpenConnections("localhost", port.getNumber()));
+        assertEquals(3, client.getQueuedRequests("localhost", port.getNumber()));
+
+        respond.countDown();
+        for (Result result : results)
+        {
+            assertEquals(200, result.await().getStatusCode());
+        }
+        assertEquals(2, connections.get());
+        assertEquals(0, client.getQueuedRequests("localhost", port.getNumber()));
+    }
+
+    @Test
+    public void requestsBeyondTheQueueLimitAreRejected() throws Exception
+    {
+        respond = new CountDownLatch(1);
+        client = createClient(1, 1);
+        Result first = execute(new GetMethod("/first"));
+        waitUntilNothingQueued();
+        Result second = execute(new GetMethod("/second"));
+        try
+        {
+            execute(new GetMethod("/third"));
+            fail("the queue of the host is full");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // expected
+        }
+        respond.countDown();
+        assertEquals(200, first.await().getStatusCode());
+        assertEquals(200, second.await().getStatusCode());
+    }
+
+    @Test
+    public void requestWithoutResponseTimesOut() throws Exception
+    {
+        respond = new CountDownLatch(1);
+        client = createClient(1, 10);
+        Result result = new Result();
+        client.execute(new AsyncHttpClient.Request(new GetMethod("/slow"), uri(), null, 200), result);
+        assertTrue(result.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(result.failure instanceof SocketTimeoutException);
+    }
+
+    @Test
+    public void idempotentRequestIsSentAgainIfTheKeptAliveConnectionIsClosed() throws Exception
+    {
+        client = createClient(1, 10);
+        assertEquals(200, execute(new GetMethod("/first")).await().getStatusCode());
+        closedRequest = 2;
+        assertEquals(200, execute(new GetMethod("/second")).await().getStatusCode());
+        assertEquals(3, requests.size());
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    public void writtenRequestIsNotSentAgainIfNotIdempotent() throws Exception
+    {
+        client = createClient(1, 10);
+        assertEquals(200, execute(new PostMethod("/first")).await().getStatusCode());
+        closedRequest = 2;
+        Result result = execute(new PostMethod("/second"));
+        assertTrue(result.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(result.failure instanceof IOException);
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void queuedRequestTimesOut() throws Exception
+    {
+        respond = new CountDownLatch(1);
+        client = createClient(1, 10);
+        Result first = execute(new GetMethod("/first"));
+        Result queued = new Result();
+        client.execute(new AsyncHttpClient.Request(new GetMethod("/queued"), uri(), null, 200), queued);
+        assertTrue(queued.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(queued.failure instanceof SocketTimeoutException);
+        assertEquals(0, client.getQueuedRequests("localhost", port.getNumber()));
+
+        respond.countDown();
+        assertEquals(200, first.await().getStatusCode());
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void unresolvedHostFailsOnlyItsRequest() throws Exception
+    {
+        client = createClient(1, 10);
+        Result unresolved = new Result();
+        client.execute(new AsyncHttpClient.Request(new GetMethod("/"), URI.create("http://unresolved.invalid:80"),
+            null, TIMEOUT), unresolved);
+        assertTrue(unresolved.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(unresolved.failure instanceof UnresolvedAddressException);
+
+        // the client still serves the other requests
+        assertEquals(200, execute(new GetMethod("/resolved")).await().getStatusCode());
+    }
+
+    @Test
+    public void pendingRequestsFailOnDispose() throws Exception
+    {
+        respond = new CountDownLatch(1);
+        client = createClient(1, 10);
+        Result first = execute(new GetMethod("/first"));
+        Result second = execute(new GetMethod("/second"));
+        client.dispose();
+        assertTrue(first.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(second.done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(first.failure instanceof IOException);
+        assertTrue(second.failure instanceof IOException);
+    }
+
+    private AsyncHttpClient createClient(int maxConnectionsPerHost, int maxQueuedRequestsPerHost) throws IOException
+    {
+        AsyncHttpClient client = new AsyncHttpClient("test.async.client", maxConnectionsPerHost,
+            maxQueuedRequestsPerHost, TIMEOUT, new ByteBufferPool(), new Executor()
+            {
+                public void execute(Runnable command)
+                {
+                    command.run();
+                }
+            }, new NamedThreadFactory("test.async.client"));
+        client.start();
+        return client;
+    }
+
+    private Result execute(org.apache.commons.httpclient.HttpMethod method) throws Exception
+    {
+        Result result = new Result();
+        client.execute(new AsyncHttpClient.Request(method, uri(), null, TIMEOUT), result);
+        return result;
+    }
+
+    private URI uri()
+    {
+        return URI.create("http://localhost:" + port.getNumber());
+    }
+
+    private void waitUntilNothingQueued() throws InterruptedException
+    {
+        for (int i = 0; i < 50 && client.getQueuedRequests("localhost", port.getNumber()) > 0; i++)
+        {
+            Thread.sleep(20);
+        }
+    }
+
+    private void serve(Socket socket)
+    {
+        try
+        {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            String request;
+            while ((request = readRequest(in)) != null)
+            {
+                requests.add(request);
+                if (requestsReceived.incrementAndGet() == closedRequest)
+                {
+                    break;
+                }
+                respond.await();
+                out.write(response.getBytes());
+                out.flush();
+                if (response.startsWith("HTTP/1.0"))
+                {
+                    break;
+                }
+            }
+            socket.close();
+        }
+        catch (Exception e)
+        {
+            // the client went away
+        }
+    }
+
+    /**
+     * Reads the headers and, if there is a Content-Length, the body of the next request.
+     */
+    private String readRequest(InputStream in) throws IOException
+    {
+        StringBuilder request = new StringBuilder();
+        int contentLength = 0;
+        int b;
+        while ((b = in.read()) != -1)
+        {
+            request.append((char) b);
+            if (request.toString().endsWith("\r\n\r\n"))
+            {
+                for (String header : request.toString().split("\r\n"))
+                {
+                    if (header.startsWith("Content-Length:"))
+                    {
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    }
+                }
+                for (int i = 0; i < contentLength; i++)
+                {
+                    request.append((char) in.read());
+                }
+                return request.toString();
+            }
+        }
+        return null;
+    }
+
+    private static class Result implements AsyncHttpClient.Callback
+    {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile AsyncHttpClient.Response response;
+        volatile Exception failure;
+
+        public void completed(AsyncHttpClient.Response response)
+        {
+            this.response = response;
+            done.countDown();
+        }
+
+        public void failed(Exception e)
+        {
+            this.failure = e;
+            done.countDown();
+        }
+
+        AsyncHttpClient.Response await() throws Exception
+        {
+            assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            if (failure != null)
+            {
+                throw failure;
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+@SmallTest
+public class HttpRequestBufferTestCase extends AbstractMuleTestCase
+{
+
+    private static final String GET = "GET /service HTTP/1.1\r\nHost: localhost\r\n\r\n";
+    private static final String POST = "POST /service HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello";
+    private static final String CHUNKED = "POST /service HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                                          + "5\r\nhello\r\n6;name=value\r\n world\r\n0\r\nTrailer: value\r\n\r\n";
+
+    private final HttpRequestBuffer buffer = new HttpRequestBuffer();
+
+    @Test
+    public void requestWithoutBody() throws Exception
+    {
+        buffer.append(GET.getBytes());
+        assertTrue(buffer.hasRequest());
+        assertEquals(GET, new String(buffer.takeRequest()));
+        assertFalse(buffer.hasRequest());
+        assertFalse(buffer.isPartial());
+    }
+
+    @Test
+    public void requestReceivedOneByteAtATime() throws Exception
+    {
+        byte[] bytes = POST.getBytes();
+        for (int i = 0; i < bytes.length - 1; i++)
+        {
+            buffer.append(new byte[]{bytes[i]});
+            assertFalse(buffer.hasRequest());
+            assertNull(buffer.takeRequest());
+        }
+        buffer.append(new byte[]{bytes[bytes.length - 1]});
+        assertEquals(POST, new String(buffer.takeRequest()));
+    }
+
+    @Test
+    public void chunkedRequest() throws Exception
+    {
+        String cut = CHUNKED.substring(0, CHUNKED.length() - 3);
+        buffer.append(cut.getBytes());
+        assertFalse(buffer.hasRequest());
+        buffer.append(CHUNKED.substring(cut.length()).getBytes());
+        assertEquals(CHUNKED, new String(buffer.takeRequest()));
+    }
+
+    @Test
+    public void pipelinedRequestsAreTakenInOrder() throws Exception
+    {
+        buffer.append((POST + GET + CHUNKED + GET.substring(0, 10)).getBytes());
+        assertEquals(POST, new String(buffer.takeRequest()));
+        assertEquals(GET, new String(buffer.takeRequest()));
+        assertEquals(CHUNKED, new String(buffer.takeRequest()));
+        assertFalse(buffer.hasRequest());
+        assertTrue(buffer.isPartial());
+
+        buffer.append(GET.substring(10).getBytes());
+        assertEquals(GET, new String(buffer.takeRequest()));
+    }
+
+    @Test
+    public void bodyWithoutLengthEndsWithInput() throws Exception
+    {
+        String request = "POST /service HTTP/1.0\r\n\r\nhello";
+        buffer.append(request.getBytes());
+        assertFalse(buffer.hasRequest());
+        buffer.endOfInput();
+        assertEquals(request, new String(buffer.takeRequest()));
+    }
+
+    @Test
+    public void continueExpectedOnlyUntilBodyReceived() throws Exception
+    {
+        String headers = "POST /service HTTP/1.1\r\nContent-Length: 5\r\nExpect: 100-continue\r\n\r\n";
+        buffer.append(headers.getBytes());
+        assertTrue(buffer.takeContinueExpectation());
+        assertFalse(buffer.takeContinueExpectation());
+
+        buffer.append("hello".getBytes());
+        assertEquals(headers + "hello", new String(buffer.takeRequest()));
+    }
+
+    @Test
+    public void leadingEmptyLinesAreSkipped() throws Exception
+    {
+        buffer.append(("\r\n" + GET).getBytes());
+        assertEquals(GET, new String(buffer.takeRequest()));
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedHeadersAreRejected() throws Exception
+    {
+        HttpRequestBuffer small = new HttpRequestBuffer(64);
+        small.append("GET / HTTP/1.1\r\nX-Long: ".getBytes());
+        small.append(new byte[100]);
+    }
+
+    @Test(expected = HttpRequestBuffer.BodyTooLargeException.class)
+    public void contentLengthOverMaxBodySizeIsRejected() throws Exception
+    {
+        HttpRequestBuffer limited = new HttpRequestBuffer(HttpRequestBuffer.DEFAULT_MAX_HEADER_SIZE, 4);
+        limited.append(POST.getBytes());
+    }
+
+    @Test
+    public void chunksOverMaxBodySizeAreRejected() throws Exception
+    {
+        HttpRequestBuffer limited = new HttpRequestBuffer(HttpRequestBuffer.DEFAULT_MAX_HEADER_SIZE, 10);
+        limited.append("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n".getBytes());
+        try
+        {
+            limited.append("6\r\n".getBytes());
+            fail("the second chunk makes the body 11 bytes long");
+        }
+        catch (HttpRequestBuffer.BodyTooLargeException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void bodyUntilClosedOverMaxBodySizeIsRejected() throws Exception
+    {
+        HttpRequestBuffer limited = new HttpRequestBuffer(HttpRequestBuffer.DEFAULT_MAX_HEADER_SIZE, 10);
+        limited.append("POST / HTTP/1.0\r\n\r\nhello".getBytes());
+        try
+        {
+            limited.append(" world".getBytes());
+            fail("the body is 11 bytes long");
+        }
+        catch (HttpRequestBuffer.BodyTooLargeException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void bodyOfMaxBodySizeIsAccepted() throws Exception
+    {
+        HttpRequestBuffer limited = new HttpRequestBuffer(HttpRequestBuffer.DEFAULT_MAX_HEADER_SIZE, 11);
+        limited.append(CHUNKED.getBytes());
+        assertEquals(CHUNKED, new String(limited.takeRequest()));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidContentLengthIsRejected() throws Exception
+    {
+        buffer.append("POST / HTTP/1.1\r\nContent-Length: five\r\n\r\n".getBytes());
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.api.context.WorkManager;
+import org.mule.api.retry.RetryPolicyTemplate;
+import org.mule.api.transport.Connector;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.junit4.rule.DynamicPort;
+import org.mule.tck.size.SmallTest;
+import org.mule.transport.AbstractConnector;
+import org.mule.transport.ConnectorLifecycleManager;
+import org.mule.transport.tcp.ByteBufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.httpclient.HttpVersion;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+@RunWith(MockitoJUnitRunner.class)
+@SmallTest
+public class NioHttpRequestDispatcherTestCase extends AbstractMuleTestCase
+{
+
+    private static final int TIMEOUT = 5000;
+
+    @Rule
+    public DynamicPort port = new DynamicPort("port");
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private HttpConnector mockHttpConnector;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private WorkManager mockWorkManager;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private RetryPolicyTemplate mockRetryTemplate;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ConnectorLifecycleManager mockConnectorLifecycleManager;
+    @Mock
+    private HttpMessageReceiver mockReceiver;
+
+    private final List<String> processedPaths = Collections.synchronizedList(new ArrayList<String>());
+    private ExecutorService executor;
+    private NioHttpRequestDispatcher dispatcher;
+
+    @Before
+    public void startDispatcher() throws Exception
+    {
+        Field field = AbstractConnector.class.getDeclaredField("lifecycleManager");
+        field.setAccessible(true);
+        field.set(mockHttpConnector, mockConnectorLifecycleManager);
+        when(mockConnectorLifecycleManager.getState().isStarted()).thenReturn(true);
+        when(mockHttpConnector.getReceiveBufferSize()).thenReturn(Connector.INT_VALUE_NOT_SET);
+        when(mockHttpConnector.getServerSoTimeout()).thenReturn(Connector.INT_VALUE_NOT_SET);
+        when(mockHttpConnector.getKeepAliveTimeout()).thenReturn(500);
+        when(mockHttpConnector.getMaxRequestBodySize()).thenReturn(1024);
+        when(mockHttpConnector.getBufferPool()).thenReturn(new ByteBufferPool());
+        when(mockHttpConnector.getMuleContext().getConfiguration().getDefaultEncoding()).thenReturn("UTF-8");
+        when(mockHttpConnector.lookupReceiver(any(Socket.class), any(RequestLine.class))).thenReturn(mockReceiver);
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                HttpServerConnection connection = (HttpServerConnection) invocation.getArguments()[0];
+                HttpRequest request = connection.readRequest();
+                String path = request.getRequestLine().getUrlWithoutParams();
+                processedPaths.add(path);
+                String body = request.getBody() == null ? "" : IOUtils.toString(request.getBody());
+
+                HttpResponse response = new HttpResponse();
+                response.setStatusLine(HttpVersion.HTTP_1_1, HttpConstants.SC_OK);
+                response.setBody(path + body);
+                response.setKeepAlive(true);
+                connection.writeResponse(response);
+                return null;
+            }
+        }).when(mockReceiver).processRequest(any(HttpServerConnection.class));
+
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.socket().bind(new InetSocketAddress("localhost", port.getNumber()));
+        dispatcher = new NioHttpRequestDispatcher(mockHttpConnector, mockRetryTemplate, serverSocketChannel, mockWorkManager);
+        executor = Executors.newCachedThreadPool();
+        dispatcher.requestHandOffExecutor = executor;
+        Thread dispatcherThread = new Thread(dispatcher);
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    @After
+    public void stopDispatcher()
+    {
+        dispatcher.disconnect();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void keepAliveConnectionServesSeveralRequests() throws Exception
+    {
+        Socket socket = connect();
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                write(socket, "GET /request" + i + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                assertTrue(readResponse(socket).endsWith("/request" + i));
+            }
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void pipelinedRequestsAreAnsweredInOrder() throws Exception
+    {
+        Socket socket = connect();
+        try
+        {
+            write(socket, "GET /first HTTP/1.1\r\n\r\n"
+                          + "POST /second HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody"
+                          + "GET /third HTTP/1.1\r\n\r\n");
+            assertTrue(readResponse(socket).endsWith("/first"));
+            assertTrue(readResponse(socket).endsWith("/secondbody"));
+            assertTrue(readResponse(socket).endsWith("/third"));
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void requestIsProcessedOnceFullyReceived() throws Exception
+    {
+        Socket socket = connect();
+        try
+        {
+            write(socket, "POST /partial HTTP/1.1\r\nContent-Length: 10\r\n\r\nhello");
+            Thread.sleep(200);
+            verify(mockReceiver, times(0)).processRequest(any(HttpServerConnection.class));
+
+            write(socket, "world");
+            assertTrue(readResponse(socket).endsWith("/partialhelloworld"));
+            assertEquals(1, processedPaths.size());
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void continueIsSentBeforeTheBody() throws Exception
+    {
+        Socket socket = connect();
+        try
+        {
+            write(socket, "POST /expect HTTP/1.1\r\nContent-Length: 4\r\nExpect: 100-continue\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("HTTP/1.1 100"));
+
+            write(socket, "body");
+            assertTrue(readResponse(socket).endsWith("/expectbody"));
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void tooLargeRequestIsRejected() throws Exception
+    {
+        Socket socket = connect();
+        try
+        {
+            write(socket, "POST /large HTTP/1.1\r\nContent-Length: 1025\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("HTTP/1.1 413"));
+            assertEquals(-1, socket.getInputStream().read());
+            verify(mockReceiver, times(0)).processRequest(any(HttpServerConnection.class));
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void idleConnectionsAreClosed() throws Exception
+    {
+        Socket socket = connect();
+        try
+        {
+            write(socket, "GET /idle HTTP/1.1\r\n\r\n");
+            assertTrue(readResponse(socket).endsWith("/idle"));
+            // the keep alive timeout is half a second and checked every second
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void manyConnectionsShareTheSelectorThread() throws Exception
+    {
+        List<Socket> sockets = new ArrayList<Socket>();
+        try
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                sockets.add(connect());
+            }
+            for (int i = 0; i < sockets.size(); i++)
+            {
+                write(sockets.get(i), "GET /connection" + i + " HTTP/1.1\r\n\r\n");
+            }
+            for (int i = 0; i < sockets.size(); i++)
+            {
+                assertTrue(readResponse(sockets.get(i)).endsWith("/connection" + i));
+            }
+        }
+        finally
+        {
+            for (Socket socket : sockets)
+            {
+                socket.close();
+            }
+        }
+    }
+
+    private Socket connect() throws Exception
+    {
+        Socket socket = new Socket("localhost", port.getNumber());
+        socket.setSoTimeout(TIMEOUT);
+        return socket;
+    }
+
+    private void write(Socket socket, String data) throws Exception
+    {
+        OutputStream out = socket.getOutputStream();
+        out.write(data.getBytes());
+        out.flush();
+    }
+
+    /**
+     * Reads the status line, headers and, if there is a Content-Length, the body of
+     * the next response.
+     */
+    private String readResponse(Socket socket) throws Exception
+    {
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        int contentLength = 0;
+        StringBuilder line = new StringBuilder();
+        while (true)
+        {
+            int b = in.read();
+            if (b == -1)
+            {
+                throw new SocketTimeoutException("Connection closed: " + response);
+            }
+            response.write(b);
+            if (b == '\n')
+            {
+                String header = line.toString().trim();
+                if (header.length() == 0)
+                {
+                    break;
+                }
+                if (header.toLowerCase().startsWith("content-length:"))
+                {
+                    contentLength = Integer.parseInt(header.substring(15).trim());
+                }
+                line.setLength(0);
+            }
+            else
+            {
+                line.append((char) b);
+            }
+        }
+        for (int i = 0; i < contentLength; i++)
+        {
+            response.write(in.read());
+        }
+        return response.toString().trim();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.jdbc;
+
+import org.mule.DefaultMuleMessage;
+import org.mule.api.MuleEvent;
+import org.mule.api.endpoint.OutboundEndpoint;
+import org.mule.api.transport.DispatchException;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Accumulates the writes dispatched to an endpoint and executes them together as a
+ * JDBC batch, once <code>batchSize</code> writes are waiting or the oldest of them
+ * has waited <code>batchTimeout</code> milliseconds, whichever comes first.
+ * <p/>
+ * The parameters of each write are taken from its message when it is added. A batch
+ * runs in its own transaction: it is committed once all its statements succeed and
+ * rolled back otherwise, in which case the failure is handed to the exception
+ * strategy of each event of the batch.
+ */
+public class JdbcBatchWriter
+{
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final JdbcConnector connector;
+    private final OutboundEndpoint endpoint;
+    private final ScheduledExecutorService scheduler;
+    private final String sql;
+    private final List<String> paramNames = new ArrayList<String>();
+    private final int batchSize;
+    private final long batchTimeout;
+    private List<MuleEvent> events = new ArrayList<MuleEvent>();
+    private List<Object[]> params = new ArrayList<Object[]>();
+
+    public JdbcBatchWriter(JdbcConnector connector, OutboundEndpoint endpoint, ScheduledExecutorService scheduler)
+    {
+        this.connector = connector;
+        this.endpoint = endpoint;
+        this.scheduler = scheduler;
+        this.sql = connector.parseStatement(connector.getStatement(endpoint), paramNames);
+        this.batchSize = connector.getBatchSize();
+        this.batchTimeout = connector.getBatchTimeout();
+    }
+
+    /**
+     * Adds the write of the given event to the current batch. The batch is executed
+     * by the calling thread if it is full.
+     */
+    public void add(MuleEvent event) throws Exception
+    {
+        Object[] paramValues = connector.getParams(endpoint, paramNames, new DefaultMuleMessage(
+            event.getMessage().getPayload(), event.getMessage(), event.getMuleContext()),
+            endpoint.getEndpointURI().getAddress());
+
+        boolean full;
+        synchronized (this)
+        {
+            events.add(event);
+            params.add(paramValues);
+            full = events.size() >= batchSize;
+            if (events.size() == 1 && !full)
+            {
+                scheduler.schedule(new Runnable()
+                {
+                    public void run()
+                    {
+                        flush();
+                    }
+                }, batchTimeout, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * @return the number of writes waiting in the current batch
+     */
+    public synchronized int getPendingCount()
+    {
+        return events.size();
+    }
+
+    /**
+     * Executes the writes added so far, if any.
+     */
+    public void flush()
+    {
+        List<MuleEvent> batchEvents;
+        List<Object[]> batchParams;
+        synchronized (this)
+        {
+            if (events.isEmpty())
+            {
+                return;
+            }
+            batchEvents = events;
+            batchParams = params;
+            events = new ArrayList<MuleEvent>();
+            params = new ArrayList<Object[]>();
+        }
+
+        try
+        {
+            execute(batchParams.toArray(new Object[batchParams.size()][]));
+        }
+        catch (Exception e)
+        {
+            for (MuleEvent event : batchEvents)
+            {
+                handleException(new DispatchException(event, endpoint, e), event);
+            }
+        }
+    }
+
+    protected void execute(Object[][] batchParams) throws Exception
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("SQL BATCH UPDATE: " + sql + ", " + batchParams.length + " statement(s)");
+        }
+
+        Connection connection = connector.getConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        try
+        {
+            if (autoCommit)
+            {
+                connection.setAutoCommit(false);
+            }
+            int[] nbRows = connector.getQueryRunnerFor(endpoint).batch(connection, sql, batchParams);
+            connection.commit();
+            if (logger.isInfoEnabled())
+            {
+                logger.info("Executed SQL batch of " + nbRows.length + " statement(s)");
+            }
+        }
+        catch (Exception e)
+        {
+            connection.rollback();
+            throw e;
+        }
+        finally
+        {
+            if (autoCommit)
+            {
+                connection.setAutoCommit(true);
+            }
+            JdbcUtils.close(connection);
+        }
+    }
+
+    protected void handleException(DispatchException e, MuleEvent event)
+    {
+        if (event.getFlowConstruct() != null)
+        {
+            event.getFlowConstruct().getExceptionListener().handleException(e, event);
+        }
+        else
+        {
+            connector.getMuleContext().getExceptionListener().handleException(e);
+        }
+    }
+}
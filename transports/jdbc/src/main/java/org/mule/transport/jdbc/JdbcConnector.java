@@ -17,6 +17,7 @@ import org.mule.api.MuleMessage;
 import org.mule.api.construct.FlowConstruct;
 import org.mule.api.endpoint.ImmutableEndpoint;
 import org.mule.api.endpoint.InboundEndpoint;
+import org.mule.api.endpoint.OutboundEndpoint;
 import org.mule.api.expression.ExpressionManager;
 import org.mule.api.expression.ExpressionRuntimeException;
 import org.mule.api.lifecycle.InitialisationException;
@@ -38,12 +39,18 @@ import org.mule.transport.jdbc.sqlstrategy.SqlStatementStrategyFactory;
 import org.mule.transport.jdbc.xa.DataSourceWrapper;
 import org.mule.util.StringUtils;
 import org.mule.util.TemplateParser;
+import org.mule.util.concurrent.NamedThreadFactory;
+import org.mule.util.concurrent.ThreadNameHelper;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -61,6 +68,7 @@ public class JdbcConnector extends AbstractConnector implements Testable
     // declaration
     public static final String PROPERTY_POLLING_FREQUENCY = "pollingFrequency";
     public static final long DEFAULT_POLLING_FREQUENCY = 1000;
+    public static final long DEFAULT_BATCH_TIMEOUT = 1000;
 
     private static final Pattern STATEMENT_ARGS = TemplateParser.WIGGLY_MULE_TEMPLATE_PATTERN;
 
@@ -87,6 +95,25 @@ public class JdbcConnector extends AbstractConnector implements Testable
      */
     protected boolean transactionPerMessage = true;
 
+    /**
+     * How many writes dispatched outside of a transaction are executed together in a
+     * JDBC batch. Writes are executed one at a time when below 2.
+     */
+    private int batchSize = 0;
+
+    /**
+     * How long, in milliseconds, a write waits for its batch to fill up.
+     */
+    private long batchTimeout = DEFAULT_BATCH_TIMEOUT;
+
+    /**
+     * Should the records read by a poll be acknowledged with a single batched statement?
+     */
+    private boolean batchAck = false;
+
+    private final ConcurrentMap<String, JdbcBatchWriter> batchWriters = new ConcurrentHashMap<String, JdbcBatchWriter>();
+    private ScheduledExecutorService batchScheduler;
+
     public JdbcConnector(MuleContext context)
     {
         super(context);
@@ -361,7 +388,54 @@ public class JdbcConnector extends AbstractConnector implements Testable
     @Override
     protected void doDispose()
     {
-        // template method
+        flushBatches();
+        synchronized (batchWriters)
+        {
+            if (batchScheduler != null)
+            {
+                batchScheduler.shutdown();
+                batchScheduler = null;
+            }
+        }
+    }
+
+    /**
+     * @return the writer batching the writes dispatched to the given endpoint
+     */
+    public JdbcBatchWriter getBatchWriter(OutboundEndpoint endpoint)
+    {
+        String key = endpoint.getEndpointURI().getAddress();
+        JdbcBatchWriter writer = batchWriters.get(key);
+        if (writer == null)
+        {
+            synchronized (batchWriters)
+            {
+                if (batchScheduler == null)
+                {
+                    batchScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+                        String.format("%s%s.batch", ThreadNameHelper.getPrefix(muleContext), getName()),
+                        muleContext.getExecutionClassLoader()));
+                }
+                writer = batchWriters.get(key);
+                if (writer == null)
+                {
+                    writer = new JdbcBatchWriter(this, endpoint, batchScheduler);
+                    batchWriters.put(key, writer);
+                }
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Executes the writes waiting in batches.
+     */
+    protected void flushBatches()
+    {
+        for (JdbcBatchWriter writer : batchWriters.values())
+        {
+            writer.flush();
+        }
     }
 
     @Override
@@ -427,7 +501,7 @@ public class JdbcConnector extends AbstractConnector implements Testable
     @Override
     protected void doStop() throws MuleException
     {
-        // template method
+        flushBatches();
     }
 
     // ////////////////////////////////////////////////////////////////////////////////////
@@ -566,6 +640,36 @@ public class JdbcConnector extends AbstractConnector implements Testable
         return queryTimeout;
     }
 
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchTimeout()
+    {
+        return batchTimeout;
+    }
+
+    public void setBatchTimeout(long batchTimeout)
+    {
+        this.batchTimeout = batchTimeout;
+    }
+
+    public boolean isBatchAck()
+    {
+        return batchAck;
+    }
+
+    public void setBatchAck(boolean batchAck)
+    {
+        this.batchAck = batchAck;
+    }
+
     public void setQueryTimeout(int queryTimeout)
     {
         this.queryTimeout = queryTimeout;
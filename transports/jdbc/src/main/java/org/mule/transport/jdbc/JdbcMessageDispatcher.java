@@ -17,6 +17,7 @@ import org.mule.api.MuleMessage;
 import org.mule.api.endpoint.OutboundEndpoint;
 import org.mule.transaction.TransactionCoordination;
 import org.mule.transport.AbstractMessageDispatcher;
+import org.mule.transport.jdbc.sqlstrategy.SimpleUpdateSqlStatementStrategy;
 import org.mule.transport.jdbc.sqlstrategy.SqlStatementStrategy;
 
 import org.apache.commons.logging.Log;
@@ -54,10 +55,30 @@ public class JdbcMessageDispatcher extends AbstractMessageDispatcher
         {
             logger.debug("Dispatch event: " + event);
         }
-        
+
+        if (isBatched(event))
+        {
+            connector.getBatchWriter(getEndpoint()).add(event);
+            return;
+        }
         doSend(event);
     }
 
+    /**
+     * Writes dispatched outside of a transaction are batched when the connector is
+     * set to, since the event does not wait for their outcome.
+     */
+    protected boolean isBatched(MuleEvent event) throws Exception
+    {
+        if (connector.getBatchSize() < 2 || TransactionCoordination.getInstance().getTransaction() != null)
+        {
+            return false;
+        }
+        SqlStatementStrategy strategy = connector.getSqlStatementStrategyFactory().create(
+            connector.getStatement(endpoint), event.getMessage().getPayload());
+        return strategy instanceof SimpleUpdateSqlStatementStrategy;
+    }
+
     @Override
     protected MuleMessage doSend(MuleEvent event) throws Exception
     {
@@ -26,6 +26,7 @@ import org.mule.util.MapUtils;
 
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -45,6 +46,7 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver
     protected List<String> ackParams;
     public boolean receiveMessagesInXaTransaction = false;
     private volatile boolean aggregateResult;
+    private volatile List<MuleMessage> messagesToAck;
 
     public JdbcMessageReceiver(Connector connector,
                                FlowConstruct flowConstruct,
@@ -126,7 +128,18 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver
         {
             MuleMessage muleMessage = createMuleMessage(message, endpoint.getEncoding());
             routeMessage(muleMessage);
-            if (hasAckStatement())
+            if (hasAckStatement() && isBatchAck())
+            {
+                List<MuleMessage> toAck = messagesToAck;
+                if (toAck != null)
+                {
+                    // acknowledged with the other records of the poll once all are processed
+                    toAck.add(muleMessage);
+                }
+                // otherwise already acknowledged when read
+                aggregateResult = false;
+            }
+            else if (hasAckStatement())
             {
                 con = this.connector.getConnection();
 
@@ -179,6 +192,71 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver
         return this.ackStmt != null;
     }
 
+    /**
+     * Records are acknowledged with a single batched statement per poll when the
+     * connector is set to and the poll does not process each record in a transaction of
+     * its own. When all the records of a poll are received in one transaction they are
+     * acknowledged as soon as read, in that transaction, so that a failure to process
+     * any of them rolls back the acknowledgement of all. Otherwise only the records
+     * processed successfully are acknowledged, once the poll is over.
+     */
+    protected boolean isBatchAck()
+    {
+        return connector.isBatchAck()
+               && (isReceiveMessagesInTransaction() || !endpoint.getTransactionConfig().isTransacted());
+    }
+
+    @Override
+    public void poll() throws Exception
+    {
+        if (!hasAckStatement() || !isBatchAck() || isReceiveMessagesInTransaction())
+        {
+            super.poll();
+            return;
+        }
+
+        List<MuleMessage> processed = Collections.synchronizedList(new ArrayList<MuleMessage>());
+        messagesToAck = processed;
+        try
+        {
+            super.poll();
+        }
+        finally
+        {
+            messagesToAck = null;
+        }
+        if (processed.isEmpty())
+        {
+            return;
+        }
+
+        Connection con = null;
+        try
+        {
+            con = this.connector.getConnection();
+            int[] nbRows = executeBatchAckStatement(con, new ArrayList<MuleMessage>(processed));
+            JdbcUtils.commitAndClose(con);
+            warnIfNotAcknowledged(nbRows);
+        }
+        catch (Exception e)
+        {
+            JdbcUtils.rollbackAndClose(con);
+            getConnector().getMuleContext().getExceptionListener().handleException(e);
+        }
+    }
+
+    private void warnIfNotAcknowledged(int[] nbRows)
+    {
+        for (int rows : nbRows)
+        {
+            if (rows == 0)
+            {
+                logger.warn(".ack statement did not update any rows");
+                return;
+            }
+        }
+    }
+
     /**
      * Creates a mule message per each data record.
      *
@@ -258,6 +336,11 @@ public class JdbcMessageReceiver extends TransactedPollingMessageReceiver
             con = this.connector.getConnection();
 
             List resultList = executeReadStatement(con);
+            if (resultList != null && !resultList.isEmpty() && hasAckStatement() && isBatchAck()
+                && isReceiveMessagesInTransaction())
+            {
+                warnIfNotAcknowledged(executeBatchAckStatement(con, createMuleMessages(resultList)));
+            }
             if (resultList != null && resultList.size() > 1 && isReceiveMessagesInTransaction() && !receiveMessagesInXaTransaction)
             {
                 aggregateResult = true;
@@ -0,0 +1,186 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.construct.FlowConstruct;
+import org.mule.api.endpoint.InboundEndpoint;
+import org.mule.api.endpoint.OutboundEndpoint;
+import org.mule.api.exception.MessagingExceptionHandler;
+import org.mule.api.processor.MessageProcessor;
+import org.mule.api.transport.DispatchException;
+import org.mule.tck.MuleTestUtils;
+import org.mule.tck.junit4.AbstractMuleContextTestCase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.junit.Test;
+
+public class JdbcBatchTestCase extends AbstractMuleContextTestCase
+{
+
+    private final DataSource dataSource = mock(DataSource.class);
+    private final Connection connection = mock(Connection.class);
+    private final PreparedStatement statement = mock(PreparedStatement.class);
+    private JdbcConnector connector;
+
+    @Override
+    protected void doSetUp() throws Exception
+    {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeBatch()).thenReturn(new int[]{1, 1, 1});
+
+        Map<String, String> queries = new HashMap<String, String>();
+        queries.put("insertTest", "insert into test values (#[payload])");
+        queries.put("readTest", "select * from test");
+        queries.put("readTest.ack", "update test set acked = 1 where id = #[payload]");
+
+        connector = new JdbcConnector(muleContext);
+        connector.setName("batch");
+        connector.setDataSource(dataSource);
+        connector.setQueries(queries);
+        connector.setPollingFrequency(60000);
+        connector.setBatchSize(3);
+        connector.setBatchTimeout(200);
+        muleContext.getRegistry().registerConnector(connector);
+    }
+
+    @Test
+    public void writesAreExecutedOnceTheBatchIsFull() throws Exception
+    {
+        JdbcBatchWriter writer = connector.getBatchWriter(getOutboundEndpoint());
+        writer.add(getTestEvent("first"));
+        writer.add(getTestEvent("second"));
+        assertEquals(2, writer.getPendingCount());
+        verify(statement, never()).executeBatch();
+
+        writer.add(getTestEvent("third"));
+        assertEquals(0, writer.getPendingCount());
+        verify(connection, times(1)).prepareStatement("insert into test values (?)");
+        verify(statement, times(3)).addBatch();
+        verify(statement, times(1)).executeBatch();
+        verify(connection).setAutoCommit(false);
+        verify(connection).commit();
+        verify(connection).close();
+    }
+
+    @Test
+    public void writesAreExecutedOnceTheBatchTimesOut() throws Exception
+    {
+        JdbcBatchWriter writer = connector.getBatchWriter(getOutboundEndpoint());
+        writer.add(getTestEvent("alone"));
+        verify(statement, timeout(5000)).executeBatch();
+        verify(statement, times(1)).addBatch();
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    public void failedBatchIsRolledBackAndReportedForEachEvent() throws Exception
+    {
+        when(statement.executeBatch()).thenThrow(new SQLException("failed"));
+        MessagingExceptionHandler exceptionListener = mock(MessagingExceptionHandler.class);
+        FlowConstruct flowConstruct = mock(FlowConstruct.class);
+        when(flowConstruct.getExceptionListener()).thenReturn(exceptionListener);
+
+        JdbcBatchWriter writer = connector.getBatchWriter(getOutboundEndpoint());
+        for (int i = 0; i < 3; i++)
+        {
+            MuleEvent event = mock(MuleEvent.class);
+            when(event.getMessage()).thenReturn(getTestEvent("write" + i).getMessage());
+            when(event.getMuleContext()).thenReturn(muleContext);
+            when(event.getFlowConstruct()).thenReturn(flowConstruct);
+            writer.add(event);
+        }
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        verify(exceptionListener, times(3)).handleException(any(DispatchException.class), any(MuleEvent.class));
+    }
+
+    @Test
+    public void stopExecutesPendingWrites() throws Exception
+    {
+        connector.setBatchTimeout(60000);
+        connector.start();
+        JdbcBatchWriter writer = connector.getBatchWriter(getOutboundEndpoint());
+        writer.add(getTestEvent("pending"));
+        connector.stop();
+        verify(statement, times(1)).executeBatch();
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    public void rowsOfAPollAreAcknowledgedInOneBatch() throws Exception
+    {
+        final List<Object> rows = new ArrayList<Object>();
+        for (int i = 0; i < 3; i++)
+        {
+            rows.add(i);
+        }
+        connector.setResultSetHandler(new ResultSetHandler()
+        {
+            public Object handle(ResultSet resultSet) throws SQLException
+            {
+                return rows;
+            }
+        });
+        connector.setBatchAck(true);
+        final List<Object> processed = new ArrayList<Object>();
+        InboundEndpoint endpoint = muleContext.getEndpointFactory().getInboundEndpoint("jdbc://readTest?connector=batch");
+        FlowConstruct flow = MuleTestUtils.getTestFlow(muleContext);
+        connector.registerListener(endpoint, new MessageProcessor()
+        {
+            public MuleEvent process(MuleEvent event) throws MuleException
+            {
+                processed.add(event.getMessage().getPayload());
+                return event;
+            }
+        }, flow);
+        connector.start();
+
+        ((JdbcMessageReceiver) connector.getReceiver(flow, endpoint)).poll();
+
+        assertEquals(3, processed.size());
+        verify(connection).prepareStatement("update test set acked = 1 where id = ?");
+        verify(statement, times(3)).addBatch();
+        verify(statement, times(1)).executeBatch();
+        verify(statement, never()).executeUpdate();
+        verify(statement, times(3)).setObject(anyInt(), any());
+    }
+
+    private OutboundEndpoint getOutboundEndpoint() throws Exception
+    {
+        return muleContext.getEndpointFactory().getOutboundEndpoint("jdbc://insertTest?connector=batch");
+    }
+}
@@ -87,6 +87,16 @@ public class SslConnector extends TcpConnector
         return serverSocket;
     }
 
+    /**
+     * Reading connections with a selector does not support TLS, so SSL inbound
+     * endpoints always read each connection in its own thread.
+     */
+    @Override
+    public boolean isUseNioReceiver()
+    {
+        return false;
+    }
+
     @Override
     public String getProtocol()
     {
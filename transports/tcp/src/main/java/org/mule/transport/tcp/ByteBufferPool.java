@@ -0,0 +1,164 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps direct buffers of a single size for reuse, since they are costly to allocate
+ * and their memory is only given back once they are garbage collected.
+ * <p/>
+ * Buffers are acquired and released by any thread without locking. At most
+ * <code>maxIdle</code> buffers are kept once released, further ones are left to the
+ * garbage collector. The counters tell how many buffers had to be allocated for the
+ * buffers acquired and how many are in use, and are exposed over JMX as a
+ * {@link ByteBufferPoolMBean}.
+ */
+public class ByteBufferPool implements ByteBufferPoolMBean
+{
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    private final int bufferSize;
+    private final int maxIdle;
+    private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    public ByteBufferPool()
+    {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_IDLE);
+    }
+
+    public ByteBufferPool(int bufferSize, int maxIdle)
+    {
+        if (bufferSize <= 0)
+        {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return a cleared direct buffer of {@link #getBufferSize()} bytes, to be given
+     *         back with {@link #release(ByteBuffer)}
+     */
+    public ByteBuffer acquire()
+    {
+        acquired.incrementAndGet();
+        inUse.incrementAndGet();
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null)
+        {
+            allocated.incrementAndGet();
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        idleCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer acquired from this pool. The buffer must not be used
+     * afterwards.
+     */
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null || buffer.capacity() != bufferSize || !buffer.isDirect())
+        {
+            return;
+        }
+        inUse.decrementAndGet();
+        if (idleCount.incrementAndGet() > maxIdle)
+        {
+            idleCount.decrementAndGet();
+            discarded.incrementAndGet();
+            return;
+        }
+        idle.add(buffer);
+    }
+
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    public int getMaxIdle()
+    {
+        return maxIdle;
+    }
+
+    /**
+     * @return the number of buffers kept for reuse
+     */
+    public int getIdleCount()
+    {
+        return Math.max(0, idleCount.get());
+    }
+
+    /**
+     * @return the number of buffers acquired and not yet released
+     */
+    public int getInUseCount()
+    {
+        return Math.max(0, inUse.get());
+    }
+
+    /**
+     * @return the number of buffers acquired so far
+     */
+    public long getAcquiredCount()
+    {
+        return acquired.get();
+    }
+
+    /**
+     * @return the number of buffers that had to be allocated, the rest being reused
+     */
+    public long getAllocatedCount()
+    {
+        return allocated.get();
+    }
+
+    /**
+     * @return the number of bytes allocated for buffers so far
+     */
+    public long getAllocatedBytes()
+    {
+        return allocated.get() * bufferSize;
+    }
+
+    /**
+     * @return the number of buffers released while the pool was full
+     */
+    public long getDiscardedCount()
+    {
+        return discarded.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[bufferSize=%d, idle=%d, inUse=%d, acquired=%d, allocated=%d, discarded=%d]",
+            getClass().getSimpleName(), bufferSize, getIdleCount(), getInUseCount(), getAcquiredCount(),
+            getAllocatedCount(), getDiscardedCount());
+    }
+
+}
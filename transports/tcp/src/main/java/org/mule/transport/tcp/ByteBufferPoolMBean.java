@@ -0,0 +1,38 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp;
+
+/**
+ * The statistics of a {@link ByteBufferPool}, registered over JMX by the connector
+ * that owns the pool.
+ */
+public interface ByteBufferPoolMBean
+{
+
+    String DEFAULT_JMX_NAME_PREFIX = "type=ByteBufferPool,name=";
+
+    int getBufferSize();
+
+    int getMaxIdle();
+
+    int getIdleCount();
+
+    int getInUseCount();
+
+    long getAcquiredCount();
+
+    long getAllocatedCount();
+
+    long getAllocatedBytes();
+
+    long getDiscardedCount();
+
+}
@@ -0,0 +1,222 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Writes to a non-blocking channel, waiting for it to accept more bytes when its
+ * send buffer is full.
+ * <p/>
+ * Small writes are collected in a buffer. Large arrays, buffers given together and
+ * files are written to the channel as they are, without being copied.
+ * <p/>
+ * The selector used to wait is opened on the first wait and kept for the next ones,
+ * until {@link #closeSelector()} is called once the channel is closed.
+ */
+public class ChannelOutputStream extends OutputStream
+{
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final SocketChannel channel;
+    private final int timeout;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private volatile Selector writeSelector;
+
+    /**
+     * @param channel the channel to write to
+     * @param timeout how long in milliseconds to wait for the channel to accept more
+     *            bytes, 0 to wait indefinitely
+     */
+    public ChannelOutputStream(SocketChannel channel, int timeout)
+    {
+        this.channel = channel;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        if (!buffer.hasRemaining())
+        {
+            flush();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (length >= BUFFER_SIZE)
+        {
+            flush();
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+            return;
+        }
+        if (length > buffer.remaining())
+        {
+            flush();
+        }
+        buffer.put(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        if (buffer.position() > 0)
+        {
+            buffer.flip();
+            try
+            {
+                writeFully(buffer);
+            }
+            finally
+            {
+                buffer.clear();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffers, in order, with a single
+     * gathering write whenever the channel accepts them all.
+     */
+    public void write(ByteBuffer[] buffers) throws IOException
+    {
+        flush();
+        while (hasRemaining(buffers))
+        {
+            if (channel.write(buffers) == 0)
+            {
+                awaitWritable();
+            }
+        }
+    }
+
+    /**
+     * Sends bytes of a file to the channel with {@link FileChannel#transferTo}, which
+     * lets the operating system copy them from the file system cache without them
+     * going through the heap.
+     *
+     * @param file the file to read from
+     * @param position where to start reading from
+     * @param count the number of bytes to send
+     * @return the number of bytes sent, less than <code>count</code> only when the
+     *         end of the file is reached
+     */
+    public long transferFrom(FileChannel file, long position, long count) throws IOException
+    {
+        flush();
+        long transferred = 0;
+        while (transferred < count)
+        {
+            long sent = file.transferTo(position + transferred, count - transferred, channel);
+            if (sent == 0)
+            {
+                if (position + transferred >= file.size())
+                {
+                    break;
+                }
+                awaitWritable();
+            }
+            transferred += sent;
+        }
+        return transferred;
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers)
+    {
+        for (ByteBuffer buffer : buffers)
+        {
+            if (buffer.hasRemaining())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException
+    {
+        while (bytes.hasRemaining())
+        {
+            if (channel.write(bytes) == 0)
+            {
+                awaitWritable();
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException
+    {
+        Selector current = writeSelector;
+        if (current == null)
+        {
+            current = Selector.open();
+            channel.register(current, SelectionKey.OP_WRITE);
+            writeSelector = current;
+        }
+        try
+        {
+            current.selectedKeys().clear();
+            if (current.select(timeout) == 0 && timeout > 0)
+            {
+                throw new SocketTimeoutException("Timed out writing to " + channel.socket());
+            }
+        }
+        catch (ClosedSelectorException e)
+        {
+            throw new IOException("Channel closed while writing to " + channel.socket());
+        }
+    }
+
+    Selector getWriteSelector()
+    {
+        return writeSelector;
+    }
+
+    /**
+     * Releases the selector used to wait for the channel to accept more bytes. Called
+     * once the channel is closed, since the selector is kept between writes.
+     */
+    public void closeSelector()
+    {
+        Selector current = writeSelector;
+        writeSelector = null;
+        if (current != null)
+        {
+            try
+            {
+                current.close();
+            }
+            catch (IOException e)
+            {
+                // nothing else to release
+            }
+        }
+    }
+
+}
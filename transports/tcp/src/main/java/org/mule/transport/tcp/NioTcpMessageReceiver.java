@@ -0,0 +1,510 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.tcp;
+
+import org.mule.ResponseOutputStream;
+import org.mule.api.MuleMessage;
+import org.mule.api.config.MuleProperties;
+import org.mule.api.construct.FlowConstruct;
+import org.mule.api.endpoint.InboundEndpoint;
+import org.mule.api.lifecycle.CreateException;
+import org.mule.api.transaction.Transaction;
+import org.mule.api.transaction.TransactionException;
+import org.mule.api.transport.Connector;
+import org.mule.config.i18n.CoreMessages;
+import org.mule.transport.AbstractMessageReceiver;
+import org.mule.transport.AbstractReceiverResourceWorker;
+import org.mule.transport.ConnectException;
+import org.mule.transport.tcp.i18n.TcpMessages;
+import org.mule.transport.tcp.protocols.ProtocolStream;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+
+/**
+ * <code>NioTcpMessageReceiver</code> reads all its connections with a selector
+ * rather than with a thread per connection.
+ * <p/>
+ * A single thread accepts the connections and reads from all of them without
+ * blocking, so that idle connections take no thread. The bytes read are framed by the
+ * {@link NonBlockingTcpProtocol} of the connector, and once a connection has complete
+ * messages they are routed one after the other by a worker, which writes back the
+ * responses. The connection goes back to the selector once its messages have been
+ * processed.
+ * <p/>
+ * Messages are kept in memory until they are complete, so this suits many clients
+ * sending small messages rather than streaming. The bytes are read into a direct buffer
+ * taken from the pool of the connector for each read only.
+ */
+public class NioTcpMessageReceiver extends TcpMessageReceiver
+{
+
+    private static final long SELECT_TIMEOUT = 1000;
+
+    private final Queue<Connection> resumedConnections = new ConcurrentLinkedQueue<Connection>();
+
+    private ServerSocketChannel serverSocketChannel;
+    private volatile Selector selector;
+    private SelectionKey acceptKey;
+    private long lastIdleCheck = System.currentTimeMillis();
+
+    public NioTcpMessageReceiver(Connector connector, FlowConstruct flowConstruct, InboundEndpoint endpoint)
+            throws CreateException
+    {
+        super(connector, flowConstruct, endpoint);
+    }
+
+    @Override
+    protected void doConnect() throws ConnectException
+    {
+        disposing.set(false);
+
+        URI uri = endpoint.getEndpointURI().getUri();
+
+        try
+        {
+            serverSocketChannel = ((TcpConnector) connector).getServerSocketChannel(uri);
+            serverSocketChannel.configureBlocking(false);
+            selector = Selector.open();
+            acceptKey = serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (Exception e)
+        {
+            throw new ConnectException(TcpMessages.failedToBindToUri(uri), e, this);
+        }
+
+        try
+        {
+            getWorkManager().scheduleWork(this, WorkManager.INDEFINITE, null, connector);
+        }
+        catch (WorkException e)
+        {
+            throw new ConnectException(CoreMessages.failedToScheduleWork(), e, this);
+        }
+    }
+
+    @Override
+    protected void doDisconnect() throws ConnectException
+    {
+        // this will cause the selector thread to quit and close the channels
+        disposing.set(true);
+
+        Selector current = selector;
+        if (current != null)
+        {
+            current.wakeup();
+        }
+    }
+
+    @Override
+    public ServerSocket getServerSocket()
+    {
+        return serverSocketChannel == null ? null : serverSocketChannel.socket();
+    }
+
+    @Override
+    public void run()
+    {
+        Selector current = selector;
+        while (!disposing.get())
+        {
+            try
+            {
+                acceptKey.interestOps(connector.isStarted() ? SelectionKey.OP_ACCEPT : 0);
+                current.select(SELECT_TIMEOUT);
+                resumeConnections();
+
+                Iterator<SelectionKey> keys = current.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                    {
+                        continue;
+                    }
+                    if (key.isAcceptable())
+                    {
+                        accept(current);
+                    }
+                    else if (key.isReadable())
+                    {
+                        read((Connection) key.attachment());
+                    }
+                }
+                closeIdleConnections(current);
+            }
+            catch (ClosedSelectorException e)
+            {
+                break;
+            }
+            catch (Exception e)
+            {
+                if (!connector.isDisposed() && !disposing.get())
+                {
+                    getConnector().getMuleContext().getExceptionListener().handleException(e);
+                }
+            }
+        }
+        closeSelector(current);
+    }
+
+    private void accept(Selector current) throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = serverSocketChannel.accept()) != null)
+        {
+            try
+            {
+                channel.configureBlocking(false);
+                ((TcpConnector) connector).configureSocket(TcpConnector.SERVER, channel.socket());
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(current, SelectionKey.OP_READ, connection);
+            }
+            catch (IOException e)
+            {
+                logger.debug("Failed to accept connection: " + e.getMessage());
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void read(Connection connection)
+    {
+        ByteBufferPool bufferPool = ((TcpConnector) connector).getBufferPool();
+        ByteBuffer readBuffer = bufferPool.acquire();
+        try
+        {
+            int read;
+            do
+            {
+                readBuffer.clear();
+                read = connection.channel.read(readBuffer);
+                if (read > 0)
+                {
+                    readBuffer.flip();
+                    connection.framer.receive(readBuffer);
+                    connection.takeMessages();
+                }
+            }
+            while (read == readBuffer.capacity());
+
+            connection.lastActivity = System.currentTimeMillis();
+            connection.endOfInput = read < 0;
+            Object message = connection.framer.endOfData(connection.endOfInput);
+            if (message != null)
+            {
+                connection.messages.add(message);
+            }
+
+            if (!connection.messages.isEmpty())
+            {
+                dispatch(connection);
+            }
+            else if (connection.endOfInput)
+            {
+                connection.close();
+            }
+        }
+        catch (IOException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Closing connection: " + e.getMessage());
+            }
+            connection.close();
+        }
+        finally
+        {
+            bufferPool.release(readBuffer);
+        }
+    }
+
+    private void dispatch(Connection connection)
+    {
+        // nothing more is read until the messages received have been processed
+        connection.key.interestOps(0);
+        connection.processing = true;
+        try
+        {
+            getWorkManager().scheduleWork(new NioTcpWorker(connection, this), WorkManager.INDEFINITE, null, connector);
+        }
+        catch (WorkException e)
+        {
+            logger.warn("Closing connection since no thread is available to process its messages: " + e.getMessage());
+            connection.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("Closing connection: " + e.getMessage());
+            connection.close();
+        }
+    }
+
+    private void resume(Connection connection)
+    {
+        resumedConnections.add(connection);
+        Selector current = selector;
+        if (current != null)
+        {
+            current.wakeup();
+        }
+    }
+
+    private void resumeConnections()
+    {
+        Connection connection;
+        while ((connection = resumedConnections.poll()) != null)
+        {
+            if (connection.key.isValid())
+            {
+                connection.processing = false;
+                connection.lastActivity = System.currentTimeMillis();
+                connection.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    /**
+     * Idle connections are closed after the keep alive timeout or, if it is not set,
+     * the server socket timeout, which are what limit the wait for the next message
+     * when a thread reads from each connection.
+     */
+    private void closeIdleConnections(Selector current)
+    {
+        long idleTimeout = ((TcpConnector) connector).getKeepAliveTimeout();
+        if (idleTimeout <= 0)
+        {
+            idleTimeout = ((TcpConnector) connector).getServerSoTimeout();
+        }
+        long now = System.currentTimeMillis();
+        if (idleTimeout <= 0 || now - lastIdleCheck < SELECT_TIMEOUT)
+        {
+            return;
+        }
+        lastIdleCheck = now;
+        for (SelectionKey key : current.keys())
+        {
+            Connection connection = (Connection) key.attachment();
+            if (connection != null && !connection.processing && now - connection.lastActivity >= idleTimeout)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Closing idle connection: " + connection.socket);
+                }
+                connection.close();
+            }
+        }
+    }
+
+    private void closeSelector(Selector current)
+    {
+        try
+        {
+            for (SelectionKey key : current.keys())
+            {
+                closeQuietly(key.channel());
+            }
+            current.close();
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to close selector: " + e.getMessage(), e);
+        }
+    }
+
+    private void closeQuietly(Channel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("(Ignored) Error closing the channel: " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected void doDispose()
+    {
+        disposing.set(true);
+        Selector current = selector;
+        if (current != null)
+        {
+            current.wakeup();
+        }
+        if (serverSocketChannel != null && serverSocketChannel.isOpen())
+        {
+            closeQuietly(serverSocketChannel);
+        }
+        serverSocketChannel = null;
+        logger.info("Closed Tcp port");
+    }
+
+    /**
+     * The state of an accepted connection. It is used by one thread at a time: the
+     * selector while receiving messages, then the worker processing them.
+     */
+    protected class Connection
+    {
+        private final SocketChannel channel;
+        private final Socket socket;
+        private final TcpMessageFramer framer;
+        private final ChannelOutputStream out;
+        private final Queue<Object> messages = new LinkedList<Object>();
+        private SelectionKey key;
+        private boolean processing;
+        private boolean endOfInput;
+        private boolean failed;
+        private long lastActivity = System.currentTimeMillis();
+
+        Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+            this.socket = channel.socket();
+            this.framer = ((NonBlockingTcpProtocol) ((TcpConnector) connector).getTcpProtocol()).createFramer();
+            int timeout = ((TcpConnector) connector).getServerSoTimeout();
+            this.out = new ChannelOutputStream(channel, timeout == Connector.INT_VALUE_NOT_SET ? 0 : timeout);
+        }
+
+        private void takeMessages() throws IOException
+        {
+            Object message;
+            while ((message = framer.nextMessage()) != null)
+            {
+                messages.add(message);
+            }
+        }
+
+        public Socket getSocket()
+        {
+            return socket;
+        }
+
+        void close()
+        {
+            try
+            {
+                socket.shutdownOutput();
+            }
+            catch (IOException e)
+            {
+                // the connection may already be closed
+            }
+            closeQuietly(channel);
+            out.closeSelector();
+        }
+    }
+
+    /**
+     * Routes the messages received on a connection, in order, and writes back the
+     * responses.
+     */
+    protected class NioTcpWorker extends AbstractReceiverResourceWorker
+    {
+        private final Connection connection;
+        private final TcpProtocol protocol;
+
+        public NioTcpWorker(Connection connection, AbstractMessageReceiver receiver) throws IOException
+        {
+            super(connection, receiver, new ResponseOutputStream(connection.socket,
+                new ProtocolStream(((TcpConnector) connector).getTcpProtocol(), false, connection.out)));
+            this.connection = connection;
+            this.protocol = ((TcpConnector) connector).getTcpProtocol();
+        }
+
+        @Override
+        protected Object getNextMessage(Object resource) throws Exception
+        {
+            return connection.messages.poll();
+        }
+
+        @Override
+        protected boolean hasMoreMessages(Object message)
+        {
+            return !connection.messages.isEmpty() && !connection.failed && !disposing.get();
+        }
+
+        @Override
+        protected void bindTransaction(Transaction tx) throws TransactionException
+        {
+            //nothing to do
+        }
+
+        @Override
+        protected void handleResults(List messages) throws Exception
+        {
+            //should send back only if remote synch is set or no outbound endpoints
+            if (endpoint.getExchangePattern().hasResponse())
+            {
+                try
+                {
+                    for (Iterator iterator = messages.iterator(); iterator.hasNext();)
+                    {
+                        Object o = iterator.next();
+                        protocol.write(connection.out, o);
+                        connection.out.flush();
+                    }
+                }
+                catch (IOException e)
+                {
+                    connection.failed = true;
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        protected void preRouteMuleMessage(final MuleMessage message) throws Exception
+        {
+            super.preRouteMuleMessage(message);
+
+            final SocketAddress clientAddress = connection.socket.getRemoteSocketAddress();
+            if (clientAddress != null)
+            {
+                message.setOutboundProperty(MuleProperties.MULE_REMOTE_CLIENT_ADDRESS, clientAddress.toString());
+            }
+        }
+
+        @Override
+        public void release()
+        {
+            if (connection.failed || connection.endOfInput || disposing.get())
+            {
+                logger.debug("Closing connection.");
+                connection.close();
+            }
+            else
+            {
+                resume(connection);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp;
+
+/**
+ * A {@link TcpProtocol} that can also find where messages end in data that arrives in
+ * pieces, so that a receiver can read many connections with a selector instead of
+ * blocking a thread on each of them.
+ */
+public interface NonBlockingTcpProtocol extends TcpProtocol
+{
+
+    /**
+     * Creates the state to frame the messages received on a single connection.
+     *
+     * @return a new framer, or null if messages of this protocol can only be read
+     *         from a stream
+     */
+    TcpMessageFramer createFramer();
+
+}
@@ -44,4 +44,13 @@ public class PollingTcpConnector extends TcpConnector
     {
         this.pollingFrequency = pollingFrequency;
     }
+
+    /**
+     * Polling receivers connect to a server rather than accepting connections.
+     */
+    @Override
+    public boolean isUseNioReceiver()
+    {
+        return false;
+    }
 }
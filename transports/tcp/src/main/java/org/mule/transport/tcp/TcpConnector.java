@@ -14,15 +14,20 @@ import org.mule.api.MessagingException;
 import org.mule.api.MuleContext;
 import org.mule.api.MuleException;
 import org.mule.api.MuleMessage;
+import org.mule.api.construct.FlowConstruct;
 import org.mule.api.endpoint.ImmutableEndpoint;
+import org.mule.api.endpoint.InboundEndpoint;
 import org.mule.api.lifecycle.InitialisationException;
 import org.mule.api.transport.Connector;
 import org.mule.api.transport.MessageDispatcherFactory;
+import org.mule.api.transport.MessageReceiver;
 import org.mule.config.i18n.CoreMessages;
 import org.mule.model.streaming.CallbackOutputStream;
 import org.mule.transport.AbstractConnector;
 import org.mule.transport.ConfigurableKeyedObjectPool;
+import org.mule.transport.tcp.i18n.TcpMessages;
 import org.mule.transport.tcp.protocols.SafeProtocol;
+import org.mule.util.StringUtils;
 import org.mule.util.concurrent.ThreadNameHelper;
 import org.mule.util.monitor.ExpiryMonitor;
 
@@ -30,10 +35,17 @@ import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.URI;
+import java.nio.channels.ServerSocketChannel;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.commons.pool.impl.GenericKeyedObjectPool;
 
@@ -90,6 +102,10 @@ public class TcpConnector extends AbstractConnector
      */
     private boolean keepAlive = false;
 
+    private boolean useNioReceiver = false;
+
+    private final ByteBufferPool bufferPool = new ByteBufferPool();
+
     //TODO MULE-2300 remove once fixed
     private TcpSocketKey lastSocketKey;
 
@@ -165,6 +181,7 @@ public class TcpConnector extends AbstractConnector
                                                  ThreadNameHelper.getPrefix(muleContext),
                                                  getName());
         keepAliveMonitor = new ExpiryMonitor(monitorName, 1000, this.getClass().getClassLoader(), muleContext, false);
+        registerBufferPool();
     }
 
     @Override
@@ -181,6 +198,59 @@ public class TcpConnector extends AbstractConnector
         }
         
         keepAliveMonitor.dispose();
+        unregisterBufferPool();
+    }
+
+    /**
+     * @return the JMX name the statistics of the buffer pool are registered with
+     */
+    public ObjectName getBufferPoolObjectName() throws Exception
+    {
+        String domain = "Mule";
+        String id = muleContext.getConfiguration().getId();
+        if (StringUtils.isNotEmpty(id))
+        {
+            domain += "." + id;
+        }
+        return new ObjectName(domain + ":" + ByteBufferPoolMBean.DEFAULT_JMX_NAME_PREFIX + ObjectName.quote(getName()));
+    }
+
+    private void registerBufferPool()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getBufferPoolObjectName();
+            if (!server.isRegistered(name))
+            {
+                server.registerMBean(bufferPool, name);
+            }
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to register the buffer pool statistics over JMX: " + e.getMessage());
+        }
+    }
+
+    private void unregisterBufferPool()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getBufferPoolObjectName();
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (Exception e)
+        {
+            logger.debug("Failed to unregister the buffer pool statistics: " + e.getMessage());
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Buffer pool of " + getName() + " on dispose: " + bufferPool);
+        }
     }
 
     /**
@@ -473,6 +543,64 @@ public class TcpConnector extends AbstractConnector
         return getServerSocketFactory().createServerSocket(uri, getReceiveBacklog(), isReuseAddress());
     }
 
+    /**
+     * Binds a channel to listen on when {@link #isUseNioReceiver()}, in the same way
+     * the server socket factory binds server sockets.
+     */
+    public ServerSocketChannel getServerSocketChannel(URI uri) throws IOException
+    {
+        String host = StringUtils.defaultIfEmpty(uri.getHost(), "localhost");
+        InetAddress inetAddress = InetAddress.getByName(host);
+        InetSocketAddress address;
+        if ((inetAddress.equals(InetAddress.getLocalHost()) || host.trim().equals("localhost")) && TcpPropertyHelper.isBindingLocalhostToAllLocalInterfaces())
+        {
+            logger.warn(TcpMessages.localhostBoundToAllLocalInterfaces());
+            address = new InetSocketAddress(uri.getPort());
+        }
+        else
+        {
+            address = new InetSocketAddress(inetAddress, uri.getPort());
+        }
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try
+        {
+            Boolean reuse = isReuseAddress();
+            if (null != reuse && reuse.booleanValue() != channel.socket().getReuseAddress())
+            {
+                channel.socket().setReuseAddress(reuse.booleanValue());
+            }
+            // bind *after* setting so_reuseaddress
+            channel.socket().bind(address, getReceiveBacklog());
+            return channel;
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a {@link NioTcpMessageReceiver} when {@link #isUseNioReceiver()} and the
+     * protocol can frame messages as they arrive.
+     */
+    @Override
+    protected MessageReceiver createReceiver(FlowConstruct flowConstruct, InboundEndpoint endpoint) throws Exception
+    {
+        if (isUseNioReceiver())
+        {
+            if (getTcpProtocol() instanceof NonBlockingTcpProtocol
+                && ((NonBlockingTcpProtocol) getTcpProtocol()).createFramer() != null)
+            {
+                return new NioTcpMessageReceiver(this, flowConstruct, endpoint);
+            }
+            logger.warn("Protocol " + getTcpProtocol().getClass().getName()
+                        + " cannot be read with a selector, using a thread per connection for " + endpoint.getEndpointURI());
+        }
+        return super.createReceiver(flowConstruct, endpoint);
+    }
+
     private static int valueOrDefault(int value, int threshhold, int deflt)
     {
         if (value < threshhold)
@@ -523,6 +651,30 @@ public class TcpConnector extends AbstractConnector
     {
         this.keepAliveTimeout = keepAliveTimeout;
     }
+
+    public boolean isUseNioReceiver()
+    {
+        return useNioReceiver;
+    }
+
+    /**
+     * Whether inbound endpoints read their connections with a selector rather than
+     * with a thread per connection, so that idle connections take no thread. A message
+     * is only processed once fully received.
+     */
+    public void setUseNioReceiver(boolean useNioReceiver)
+    {
+        this.useNioReceiver = useNioReceiver;
+    }
+
+    /**
+     * @return the direct buffers the inbound endpoints of this connector read into
+     *         when {@link #isUseNioReceiver()}
+     */
+    public ByteBufferPool getBufferPool()
+    {
+        return bufferPool;
+    }
     
     @Override
     public void setDispatcherFactory(MessageDispatcherFactory dispatcherFactory)
@@ -0,0 +1,50 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the bytes received on a connection into the messages of a
+ * {@link NonBlockingTcpProtocol}. Each message returned is what
+ * {@link TcpProtocol#read(java.io.InputStream)} would have returned for the same data.
+ * A framer is used by a single thread at a time.
+ */
+public interface TcpMessageFramer
+{
+
+    /**
+     * Adds the remaining bytes of the given buffer to those already received.
+     *
+     * @param bytes the data just read from the connection
+     * @throws IOException if the data do not follow the protocol
+     */
+    void receive(ByteBuffer bytes) throws IOException;
+
+    /**
+     * @return the next complete message, or null if it has not been fully received
+     * @throws IOException if the data do not follow the protocol
+     */
+    Object nextMessage() throws IOException;
+
+    /**
+     * Called once every complete message has been taken and no more data is
+     * available, for now or, when <code>endOfInput</code> is true, ever. Protocols
+     * that delimit a message by a pause or by the end of the connection return it here.
+     *
+     * @param endOfInput whether the connection has been closed by the other end
+     * @return the message ending with the data received so far, or null
+     * @throws IOException if the data do not follow the protocol
+     */
+    Object endOfData(boolean endOfInput) throws IOException;
+
+}
@@ -0,0 +1,113 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp.protocols;
+
+import org.mule.transport.tcp.TcpMessageFramer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the bytes received but not yet returned as a message, growing only when a
+ * message does not fit. Used by the protocols whose messages end with a delimiter, so
+ * that the length of a message is only known once it has been received.
+ */
+abstract class AbstractByteFramer implements TcpMessageFramer
+{
+
+    private static final int INITIAL_SIZE = 1024;
+
+    protected byte[] data = new byte[INITIAL_SIZE];
+    // first byte not yet returned
+    protected int start;
+    protected int limit;
+
+    public void receive(ByteBuffer bytes) throws IOException
+    {
+        int length = bytes.remaining();
+        ensureCapacity(length);
+        bytes.get(data, limit, length);
+        limit += length;
+    }
+
+    protected int available()
+    {
+        return limit - start;
+    }
+
+    /**
+     * @return the next <code>length</code> bytes, which are then discarded
+     */
+    protected byte[] take(int length)
+    {
+        if (start == 0 && length == data.length)
+        {
+            // the message fills the array, which is handed over instead of copied
+            byte[] message = data;
+            data = new byte[INITIAL_SIZE];
+            limit = 0;
+            return message;
+        }
+        byte[] message = new byte[length];
+        System.arraycopy(data, start, message, 0, length);
+        start += length;
+        return message;
+    }
+
+    protected void skip(int length)
+    {
+        start += length;
+    }
+
+    /**
+     * @return the bytes received so far, or null if there are none
+     */
+    protected byte[] takeAll()
+    {
+        return available() == 0 ? null : take(available());
+    }
+
+    /**
+     * Called when the bytes kept move to the start of the array.
+     *
+     * @param offset how far they moved back
+     */
+    protected void moved(int offset)
+    {
+        // template method
+    }
+
+    private void ensureCapacity(int length)
+    {
+        if (start == limit && start > 0)
+        {
+            moved(start);
+            start = limit = 0;
+        }
+        if (data.length - limit >= length)
+        {
+            return;
+        }
+        int used = limit - start;
+        byte[] target = data;
+        if (used + length > data.length)
+        {
+            // a message received in one piece fills the array, so it can be handed over
+            target = new byte[used == 0 ? length : Math.max(data.length * 2, used + length)];
+        }
+        System.arraycopy(data, start, target, 0, used);
+        data = target;
+        moved(start);
+        limit = used;
+        start = 0;
+    }
+
+}
@@ -12,11 +12,13 @@ package org.mule.transport.tcp.protocols;
 
 import org.mule.ResponseOutputStream;
 import org.mule.api.MuleMessage;
+import org.mule.transport.tcp.ChannelOutputStream;
 import org.mule.transport.tcp.TcpProtocol;
 import org.mule.util.ClassUtils;
 import org.mule.util.IOUtils;
 import org.mule.util.SerializationUtils;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -24,6 +26,7 @@ import java.io.Serializable;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -64,7 +67,16 @@ public abstract class AbstractByteProtocol implements TcpProtocol
             if (streamOk)
             {
                 InputStream is = (InputStream) data;
-                IOUtils.copyLarge(is, os);
+                if (os instanceof ChannelOutputStream && is instanceof FileInputStream)
+                {
+                    // the file goes to the socket without being copied through the heap
+                    FileChannel file = ((FileInputStream) is).getChannel();
+                    ((ChannelOutputStream) os).transferFrom(file, file.position(), file.size() - file.position());
+                }
+                else
+                {
+                    IOUtils.copyLarge(is, os);
+                }
                 os.flush();
                 os.close();
                 is.close();
@@ -127,13 +139,28 @@ public abstract class AbstractByteProtocol implements TcpProtocol
      * @throws IOException other than socket exceptions
      */
     protected int safeRead(InputStream is, byte[] buffer, int size) throws IOException
+    {
+        return safeRead(is, buffer, 0, size);
+    }
+
+    /**
+     * Manage non-blocking reads and handle errors
+     *
+     * @param is     The input stream to read from
+     * @param buffer The buffer to read into
+     * @param offset The position in the buffer to read into
+     * @param size   The amount of data (upper bound) to read
+     * @return The amount of data read (always non-zero, -1 on EOF or socket exception)
+     * @throws IOException other than socket exceptions
+     */
+    protected int safeRead(InputStream is, byte[] buffer, int offset, int size) throws IOException
     {
         int len;
         try
         {
             do
             {
-                len = is.read(buffer, 0, size);
+                len = is.read(buffer, offset, size);
                 if (0 == len)
                 {
                     // wait for non-blocking input stream
@@ -10,6 +10,8 @@
 
 package org.mule.transport.tcp.protocols;
 
+import org.mule.transport.tcp.TcpMessageFramer;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -58,6 +60,16 @@ public class CustomClassLoadingLengthProtocol extends LengthProtocol
         }
     }
 
+    /**
+     * The object is read from the stream after the framed bytes, so messages cannot be
+     * framed as they arrive.
+     */
+    @Override
+    public TcpMessageFramer createFramer()
+    {
+        return null;
+    }
+
     public ClassLoader getClassLoader()
     {
         if (this.classLoader == null)
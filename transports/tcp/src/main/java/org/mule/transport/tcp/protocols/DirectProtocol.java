@@ -13,8 +13,8 @@ package org.mule.transport.tcp.protocols;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.MessageFormat;
+import java.util.Arrays;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -56,37 +56,41 @@ public class DirectProtocol extends AbstractByteProtocol
 
     public Object read(InputStream is, int limit) throws IOException
     {
-        // this can grow on repeated reads
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(bufferSize);
-        
-        try
+        // read straight into the message array, which can grow on repeated reads
+        byte[] data = new byte[UNLIMITED == limit ? bufferSize : limit];
+        int length = 0;
+        int len;
+        int remain = remaining(limit, limit, 0);
+        boolean repeat;
+        do
         {
-            byte[] buffer = new byte[bufferSize];
-            int len;
-            int remain = remaining(limit, limit, 0);
-            boolean repeat;
-            do
+            if (data.length - length < remain)
             {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + remain));
+            }
+            len = safeRead(is, data, length, remain);
+            if (len > 0)
+            {
+                length += len;
+            }
+            remain = remaining(limit, remain, len);
+            repeat = EOF != len && remain > 0 && isRepeat(len, is.available());
 
-                len = copy(is, buffer, baos, remain);
-                remain = remaining(limit, remain, len);
-                repeat = EOF != len && remain > 0 && isRepeat(len, is.available());
-
-                if (logger.isDebugEnabled())
-                {
-                    logger.debug(MessageFormat.format(
-                            "len/limit/repeat: {0}/{1}/{2}",
-                            len, limit, repeat));
-                }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(MessageFormat.format(
+                        "len/limit/repeat: {0}/{1}/{2}",
+                        len, limit, repeat));
             }
-            while (repeat);
         }
-        finally
+        while (repeat);
+
+        if (0 == length)
         {
-            baos.flush();
-            baos.close();
+            return null;
         }
-        return nullEmptyArray(baos.toByteArray());
+        // a length prefixed message fills the array exactly, so is returned as is
+        return length == data.length ? data : Arrays.copyOf(data, length);
     }
 
     protected int remaining(int limit, int remain, int len)
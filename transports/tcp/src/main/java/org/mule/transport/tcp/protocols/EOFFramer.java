@@ -0,0 +1,30 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp.protocols;
+
+/**
+ * Frames the messages of an {@link EOFProtocol}: everything received until the
+ * connection is closed.
+ */
+class EOFFramer extends AbstractByteFramer
+{
+
+    public Object nextMessage()
+    {
+        return null;
+    }
+
+    public Object endOfData(boolean endOfInput)
+    {
+        return endOfInput ? takeAll() : null;
+    }
+
+}
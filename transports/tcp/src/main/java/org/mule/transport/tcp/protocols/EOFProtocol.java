@@ -10,11 +10,14 @@
 
 package org.mule.transport.tcp.protocols;
 
+import org.mule.transport.tcp.NonBlockingTcpProtocol;
+import org.mule.transport.tcp.TcpMessageFramer;
+
 /**
  * The EOFProtocol class is an application level tcp protocol that does nothing.
  * Reading is terminated by the stream being closed by the client.
  */
-public class EOFProtocol extends DirectProtocol
+public class EOFProtocol extends DirectProtocol implements NonBlockingTcpProtocol
 {
 
     /**
@@ -30,4 +33,9 @@ public class EOFProtocol extends DirectProtocol
         return true;
     }
 
+    public TcpMessageFramer createFramer()
+    {
+        return new EOFFramer();
+    }
+
 }
@@ -0,0 +1,127 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp.protocols;
+
+import org.mule.transport.tcp.TcpMessageFramer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Frames the messages of a {@link LengthProtocol}: each one is prefixed by its length
+ * as a four byte integer.
+ * <p/>
+ * Once its length has been received, a message is received straight into an array of
+ * that length, so its bytes are copied only once from the buffer they were read into.
+ */
+class LengthFramer implements TcpMessageFramer
+{
+
+    private static final int SIZE_INT = 4;
+
+    private final int maxMessageLength;
+    private final byte[] header = new byte[SIZE_INT];
+    private int headerReceived;
+    // the frame being received, once its length is known
+    private byte[] frame;
+    private int received;
+    // the number of frames whose length has been received
+    private int frameCount;
+    private final Queue<byte[]> frames = new LinkedList<byte[]>();
+
+    LengthFramer(int maxMessageLength)
+    {
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    public void receive(ByteBuffer bytes) throws IOException
+    {
+        while (bytes.hasRemaining())
+        {
+            if (frame == null)
+            {
+                int length = Math.min(bytes.remaining(), SIZE_INT - headerReceived);
+                bytes.get(header, headerReceived, length);
+                headerReceived += length;
+                if (headerReceived < SIZE_INT)
+                {
+                    return;
+                }
+                headerReceived = 0;
+                frame = new byte[checkLength(frameLength(), frameCount++)];
+                received = 0;
+            }
+            int length = Math.min(bytes.remaining(), frame.length - received);
+            bytes.get(frame, received, length);
+            received += length;
+            if (received == frame.length)
+            {
+                frames.add(frame);
+                frame = null;
+            }
+        }
+        if (frame != null && frame.length == 0)
+        {
+            frames.add(frame);
+            frame = null;
+        }
+    }
+
+    public Object nextMessage() throws IOException
+    {
+        return nextFrame();
+    }
+
+    public Object endOfData(boolean endOfInput) throws IOException
+    {
+        // a message cut short by the end of the connection is dropped
+        return null;
+    }
+
+    /**
+     * @return the next complete frame, or null if none has been fully received
+     */
+    protected byte[] nextFrame()
+    {
+        return frames.poll();
+    }
+
+    /**
+     * Checks the length of a frame before its bytes are received.
+     *
+     * @param length the length the frame is prefixed with
+     * @param index the position of the frame on the connection, starting at 0
+     * @return the length
+     * @throws IOException if the frame may not be that long
+     */
+    protected int checkLength(int length, int index) throws IOException
+    {
+        return checkMaxLength(length, maxMessageLength);
+    }
+
+    static int checkMaxLength(int length, int maxLength) throws IOException
+    {
+        if (length < 0 || (maxLength > 0 && length > maxLength))
+        {
+            throw new IOException("Length " + length + " exceeds limit: " + maxLength);
+        }
+        return length;
+    }
+
+    private int frameLength()
+    {
+        return ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16) | ((header[2] & 0xff) << 8)
+               | (header[3] & 0xff);
+    }
+
+}
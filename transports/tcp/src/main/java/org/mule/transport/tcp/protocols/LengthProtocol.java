@@ -10,11 +10,16 @@
 
 package org.mule.transport.tcp.protocols;
 
+import org.mule.transport.tcp.ChannelOutputStream;
+import org.mule.transport.tcp.NonBlockingTcpProtocol;
+import org.mule.transport.tcp.TcpMessageFramer;
+
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,7 +33,7 @@ import org.apache.commons.logging.LogFactory;
  * <p>Note that use of this protocol must be symmetric - both the sending and receiving
  * connectors must use the same protocol.</p>
  */
-public class LengthProtocol extends DirectProtocol
+public class LengthProtocol extends DirectProtocol implements NonBlockingTcpProtocol
 {
     
     private static final Log logger = LogFactory.getLog(LengthProtocol.class);
@@ -86,9 +91,22 @@ public class LengthProtocol extends DirectProtocol
         return buffer;
     }
 
+    public TcpMessageFramer createFramer()
+    {
+        return new LengthFramer(getMaxMessageLength());
+    }
+
     @Override
     protected void writeByteArray(OutputStream os, byte[] data) throws IOException
     {
+        if (os instanceof ChannelOutputStream)
+        {
+            // the length and the data go in a single gathering write, without copying
+            ByteBuffer length = ByteBuffer.allocate(SIZE_INT);
+            length.putInt(data.length).flip();
+            ((ChannelOutputStream) os).write(new ByteBuffer[]{length, ByteBuffer.wrap(data)});
+            return;
+        }
         // Write the length and then the data.
         DataOutputStream dos = new DataOutputStream(os);
         dos.writeInt(data.length);
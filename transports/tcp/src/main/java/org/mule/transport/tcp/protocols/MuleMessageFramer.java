@@ -0,0 +1,48 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp.protocols;
+
+import org.mule.transport.tcp.TcpMessageFramer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the Mule messages sent in the frames of another protocol.
+ */
+class MuleMessageFramer implements TcpMessageFramer
+{
+
+    private final TcpMessageFramer delegate;
+    private final MuleMessageWorker messageWorker;
+
+    MuleMessageFramer(TcpMessageFramer delegate, MuleMessageWorker messageWorker)
+    {
+        this.delegate = delegate;
+        this.messageWorker = messageWorker;
+    }
+
+    public void receive(ByteBuffer bytes) throws IOException
+    {
+        delegate.receive(bytes);
+    }
+
+    public Object nextMessage() throws IOException
+    {
+        return messageWorker.doRead(delegate.nextMessage());
+    }
+
+    public Object endOfData(boolean endOfInput) throws IOException
+    {
+        return messageWorker.doRead(delegate.endOfData(endOfInput));
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp.protocols;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Frames the messages of a {@link SafeProtocol}: each one is a length prefixed cookie
+ * followed by the length prefixed message.
+ */
+class SafeFramer extends LengthFramer
+{
+
+    private static final byte[] COOKIE = SafeProtocol.COOKIE.getBytes();
+
+    private boolean cookieRead;
+
+    SafeFramer(int maxMessageLength)
+    {
+        super(maxMessageLength);
+    }
+
+    @Override
+    protected int checkLength(int length, int index) throws IOException
+    {
+        if (index % 2 == 1)
+        {
+            return super.checkLength(length, index);
+        }
+        try
+        {
+            return checkMaxLength(length, COOKIE.length);
+        }
+        catch (IOException e)
+        {
+            throw SafeProtocol.inconsistentProtocol(e);
+        }
+    }
+
+    @Override
+    public Object nextMessage() throws IOException
+    {
+        if (!cookieRead)
+        {
+            byte[] cookie = nextFrame();
+            if (cookie == null)
+            {
+                return null;
+            }
+            if (!Arrays.equals(COOKIE, cookie))
+            {
+                throw SafeProtocol.inconsistentProtocol();
+            }
+            cookieRead = true;
+        }
+        Object message = super.nextMessage();
+        if (message != null)
+        {
+            cookieRead = false;
+        }
+        return message;
+    }
+
+    @Override
+    public Object endOfData(boolean endOfInput) throws IOException
+    {
+        if (endOfInput && cookieRead)
+        {
+            // EOF after cookie but before data
+            throw SafeProtocol.inconsistentProtocol();
+        }
+        return null;
+    }
+
+}
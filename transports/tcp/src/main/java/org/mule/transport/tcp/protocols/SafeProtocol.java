@@ -11,6 +11,8 @@
 package org.mule.transport.tcp.protocols;
 
 import org.mule.ResponseOutputStream;
+import org.mule.transport.tcp.NonBlockingTcpProtocol;
+import org.mule.transport.tcp.TcpMessageFramer;
 import org.mule.transport.tcp.TcpProtocol;
 
 import java.io.IOException;
@@ -25,12 +27,13 @@ import java.net.Socket;
  * You should probably change to LengthProtocol.
  * Remember - both sender and receiver must use the same protocol.
  */
-public class SafeProtocol implements TcpProtocol
+public class SafeProtocol implements NonBlockingTcpProtocol
 {
 
     public static final String COOKIE = "You are using SafeProtocol";
     private TcpProtocol delegate = new LengthProtocol();
     private TcpProtocol cookieProtocol = new LengthProtocol(COOKIE.length());
+    private int maxMessageLength = LengthProtocol.NO_MAX_LENGTH;
 
     public Object read(InputStream is) throws IOException
     {
@@ -61,6 +64,11 @@ public class SafeProtocol implements TcpProtocol
         return new ResponseOutputStream(socket, new ProtocolStream(this, false, socket.getOutputStream()));
     }
 
+    public TcpMessageFramer createFramer()
+    {
+        return new SafeFramer(maxMessageLength);
+    }
+
     private void assureSibling(OutputStream os) throws IOException
     {
         cookieProtocol.write(os, COOKIE);
@@ -100,14 +108,24 @@ public class SafeProtocol implements TcpProtocol
 
     private void helpUser() throws IOException
     {
-        throw new IOException("You are not using a consistent protocol on your TCP transport. "
+        throw inconsistentProtocol();
+    }
+
+    private void helpUser(Exception e) throws IOException
+    {
+        throw inconsistentProtocol(e);
+    }
+
+    static IOException inconsistentProtocol()
+    {
+        return new IOException("You are not using a consistent protocol on your TCP transport. "
                 + "Please read the documentation for the TCP transport, "
                 + "paying particular attention to the protocol parameter.");
     }
 
-    private void helpUser(Exception e) throws IOException
+    static IOException inconsistentProtocol(Exception e)
     {
-        throw (IOException) new IOException("An error occurred while verifying your connection.  "
+        return (IOException) new IOException("An error occurred while verifying your connection.  "
                 + "You may not be using a consistent protocol on your TCP transport. "
                 + "Please read the documentation for the TCP transport, "
                 + "paying particular attention to the protocol parameter.").initCause(e);
@@ -115,6 +133,7 @@ public class SafeProtocol implements TcpProtocol
 
     public void setMaxMessageLength(int maxMessageLength)
     {
+        this.maxMessageLength = maxMessageLength;
         delegate = new LengthProtocol(maxMessageLength);
     }
 
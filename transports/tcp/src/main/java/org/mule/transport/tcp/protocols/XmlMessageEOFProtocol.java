@@ -10,6 +10,8 @@
 
 package org.mule.transport.tcp.protocols;
 
+import org.mule.transport.tcp.TcpMessageFramer;
+
 /**
  * Extend {@link org.mule.transport.tcp.protocols.XmlMessageProtocol} to continue reading
  * until either a new message or EOF is found.
@@ -31,4 +33,10 @@ public class XmlMessageEOFProtocol extends XmlMessageProtocol
         return patternIndex < 0;
     }
 
+    @Override
+    public TcpMessageFramer createFramer()
+    {
+        return new XmlMessageFramer(true);
+    }
+
 }
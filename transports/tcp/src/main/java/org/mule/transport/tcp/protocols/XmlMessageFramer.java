@@ -0,0 +1,77 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.transport.tcp.protocols;
+
+/**
+ * Frames the messages of an {@link XmlMessageProtocol}: a message ends where the next
+ * XML declaration starts or, for an {@link XmlMessageEOFProtocol}, with the
+ * connection. Otherwise a message also ends when no more data is available.
+ */
+class XmlMessageFramer extends AbstractByteFramer
+{
+
+    private static final byte[] XML_PATTERN = "<?xml".getBytes();
+
+    private final boolean untilEndOfInput;
+    // where to go on looking for the next declaration from
+    private int position;
+
+    XmlMessageFramer(boolean untilEndOfInput)
+    {
+        this.untilEndOfInput = untilEndOfInput;
+    }
+
+    public Object nextMessage()
+    {
+        // start search at 2nd byte to indicate whether we have reached a new document
+        int from = Math.max(position, start + 1);
+        int last = limit - XML_PATTERN.length;
+        for (int i = from; i <= last; i++)
+        {
+            if (matches(i))
+            {
+                position = i + 1;
+                return take(i - start);
+            }
+        }
+        position = Math.max(from, last + 1);
+        return null;
+    }
+
+    public Object endOfData(boolean endOfInput)
+    {
+        if (endOfInput || !untilEndOfInput)
+        {
+            position = 0;
+            return takeAll();
+        }
+        return null;
+    }
+
+    @Override
+    protected void moved(int offset)
+    {
+        position = Math.max(0, position - offset);
+    }
+
+    private boolean matches(int index)
+    {
+        for (int i = 0; i < XML_PATTERN.length; i++)
+        {
+            if (data[index + i] != XML_PATTERN[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -10,9 +10,13 @@
 
 package org.mule.transport.tcp.protocols;
 
+import org.mule.transport.tcp.NonBlockingTcpProtocol;
+import org.mule.transport.tcp.TcpMessageFramer;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -37,8 +41,8 @@ import java.util.concurrent.ConcurrentMap;
  * {@link org.mule.transport.tcp.protocols.XmlMessageEOFProtocol} may be more reliable.
  * </p>
  * <p>
- * Also, the default character encoding for the platform is used to decode the
- * message bytes when looking for the XML declaration. Some caution with message
+ * Also, the XML declaration is searched for in the message bytes as encoded in the
+ * default character encoding for the platform. Some caution with message
  * character encodings is warranted.
  * </p>
  * <p>
@@ -49,10 +53,10 @@ import java.util.concurrent.ConcurrentMap;
  * be read later.
  * </p>
  */
-public class XmlMessageProtocol extends AbstractByteProtocol
+public class XmlMessageProtocol extends AbstractByteProtocol implements NonBlockingTcpProtocol
 {
     
-    private static final String XML_PATTERN = "<?xml";
+    private static final byte[] XML_PATTERN = "<?xml".getBytes();
 
     private static final int READ_BUFFER_SIZE = 4096;
     private static final int PUSHBACK_BUFFER_SIZE = READ_BUFFER_SIZE * 2;
@@ -79,20 +83,25 @@ public class XmlMessageProtocol extends AbstractByteProtocol
         {
             // read until xml pattern is seen (and then pushed back) or no more data
             // to read. return all data as message
-            byte[] buffer = new byte[READ_BUFFER_SIZE];
-            StringBuffer message = new StringBuffer(READ_BUFFER_SIZE);
+            byte[] message = new byte[READ_BUFFER_SIZE];
+            int length = 0;
             int patternIndex = -1;
             boolean repeat;
             do
             {
-                len = safeRead(pbis, buffer);
+                if (message.length - length < READ_BUFFER_SIZE)
+                {
+                    message = Arrays.copyOf(message, message.length * 2);
+                }
+                len = safeRead(pbis, message, length, READ_BUFFER_SIZE);
                 if (len >= 0)
                 {
-                    // TODO take encoding into account, ideally from the incoming XML
-                    message.append(new String(buffer, 0, len));
-                    // start search at 2nd character in buffer (index=1) to
-                    // indicate whether we have reached a new document.
-                    patternIndex = message.toString().indexOf(XML_PATTERN, 1);
+                    // start search at 2nd byte in message (index=1) to indicate
+                    // whether we have reached a new document.  earlier data have
+                    // already been searched, apart from a pattern split by the read
+                    patternIndex = indexOfPattern(message,
+                        Math.max(1, length - XML_PATTERN.length + 1), length + len);
+                    length += len;
                     repeat = isRepeat(patternIndex, len, pbis.available());
                 }
                 else
@@ -108,12 +117,11 @@ public class XmlMessageProtocol extends AbstractByteProtocol
             {
                 // push back the start of the next message and
                 // ignore the pushed-back characters in the return buffer
-                pbis.unread(message.substring(patternIndex, message.length()).getBytes());
-                message.setLength(patternIndex);
+                pbis.unread(message, patternIndex, length - patternIndex);
+                length = patternIndex;
             }
 
-            // TODO encoding here, too...
-            return nullEmptyArray(message.toString().getBytes());
+            return 0 == length ? null : Arrays.copyOf(message, length);
 
         }
         finally
@@ -131,6 +139,28 @@ public class XmlMessageProtocol extends AbstractByteProtocol
         }
     }
 
+    private static int indexOfPattern(byte[] data, int from, int to)
+    {
+        for (int i = from; i <= to - XML_PATTERN.length; i++)
+        {
+            int j = 0;
+            while (j < XML_PATTERN.length && data[i + j] == XML_PATTERN[j])
+            {
+                j++;
+            }
+            if (j == XML_PATTERN.length)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public TcpMessageFramer createFramer()
+    {
+        return new XmlMessageFramer(false);
+    }
+
     /**
      * Show we continue reading?  This class, following previous implementations, only
      * reads while input is saturated.
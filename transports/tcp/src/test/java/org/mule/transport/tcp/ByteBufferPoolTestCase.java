@@ -0,0 +1,68 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+@SmallTest
+public class ByteBufferPoolTestCase extends AbstractMuleTestCase
+{
+
+    private final ByteBufferPool pool = new ByteBufferPool(1024, 2);
+
+    @Test
+    public void releasedBuffersAreReused()
+    {
+        ByteBuffer buffer = pool.acquire();
+        assertEquals(1, pool.getInUseCount());
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(0, pool.getInUseCount());
+
+        ByteBuffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(2, pool.getAcquiredCount());
+        assertEquals(1, pool.getAllocatedCount());
+        assertEquals(1024, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void buffersAboveMaxIdleAreDiscarded()
+    {
+        ByteBuffer[] buffers = {pool.acquire(), pool.acquire(), pool.acquire()};
+        for (ByteBuffer buffer : buffers)
+        {
+            pool.release(buffer);
+        }
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(1, pool.getDiscardedCount());
+    }
+
+    @Test
+    public void foreignBuffersAreIgnored()
+    {
+        pool.release(ByteBuffer.allocate(1024));
+        pool.release(ByteBuffer.allocateDirect(512));
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getInUseCount());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+import org.mule.transport.tcp.protocols.EOFProtocol;
+import org.mule.transport.tcp.protocols.LengthProtocol;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SmallTest
+public class ChannelOutputStreamTestCase extends AbstractMuleTestCase
+{
+
+    private static final int LARGE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerSocketChannel server;
+    private SocketChannel channel;
+    private Socket client;
+
+    @Before
+    public void connect() throws Exception
+    {
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("localhost", 0));
+        client = new Socket("localhost", server.socket().getLocalPort());
+        client.setSoTimeout(5000);
+        channel = server.accept();
+        channel.configureBlocking(false);
+    }
+
+    @After
+    public void close() throws Exception
+    {
+        client.close();
+        channel.close();
+        server.close();
+    }
+
+    @Test
+    public void lengthProtocolWritesLengthAndDataTogether() throws Exception
+    {
+        final byte[] data = payload(LARGE);
+        final ChannelOutputStream out = new ChannelOutputStream(channel, 5000);
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    new LengthProtocol().write(out, data);
+                    out.flush();
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        assertEquals(LARGE, in.readInt());
+        byte[] received = new byte[LARGE];
+        in.readFully(received);
+        writer.join();
+        assertArrayEquals(data, received);
+    }
+
+    @Test
+    public void writeSelectorIsKeptUntilClosed() throws Exception
+    {
+        // make sure that the writes have to wait for the channel
+        channel.socket().setSendBufferSize(1024);
+        ChannelOutputStream out = new ChannelOutputStream(channel, 5000);
+        writeAndReceive(out, payload(LARGE));
+        Selector selector = out.getWriteSelector();
+        assertNotNull(selector);
+
+        writeAndReceive(out, payload(LARGE));
+        assertSame(selector, out.getWriteSelector());
+
+        out.closeSelector();
+        assertFalse(selector.isOpen());
+        assertNull(out.getWriteSelector());
+    }
+
+    @Test
+    public void filesAreTransferred() throws Exception
+    {
+        final byte[] data = payload(LARGE);
+        File file = folder.newFile("payload");
+        FileOutputStream fileOut = new FileOutputStream(file);
+        fileOut.write(data);
+        fileOut.close();
+
+        final FileInputStream fileIn = new FileInputStream(file);
+        // starts from the current position of the stream
+        fileIn.skip(10);
+        final ChannelOutputStream out = new ChannelOutputStream(channel, 5000);
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    new EOFProtocol().write(out, fileIn);
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        byte[] received = new byte[LARGE - 10];
+        in.readFully(received);
+        writer.join();
+        for (int i = 0; i < received.length; i++)
+        {
+            assertEquals(data[i + 10], received[i]);
+        }
+    }
+
+    @Test
+    public void gatheringWriteFlushesBufferedBytesFirst() throws Exception
+    {
+        ChannelOutputStream out = new ChannelOutputStream(channel, 5000);
+        out.write('a');
+        out.write(new ByteBuffer[]{ByteBuffer.wrap("b".getBytes()), ByteBuffer.wrap("c".getBytes())});
+
+        byte[] received = new byte[3];
+        new DataInputStream(client.getInputStream()).readFully(received);
+        assertEquals("abc", new String(received));
+    }
+
+    private void writeAndReceive(final ChannelOutputStream out, final byte[] data) throws Exception
+    {
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    out.write(data);
+                    out.flush();
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+
+        byte[] received = new byte[data.length];
+        new DataInputStream(client.getInputStream()).readFully(received);
+        writer.join();
+        assertArrayEquals(data, received);
+    }
+
+    private byte[] payload(int length)
+    {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
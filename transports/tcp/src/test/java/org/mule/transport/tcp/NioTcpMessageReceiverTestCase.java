@@ -0,0 +1,217 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.endpoint.InboundEndpoint;
+import org.mule.api.processor.MessageProcessor;
+import org.mule.tck.MuleTestUtils;
+import org.mule.tck.junit4.AbstractMuleContextTestCase;
+import org.mule.tck.junit4.rule.DynamicPort;
+import org.mule.transport.tcp.protocols.CustomClassLoadingLengthProtocol;
+import org.mule.transport.tcp.protocols.LengthProtocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+public class NioTcpMessageReceiverTestCase extends AbstractMuleContextTestCase
+{
+
+    private static final int TIMEOUT = 5000;
+
+    @Rule
+    public DynamicPort port = new DynamicPort("port");
+
+    private TcpConnector connector;
+
+    @Override
+    protected void doSetUp() throws Exception
+    {
+        connector = new TcpConnector(muleContext);
+        connector.setName("nio");
+        connector.setTcpProtocol(new LengthProtocol());
+        connector.setUseNioReceiver(true);
+        connector.setKeepAliveTimeout(500);
+        muleContext.getRegistry().registerConnector(connector);
+    }
+
+    @Test
+    public void connectionIsKeptForSeveralMessages() throws Exception
+    {
+        listen();
+        Socket socket = connect();
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                write(socket, "message" + i);
+                assertEquals("message" + i + " Received", read(socket));
+            }
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void messagesSentTogetherAreAnsweredInOrder() throws Exception
+    {
+        listen();
+        Socket socket = connect();
+        try
+        {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            for (int i = 0; i < 3; i++)
+            {
+                byte[] bytes = ("message" + i).getBytes();
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+            for (int i = 0; i < 3; i++)
+            {
+                assertEquals("message" + i + " Received", read(socket));
+            }
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void manyConnectionsShareTheSelectorThread() throws Exception
+    {
+        listen();
+        List<Socket> sockets = new ArrayList<Socket>();
+        try
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                sockets.add(connect());
+            }
+            for (int i = 0; i < sockets.size(); i++)
+            {
+                write(sockets.get(i), "connection" + i);
+            }
+            for (int i = 0; i < sockets.size(); i++)
+            {
+                assertEquals("connection" + i + " Received", read(sockets.get(i)));
+            }
+        }
+        finally
+        {
+            for (Socket socket : sockets)
+            {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void idleConnectionsAreClosed() throws Exception
+    {
+        listen();
+        Socket socket = connect();
+        try
+        {
+            write(socket, "idle");
+            assertEquals("idle Received", read(socket));
+            // the keep alive timeout is half a second and checked every second
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void idleConnectionsAreClosedAfterTheServerTimeoutWithoutKeepAlive() throws Exception
+    {
+        connector.setKeepAliveTimeout(0);
+        connector.setServerSoTimeout(500);
+        listen();
+        Socket socket = connect();
+        try
+        {
+            write(socket, "idle");
+            assertEquals("idle Received", read(socket));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void protocolsThatCannotBeFramedUseTheBlockingReceiver() throws Exception
+    {
+        connector.setTcpProtocol(new CustomClassLoadingLengthProtocol());
+        InboundEndpoint endpoint = getEndpoint();
+        assertEquals(TcpMessageReceiver.class, connector.createReceiver(MuleTestUtils.getTestFlow(muleContext), endpoint).getClass());
+
+        connector.setTcpProtocol(new LengthProtocol());
+        assertTrue(connector.createReceiver(MuleTestUtils.getTestFlow(muleContext), endpoint) instanceof NioTcpMessageReceiver);
+    }
+
+    private void listen() throws Exception
+    {
+        connector.registerListener(getEndpoint(), new MessageProcessor()
+        {
+            public MuleEvent process(MuleEvent event) throws MuleException
+            {
+                event.getMessage().setPayload(event.getMessageAsString() + " Received");
+                return event;
+            }
+        }, MuleTestUtils.getTestFlow(muleContext));
+        connector.start();
+    }
+
+    private InboundEndpoint getEndpoint() throws Exception
+    {
+        return muleContext.getEndpointFactory().getInboundEndpoint(
+            "tcp://localhost:" + port.getNumber() + "?connector=nio");
+    }
+
+    private Socket connect() throws IOException
+    {
+        Socket socket = new Socket("localhost", port.getNumber());
+        socket.setSoTimeout(TIMEOUT);
+        return socket;
+    }
+
+    private void write(Socket socket, String message) throws IOException
+    {
+        connector.getTcpProtocol().write(socket.getOutputStream(), message.getBytes());
+        socket.getOutputStream().flush();
+    }
+
+    private String read(Socket socket) throws IOException
+    {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes);
+    }
+}
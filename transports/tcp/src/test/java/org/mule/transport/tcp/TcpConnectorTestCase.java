@@ -13,9 +13,16 @@ package org.mule.transport.tcp;
 import org.mule.api.transport.Connector;
 import org.mule.transport.AbstractConnectorTestCase;
 
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class TcpConnectorTestCase extends AbstractConnectorTestCase
 {
@@ -56,4 +63,22 @@ public class TcpConnectorTestCase extends AbstractConnectorTestCase
         assertEquals(1000, c.getServerSoTimeout());
         assertEquals(1000, c.getClientSoTimeout());
     }
+
+    @Test
+    public void testBufferPoolStatisticsAreRegistered() throws Exception
+    {
+        TcpConnector c = new TcpConnector(muleContext);
+        c.setName("BufferPoolConnector");
+        c.initialise();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = c.getBufferPoolObjectName();
+        assertTrue(server.isRegistered(name));
+
+        c.getBufferPool().release(c.getBufferPool().acquire());
+        assertEquals(1L, server.getAttribute(name, "AcquiredCount"));
+        assertEquals(0, server.getAttribute(name, "InUseCount"));
+
+        c.dispose();
+        assertFalse(server.isRegistered(name));
+    }
 }
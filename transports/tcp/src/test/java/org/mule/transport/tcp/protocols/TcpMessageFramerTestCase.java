@@ -0,0 +1,184 @@
+/*
+ * $Id$
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.transport.tcp.protocols;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.size.SmallTest;
+import org.mule.transport.tcp.NonBlockingTcpProtocol;
+import org.mule.transport.tcp.TcpMessageFramer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+@SmallTest
+public class TcpMessageFramerTestCase extends AbstractMuleTestCase
+{
+
+    @Test
+    public void lengthMessagesReceivedOneByteAtATime() throws Exception
+    {
+        LengthProtocol protocol = new LengthProtocol();
+        byte[] data = concat(encode(protocol, "first"), encode(protocol, "second"));
+        TcpMessageFramer framer = protocol.createFramer();
+
+        List<String> messages = new ArrayList<String>();
+        for (byte b : data)
+        {
+            framer.receive(ByteBuffer.wrap(new byte[]{b}));
+            Object message = framer.nextMessage();
+            if (message != null)
+            {
+                messages.add(new String((byte[]) message));
+            }
+        }
+        assertEquals(2, messages.size());
+        assertEquals("first", messages.get(0));
+        assertEquals("second", messages.get(1));
+        assertNull(framer.endOfData(true));
+    }
+
+    @Test
+    public void lengthMessagesReceivedTogether() throws Exception
+    {
+        LengthProtocol protocol = new LengthProtocol();
+        TcpMessageFramer framer = protocol.createFramer();
+        framer.receive(ByteBuffer.wrap(concat(encode(protocol, "first"),
+            concat(encode(protocol, ""), encode(protocol, "second")))));
+
+        assertEquals("first", new String((byte[]) framer.nextMessage()));
+        assertEquals(0, ((byte[]) framer.nextMessage()).length);
+        assertEquals("second", new String((byte[]) framer.nextMessage()));
+        assertNull(framer.nextMessage());
+    }
+
+    @Test(expected = IOException.class)
+    public void lengthAboveLimitIsRejected() throws Exception
+    {
+        LengthProtocol protocol = new LengthProtocol(3);
+        TcpMessageFramer framer = protocol.createFramer();
+        framer.receive(ByteBuffer.wrap(encode(new LengthProtocol(), "four")));
+        framer.nextMessage();
+    }
+
+    @Test
+    public void safeMessagesMatchWhatIsRead() throws Exception
+    {
+        SafeProtocol protocol = new SafeProtocol();
+        byte[] data = concat(encode(protocol, "first"), encode(protocol, "second"));
+        assertFramedAsRead(protocol, data, 3);
+    }
+
+    @Test(expected = IOException.class)
+    public void safeMessageWithoutCookieIsRejected() throws Exception
+    {
+        TcpMessageFramer framer = new SafeProtocol().createFramer();
+        framer.receive(ByteBuffer.wrap(encode(new LengthProtocol(), "You are not using SafeProtocol")));
+        framer.nextMessage();
+    }
+
+    @Test
+    public void eofMessageEndsWithInput() throws Exception
+    {
+        TcpMessageFramer framer = new EOFProtocol().createFramer();
+        framer.receive(ByteBuffer.wrap("hello ".getBytes()));
+        assertNull(framer.nextMessage());
+        assertNull(framer.endOfData(false));
+        framer.receive(ByteBuffer.wrap("world".getBytes()));
+        assertEquals("hello world", new String((byte[]) framer.endOfData(true)));
+    }
+
+    @Test
+    public void xmlMessagesAreSplitAtDeclarations() throws Exception
+    {
+        TcpMessageFramer framer = new XmlMessageProtocol().createFramer();
+        framer.receive(ByteBuffer.wrap("<?xml version=\"1.0\"?><a/><?x".getBytes()));
+        assertNull(framer.nextMessage());
+        framer.receive(ByteBuffer.wrap("ml version=\"1.0\"?><b/>".getBytes()));
+        assertEquals("<?xml version=\"1.0\"?><a/>", new String((byte[]) framer.nextMessage()));
+        assertNull(framer.nextMessage());
+        // the message also ends when no more data is available
+        assertEquals("<?xml version=\"1.0\"?><b/>", new String((byte[]) framer.endOfData(false)));
+    }
+
+    @Test
+    public void xmlEofMessageWaitsForInput() throws Exception
+    {
+        TcpMessageFramer framer = new XmlMessageEOFProtocol().createFramer();
+        framer.receive(ByteBuffer.wrap("<?xml version=\"1.0\"?><a/>".getBytes()));
+        assertNull(framer.nextMessage());
+        assertNull(framer.endOfData(false));
+        assertEquals("<?xml version=\"1.0\"?><a/>", new String((byte[]) framer.endOfData(true)));
+    }
+
+    @Test
+    public void largeMessagesGrowTheBuffer() throws Exception
+    {
+        LengthProtocol protocol = new LengthProtocol();
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+        {
+            payload.append(i % 10);
+        }
+        assertFramedAsRead(protocol, concat(encode(protocol, payload.toString()), encode(protocol, "end")), 1000);
+    }
+
+    @Test
+    public void customClassLoadingProtocolCannotBeFramed() throws Exception
+    {
+        assertNull(new CustomClassLoadingLengthProtocol().createFramer());
+    }
+
+    private void assertFramedAsRead(NonBlockingTcpProtocol protocol, byte[] data, int pieceSize) throws Exception
+    {
+        List<String> read = new ArrayList<String>();
+        ByteArrayInputStream in = new ByteArrayInputStream(data);
+        Object message;
+        while ((message = protocol.read(in)) != null)
+        {
+            read.add(new String((byte[]) message));
+        }
+
+        List<String> framed = new ArrayList<String>();
+        TcpMessageFramer framer = protocol.createFramer();
+        for (int offset = 0; offset < data.length; offset += pieceSize)
+        {
+            framer.receive(ByteBuffer.wrap(data, offset, Math.min(pieceSize, data.length - offset)));
+            while ((message = framer.nextMessage()) != null)
+            {
+                framed.add(new String((byte[]) message));
+            }
+        }
+        assertEquals(read, framed);
+    }
+
+    private byte[] encode(NonBlockingTcpProtocol protocol, String message) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        protocol.write(out, message.getBytes());
+        return out.toByteArray();
+    }
+
+    private byte[] concat(byte[] first, byte[] second)
+    {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}